@@ -17,10 +17,13 @@ package de.fhg.isst.oe270.degree.compiler.agents;
 
 import java.io.File;
 import java.lang.instrument.Instrumentation;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This agent allows to add arbitrary jars to the classpath during runtime.
@@ -44,9 +47,9 @@ public final class JarLoaderAgent {
     public static final List<URLClassLoader> CLASS_LOADERS = new ArrayList<>();
 
     /**
-     * List of jars that will be used as dependencies in compiled data app.
+     * Size and modification time of the jars at the time their class loaders were created.
      */
-    public static final List<URL> JAR_DEPENDENCIES = new ArrayList<>();
+    private static final Map<URLClassLoader, String> VERSIONS = new HashMap<>();
 
     /**
      * Required for agents.
@@ -60,6 +63,8 @@ public final class JarLoaderAgent {
 
     /**
      * Add a given jar to classpath.
+     * If the jar has already been added and has not changed since, the existing class loader
+     * is kept. A changed jar replaces its previous class loader.
      *
      * @param arg the jar file to add
      * @return true if adding was successful, false otherwise
@@ -68,8 +73,21 @@ public final class JarLoaderAgent {
         try {
             File file = new File(arg);
             URL url = file.toURI().toURL();
-            URLClassLoader classLoader = new URLClassLoader(new URL[]{url});
-            CLASS_LOADERS.add(classLoader);
+            String version = file.length() + ":" + file.lastModified();
+            synchronized (CLASS_LOADERS) {
+                URLClassLoader previous = getClassLoader(arg);
+                if (previous != null) {
+                    if (version.equals(VERSIONS.get(previous))) {
+                        return true;
+                    }
+                    CLASS_LOADERS.remove(previous);
+                    VERSIONS.remove(previous);
+                    previous.close();
+                }
+                URLClassLoader classLoader = new URLClassLoader(new URL[]{url});
+                CLASS_LOADERS.add(classLoader);
+                VERSIONS.put(classLoader, version);
+            }
         } catch (Exception e) {
             return false;
         }
@@ -77,5 +95,27 @@ public final class JarLoaderAgent {
         return true;
     }
 
+    /**
+     * Get the class loader which has been registered for a given jar.
+     *
+     * @param arg the jar file
+     * @return the class loader of the jar or null if the jar has not been added
+     */
+    public static URLClassLoader getClassLoader(final String arg) {
+        try {
+            URL url = new File(arg).toURI().toURL();
+            synchronized (CLASS_LOADERS) {
+                for (URLClassLoader classLoader : CLASS_LOADERS) {
+                    if (classLoader.getURLs().length == 1
+                            && classLoader.getURLs()[0].equals(url)) {
+                        return classLoader;
+                    }
+                }
+            }
+        } catch (MalformedURLException e) {
+            return null;
+        }
+        return null;
+    }
 
 }
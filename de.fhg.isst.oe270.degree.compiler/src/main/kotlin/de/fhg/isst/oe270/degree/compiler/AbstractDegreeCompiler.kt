@@ -21,6 +21,8 @@ import de.fhg.isst.degree.types.gen.degree.Activity
 import de.fhg.isst.oe270.degree.activities.annotations.ActivityAnnotation
 import de.fhg.isst.oe270.degree.activities.api.ActivityApi
 import de.fhg.isst.oe270.degree.compiler.agents.JarLoaderAgent
+import de.fhg.isst.oe270.degree.compiler.optimization.ConstantConditionFolding
+import de.fhg.isst.oe270.degree.compiler.validation.ParallelStatementValidation
 import de.fhg.isst.oe270.degree.grammar.DegreeParserFacade
 import de.fhg.isst.oe270.degree.grammar.ast.model.DataApp
 import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
@@ -39,6 +41,7 @@ import nukleus.core.exception.TypeSystemException
 import org.codehaus.plexus.util.DirectoryScanner
 import org.slf4j.LoggerFactory
 import java.io.File
+import java.net.URL
 import java.net.URLClassLoader
 import java.nio.file.Paths
 import java.util.*
@@ -55,6 +58,12 @@ abstract class AbstractDegreeCompiler(
     companion object {
         const val SINGLE_EXECUTION_CONFIG_KEY = "single"
         const val PERIODIC_EXECUTION_CONFIG_KEY = "periodic"
+
+        /**
+         * The class loaders which have been scanned for annotated classes and the result of the scan.
+         * The scan is only repeated if the class loaders change.
+         */
+        private var annotationScan: Pair<List<ClassLoader>, HashMap<String, HashMap<String, *>>>? = null
     }
 
     @Suppress("unused")
@@ -83,7 +92,17 @@ abstract class AbstractDegreeCompiler(
     val componentScanPackages = HashSet<String>()
 
     val additionalAnnotations = HashSet<String>()
-    
+
+    /**
+     * All source files which have been processed by the compiler.
+     */
+    protected val processedSourceFiles = HashSet<String>()
+
+    /**
+     * The jars which contain implementations used by the data app.
+     */
+    private val jarDependencies = HashSet<URL>()
+
     init {
         // ensure that all sub systems are up to date
         SubSystemUtils.updateSubSystems()
@@ -145,8 +164,8 @@ abstract class AbstractDegreeCompiler(
         if (runtimeDefinitionRegistry.retrieveContainer(Identifier.of(ident)) is JavaExecutionContainer<*>) {
             val jar = (runtimeDefinitionRegistry.retrieveContainer(Identifier.of(ident)) as JavaExecutionContainer<*>)
                     .apiObject.javaClass.protectionDomain.codeSource
-            if (jar.location.toString().endsWith(".jar") && !JarLoaderAgent.JAR_DEPENDENCIES.contains(jar.location)) {
-                JarLoaderAgent.JAR_DEPENDENCIES.add(jar.location)
+            if (jar.location.toString().endsWith(".jar") && !jarDependencies.contains(jar.location)) {
+                jarDependencies.add(jar.location)
                 val path = Paths.get(jar.location.toURI())
 
                 // process manifest data if available
@@ -302,6 +321,13 @@ abstract class AbstractDegreeCompiler(
      * also hashMaps which contain entries of the form (annotation.qualified_name, instance).
      */
     private fun findAnnotatedClasses() : HashMap<String, HashMap<String, *>> {
+        val classLoaders = synchronized(JarLoaderAgent.CLASS_LOADERS) { JarLoaderAgent.CLASS_LOADERS.toList() }
+        annotationScan?.let { (scannedClassLoaders, result) ->
+            if (scannedClassLoaders == classLoaders) {
+                return result
+            }
+        }
+
         val annotatedActivities = HashMap<String, ActivityApi>()
         val annotatedPolicies = HashMap<String, EmbeddedPolicyApi>()
         val classGraph = ClassGraph()
@@ -309,7 +335,7 @@ abstract class AbstractDegreeCompiler(
                 .enableAnnotationInfo()
                 .ignoreParentClassLoaders()
                 .acceptPackages("*")
-        for (classLoader in JarLoaderAgent.CLASS_LOADERS)
+        for (classLoader in classLoaders)
             classGraph.addClassLoader(classLoader)
         val scanResult = classGraph.scan()
         // the fully qualified name as string is used here instead of ActivityAnnotation::class.java.canonicalName because the
@@ -331,6 +357,7 @@ abstract class AbstractDegreeCompiler(
         result["annotatedActivities"] = annotatedActivities
         result["annotatedPolicies"] = annotatedPolicies
 
+        annotationScan = Pair(classLoaders, result)
         return result
     }
 
@@ -489,19 +516,15 @@ abstract class AbstractDegreeCompiler(
     override fun compile(): CompilerResult {
         SpringContext.setCompileMode(true)
         // load all files relevant for this process
-        parseToAST(getSourceFiles().plus(getDataAppSourceFiles()))
-        // find all relevant annotated classes
-        val annotatedClasses = findAnnotatedClasses()
-        try {
-            // setup extensible systems
-            initSubSystems(annotatedClasses)
-        } catch (e: Exception) {
-            compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR, "Error during the initialization of subsystems: $e"))
-        }
+        val sourceFiles = getSourceFiles().plus(getDataAppSourceFiles())
+        processedSourceFiles.addAll(sourceFiles)
+        parseToAST(sourceFiles)
+        setupSubSystems()
         // prior code generation some checks are performed on the AST
         validateAST()
         // if there were no errors until now we can generate the code
         if (compilerMessages.none { it.kind == CompilerMessage.Kind.ERROR }) {
+            optimizeAST()
             generateCode()
         } else {
             compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR, "Source files contain error(s). Cannot generate code"))
@@ -514,6 +537,41 @@ abstract class AbstractDegreeCompiler(
         return CompilerResult(compilerMessages.any { it.kind == CompilerMessage.Kind.ERROR }, compilerMessages)
     }
 
+    /**
+     * Load the subsystem files of all source root dirs and initialize the subsystems without compiling a data app.
+     * Compilations which are configured with [CompilerConfiguration.subsystemsInitialized] afterwards share the
+     * initialized subsystems.
+     *
+     * @return true if the subsystems have been initialized, false otherwise
+     */
+    @Throws(CompilerException::class)
+    fun initializeSubSystems(): Boolean {
+        parseToAST(getSourceFiles()
+                .filter { File(it).extension.toLowerCase() == Configuration.SUBSYSTEM_FILE_EXTENSION.toLowerCase() }
+                .toSet())
+        setupSubSystems()
+        return compilerConfiguration.subsystemsInitialized
+    }
+
+    /**
+     * Initialize the subsystems unless they have already been initialized.
+     */
+    private fun setupSubSystems() {
+        if (compilerConfiguration.subsystemsInitialized) {
+            compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO, "Reusing the initialized subsystems."))
+            return
+        }
+        // find all relevant annotated classes
+        val annotatedClasses = findAnnotatedClasses()
+        try {
+            // setup extensible systems
+            initSubSystems(annotatedClasses)
+            compilerConfiguration.subsystemsInitialized = true
+        } catch (e: Exception) {
+            compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR, "Error during the initialization of subsystems: $e"))
+        }
+    }
+
     /**
      * Initialize all subsystems and load the available elements.
      */
@@ -598,7 +656,12 @@ abstract class AbstractDegreeCompiler(
      * @param sourceFiles List of files which will be loaded into the D° subsystems
      */
     private fun parseSubsystemFiles(sourceFiles: List<File>) {
+        val typeFiles = LinkedHashMap<String, SubsystemFileParser.Source>()
+        val registryFiles = LinkedHashMap<String, SubsystemFileParser.Source>()
+
         sourceFiles.forEach {
+            val fileName = it.toString().replace("\\", File.separator).replace("/", File.separator).split(File.separator).last()
+            val location = it.toPath().toString().replace("\\", File.separator).replace("/", File.separator)
             // nukleus policies
             if (it.name == "nukleus.policies.yaml") {
                 // mark this file for injection into the data app
@@ -606,150 +669,129 @@ abstract class AbstractDegreeCompiler(
             }
             // type files
             else if (it.nameWithoutExtension.endsWith(Configuration.TYPES_IDENTIFIER)) {
-                val fileName = it.toString().replace("\\", File.separator).replace("/", File.separator).split(File.separator).last()
-                if (!TypeTaxonomy.isFileLoaded(fileName)) {
-                    val loadedElements = typeTaxonomy.size()
-                    typeTaxonomy.load(it.toPath())
-                    TypeTaxonomy.addLoadedFile(fileName)
-                    compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
-                            "Loaded ${TypeTaxonomy.getInstance().size() - loadedElements} data type definitions " +
-                                    "from file '${
-                                        it.toPath().toString().replace("\\", File.separator)
-                                                .replace("/", File.separator)
-                                    }'."))
+                if (!TypeTaxonomy.isFileLoaded(fileName) && !typeFiles.containsKey(fileName)) {
+                    typeFiles[fileName] = SubsystemFileParser.Source(fileName, location, true, it) { it.readText() }
                 }
             }
             // language element files
             else if (it.nameWithoutExtension.endsWith(Configuration.SUBSYSTEM_IDENTIFIER)) {
-                val fileName = it.toString().replace("\\", File.separator).replace("/", File.separator).split(File.separator).last()
-                if (!RuntimeDefinitionRegistry.isFileLoaded(fileName)) {
-                    val sizes = getCategorizedRuntimeRegistrySizes()
-
-                    runtimeDefinitionRegistry.load(Format.yaml.parse(it.toPath()))
-                    RuntimeDefinitionRegistry.addLoadedFile(fileName)
-
-                    createCompilerMessagesRuntimeDefinitionFileLoaded(sizes, it.toPath().toString()
-                            .replace("\\", File.separator).replace("/", File.separator))
+                if (!RuntimeDefinitionRegistry.isFileLoaded(fileName) && !registryFiles.containsKey(fileName)) {
+                    registryFiles[fileName] =
+                            SubsystemFileParser.Source(fileName, location, false, it) { it.readText() }
                 }
             }
         }
 
-        // load types from yaml-files inside jars
+        // types from yaml-files inside jars
         compilerConfiguration.typeYamlResources.forEach { (classLoader, files) ->
             files.forEach { file ->
                 val fileName = file.replace("\\", File.separator).replace("/", File.separator).split(File.separator).last()
-                if (!TypeTaxonomy.isFileLoaded(fileName)) {
-                    val loadedElements = typeTaxonomy.size()
-
-                    typeTaxonomy.deserialize(
-                            Format.yaml.parse(
-                                    Scanner(classLoader.getResourceAsStream(file)!!).useDelimiter("\\A").next()
-                            ))
-                    TypeTaxonomy.addLoadedFile(fileName)
-                    compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
-                            "Loaded ${typeTaxonomy.size() - loadedElements} data type definitions " +
-                                    "from file '${
-                                        (classLoader as URLClassLoader).urLs[0].toString()
-                                                .replace("\\", File.separator).replace("/", File.separator)
-                                                .drop(6) + "!" + File.separator + fileName
-                                    }'."))
+                if (!TypeTaxonomy.isFileLoaded(fileName) && !typeFiles.containsKey(fileName)) {
+                    val location = jarLocation(classLoader, fileName)
+                    typeFiles[fileName] = SubsystemFileParser.Source(fileName, location, true, null) {
+                        Scanner(classLoader.getResourceAsStream(file)!!).useDelimiter("\\A").next()
+                    }
                 }
             }
         }
 
-        // load registry elements from yaml-files inside jars
+        // registry elements from yaml-files inside jars
         compilerConfiguration.registryYamlResources.forEach { (classLoader, files) ->
             files.forEach { file ->
                 val fileName = file.replace("\\", File.separator).replace("/", File.separator).split(File.separator).last()
-                if (!RuntimeDefinitionRegistry.isFileLoaded(fileName)) {
-                    val sizes = getCategorizedRuntimeRegistrySizes()
-
-                    runtimeDefinitionRegistry.load(
-                            Format.yaml.parse(
-                                    Scanner(classLoader.getResourceAsStream(file)!!).useDelimiter("\\A").next()
-                            ))
-                    RuntimeDefinitionRegistry.addLoadedFile(fileName)
-
-                    createCompilerMessagesRuntimeDefinitionFileLoaded(sizes, (
-                            classLoader as URLClassLoader).urLs[0].toString().replace("\\", File.separator)
-                            .replace("/", File.separator).drop(6) + "!" + File.separator + fileName)
+                if (!RuntimeDefinitionRegistry.isFileLoaded(fileName) && !registryFiles.containsKey(fileName)) {
+                    val location = jarLocation(classLoader, fileName)
+                    registryFiles[fileName] = SubsystemFileParser.Source(fileName, location, false, null) {
+                        Scanner(classLoader.getResourceAsStream(file)!!).useDelimiter("\\A").next()
+                    }
                 }
             }
         }
 
+        // initialized subsystems may be shared by concurrent compilations and must not change anymore
+        if (compilerConfiguration.subsystemsInitialized && (typeFiles.isNotEmpty() || registryFiles.isNotEmpty())) {
+            (typeFiles.values + registryFiles.values).forEach {
+                compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR,
+                        "Subsystem file '${it.location}' is not part of the initialized subsystems."))
+            }
+            return
+        }
+
+        // the files are parsed concurrently, but loaded one after another since the type taxonomy and
+        // the registry are not thread-safe
+        val parsedFiles = SubsystemFileParser.parse(typeFiles.values + registryFiles.values)
+
+        // types are loaded before language elements and types are loaded before the types which refer to them
+        SubsystemFileParser.orderByTypeDependencies(parsedFiles.filter { it.source.isTypeFile }).forEach {
+            val loadedElements = typeTaxonomy.size()
+            // imports are resolved relative to the file and loaded before the file
+            if (it.source.file != null && SubsystemFileParser.hasImports(it.node)) {
+                SubsystemFileParser.parseImports(it.source.file.toURI(), it.node) { uri ->
+                    TypeTaxonomy.isFileLoaded(uri.toString())
+                }.forEach { (uri, imported) ->
+                    typeTaxonomy.deserialize(SubsystemFileParser.withoutImports(imported))
+                    TypeTaxonomy.addLoadedFile(uri.toString())
+                }
+                typeTaxonomy.deserialize(SubsystemFileParser.withoutImports(it.node))
+            } else {
+                typeTaxonomy.deserialize(it.node)
+            }
+            TypeTaxonomy.addLoadedFile(it.source.fileName)
+            compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
+                    "Loaded ${typeTaxonomy.size() - loadedElements} data type definitions " +
+                            "from file '${it.source.location}'."))
+        }
+
+        parsedFiles.filter { !it.source.isTypeFile }.forEach {
+            val loadedElements = runtimeDefinitionRegistry.size()
+            // elements which already exist are not added again
+            val addedElementsByType = SubsystemFileParser.countElementsByType(it.node) { name ->
+                runtimeDefinitionRegistry.contains(Identifier.of(name))
+            }
+            runtimeDefinitionRegistry.load(it.node)
+            RuntimeDefinitionRegistry.addLoadedFile(it.source.fileName)
+
+            createCompilerMessagesRuntimeDefinitionFileLoaded(runtimeDefinitionRegistry.size() - loadedElements,
+                    addedElementsByType, it.source.location)
+        }
     }
 
     /**
-     * Creates compiler messages which show the size differences of different element groups in the
-     * runtime definition registry, after a file was loaded.
+     * Get the location of a file inside a jar which is presented to the user.
      *
-     * The expected order of elements is defined as follows:
-     * [0] - Number of activity definitions
-     * [1] - Number of activity instances
-     * [2] - Number of policy definitions
-     * [3] - Number of policy instances
-     * [4] - Number of constraint definitions
-     * [5] - Number of constraint instances
-     * [6] - Number of elements in total
-     */
-    private fun createCompilerMessagesRuntimeDefinitionFileLoaded(oldSizes: IntArray, fileName: String) {
-        compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
-                "Loaded ${runtimeDefinitionRegistry.size() - oldSizes[6]} language elements from file '$fileName'."))
-        compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
-                "Loaded activity definitions: ${
-                    runtimeDefinitionRegistry.activityRegistry()
-                            .instanceSet(Activity().type).size - oldSizes[0]
-                }."))
-        compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
-                "Loaded activity instances: ${
-                    runtimeDefinitionRegistry.activityRegistry()
-                            .instanceSet(ActivityInstance().type).size - oldSizes[1]
-                }."))
-        compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
-                "Loaded constraint definitions: ${
-                    runtimeDefinitionRegistry.policyRegistry()
-                            .instanceSet(Constraint().type).size - oldSizes[4]
-                }."))
-        compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
-                "Loaded constraint instances: ${
-                    runtimeDefinitionRegistry.policyRegistry()
-                            .instanceSet(ConstraintInstance().type).size - oldSizes[5]
-                }."))
-        compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
-                "Loaded policy definitions: ${
-                    runtimeDefinitionRegistry.policyRegistry()
-                            .instanceSet(Policy().type).size - oldSizes[2]
-                }."))
-        compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
-                "Loaded policy instances: ${
-                    runtimeDefinitionRegistry.policyRegistry()
-                            .instanceSet(PolicyInstance().type).size - oldSizes[3]
-                }."))
+     * @param classLoader the class loader of the jar
+     * @param fileName the name of the file
+     * @return the location of the file
+     */
+    private fun jarLocation(classLoader: ClassLoader, fileName: String): String {
+        return (classLoader as URLClassLoader).urLs[0].toString()
+                .replace("\\", File.separator).replace("/", File.separator)
+                .drop(6) + "!" + File.separator + fileName
     }
 
     /**
-     * Helper to get the number of different elements in the runtimeDefinitionRegistry.
-     * The order of elements is defined as follows:
-     * [0] - Number of activity definitions
-     * [1] - Number of activity instances
-     * [2] - Number of policy definitions
-     * [3] - Number of policy instances
-     * [4] - Number of constraint definitions
-     * [5] - Number of constraint instances
-     * [6] - Number of elements in total
+     * Creates compiler messages which show the number of elements of different element groups which were
+     * loaded from a file into the runtime definition registry.
      *
-     * @return an IntArray that contains all relevant sizes in a defined order
-     */
-    private fun getCategorizedRuntimeRegistrySizes(): IntArray {
-        return intArrayOf(
-                runtimeDefinitionRegistry.activityRegistry().instanceSet(Activity().type).size,
-                runtimeDefinitionRegistry.activityRegistry().instanceSet(ActivityInstance().type).size,
-                runtimeDefinitionRegistry.policyRegistry().instanceSet(Policy().type).size,
-                runtimeDefinitionRegistry.policyRegistry().instanceSet(PolicyInstance().type).size,
-                runtimeDefinitionRegistry.policyRegistry().instanceSet(Constraint().type).size,
-                runtimeDefinitionRegistry.policyRegistry().instanceSet(ConstraintInstance().type).size,
-                runtimeDefinitionRegistry.size()
-        )
+     * @param loadedElements number of elements which were added to the registry
+     * @param elementsByType number of elements per type which were added to the registry
+     * @param fileName the loaded file
+     */
+    private fun createCompilerMessagesRuntimeDefinitionFileLoaded(loadedElements: Int,
+                                                                  elementsByType: Map<String, Int>,
+                                                                  fileName: String) {
+        compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
+                "Loaded $loadedElements language elements from file '$fileName'."))
+        listOf(Pair("activity definitions", "degree.Activity"),
+                Pair("activity instances", "degree.ActivityInstance"),
+                Pair("constraint definitions", "degree.Constraint"),
+                Pair("constraint instances", "degree.ConstraintInstance"),
+                Pair("policy definitions", "degree.Policy"),
+                Pair("policy instances", "degree.PolicyInstance")).forEach { (group, type) ->
+            compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
+                    "Loaded $group: ${elementsByType[type] ?: 0}."))
+        }
+    }
     }
 
     /**
@@ -814,6 +856,16 @@ abstract class AbstractDegreeCompiler(
         }
     }
 
+    /**
+     * Optimize the AST of the data app prior code generation.
+     *
+     * This includes:
+     * - Folding of constant conditions and removal of unreachable branches.
+     */
+    fun optimizeAST() {
+        dataApp = ConstantConditionFolding(compilerMessages).optimize(dataApp!!)
+    }
+
     /**
      * Do some validation and transformation on the AST.
      *
@@ -873,6 +925,9 @@ abstract class AbstractDegreeCompiler(
             policies.putAll(nestedPolicies)
             nestedPolicies.clear()
         }
+
+        // the branches of parallel statements must not depend on each other
+        ParallelStatementValidation(compilerMessages).validate(dataApp!!.code)
     }
 
     abstract fun generateCode()
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler
+
+import de.fhg.isst.oe270.degree.compiler.agents.JarLoaderAgent
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+
+/**
+ * The build cache allows incremental compilation of data apps.
+ *
+ * A build is identified by a key which is derived from the content of all inputs of the compiler
+ * (D° sources, loaded subsystem files, jars, further resources and the compiler version).
+ * If the key of a build matches the key of the last successful build and its artifact still exists,
+ * the build can be skipped entirely. Otherwise the generated files are written to a staging directory
+ * and only changed files are transferred into the directory of the generated code, so unchanged files
+ * keep their modification time and incremental builds of the generated code are possible.
+ */
+class BuildCache(private val generatedCodeDir: File) {
+
+    /**
+     * Changes of the generated code which have been caused by a synchronization.
+     */
+    data class Changes(val written: Int, val removed: Int)
+
+    companion object {
+        /**
+         * Name of the file which stores the key of the last successful build.
+         */
+        const val KEY_FILE = ".degree-build-cache"
+
+        /**
+         * The build output which is managed by the build tool of the generated code.
+         */
+        const val BUILD_OUTPUT_DIR = "target"
+
+        /**
+         * The artifact which is created by a successful build, relative to the generated code.
+         */
+        val ARTIFACT: String = BUILD_OUTPUT_DIR + File.separator + "dataApp.jar"
+
+        /**
+         * Calculate the key of a build.
+         *
+         * @param compilerConfiguration configuration of the compiler
+         * @param sourceFiles all source files which have been processed by the compiler
+         * @return hex encoded key of the build
+         */
+        fun computeKey(compilerConfiguration: CompilerConfiguration, sourceFiles: Collection<String>): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+
+            fun update(label: String, content: ByteArray? = null) {
+                digest.update(label.toByteArray())
+                digest.update(0)
+                if (content != null) {
+                    digest.update(content)
+                }
+            }
+            fun updateContent(file: File) {
+                file.inputStream().use { input ->
+                    val buffer = ByteArray(64 * 1024)
+                    var read = input.read(buffer)
+                    while (read >= 0) {
+                        digest.update(buffer, 0, read)
+                        read = input.read(buffer)
+                    }
+                }
+            }
+            fun updateFile(file: File) {
+                if (file.isFile) {
+                    update(file.canonicalPath)
+                    updateContent(file)
+                }
+            }
+
+            // the compiler itself, a rebuilt jar may keep its size and modification time
+            update("compiler", (compilerConfiguration.compilerVersion ?: "").toByteArray())
+            val compilerLocation = BuildCache::class.java.protectionDomain.codeSource?.location
+            if (compilerLocation != null && compilerLocation.protocol == "file") {
+                val compilerFile = File(compilerLocation.toURI())
+                if (compilerFile.isFile) {
+                    update("compiler-jar")
+                    updateContent(compilerFile)
+                }
+            }
+            // D° sources and subsystem files of the user directory
+            sourceFiles.map { File(it) }.sortedBy { it.canonicalPath }.forEach { updateFile(it) }
+            // jars which have been added to the classpath, these contain the yaml resources
+            JarLoaderAgent.CLASS_LOADERS.flatMap { it.urLs.toList() }
+                    .filter { it.protocol == "file" }
+                    .map { File(it.toURI()) }
+                    .sortedBy { it.canonicalPath }
+                    .forEach { updateFile(it) }
+            (compilerConfiguration.typeYamlResources.values + compilerConfiguration.registryYamlResources.values)
+                    .flatten().sorted().forEach { update(it) }
+            // further resources which are copied into the generated code
+            updateFile(File(compilerConfiguration.dataAppSourceRootDir, "infomodel.json"))
+            compilerConfiguration.nukleusPoliciesResource?.let { updateFile(it) }
+            compilerConfiguration.applicationProperties.entries
+                    .map { "${it.key}=${it.value}" }.sorted().forEach { update(it) }
+
+            return digest.digest().joinToString("") { String.format("%02x", it) }
+        }
+    }
+
+    private val keyFile = File(generatedCodeDir, KEY_FILE)
+
+    /**
+     * Check if the last successful build has the given key and its artifact still exists.
+     *
+     * @param key key of the current build
+     * @return true if the build can be skipped
+     */
+    fun isUpToDate(key: String): Boolean {
+        return keyFile.isFile && keyFile.readText() == key && File(generatedCodeDir, ARTIFACT).isFile
+    }
+
+    /**
+     * Check if the artifact of a previous build exists.
+     *
+     * @return true if the artifact exists
+     */
+    fun hasArtifact(): Boolean = File(generatedCodeDir, ARTIFACT).isFile
+
+    /**
+     * Store the key of a successful build.
+     *
+     * @param key key of the build
+     */
+    fun store(key: String) {
+        keyFile.writeText(key)
+    }
+
+    /**
+     * Forget the key of the last build, e.g. before the generated code is changed.
+     */
+    fun invalidate() {
+        keyFile.delete()
+    }
+
+    /**
+     * Transfer all files from the staging directory into the directory of the generated code.
+     * Files with unchanged content are not touched, files which have not been generated again are removed.
+     * The output of the build tool and the key of the last build are kept.
+     *
+     * @param stagingDir directory which contains the newly generated files
+     * @return the number of written and removed files
+     */
+    fun synchronize(stagingDir: Path): Changes {
+        val target = generatedCodeDir.toPath()
+        var written = 0
+        var removed = 0
+        Files.createDirectories(target)
+
+        val generated = HashSet<Path>()
+        Files.walk(stagingDir).use { paths ->
+            paths.filter { Files.isRegularFile(it) }.forEach { source ->
+                val relative = stagingDir.relativize(source)
+                generated.add(relative)
+                val destination = target.resolve(relative)
+                if (!Files.isRegularFile(destination) || !sameContent(source, destination)) {
+                    Files.createDirectories(destination.parent)
+                    Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING)
+                    written++
+                }
+            }
+        }
+
+        Files.walk(target).use { paths ->
+            paths.sorted(Comparator.reverseOrder()).forEach { path ->
+                val relative = target.relativize(path)
+                if (path == target || isManaged(relative)) {
+                    return@forEach
+                }
+                if (Files.isRegularFile(path) && !generated.contains(relative)) {
+                    Files.delete(path)
+                    removed++
+                } else if (Files.isDirectory(path) && path.toFile().list()?.isEmpty() == true) {
+                    Files.delete(path)
+                }
+            }
+        }
+
+        return Changes(written, removed)
+    }
+
+    /**
+     * Check if a path is not part of the generated code but managed by the build.
+     */
+    private fun isManaged(relative: Path): Boolean {
+        val first = relative.getName(0).toString()
+        return first == BUILD_OUTPUT_DIR || first == KEY_FILE
+    }
+
+    private fun sameContent(first: Path, second: Path): Boolean {
+        if (Files.size(first) != Files.size(second)) {
+            return false
+        }
+        return Files.readAllBytes(first).contentEquals(Files.readAllBytes(second))
+    }
+
+}
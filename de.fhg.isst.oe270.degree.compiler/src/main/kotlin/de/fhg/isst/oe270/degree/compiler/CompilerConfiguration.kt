@@ -17,6 +17,7 @@ package de.fhg.isst.oe270.degree.compiler
 
 import java.io.File
 import java.util.*
+import java.util.concurrent.Semaphore
 
 class CompilerConfiguration {
 
@@ -69,6 +70,46 @@ class CompilerConfiguration {
 
     var compilerVersion: String? = null
 
+    /**
+     * If set, the generated code is compiled and packaged within the compiler's JVM.
+     * Maven is used if this is disabled or not possible in the current environment.
+     */
+    var inProcessBuild: Boolean = true
+
+    /**
+     * Indicates that the type taxonomy and the runtime definition registry already contain all subsystems and
+     * are mapped to their implementations, e.g. because a compiler daemon has kept them from a previous compilation.
+     * The compiler sets this flag as soon as it has initialized the subsystems.
+     */
+    var subsystemsInitialized: Boolean = false
+
+    /**
+     * The maximum number of data apps which are packaged at the same time if several data apps are compiled.
+     */
+    var buildWorkers: Int = Math.max(1, Runtime.getRuntime().availableProcessors() / 2)
+
+    /**
+     * If set, the packaging of the generated code is limited by these permits. Data apps which are compiled
+     * together share the permits.
+     */
+    var buildPermits: Semaphore? = null
+
+    /**
+     * Run a build with one of the [buildPermits], if the builds are limited.
+     *
+     * @param build the build
+     * @return the result of the build
+     */
+    fun <T> withBuildPermit(build: () -> T): T {
+        val permits = buildPermits ?: return build()
+        permits.acquire()
+        try {
+            return build()
+        } finally {
+            permits.release()
+        }
+    }
+
     // ----------------------------------------------------------------------
     // Docker
     // ----------------------------------------------------------------------
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import de.fhg.isst.oe270.degree.types.RuntimeDefinitionRegistry
+import de.fhg.isst.oe270.degree.types.TypeTaxonomy
+import org.codehaus.plexus.util.DirectoryScanner
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+import java.security.MessageDigest
+import java.security.SecureRandom
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * A long-lived compiler which serves compile requests over a local HTTP API.
+ *
+ * The daemon keeps the loaded subsystems (types and runtime definitions), the class loaders of jars and the result
+ * of the annotation scan between compilations. Before each compilation the subsystem files and jars of the source
+ * root dirs are fingerprinted. The subsystems are only loaded again if the fingerprint has changed, jars are only
+ * loaded and scanned again if they have changed on disk.
+ *
+ * The API is only bound to the loopback interface:
+ * - POST /compile with the data app source root dir as body compiles a data app. The response contains one compiler
+ *   message per line, the status is 200 if the compilation succeeded and 422 otherwise.
+ * - GET /status reports the state of the daemon.
+ * - POST /shutdown stops the daemon.
+ *
+ * Since a compilation executes code of the compiled data app, other local users and web sites must not be able to
+ * use the API. On start the daemon writes a random token into a file which only the current user can read. Each
+ * request has to present the token as bearer token in the Authorization header, browsers cannot send this header
+ * cross-origin without a preflight which the daemon never answers. Requests whose Host or Origin is not the daemon
+ * itself are rejected as well, so DNS rebinding does not grant access.
+ *
+ * @param port the local port of the API, 0 selects a free port
+ * @param tokenFile file which receives the access token, it is removed when the daemon stops
+ * @param configurationFactory creates the compiler configuration for each compilation
+ */
+class CompilerDaemon(private val port: Int,
+                     private val tokenFile: File = File(DEFAULT_TOKEN_FILE),
+                     private val configurationFactory: () -> CompilerConfiguration) {
+
+    companion object {
+        const val COMPILE_PATH = "/compile"
+        const val STATUS_PATH = "/status"
+        const val SHUTDOWN_PATH = "/shutdown"
+
+        /**
+         * The file which receives the access token if no other file is given.
+         */
+        val DEFAULT_TOKEN_FILE = Configuration.USER_PROPERTIES_FOLDER + File.separator + "compiler-daemon.token"
+
+        /**
+         * Response status for compilations which failed.
+         */
+        private const val UNPROCESSABLE = 422
+
+        /**
+         * Number of random bytes of the access token.
+         */
+        private const val TOKEN_BYTES = 32
+
+        /**
+         * Host names under which the loopback interface is reachable.
+         */
+        private val LOOPBACK_HOSTS = setOf("localhost", "127.0.0.1", "[::1]")
+    }
+
+    private val logger = LoggerFactory.getLogger(CompilerDaemon::class.java.simpleName)
+
+    /**
+     * The subsystems are global, therefore only one compilation can be performed at a time.
+     */
+    private val lock = Any()
+
+    /**
+     * Fingerprint of the subsystem files and jars which are currently loaded, null if the subsystems are not loaded.
+     */
+    private var subsystemsFingerprint: String? = null
+
+    private var compilations = 0
+
+    private val stopped = CountDownLatch(1)
+
+    /**
+     * The access token of the running daemon.
+     */
+    private var token: ByteArray = ByteArray(0)
+
+    /**
+     * Start the daemon and wait until it is shut down.
+     */
+    fun run() {
+        val server = start()
+        logger.info("D° compiler daemon listens on ${server.address}, the access token is stored in '$tokenFile'.")
+        try {
+            stopped.await()
+        } finally {
+            stop(server)
+        }
+        logger.info("D° compiler daemon stopped.")
+    }
+
+    /**
+     * Wait until a shutdown has been requested.
+     *
+     * @return true if a shutdown has been requested within the timeout
+     */
+    fun awaitShutdown(timeout: Long, unit: TimeUnit): Boolean = stopped.await(timeout, unit)
+
+    /**
+     * Stop the HTTP API of the daemon and remove the access token.
+     *
+     * @param server the server which has been started by [start]
+     */
+    fun stop(server: HttpServer) {
+        server.stop(0)
+        Files.deleteIfExists(tokenFile.toPath())
+    }
+
+    /**
+     * Start the HTTP API of the daemon. A new access token is written before the API accepts requests.
+     *
+     * @return the started server
+     */
+    fun start(): HttpServer {
+        token = writeToken()
+        val server = HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0)
+        server.executor = Executors.newCachedThreadPool { runnable ->
+            Thread(runnable, "degree-compiler-daemon").also { it.isDaemon = true }
+        }
+        server.createContext(COMPILE_PATH) { exchange ->
+            handle(exchange, "POST") {
+                val dataAppSourceRootDir = exchange.requestBody.reader().readText().trim()
+                if (!File(dataAppSourceRootDir).isDirectory) {
+                    Pair(400, "Unknown data app source root dir '$dataAppSourceRootDir'.\n")
+                } else {
+                    val messages = compile(dataAppSourceRootDir)
+                    val failed = messages.any { it.kind == CompilerMessage.Kind.ERROR }
+                    Pair(if (failed) UNPROCESSABLE else 200, messages.joinToString("") { format(it) + "\n" })
+                }
+            }
+        }
+        server.createContext(STATUS_PATH) { exchange ->
+            handle(exchange, "GET") {
+                synchronized(lock) {
+                    val subsystems = if (subsystemsFingerprint != null) "warm" else "cold"
+                    Pair(200, "compilations=$compilations\nsubsystems=$subsystems\n")
+                }
+            }
+        }
+        server.createContext(SHUTDOWN_PATH) { exchange ->
+            handle(exchange, "POST") {
+                stopped.countDown()
+                Pair(200, "Shutting down.\n")
+            }
+        }
+        server.start()
+        return server
+    }
+
+    /**
+     * Compile a data app. The subsystems of previous compilations are reused if they have not changed.
+     *
+     * @param dataAppSourceRootDir directory which contains the data app
+     * @return all messages of the compilation
+     */
+    fun compile(dataAppSourceRootDir: String): List<CompilerMessage> {
+        synchronized(lock) {
+            val compilerConfiguration = configurationFactory()
+            compilerConfiguration.sourceRootDirs.add(dataAppSourceRootDir)
+            compilerConfiguration.dataAppSourceRootDir = dataAppSourceRootDir
+
+            val fingerprint = fingerprint(compilerConfiguration.sourceRootDirs)
+            if (fingerprint != subsystemsFingerprint) {
+                if (subsystemsFingerprint != null) {
+                    logger.info("Subsystem files have changed, reloading the subsystems.")
+                }
+                TypeTaxonomy.resetInstance()
+                RuntimeDefinitionRegistry.resetInstance()
+                subsystemsFingerprint = null
+            }
+            compilerConfiguration.subsystemsInitialized = subsystemsFingerprint != null
+
+            val start = System.nanoTime()
+            val messages = Entrypoint.compile(compilerConfiguration)
+            compilations++
+            logger.info("Compiled '$dataAppSourceRootDir' in ${(System.nanoTime() - start) / 1_000_000}ms.")
+
+            // subsystems which could not be initialized completely are loaded again by the next compilation
+            subsystemsFingerprint = if (compilerConfiguration.subsystemsInitialized) fingerprint else null
+            return messages
+        }
+    }
+
+    /**
+     * Calculate the fingerprint of all subsystem files and jars within the given directories.
+     * Subsystem files are compared by content, since the core files are rewritten by every compilation.
+     * Jars are compared by size and modification time.
+     */
+    private fun fingerprint(sourceRootDirs: Collection<String>): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        sourceRootDirs.sorted().forEach { dir ->
+            if (!File(dir).isDirectory) {
+                return@forEach
+            }
+            val scanner = DirectoryScanner()
+            scanner.setBasedir(dir)
+            scanner.setIncludes(arrayOf("**/*.yaml"))
+            scanner.setExcludes(arrayOf("generated/**"))
+            scanner.scan()
+            scanner.includedFiles.sorted().forEach {
+                digest.update("$dir/$it".toByteArray())
+                digest.update(File(dir, it).readBytes())
+            }
+            File(dir).listFiles { file -> file.extension.toLowerCase() == "jar" }?.sortedBy { it.name }?.forEach {
+                digest.update("${it.absolutePath}:${it.length()}:${it.lastModified()}".toByteArray())
+            }
+        }
+        return digest.digest().joinToString("") { String.format("%02x", it) }
+    }
+
+    /**
+     * Write a new random access token into the token file, which is only readable by the current user.
+     *
+     * @return the token
+     */
+    private fun writeToken(): ByteArray {
+        val bytes = ByteArray(TOKEN_BYTES)
+        SecureRandom().nextBytes(bytes)
+        val token = bytes.joinToString("") { String.format("%02x", it) }
+
+        val path = tokenFile.toPath().toAbsolutePath()
+        Files.createDirectories(path.parent)
+        // the file is created with restricted permissions, so the token is never readable by others
+        Files.deleteIfExists(path)
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+        } else {
+            Files.createFile(path)
+            val file = path.toFile()
+            file.setReadable(false, false)
+            file.setWritable(false, false)
+            file.setReadable(true, true)
+            file.setWritable(true, true)
+        }
+        Files.write(path, token.toByteArray())
+        return token.toByteArray()
+    }
+
+    /**
+     * Check if a request has been sent by a client of the current user.
+     *
+     * @return the status and message of the rejection, null if the request is allowed
+     */
+    private fun reject(exchange: HttpExchange): Pair<Int, String>? {
+        val actualPort = exchange.localAddress.port
+        val ownHosts = LOOPBACK_HOSTS.map { "$it:$actualPort" }
+        val host = exchange.requestHeaders.getFirst("Host")
+        if (host == null || !ownHosts.contains(host.toLowerCase())) {
+            return Pair(403, "Unknown host '$host'.\n")
+        }
+        val origin = exchange.requestHeaders.getFirst("Origin")
+        if (origin != null && !ownHosts.map { "http://$it" }.contains(origin.toLowerCase())) {
+            return Pair(403, "Requests from '$origin' are not allowed.\n")
+        }
+        val authorization = exchange.requestHeaders.getFirst("Authorization")
+        if (authorization == null || !authorization.startsWith("Bearer ")
+                || !MessageDigest.isEqual(authorization.removePrefix("Bearer ").trim().toByteArray(), token)) {
+            return Pair(401, "Use the token of '$tokenFile' as bearer token.\n")
+        }
+        return null
+    }
+
+    private fun handle(exchange: HttpExchange, method: String, response: () -> Pair<Int, String>) {
+        exchange.use {
+            val rejection = reject(exchange)
+            val (status, body) = if (rejection != null) {
+                rejection
+            } else if (exchange.requestMethod != method) {
+                Pair(405, "Use $method.\n")
+            } else {
+                try {
+                    response()
+                } catch (e: Exception) {
+                    logger.error("Could not process request to ${exchange.requestURI}.", e)
+                    Pair(500, "$e\n")
+                }
+            }
+            val bytes = body.toByteArray()
+            exchange.responseHeaders.add("Content-Type", "text/plain; charset=utf-8")
+            exchange.sendResponseHeaders(status, if (bytes.isEmpty()) -1 else bytes.size.toLong())
+            if (bytes.isNotEmpty()) {
+                exchange.responseBody.write(bytes)
+            }
+        }
+    }
+
+    private fun format(message: CompilerMessage): String {
+        val start = message.position?.start
+        val location = when {
+            message.file == null -> ""
+            start == null -> "${message.file} "
+            else -> "${message.file}:${start.line}:${start.column} "
+        }
+        return "${message.kind.name}: $location${message.message.replace("\n", " ")}"
+    }
+
+}
@@ -35,26 +35,61 @@ class DegreeToJavaCompiler(
 
     public var javaTemplateProcessor : JavaTemplateProcessor? = null
 
+    /**
+     * Paths of all jars which are added as system dependencies to the generated code.
+     */
+    private val systemDependencies = HashSet<String>()
+
     init {
 
     }
 
     override fun generateCode() {
         // the generated code goes here
-        val generatedCodeDirPath = compilerConfiguration.dataAppSourceRootDir + File.separator + "generated"
-        val generatedSrcDirPath = generatedCodeDirPath + File.separator + "src" + File.separator + "main" + File.separator + "java"
-        val generatedResourcesDirPath = generatedCodeDirPath + File.separator + "src" + File.separator + "main" + File.separator + "resources"
-        val generatedCodeDir = File(generatedCodeDirPath)
-        // (remove & re-)create folder
-        if (generatedCodeDir.exists()) {
-            if (!generatedCodeDir.deleteRecursively()) {
-                compilerMessages.add(
-                        CompilerMessage(CompilerMessage.Kind.ERROR,
-                                "Could not clean directory for generated code."))
+        val generatedCodeDir = File(compilerConfiguration.dataAppSourceRootDir + File.separator + "generated")
+
+        // skip the whole build if none of the inputs has changed since the last successful build
+        val buildCache = BuildCache(generatedCodeDir)
+        // files inside of the generated code (e.g. copied yaml files) are no inputs of the build
+        val generatedCodePrefix = generatedCodeDir.canonicalPath + File.separator
+        val buildKey = BuildCache.computeKey(compilerConfiguration,
+                processedSourceFiles.filterNot { File(it).canonicalPath.startsWith(generatedCodePrefix) })
+        if (buildCache.isUpToDate(buildKey)) {
+            compilerMessages.add(
+                    CompilerMessage(CompilerMessage.Kind.INFO,
+                            "The data app is up to date. Reusing ${BuildCache.ARTIFACT}."))
+            return
+        }
+        buildCache.invalidate()
+
+        // the code is generated into a staging directory first, so unchanged files are not touched
+        val stagingDir = Files.createTempDirectory("degree-generated")
+        try {
+            if (!generateCode(stagingDir.toString())) {
                 return
             }
+            val changes = buildCache.synchronize(stagingDir)
+            compilerMessages.add(
+                    CompilerMessage(CompilerMessage.Kind.INFO,
+                            "Updated ${changes.written} and removed ${changes.removed} generated files."))
+            // stale build output of removed files requires a clean build
+            if (packageDataApp(generatedCodeDir, changes.removed > 0 || !buildCache.hasArtifact())) {
+                buildCache.store(buildKey)
+            }
+        } finally {
+            stagingDir.toFile().deleteRecursively()
         }
-        generatedCodeDir.mkdirs()
+    }
+
+    /**
+     * Generate the code of the data app and all required resources.
+     *
+     * @param generatedCodeDirPath directory which will contain the generated code
+     * @return true if the generation was successful, false otherwise
+     */
+    private fun generateCode(generatedCodeDirPath: String): Boolean {
+        val generatedSrcDirPath = generatedCodeDirPath + File.separator + "src" + File.separator + "main" + File.separator + "java"
+        val generatedResourcesDirPath = generatedCodeDirPath + File.separator + "src" + File.separator + "main" + File.separator + "resources"
         File(generatedSrcDirPath).mkdirs()
         File(generatedResourcesDirPath).mkdirs()
 
@@ -64,7 +99,7 @@ class DegreeToJavaCompiler(
 
         // actual code generation
         if (!javaAppGenerator.generateDataApp()) {
-            return
+            return false
         }
 
         // register startup policies
@@ -176,23 +211,44 @@ class DegreeToJavaCompiler(
         }
 
         if (!javaTemplateProcessor!!.processTemplate(JavaTemplateProcessor.PARENT_POM_TEMPLATE, "pom.xml")) {
-            return
+            return false
         }
         if (!javaTemplateProcessor!!.processTemplate(JavaTemplateProcessor.APPLICATION_PROPERTIES_TEMPLATE, "src/main/resources/application.properties")) {
-            return
+            return false
         }
 
         // check if errors occurred before the actual compilation into an executable jar starts
-        this.compilerMessages.forEach { message ->
-            if (message.kind == CompilerMessage.Kind.ERROR) {
-                return
+        return compilerMessages.none { it.kind == CompilerMessage.Kind.ERROR }
+    }
+
+    /**
+     * Build the final Data App jar. The build is performed within this JVM if possible, maven is used otherwise.
+     *
+     * @param generatedCodeDir directory which contains the generated code
+     * @param clean true if the output of previous builds has to be removed
+     * @return true if the build was successful, false otherwise
+     */
+    private fun packageDataApp(generatedCodeDir: File, clean: Boolean): Boolean {
+        return compilerConfiguration.withBuildPermit { buildDataApp(generatedCodeDir, clean) }
+    }
+
+    private fun buildDataApp(generatedCodeDir: File, clean: Boolean): Boolean {
+        var cleanBuild = clean
+        if (compilerConfiguration.inProcessBuild) {
+            try {
+                return InProcessJavaBuild(generatedCodeDir, compilerMessages, systemDependencies).build()
+            } catch (e: InProcessJavaBuild.UnavailableException) {
+                compilerMessages.add(
+                        CompilerMessage(CompilerMessage.Kind.WARNING,
+                                "${e.message} Falling back to maven${e.cause?.let { " ($it)" } ?: ""}."))
+                // the aborted build may have left incomplete output
+                cleanBuild = true
             }
         }
 
-        // run maven to build the final Data App jar
         val request = DefaultInvocationRequest()
-        request.pomFile = File(generatedCodeDirPath + File.separator + "pom.xml")
-        request.goals = listOf("clean", "package")
+        request.pomFile = File(generatedCodeDir, "pom.xml")
+        request.goals = if (cleanBuild) listOf("clean", "package") else listOf("package")
 
         val invoker = DefaultInvoker()
         val result = invoker.execute(request)
@@ -205,10 +261,15 @@ class DegreeToJavaCompiler(
                             "" //TODO
                     )
             )
+            return false
         }
+        return true
     }
 
     override fun addDependency(groupId: String, artifactId: String, version: String, scope: String, systemPath: String?) {
+        if (scope == "system" && systemPath != null) {
+            systemDependencies.add(systemPath)
+        }
         javaTemplateProcessor!!.addDependency(groupId, artifactId, version, scope, systemPath)
     }
 }
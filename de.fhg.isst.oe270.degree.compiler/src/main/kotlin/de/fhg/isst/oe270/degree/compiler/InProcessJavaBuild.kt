@@ -0,0 +1,301 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler
+
+import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import org.apache.maven.shared.invoker.DefaultInvocationRequest
+import org.apache.maven.shared.invoker.DefaultInvoker
+import org.springframework.boot.loader.tools.Libraries
+import org.springframework.boot.loader.tools.Library
+import org.springframework.boot.loader.tools.LibraryScope
+import org.springframework.boot.loader.tools.Repackager
+import org.w3c.dom.Element
+import java.io.File
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.PathMatcher
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.*
+import java.util.jar.Attributes
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import java.util.jar.Manifest
+import javax.xml.parsers.DocumentBuilderFactory
+import javax.tools.Diagnostic
+import javax.tools.DiagnosticCollector
+import javax.tools.JavaCompiler
+import javax.tools.JavaFileObject
+import javax.tools.ToolProvider
+
+/**
+ * Builds the executable jar of a generated data app within the compiler's JVM.
+ *
+ * The generated sources are compiled with the system java compiler and the Spring Boot jar is assembled with
+ * the Spring Boot loader tools. The classpath of the generated pom is resolved with maven only once and cached
+ * in the user's D° directory, keyed by the content of the pom.
+ *
+ * @param generatedCodeDir directory which contains the generated code
+ * @param compilerMessages compilation errors are reported to the compiler messages
+ * @param systemDependencies paths of jars which are system dependencies of the generated pom. These are only
+ *                           used for compilation, like the spring boot maven plugin does.
+ */
+class InProcessJavaBuild(private val generatedCodeDir: File,
+                         private val compilerMessages: MutableList<CompilerMessage>,
+                         private val systemDependencies: Collection<String>) {
+
+    companion object {
+        /**
+         * Resolved classpaths of generated poms are cached here.
+         */
+        val CLASSPATH_CACHE_DIR = Configuration.USER_PROPERTIES_FOLDER + File.separator + "classpath-cache"
+
+        /**
+         * Plugin which is used to resolve the classpath of the generated pom.
+         */
+        private const val RESOLVE_GOAL = "org.apache.maven.plugins:maven-dependency-plugin:3.1.2:build-classpath"
+
+        /**
+         * The java version of the generated code.
+         */
+        private const val JAVA_RELEASE = "8"
+    }
+
+    /**
+     * Thrown if the in-process build cannot be performed in this environment (e.g. there is no java compiler).
+     * In contrast to compilation errors, the build can still be performed with maven.
+     */
+    class UnavailableException(message: String, cause: Throwable? = null) : Exception(message, cause)
+
+    private val sourceDir = File(generatedCodeDir, "src" + File.separator + "main" + File.separator + "java")
+
+    private val outputDir = File(generatedCodeDir, BuildCache.BUILD_OUTPUT_DIR)
+
+    /**
+     * Compile the generated code and assemble the executable jar.
+     *
+     * @return true if the build was successful, false if the generated code contains errors
+     * @throws UnavailableException if the build cannot be performed without maven
+     */
+    @Throws(UnavailableException::class)
+    fun build(): Boolean {
+        val compiler = ToolProvider.getSystemJavaCompiler()
+                ?: throw UnavailableException("There is no java compiler, the compiler has to run on a JDK.")
+        val classpath = resolveClasspath()
+
+        // every build compiles into a new directory, so classes of removed sources cannot end up in the jar
+        // and no directory is deleted which has not been created by this build
+        outputDir.mkdirs()
+        val classesDir = Files.createTempDirectory(outputDir.toPath(), "degree-classes").toFile()
+        try {
+            if (!compile(compiler, classpath, classesDir)) {
+                return false
+            }
+            copyResources(classesDir)
+            assemble(classesDir, classpath.filterNot { systemDependencies.contains(it.path) })
+            return true
+        } finally {
+            classesDir.deleteRecursively()
+        }
+    }
+
+    /**
+     * Compile the generated sources.
+     *
+     * @return true if the sources have been compiled without errors
+     */
+    private fun compile(compiler: JavaCompiler, classpath: List<File>, classesDir: File): Boolean {
+        val diagnostics = DiagnosticCollector<JavaFileObject>()
+        compiler.getStandardFileManager(diagnostics, Locale.getDefault(), Charsets.UTF_8).use { fileManager ->
+            val sources = sourceDir.walkTopDown().filter { it.isFile && it.extension == "java" }.toList()
+            val options = mutableListOf("-encoding", "UTF-8", "-d", classesDir.path,
+                    "-classpath", classpath.joinToString(File.pathSeparator))
+            if (compiler.isSupportedOption("--release") >= 0) {
+                options.addAll(listOf("--release", JAVA_RELEASE))
+            } else {
+                options.addAll(listOf("-source", "1.$JAVA_RELEASE", "-target", "1.$JAVA_RELEASE"))
+            }
+            val success = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(sources)).call()
+
+            diagnostics.diagnostics.filter { it.kind == Diagnostic.Kind.ERROR }.forEach {
+                compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR,
+                        "Error during compilation of generated Java code: ${it.getMessage(Locale.getDefault())}",
+                        it.source?.name))
+            }
+            return success
+        }
+    }
+
+    /**
+     * Retrieve the classpath of the generated pom. The classpath is resolved with maven if it is not cached yet.
+     *
+     * @return the jars of the compile classpath
+     * @throws UnavailableException if the classpath cannot be resolved
+     */
+    private fun resolveClasspath(): List<File> {
+        val pom = File(generatedCodeDir, "pom.xml")
+        val key = MessageDigest.getInstance("SHA-256").digest(pom.readBytes())
+                .joinToString("") { String.format("%02x", it) }
+        val cacheFile = File(CLASSPATH_CACHE_DIR, "$key.classpath")
+
+        cachedClasspath(cacheFile)?.let { return it }
+
+        File(CLASSPATH_CACHE_DIR).mkdirs()
+        // data apps with the same pom may be built concurrently
+        val resolvedFile = File.createTempFile(key, ".classpath.tmp", File(CLASSPATH_CACHE_DIR))
+        val request = DefaultInvocationRequest()
+        request.pomFile = pom
+        request.goals = listOf(RESOLVE_GOAL)
+        request.isBatchMode = true
+        request.properties = Properties().also {
+            it.setProperty("mdep.outputFile", resolvedFile.absolutePath)
+            it.setProperty("mdep.includeScope", "compile")
+        }
+        val result = try {
+            DefaultInvoker().execute(request)
+        } catch (e: Exception) {
+            resolvedFile.delete()
+            throw UnavailableException("Could not run maven to resolve the classpath.", e)
+        }
+        if (result.exitCode != 0 || resolvedFile.length() == 0L) {
+            resolvedFile.delete()
+            throw UnavailableException("Could not resolve the classpath of the generated code.",
+                    result.executionException)
+        }
+        Files.move(resolvedFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+
+        return cachedClasspath(cacheFile)
+                ?: throw UnavailableException("The resolved classpath refers to missing files.")
+    }
+
+    /**
+     * Read a cached classpath.
+     *
+     * @return the classpath or null if it is not cached or refers to files which do not exist anymore
+     */
+    private fun cachedClasspath(cacheFile: File): List<File>? {
+        if (!cacheFile.isFile) {
+            return null
+        }
+        val classpath = cacheFile.readText().trim().split(File.pathSeparator)
+                .filter { it.isNotBlank() }
+                .map { File(it) }
+        return if (classpath.all { it.exists() }) classpath else null
+    }
+
+    /**
+     * Copy the resources of the generated code next to the compiled classes.
+     * Like maven, only the resources which are declared in the build section of the generated pom are copied.
+     */
+    private fun copyResources(classesDir: File) {
+        val pom = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(File(generatedCodeDir, "pom.xml"))
+        val resources = children(pom.documentElement, "build")
+                .flatMap { children(it, "resources") }
+                .flatMap { children(it, "resource") }
+        resources.forEach { resource ->
+            val directory = children(resource, "directory").firstOrNull()?.textContent?.trim() ?: return@forEach
+            val resourceDir = File(generatedCodeDir, directory)
+            if (!resourceDir.isDirectory) {
+                return@forEach
+            }
+            val includes = patterns(resource, "includes", "include").ifEmpty { listOf(pathMatcher("**")) }
+            val excludes = patterns(resource, "excludes", "exclude")
+            resourceDir.walkTopDown().filter { it.isFile }.forEach { file ->
+                val relative = file.relativeTo(resourceDir).toPath()
+                if (includes.any { it.matches(relative) } && excludes.none { it.matches(relative) }) {
+                    file.copyTo(File(classesDir, relative.toString()), overwrite = true)
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the patterns of the includes or excludes of a maven resource.
+     */
+    private fun patterns(resource: Element, listName: String, entryName: String): List<PathMatcher> {
+        return children(resource, listName)
+                .flatMap { children(it, entryName) }
+                .map { pathMatcher(it.textContent.trim()) }
+    }
+
+    /**
+     * Translate a maven resource pattern. Like in maven, a leading double asterisk also matches files
+     * in the resource directory itself.
+     */
+    private fun pathMatcher(pattern: String): PathMatcher {
+        val glob = pattern.replace('\\', '/')
+        val fileSystem = FileSystems.getDefault()
+        val matchers = listOf(glob, glob.removePrefix("**/")).distinct().map { fileSystem.getPathMatcher("glob:$it") }
+        return PathMatcher { path -> matchers.any { it.matches(path) } }
+    }
+
+    private fun children(element: Element, name: String): List<Element> {
+        val nodes = element.childNodes
+        return (0 until nodes.length).map { nodes.item(it) }
+                .filterIsInstance<Element>()
+                .filter { it.tagName == name }
+    }
+
+    /**
+     * Package the compiled classes and repackage them as executable Spring Boot jar.
+     *
+     * @param classesDir directory which contains the compiled classes and resources
+     * @param libraries jars which are added to the executable jar
+     */
+    private fun assemble(classesDir: File, libraries: List<File>) {
+        val artifact = File(generatedCodeDir, BuildCache.ARTIFACT)
+        val plainJar = File(artifact.path + ".original")
+        try {
+            writeJar(classesDir.toPath(), plainJar)
+
+            val repackager = Repackager(plainJar)
+            repackager.setBackupSource(false)
+            Files.deleteIfExists(artifact.toPath())
+            repackager.repackage(artifact, Libraries { callback ->
+                libraries.filter { it.isFile }.forEach { callback.library(Library(it, LibraryScope.COMPILE)) }
+            })
+        } catch (e: Exception) {
+            throw UnavailableException("Could not assemble the executable jar.", e)
+        }
+    }
+
+    /**
+     * Write all files of a directory into a jar.
+     */
+    private fun writeJar(contentDir: Path, jar: File) {
+        val manifest = Manifest()
+        manifest.mainAttributes[Attributes.Name.MANIFEST_VERSION] = "1.0"
+        manifest.mainAttributes[Attributes.Name("Created-By")] = "D° Compiler"
+
+        JarOutputStream(jar.outputStream().buffered(), manifest).use { out ->
+            Files.walk(contentDir).use { paths ->
+                paths.filter { it != contentDir }.sorted().forEach { path ->
+                    val name = contentDir.relativize(path).toString().replace(File.separatorChar, '/')
+                    if (Files.isDirectory(path)) {
+                        out.putNextEntry(JarEntry("$name/"))
+                    } else {
+                        out.putNextEntry(JarEntry(name))
+                        Files.copy(path, out)
+                    }
+                    out.closeEntry()
+                }
+            }
+        }
+    }
+
+}
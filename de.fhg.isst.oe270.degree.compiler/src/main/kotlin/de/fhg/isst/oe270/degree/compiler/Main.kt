@@ -30,10 +30,25 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.io.File
 import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
 import java.util.jar.JarFile
 import kotlin.system.exitProcess
 
 object Entrypoint {
+
+    /**
+     * The external compiler configuration given on the command line.
+     */
+    private val externalConfiguration = Properties()
+
+    /**
+     * The data app source root dirs given on the command line.
+     */
+    private val dataAppSourceRootDirs = LinkedList<String>()
+
     private fun createDefaultCompilerConfiguration(compilerProperties: Properties, compilerConfiguration: CompilerConfiguration) {
         // load data from static configuration
         with(compilerConfiguration.sourceRootDirs) {
@@ -44,13 +59,18 @@ object Entrypoint {
         compilerConfiguration.compilerVersion = compilerProperties.getProperty("compiler.version")
 
         // process standard values
-        loadCompilerConfiguration(compilerProperties)
+        loadCompilerConfiguration(compilerProperties, compilerConfiguration)
     }
 
-    private fun loadCompilerConfiguration(externalConfig: Properties) {
+    internal fun loadCompilerConfiguration(externalConfig: Properties, compilerConfiguration: CompilerConfiguration) {
         externalConfig.propertyNames().asSequence().asIterable().forEach { property ->
             when (property as String) {
-
+                "build.inProcess" ->
+                    compilerConfiguration.inProcessBuild = externalConfig.getProperty(property).trim().toBoolean()
+                "build.workers" ->
+                    externalConfig.getProperty(property).trim().toIntOrNull()?.takeIf { it > 0 }?.let {
+                        compilerConfiguration.buildWorkers = it
+                    }
             }
         }
     }
@@ -60,12 +80,18 @@ object Entrypoint {
 
         options.addOption("v", "version", false, "print the version of this D° compiler")
         options.addOption("h", "help", false, "print this message")
-        options.addOption("c", "config-file", false, "path to external compiler configuration")
+        options.addOption("c", "config-file", true, "path to external compiler configuration")
+        options.addOption("d", "daemon", true, "run as compiler daemon which listens on the given local port")
 
         return options
     }
 
-    private fun processCommandline(options: Options, args: Array<String>, compilerConfiguration: CompilerConfiguration) {
+    /**
+     * Process the command line.
+     *
+     * @return the port of the compiler daemon if the compiler should run as daemon, null otherwise
+     */
+    private fun processCommandline(options: Options, args: Array<String>, compilerConfiguration: CompilerConfiguration): Int? {
         val commandLine = DefaultParser().parse(options, args)
         // print version information
         if (commandLine.hasOption('v')) {
@@ -75,7 +101,7 @@ object Entrypoint {
         // print help
         if (commandLine.hasOption('h')) {
             val formatter = HelpFormatter()
-            formatter.printHelp("degreec [options] [sourcedir]", options)
+            formatter.printHelp("degreec [options] [sourcedir...]", options)
             exitProcess(0)
         }
         // load external configuration
@@ -87,23 +113,30 @@ object Entrypoint {
             }
             val externalProperties = Properties()
             externalProperties.load(File(externalConfig).inputStream())
-            loadCompilerConfiguration(externalProperties)
+            loadCompilerConfiguration(externalProperties, compilerConfiguration)
+            externalConfiguration.putAll(externalProperties)
         }
-        // sanity checks
-        // only one argument (aka data app source root dir) is allowed
-        if (commandLine.args.size > options.options.size) {
-            print("Too many arguments. Use 'java -jar degreec.jar help' for usage information.")
-            exitProcess(-1)
+        // the daemon receives the data app source root dirs with each compile request
+        if (commandLine.hasOption('d')) {
+            val port = commandLine.getOptionValue('d').toIntOrNull()
+            if (port == null) {
+                print("Invalid port for the compiler daemon.")
+                exitProcess(-1)
+            }
+            return port
         }
+        // sanity checks
         if (commandLine.args.isEmpty()) {
             print("Missing arguments. Use 'java -jar degreec.jar help' for usage information.")
             exitProcess(-1)
         }
-        // Set (data app) source root dir
-        commandLine.args.map {
-            compilerConfiguration.sourceRootDirs.add(it)
-            compilerConfiguration.dataAppSourceRootDir = it
+        // Set (data app) source root dir, several data apps are compiled together
+        dataAppSourceRootDirs.addAll(commandLine.args.distinct())
+        if (dataAppSourceRootDirs.size == 1) {
+            compilerConfiguration.sourceRootDirs.add(dataAppSourceRootDirs.first)
+            compilerConfiguration.dataAppSourceRootDir = dataAppSourceRootDirs.first
         }
+        return null
     }
 
     private fun configureCompiler(compilerConfiguration: CompilerConfiguration, compilerMessages: LinkedList<CompilerMessage>) {
@@ -123,7 +156,7 @@ object Entrypoint {
                                 "Registered JAR-file '${file.name}'."
                         ))
                         // check if there are any yaml files inside the loaded jar
-                        val classLoader = JarLoaderAgent.CLASS_LOADERS.last()
+                        val classLoader = JarLoaderAgent.getClassLoader(file.absolutePath)!!
                         val jar = JarFile(classLoader.urLs[0].toString().split("file:/").last())
                         val typeFiles = jar.entries().toList().filter { it.name.endsWith(".types.yaml") }.map { it.name }
                         if (typeFiles.isNotEmpty())
@@ -161,10 +194,13 @@ object Entrypoint {
                 }
     }
 
-    fun startCompile(args: Array<String>): Boolean {
+    /**
+     * Create a compiler configuration which contains the default values and the external configuration.
+     *
+     * @return the compiler configuration
+     */
+    fun createCompilerConfiguration(): CompilerConfiguration {
         val compilerConfiguration = CompilerConfiguration()
-        // create compiler messages container for whole compilation process
-        val compilerMessages = LinkedList<CompilerMessage>()
         // set the default namespace
         Nukleus.custom = DegreeCustomization()
         //Nukleus.logging("logging.properties");
@@ -172,8 +208,20 @@ object Entrypoint {
         val compilerProperties = Properties()
         compilerProperties.load(DegreeToJavaCompiler::class.java.classLoader.getResourceAsStream("compiler.properties"))
         createDefaultCompilerConfiguration(compilerProperties, compilerConfiguration)
-        // process the command line
-        processCommandline(createCommandLineOptions(), args, compilerConfiguration)
+        loadCompilerConfiguration(externalConfiguration, compilerConfiguration)
+
+        return compilerConfiguration
+    }
+
+    /**
+     * Compile a data app with the given configuration.
+     *
+     * @param compilerConfiguration the configuration, which contains the data app source root dir
+     * @return all messages of the compilation
+     */
+    fun compile(compilerConfiguration: CompilerConfiguration): List<CompilerMessage> {
+        // create compiler messages container for whole compilation process
+        val compilerMessages = LinkedList<CompilerMessage>()
 
         // all properties are read now and the command line is processed
         // so the "final" configuration can be done
@@ -189,7 +237,112 @@ object Entrypoint {
                                     e.stackTrace.joinToString(separator = "\n") { it.toString() }))
         } finally {
             val logger: Logger = LoggerFactory.getLogger(DegreeToJavaCompiler::class.java.simpleName)
-            logCompilerMessages(logger, compilerMessages)
+            // the messages of data apps which are compiled together are not mixed up
+            synchronized(this) {
+                logCompilerMessages(logger, compilerMessages)
+            }
+        }
+
+        return compilerMessages
+    }
+
+    /**
+     * Compile several data apps which share the subsystems.
+     *
+     * The subsystems are initialized once and are not changed afterwards. Then the data apps are compiled
+     * concurrently against them, while the number of data apps which are packaged at the same time is limited by
+     * [CompilerConfiguration.buildWorkers]. Data apps which contain their own subsystem files cannot share the
+     * subsystems, they are compiled one after another afterwards.
+     *
+     * @param dataAppSourceRootDirs directories which contain the data apps
+     * @return the messages of the compilation of each data app
+     */
+    fun compileAll(dataAppSourceRootDirs: List<String>): Map<String, List<CompilerMessage>> {
+        val logger: Logger = LoggerFactory.getLogger(DegreeToJavaCompiler::class.java.simpleName)
+        val results = HashMap<String, List<CompilerMessage>>()
+        val (sharedDataApps, isolatedDataApps) = dataAppSourceRootDirs.partition {
+            SubsystemFileParser.findSubsystemFiles(it).isEmpty()
+        }
+
+        if (sharedDataApps.isNotEmpty()) {
+            TypeTaxonomy.resetInstance()
+            RuntimeDefinitionRegistry.resetInstance()
+            val subsystemConfiguration = createCompilerConfiguration()
+            val subsystemMessages = LinkedList<CompilerMessage>()
+            configureCompiler(subsystemConfiguration, subsystemMessages)
+            val initialized = try {
+                DegreeToJavaCompiler(subsystemConfiguration, subsystemMessages).initializeSubSystems()
+            } catch (e: Exception) {
+                subsystemMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR,
+                        "A critical error occured during the initialization of subsystems: $e"))
+                false
+            }
+            logCompilerMessages(logger, subsystemMessages)
+
+            if (!initialized) {
+                sharedDataApps.forEach { results[it] = subsystemMessages }
+            } else {
+                val buildPermits = Semaphore(subsystemConfiguration.buildWorkers)
+                // configurations are created up front, since this is not thread-safe
+                val configurations = sharedDataApps.map { dir ->
+                    createCompilerConfiguration().also {
+                        it.sourceRootDirs.add(dir)
+                        it.dataAppSourceRootDir = dir
+                        it.subsystemsInitialized = true
+                        it.buildPermits = buildPermits
+                    }
+                }
+                val executor = Executors.newFixedThreadPool(
+                        Math.min(sharedDataApps.size, Runtime.getRuntime().availableProcessors()))
+                try {
+                    configurations.map { configuration ->
+                        configuration.dataAppSourceRootDir to executor.submit(Callable { compile(configuration) })
+                    }.forEach { (dir, compilation) ->
+                        results[dir] = try {
+                            compilation.get()
+                        } catch (e: ExecutionException) {
+                            listOf(CompilerMessage(CompilerMessage.Kind.ERROR,
+                                    "A critical error occured during compilation: ${e.cause}"))
+                        }
+                    }
+                } finally {
+                    executor.shutdown()
+                }
+            }
+        }
+
+        isolatedDataApps.forEach { dir ->
+            logger.info("Data app '$dir' contains subsystem files, it is compiled separately.")
+            TypeTaxonomy.resetInstance()
+            RuntimeDefinitionRegistry.resetInstance()
+            val configuration = createCompilerConfiguration()
+            configuration.sourceRootDirs.add(dir)
+            configuration.dataAppSourceRootDir = dir
+            results[dir] = compile(configuration)
+        }
+
+        val failed = dataAppSourceRootDirs.filter { dir ->
+            results[dir]!!.any { it.kind == CompilerMessage.Kind.ERROR }
+        }
+        logger.info("Compiled ${dataAppSourceRootDirs.size - failed.size} of ${dataAppSourceRootDirs.size} data apps.")
+        failed.forEach { logger.error("Compilation of data app '$it' failed.") }
+
+        return dataAppSourceRootDirs.associateWith { results[it]!! }
+    }
+
+    fun startCompile(args: Array<String>): Boolean {
+        val compilerConfiguration = createCompilerConfiguration()
+        // process the command line
+        val daemonPort = processCommandline(createCommandLineOptions(), args, compilerConfiguration)
+        if (daemonPort != null) {
+            CompilerDaemon(daemonPort) { createCompilerConfiguration() }.run()
+            return true
+        }
+
+        if (dataAppSourceRootDirs.size > 1) {
+            compileAll(dataAppSourceRootDirs)
+        } else {
+            compile(compilerConfiguration)
         }
         // cleanup
         TypeTaxonomy.resetInstance()
@@ -0,0 +1,371 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ObjectNode
+import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import nukleus.core.Format
+import org.codehaus.plexus.util.DirectoryScanner
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.IOException
+import java.net.URI
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.stream.Collectors
+
+/**
+ * Parses subsystem files (types and language elements) for the compiler.
+ *
+ * Subsystem files are parsed concurrently, since parsing YAML is independent of the content of the type taxonomy
+ * and the runtime definition registry. Only loading the parsed files into these is done sequentially by the
+ * compiler. Parsed files are cached in memory and in the user's D° directory, keyed by the hash of their content.
+ * Both caches are bounded, the least recently used entries are evicted first.
+ */
+object SubsystemFileParser {
+
+    /**
+     * Parsed subsystem files are cached here.
+     */
+    val PARSE_CACHE_DIR = Configuration.USER_PROPERTIES_FOLDER + File.separator + "parse-cache"
+
+    /**
+     * Maximum number of parsed files which are kept in memory.
+     */
+    const val MAX_PARSED_FILES = 256
+
+    /**
+     * Maximum number of parsed files which are kept in the cache directory.
+     */
+    const val MAX_CACHE_FILES = 1024
+
+    /**
+     * Name prefix of types in the default namespace.
+     */
+    private const val DEFAULT_NAMESPACE = "core."
+
+    private val logger = LoggerFactory.getLogger(SubsystemFileParser::class.java.simpleName)
+
+    private val mapper = ObjectMapper()
+
+    /**
+     * Files which have been parsed by this compiler, keyed by the hash of their content.
+     */
+    private val parsedFiles = object : LinkedHashMap<String, JsonNode>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, JsonNode>) = size > MAX_PARSED_FILES
+    }
+
+    /**
+     * A subsystem file which will be parsed.
+     *
+     * @param fileName the name which is used to check if the file is already loaded
+     * @param location the location of the file which is presented to the user
+     * @param isTypeFile true if the file contains types, false if it contains language elements
+     * @param file the file on disk, null if the file is part of a jar
+     * @param read reads the content of the file
+     */
+    class Source(val fileName: String,
+                 val location: String,
+                 val isTypeFile: Boolean,
+                 val file: File?,
+                 val read: () -> String)
+
+    /**
+     * A parsed subsystem file.
+     *
+     * @param source the parsed source
+     * @param node the content of the file
+     */
+    class ParsedFile(val source: Source, val node: JsonNode)
+
+    /**
+     * Find the subsystem files (types and language elements) within a directory.
+     * Files inside generated code are ignored.
+     *
+     * @param dir the directory which will be scanned
+     * @return the subsystem files
+     */
+    fun findSubsystemFiles(dir: String): List<File> {
+        if (!File(dir).isDirectory) {
+            return emptyList()
+        }
+        val scanner = DirectoryScanner()
+        scanner.setBasedir(dir)
+        scanner.setIncludes(arrayOf("**/*${Configuration.TYPES_IDENTIFIER}.${Configuration.SUBSYSTEM_FILE_EXTENSION}",
+                "**/*${Configuration.SUBSYSTEM_IDENTIFIER}.${Configuration.SUBSYSTEM_FILE_EXTENSION}"))
+        scanner.setExcludes(arrayOf("generated/**"))
+        scanner.scan()
+        return scanner.includedFiles.sorted().map { File(dir, it) }
+    }
+
+    /**
+     * Parse the given files concurrently.
+     *
+     * @param sources the files which will be parsed
+     * @return the parsed files in the same order as the sources
+     */
+    fun parse(sources: List<Source>): List<ParsedFile> {
+        return sources.parallelStream()
+                .map { ParsedFile(it, parse(it.read())) }
+                .collect(Collectors.toList())
+    }
+
+    /**
+     * Parse the content of a YAML file. The result is taken from the cache if the same content has been parsed
+     * before.
+     *
+     * @param content the content of the file
+     * @return the parsed content
+     */
+    fun parse(content: String): JsonNode = parse(content, File(PARSE_CACHE_DIR))
+
+    /**
+     * Parse the content of a YAML file with the given cache directory.
+     *
+     * @param content the content of the file
+     * @param cacheDir directory which contains the parsed files
+     * @return the parsed content
+     */
+    internal fun parse(content: String, cacheDir: File): JsonNode {
+        val key = cacheKey(content)
+        // files are parsed outside of the lock, a file which is parsed concurrently is parsed twice
+        val node = synchronized(parsedFiles) { parsedFiles[key] } ?: run {
+            val cacheFile = File(cacheDir, "$key.json")
+            val parsed = readCacheFile(cacheFile)
+                    ?: Format.yaml.parse(content).also { writeCacheFile(cacheFile, it) }
+            synchronized(parsedFiles) { parsedFiles.putIfAbsent(key, parsed) ?: parsed }
+        }
+        // the compiler must not be able to modify cached content
+        return node.deepCopy()
+    }
+
+    /**
+     * Calculate the key of a file in the caches.
+     *
+     * @param content the content of the file
+     * @return hex encoded key
+     */
+    internal fun cacheKey(content: String): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        // files parsed by a different version of the parser are parsed again
+        digest.update((Format::class.java.`package`?.implementationVersion ?: "").toByteArray())
+        return digest.digest(content.toByteArray()).joinToString("") { String.format("%02x", it) }
+    }
+
+    /**
+     * Get the number of parsed files which are kept in memory.
+     */
+    internal fun parsedFileCount(): Int = synchronized(parsedFiles) { parsedFiles.size }
+
+    /**
+     * Forget all parsed files which are kept in memory.
+     */
+    internal fun clearParsedFiles() {
+        synchronized(parsedFiles) { parsedFiles.clear() }
+    }
+
+    /**
+     * Parse the files which are imported by a type file, directly or by other imported files. Imports are resolved
+     * relative to the importing file and parsed with the cache, each file is only parsed once.
+     *
+     * @param location the location of the type file
+     * @param node the parsed type file
+     * @param isLoaded checks if an imported file has already been loaded, such files and their imports are skipped
+     * @return the imported files in loading order, imports of a file precede the file
+     */
+    fun parseImports(location: URI, node: JsonNode, isLoaded: (URI) -> Boolean = { false }): List<Pair<URI, JsonNode>> {
+        return parseImports(location, node, File(PARSE_CACHE_DIR), isLoaded)
+    }
+
+    /**
+     * Parse the files which are imported by a type file with the given cache directory.
+     *
+     * @see parseImports
+     */
+    internal fun parseImports(location: URI,
+                              node: JsonNode,
+                              cacheDir: File,
+                              isLoaded: (URI) -> Boolean = { false }): List<Pair<URI, JsonNode>> {
+        val imported = ArrayList<Pair<URI, JsonNode>>()
+        val visited = HashSet<URI>()
+        fun visit(importing: URI, importingNode: JsonNode) {
+            importingNode["imports"]?.forEach { entry ->
+                val uri = importing.resolve(entry.asText()).normalize()
+                if (!visited.add(uri) || isLoaded(uri)) {
+                    return@forEach
+                }
+                val importedNode = parse(uri.toURL().openStream().use { it.reader().readText() }, cacheDir)
+                visit(uri, importedNode)
+                imported.add(Pair(uri, importedNode))
+            }
+        }
+        visited.add(location.normalize())
+        visit(location, node)
+        return imported
+    }
+
+    /**
+     * Remove the imports of a parsed type file, e.g. after they have been loaded by [parseImports].
+     *
+     * @param node a parsed type file
+     * @return the type file without imports
+     */
+    fun withoutImports(node: JsonNode): JsonNode {
+        if (node !is ObjectNode || !node.has("imports")) {
+            return node
+        }
+        return node.deepCopy().also { it.remove("imports") }
+    }
+
+    /**
+     * Order type files such that files which declare types are loaded before the files which refer to these types
+     * (as supertype or attribute type). Files without dependencies keep their order.
+     * If there are cyclic dependencies between files, the files of the cycle keep their order.
+     *
+     * @param typeFiles parsed type files
+     * @return the type files in loading order
+     */
+    fun orderByTypeDependencies(typeFiles: List<ParsedFile>): List<ParsedFile> {
+        val declaringFile = HashMap<String, Int>()
+        typeFiles.forEachIndexed { index, file ->
+            declaredTypes(file.node).forEach { declaringFile.putIfAbsent(it, index) }
+        }
+        val dependencies = typeFiles.map { file ->
+            referencedTypes(file.node).mapNotNull { declaringFile[it] }.toSortedSet()
+        }
+
+        val ordered = ArrayList<ParsedFile>(typeFiles.size)
+        val visited = BooleanArray(typeFiles.size)
+        fun visit(index: Int) {
+            if (visited[index]) {
+                return
+            }
+            visited[index] = true
+            dependencies[index].forEach { visit(it) }
+            ordered.add(typeFiles[index])
+        }
+        typeFiles.indices.forEach { visit(it) }
+
+        return ordered
+    }
+
+    /**
+     * Count the language elements of a parsed file by their type (e.g. 'degree.Activity').
+     *
+     * @param node a parsed file which contains language elements
+     * @param isPresent checks if an element with the given name already exists, such elements are not counted
+     * @return number of elements per type
+     */
+    fun countElementsByType(node: JsonNode, isPresent: (String) -> Boolean = { false }): Map<String, Int> {
+        val counts = HashMap<String, Int>()
+        node.fields().forEach { (name, element) ->
+            if (isPresent(name)) {
+                return@forEach
+            }
+            element.fieldNames().forEach {
+                val type = it.substringBefore('@')
+                counts[type] = (counts[type] ?: 0) + 1
+            }
+        }
+        return counts
+    }
+
+    /**
+     * Check if a parsed type file imports other type files. Imports are resolved relative to the file.
+     *
+     * @param node a parsed type file
+     * @return true if the file contains imports, false otherwise
+     */
+    fun hasImports(node: JsonNode): Boolean {
+        return node.has("imports") && node["imports"].size() > 0
+    }
+
+    private fun declaredTypes(node: JsonNode): Set<String> {
+        return typeDefinitions(node).map { normalize(it.first) }.toSet()
+    }
+
+    private fun referencedTypes(node: JsonNode): Set<String> {
+        val references = HashSet<String>()
+        typeDefinitions(node).forEach { (_, definition) ->
+            definition["supertypes"]?.forEach { references.add(normalize(it.asText())) }
+            definition["attributes"]?.forEach { references.add(normalize(it.asText())) }
+        }
+        return references
+    }
+
+    private fun typeDefinitions(node: JsonNode): List<Pair<String, JsonNode>> {
+        return listOf("primitives", "composites")
+                .mapNotNull { node[it] }
+                .flatMap { section -> section.fields().asSequence().map { Pair(it.key, it.value) }.toList() }
+    }
+
+    private fun normalize(typeName: String): String {
+        return typeName.removePrefix(DEFAULT_NAMESPACE)
+    }
+
+    private fun readCacheFile(cacheFile: File): JsonNode? {
+        if (!cacheFile.isFile) {
+            return null
+        }
+        return try {
+            mapper.readTree(cacheFile).also {
+                // the modification time marks recently used files, which are kept by pruning
+                cacheFile.setLastModified(System.currentTimeMillis())
+            }
+        } catch (e: IOException) {
+            logger.warn("Could not read cached file '$cacheFile'.", e)
+            null
+        }
+    }
+
+    private fun writeCacheFile(cacheFile: File, node: JsonNode) {
+        var tempFile: File? = null
+        try {
+            cacheFile.parentFile.mkdirs()
+            // files are written atomically, since several compilers may share the cache
+            tempFile = File.createTempFile(cacheFile.name, ".tmp", cacheFile.parentFile)
+            mapper.writeValue(tempFile, node)
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING)
+        } catch (e: IOException) {
+            tempFile?.delete()
+            logger.warn("Could not cache parsed file '$cacheFile'.", e)
+        }
+        pruneCacheDir(cacheFile.parentFile, MAX_CACHE_FILES)
+    }
+
+    /**
+     * Remove the least recently used files from a cache directory until it contains at most the given number of
+     * parsed files.
+     *
+     * @param cacheDir the cache directory
+     * @param maxFiles maximum number of parsed files which are kept
+     */
+    internal fun pruneCacheDir(cacheDir: File, maxFiles: Int) {
+        val cacheFiles = cacheDir.listFiles { file -> file.isFile && file.extension == "json" } ?: return
+        if (cacheFiles.size <= maxFiles) {
+            return
+        }
+        cacheFiles.sortedBy { it.lastModified() }.take(cacheFiles.size - maxFiles).forEach {
+            // the file may have been removed by a concurrent compiler already
+            it.delete()
+        }
+    }
+
+}
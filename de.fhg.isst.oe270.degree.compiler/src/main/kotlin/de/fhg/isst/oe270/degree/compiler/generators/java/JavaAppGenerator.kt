@@ -25,7 +25,8 @@ import de.fhg.isst.oe270.degree.compiler.CompilerMessage
 import de.fhg.isst.oe270.degree.compiler.DegreeToJavaCompiler
 import de.fhg.isst.oe270.degree.compiler.generators.DataAppTypes
 import de.fhg.isst.oe270.degree.compiler.generators.ExecutionTypes
-import de.fhg.isst.oe270.degree.grammar.DegreeParserFacade
+import de.fhg.isst.oe270.degree.compiler.optimization.OutputLiveness
+import de.fhg.isst.oe270.degree.grammar.ParsedBlockCache
 import de.fhg.isst.oe270.degree.grammar.ast.model.*
 import de.fhg.isst.oe270.degree.grammar.ast.model.Block
 import de.fhg.isst.oe270.degree.grammar.ast.model.BooleanLiteral
@@ -44,6 +45,8 @@ import de.fhg.isst.oe270.degree.runtime.java.exceptions.DegreeException
 import de.fhg.isst.oe270.degree.runtime.java.exceptions.parameters.DegreeMissingInputException
 import de.fhg.isst.oe270.degree.runtime.java.exceptions.policies.DegreePolicyValidationException
 import de.fhg.isst.oe270.degree.runtime.java.manager.VariableManager
+import de.fhg.isst.oe270.degree.runtime.java.sandbox.ForeachBody
+import de.fhg.isst.oe270.degree.runtime.java.sandbox.ParallelBranch
 import de.fhg.isst.oe270.degree.runtime.java.usage.control.`object`.UsageControlObject
 import de.fhg.isst.oe270.degree.types.RuntimeDefinitionRegistry
 import de.fhg.isst.oe270.degree.types.TypeTaxonomy
@@ -126,6 +129,11 @@ class JavaAppGenerator(
 
     private val LOGGER = LoggerFactory.getLogger("JavaAppGenerator")
 
+    /**
+     * Code blocks of embedded activities are parsed once per compilation.
+     */
+    private val parsedBlocks = ParsedBlockCache()
+
     /**
      * The extensible type taxonomy.
      */
@@ -225,6 +233,11 @@ class JavaAppGenerator(
      */
     private val activityToOutputScopeMap = HashMap<ActivityCall, UUID>()
 
+    /**
+     * Outputs of activity calls which are never used afterwards and therefore are not stored.
+     */
+    private val unusedOutputs = Collections.newSetFromMap(IdentityHashMap<VariableReference, Boolean>())
+
     /**
      * This set keeps track of all UUIDs which have been used in the generated Data App.
      */
@@ -452,6 +465,7 @@ class JavaAppGenerator(
         } else {
             // wrap all in try catch block to catch specific degree exceptions
             val processMethodTry = processMethod.newTry()
+            unusedOutputs.addAll(OutputLiveness.findUnusedOutputs(dataApp.code))
             // actual app logic
             generateDataAppStatement(dataAppClass, processMethodTry, dataApp.code, true, true)
             // catch clauses
@@ -928,7 +942,7 @@ class JavaAppGenerator(
 
     /**
      * This function takes the output scope which is the result of an activity call and stores all parameters which are
-     * output of the activity call in the variable manager.
+     * output of the activity call in the variable manager. Outputs which are never used afterwards are not stored.
      *
      * @param activityCall the D°-AST of an activity call
      * @param activity D°-Activity definition which describes the called activity
@@ -944,6 +958,21 @@ class JavaAppGenerator(
         activityCall.outputVariables.forEachIndexed { idx, it ->
             val variableName = it.name
             val variableType = Identifier.of(activity.outputParameters.split()[idx].type_.read())
+            if (it in unusedOutputs) {
+                // the value is never read, but assigning an incompatible type is still an error
+                if (checkVariableExistsByType(variableName)) {
+                    checkVariableTypeCompatibility(variableName, variableType, activityCall)
+                }
+                compilerMessages.add(
+                    CompilerMessage(
+                        CompilerMessage.Kind.INFO,
+                        "Output '$variableName' is never used and will not be stored.",
+                        it.file,
+                        it.position
+                    )
+                )
+                return@forEachIndexed
+            }
             val uuid: UUID? = retrieveUuidForVariable(variableName, variableType, activityCall, method)
             // write the value
             var setVarFunction = "initializeVariable"
@@ -1075,11 +1104,12 @@ class JavaAppGenerator(
                     )
                 }
                 // we need to compile the actual activity code now
-                val parsedBlock = DegreeParserFacade.parseBlock(activity.codeBlock!!.read())
+                val parsedBlock = parsedBlocks.parse(activity.codeBlock!!.read())
                 parsedBlock.errors.forEach { compilerMessages.add(CompilerMessage(it)) }
                 if (parsedBlock.errors.isNotEmpty()) {
                     return
                 }
+                unusedOutputs.addAll(OutputLiveness.findUnusedOutputs(parsedBlock.root!!))
                 parsedBlock.root!!.statements.map { statement ->
                     generateDataAppStatement(pckClass, activityMethod, statement)
                 }
@@ -1089,6 +1119,9 @@ class JavaAppGenerator(
         }
         // process (store in variable manager) the return parameters
         generateVariableStorageAfterActivityCall(activityCall, activity, outputScopeVarName, method)
+        // release the scopes, so outputs which have not been stored can be garbage collected right away
+        method.newStmt(virtualMachine.newFree("$inputScopeVarName = null"))
+        method.newStmt(virtualMachine.newFree("$outputScopeVarName = null"))
     }
 
     private fun generateDataAppActivitySandboxCall(
@@ -1174,6 +1207,128 @@ class JavaAppGenerator(
         }
     }
 
+    /**
+     * Generates java code for a parallel statement in D°. Each branch is encapsulated by a private java method which
+     * is executed concurrently by the sandbox. A branch method directly uses the variable manager of its branch, so
+     * variables which are created by a branch are merged into the enclosing block after the parallel statement.
+     * For the same reason no new level of the variable scope hierarchy is created for the branches.
+     *
+     * @param pckClass the class containing all java code
+     * @param method Java-AST of the block which will contain the generated code
+     * @param parallelStmt D°-AST for a parallel statement
+     */
+    private fun generateDataAppParallelStatement(
+        pckClass: PackageClass,
+        method: net.sourceforge.jenesis4java.Block,
+        parallelStmt: ParallelStatement
+    ) {
+        imports.add(ParallelBranch::class.java.canonicalName)
+        imports.add(Arrays::class.java.canonicalName)
+
+        val branchCalls = parallelStmt.branches.map { branch ->
+            val branchMethodName = "branch_" + uuidToJavaIdentifier(createFreeUuid())
+            val branchMethod = generateDataAppDelegateFun(pckClass, branchMethodName)
+
+            generateDataAppStatement(pckClass, branchMethod, branch)
+            // branches cannot contain return statements, so the execution is always continued
+            branchMethod.newReturn().expression = virtualMachine.newBoolean(false)
+
+            "branchManager -> this.$branchMethodName(branchManager, returnOutputScope)"
+        }
+
+        method.newStmt(
+            virtualMachine.newInvoke(sandboxVar, "executeParallel")
+                .addVariableArg("variableManager")
+                .addVariableArg("Arrays.<ParallelBranch>asList(${branchCalls.joinToString(", ")})")
+        )
+    }
+
+    /**
+     * Generates java code for a foreach loop in D°. The body is encapsulated by a private java method which is called
+     * by the sandbox for every element of the collection. The element is only visible within the body.
+     *
+     * @param pckClass the class containing all java code
+     * @param method Java-AST of the block which will contain the generated code
+     * @param foreachStmt D°-AST for a foreach loop
+     * @param hasParent indicator if there is a parent block. Required for proper return statement handling
+     */
+    private fun generateDataAppForeachStatement(
+        pckClass: PackageClass,
+        method: net.sourceforge.jenesis4java.Block,
+        foreachStmt: ForeachStatement,
+        hasParent: Boolean
+    ) {
+        val collection = foreachStmt.collection
+        if (!checkVariableExistsByType(collection.name)) {
+            compilerMessages.add(
+                CompilerMessage(
+                    CompilerMessage.Kind.ERROR,
+                    "Cannot iterate over unknown variable '${collection.name}'.",
+                    collection.file,
+                    collection.position
+                )
+            )
+            return
+        }
+        if (collection.index != -1) {
+            compilerMessages.add(
+                CompilerMessage(
+                    CompilerMessage.Kind.ERROR,
+                    "Cannot iterate over single element '${collection.name}[${collection.index}]'.",
+                    collection.file,
+                    collection.position
+                )
+            )
+            return
+        }
+        imports.add(ForeachBody::class.java.canonicalName)
+
+        val elementUuid = createFreeUuid()
+        val bodyMethodName = "foreach_" + uuidToJavaIdentifier(createFreeUuid())
+        val bodyMethod = generateDataAppDelegateFun(pckClass, bodyMethodName)
+        // new hierarchy level which only contains the element, the elements of a list share the type of the list
+        addScopeAwareLevel()
+        scopeAwareVariableToUuidMapList.last()[foreachStmt.element] = elementUuid
+        scopeAwareVariableToTypeMapList.last()[foreachStmt.element] = retrieveVariableTypeByName(collection.name)
+        generateDataAppStatement(pckClass, bodyMethod, foreachStmt.body)
+        removeScopeAwareLevel()
+        bodyMethod.newReturn().expression = virtualMachine.newBoolean(false)
+
+        val returnIf = method.newIf(
+            virtualMachine.newInvoke(sandboxVar, "executeForeach")
+                .addVariableArg("variableManager")
+                .addVariableArg(
+                    "variableManager.readVariable(UUID.fromString(\"${retrieveVariableUuidByName(collection.name)}\"))"
+                )
+                .addVariableArg("UUID.fromString(\"$elementUuid\")")
+                .addArg(foreachStmt.parallelism)
+                .addArg(foreachStmt.chunkSize)
+                .addVariableArg("elementManager -> this.$bodyMethodName(elementManager, returnOutputScope)")
+        )
+        if (hasParent) {
+            returnIf.newReturn().expression = virtualMachine.newBoolean(true)
+        } else {
+            returnIf.newReturn().expression = virtualMachine.newInvoke("returnOutputScope", "toJson")
+        }
+    }
+
+    /**
+     * Generates a private method which is called by the sandbox with the variable manager it has to use. These
+     * methods are used for the branches of parallel statements and for the bodies of foreach loops.
+     *
+     * @param pckClass the class containing all java code
+     * @param funName name of the generated function
+     * @return java method which returns true if a return statement has been executed
+     */
+    private fun generateDataAppDelegateFun(pckClass: PackageClass, funName: String): ClassMethod {
+        val method = pckClass.newMethod(virtualMachine.newType(Type.BOOLEAN)!!, funName)
+        method.access = Access.AccessType.PRIVATE
+        method.addParameter(virtualMachine.newType(VariableManager::class.java.simpleName)!!, "variableManager")
+        method.addParameter(virtualMachine.newType("OutputScope"), "returnOutputScope")
+        thrownExceptions.map { method.addThrows(it) }
+        return method
+    }
+
     /**
      * This function generates boolean expressions which are used within if statements.
      *
@@ -1737,6 +1892,12 @@ class JavaAppGenerator(
             is IfStatement -> {
                 generateDataAppIfStatement(pckClass, block, stmt)
             }
+            is ParallelStatement -> {
+                generateDataAppParallelStatement(pckClass, block, stmt)
+            }
+            is ForeachStatement -> {
+                generateDataAppForeachStatement(pckClass, block, stmt, hasParent)
+            }
             is VariableAssignmentTypeInstantiation -> {
                 generateDataAppVariableAssignmentTypeInstantiation(block, stmt)
             }
@@ -3087,13 +3248,8 @@ class JavaAppGenerator(
             // finally add the collected policies to usage control object for later usage
             processMethod.newStmt(
                 virtualMachine.newFree(
-                    "String identifier;\n" +
-                            "Instance ins_$varUuid = variableManager.readVariable(UUID.fromString(\"$uuid\"));\n" +
-                            "if (ins_$varUuid instanceof CompositeInstance)\n" +
-                            "   identifier = ((CompositeInstance) ins_$varUuid).getIdentity().linkValue();\n" +
-                            "else\n" +
-                            "   identifier = System.identityHashCode(ins_$varUuid) + \"\";\n" +
-                            "UsageControlObject.Companion.getInstance().getDataPolicies().put(identifier, dataPol_$varUuid);\n" +
+                    "Instance ins_$varUuid = variableManager.readVariable(UUID.fromString(\"$uuid\"));\n" +
+                            "String identifier = UsageControlObject.Companion.getInstance().getDataPolicies().put(ins_$varUuid, dataPol_$varUuid);\n" +
                             "List<String> customIds_$varUuid;\n" +
                             "for (Instance dataPolIns : dataPol_$varUuid) { \n" +
                             "   if (((CompositeInstance) dataPolIns).getType().getIdentifier().toString().equals(\"degree.PolicyInstance\"))\n" +
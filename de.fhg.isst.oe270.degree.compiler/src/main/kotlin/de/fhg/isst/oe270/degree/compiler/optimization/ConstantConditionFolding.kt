@@ -0,0 +1,402 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler.optimization
+
+import de.fhg.isst.oe270.degree.compiler.CompilerMessage
+import de.fhg.isst.oe270.degree.grammar.ast.model.Block
+import de.fhg.isst.oe270.degree.grammar.ast.model.BoolExpression
+import de.fhg.isst.oe270.degree.grammar.ast.model.BooleanComperator
+import de.fhg.isst.oe270.degree.grammar.ast.model.BooleanOperator
+import de.fhg.isst.oe270.degree.grammar.ast.model.DataApp
+import de.fhg.isst.oe270.degree.grammar.ast.model.ForeachStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.IfStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.ParallelStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.Statement
+
+/**
+ * AST optimization which folds constant conditions of if statements and removes the branches which can never be
+ * executed, including all activity calls and variable initializations inside of them.
+ *
+ * A condition is constant if it only consists of literals. Conditions are evaluated with the semantics of the
+ * generated java code. Since the generated code does not necessarily keep the structure of nested binary
+ * expressions, a condition is only folded if both possible readings of the generated code yield the same value.
+ * All other conditions are left untouched, so the behaviour of the data app does not change.
+ */
+class ConstantConditionFolding(private val compilerMessages: MutableList<CompilerMessage>) {
+
+    /**
+     * Optimize the code of a data app.
+     *
+     * @param dataApp the data app
+     * @return the optimized data app or the given data app if nothing could be optimized
+     */
+    fun optimize(dataApp: DataApp): DataApp {
+        val code = optimize(dataApp.code)
+        return if (code === dataApp.code) dataApp else dataApp.copy(code = code)
+    }
+
+    /**
+     * Optimize a block and all nested blocks.
+     *
+     * @param block the block
+     * @return the optimized block or the given block if nothing could be optimized
+     */
+    fun optimize(block: Block): Block {
+        var changed = false
+        val statements = block.statements.flatMap { statement ->
+            val optimized = optimize(statement)
+            if (optimized.size != 1 || optimized.first() !== statement) {
+                changed = true
+            }
+            optimized
+        }
+        return if (changed) block.copy(statements = statements) else block
+    }
+
+    private fun optimize(statement: Statement): List<Statement> = when (statement) {
+        is Block -> listOf(optimize(statement))
+        is IfStatement -> optimize(statement)
+        is ParallelStatement -> listOf(optimize(statement))
+        is ForeachStatement -> {
+            val body = optimize(statement.body)
+            listOf(if (body === statement.body) statement else statement.copy(body = body))
+        }
+        else -> listOf(statement)
+    }
+
+    /**
+     * Optimize all branches of a parallel statement. Branches which are removed completely are dropped, branches
+     * which are replaced by several statements are kept together in a block, so they are still executed in order.
+     *
+     * @param parallel the parallel statement
+     * @return the optimized parallel statement or the given statement if nothing could be optimized
+     */
+    private fun optimize(parallel: ParallelStatement): ParallelStatement {
+        var changed = false
+        val branches = parallel.branches.mapNotNull { branch ->
+            val optimized = optimize(branch)
+            if (optimized.size == 1 && optimized.first() === branch) {
+                branch
+            } else {
+                changed = true
+                when (optimized.size) {
+                    0 -> null
+                    1 -> optimized.first()
+                    else -> Block(optimized, branch.file, branch.position)
+                }
+            }
+        }
+        return if (changed) parallel.copy(branches = branches) else parallel
+    }
+
+    /**
+     * Remove all branches of an if statement which can never be executed.
+     *
+     * @return the statements which replace the if statement. A single block, if only one branch can be executed,
+     *         and no statements at all if no branch can be executed
+     */
+    private fun optimize(ifStatement: IfStatement): List<Statement> {
+        val conditions = ArrayList<BoolExpression>()
+        val blocks = ArrayList<Block>()
+        var elseBlock = ifStatement.elseBlock?.let { optimize(it) }
+        var changed = elseBlock !== ifStatement.elseBlock
+
+        val branches = ifStatement.conditions.zip(ifStatement.blocks)
+        for ((index, branch) in branches.withIndex()) {
+            val (condition, block) = branch
+            val folded = fold(condition)
+            changed = changed || folded !== condition
+            when (folded.boolLiteral) {
+                false -> {
+                    reportRemoval(block, "its condition is always false")
+                }
+                true -> {
+                    // the following branches can never be reached
+                    branches.drop(index + 1).forEach { reportRemoval(it.second, "a previous condition is always true") }
+                    ifStatement.elseBlock?.let { reportRemoval(it, "a previous condition is always true") }
+                    elseBlock = optimize(block)
+                    changed = true
+                    break
+                }
+                else -> {
+                    val optimized = optimize(block)
+                    changed = changed || optimized !== block
+                    conditions.add(folded)
+                    blocks.add(optimized)
+                }
+            }
+        }
+
+        if (!changed) {
+            return listOf(ifStatement)
+        }
+        if (conditions.isEmpty()) {
+            // the block statement has the same scope as the block of the branch
+            if (elseBlock != null) {
+                compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
+                        "Replaced if statement by the only branch which can be executed.",
+                        ifStatement.file, ifStatement.position))
+            }
+            return listOfNotNull(elseBlock)
+        }
+        return listOf(IfStatement(conditions, blocks, elseBlock, ifStatement.file, ifStatement.position))
+    }
+
+    private fun reportRemoval(block: Block, reason: String) {
+        compilerMessages.add(CompilerMessage(CompilerMessage.Kind.INFO,
+                "Removed unreachable branch with ${countStatements(block)} statement(s), since $reason.",
+                block.file, block.position))
+    }
+
+    private fun countStatements(statement: Statement): Int = when (statement) {
+        is Block -> statement.statements.sumBy { countStatements(it) }
+        is IfStatement -> 1 + statement.blocks.sumBy { countStatements(it) } +
+                (statement.elseBlock?.let { countStatements(it) } ?: 0)
+        is ParallelStatement -> 1 + statement.branches.sumBy { countStatements(it) }
+        is ForeachStatement -> 1 + countStatements(statement.body)
+        else -> 1
+    }
+
+    /**
+     * Fold a condition. If the whole condition is constant it is replaced by a boolean literal. Otherwise only
+     * constant expressions in parentheses are replaced, since the parentheses are kept in the generated code.
+     *
+     * @param expression the condition
+     * @return the folded condition or the given condition if nothing could be folded
+     */
+    fun fold(expression: BoolExpression): BoolExpression {
+        evaluate(expression)?.let { return literal(expression, it) }
+        return foldParentheses(expression)
+    }
+
+    private fun foldParentheses(expression: BoolExpression): BoolExpression {
+        val nested = expression.expression
+        if (nested != null) {
+            if (!expression.negated && nested.boolLiteral == null) {
+                evaluate(nested)?.let { return expression.copy(expression = literal(nested, it)) }
+            }
+            val folded = foldParentheses(nested)
+            return if (folded === nested) expression else expression.copy(expression = folded)
+        }
+        val left = expression.left_expression
+        val right = expression.right_expression
+        if (left != null && right != null) {
+            val foldedLeft = foldParentheses(left)
+            val foldedRight = foldParentheses(right)
+            if (foldedLeft !== left || foldedRight !== right) {
+                return expression.copy(left_expression = foldedLeft, right_expression = foldedRight)
+            }
+        }
+        return expression
+    }
+
+    private fun literal(expression: BoolExpression, value: Boolean) =
+            BoolExpression(boolLiteral = value, file = expression.file, position = expression.position)
+
+    /**
+     * Evaluate a constant condition.
+     *
+     * @return the value of the condition or null if it is not constant, not boolean or its value depends on the
+     *         grouping of the generated binary expressions
+     */
+    private fun evaluate(expression: BoolExpression): Boolean? {
+        val flat = emit(expression, false) ?: return null
+        val bracketed = emit(expression, true) ?: return null
+        val value = ConstantEvaluator(flat.tokens).evaluate()
+        return if (value is Boolean && value == ConstantEvaluator(bracketed.tokens).evaluate()) value else null
+    }
+
+    /**
+     * Create the tokens of the java code which is generated for an expression.
+     * String literals are compared with 'equals', which is called on the preceding operand.
+     *
+     * @param expression the expression
+     * @param bracketBinaries true if binary expressions are enclosed in parentheses
+     * @return the generated tokens or null if the expression is not constant
+     */
+    private fun emit(expression: BoolExpression, bracketBinaries: Boolean): Emission? {
+        val comperator = expression.comperator
+        val operator = expression.operator
+        return when {
+            expression.negated -> emit(expression.expression!!, bracketBinaries)?.let {
+                Emission(listOf(Token.Operator("!")) + it.tokens)
+            }
+            comperator != null || operator != null -> {
+                val left = emit(expression.left_expression!!, bracketBinaries) ?: return null
+                val right = emit(expression.right_expression!!, bracketBinaries) ?: return null
+                if (comperator == BooleanComperator.EQ && (left.freeform || right.freeform)) {
+                    Emission(left.tokens + Token.EqualsCall(right.tokens), true)
+                } else {
+                    val binary = left.tokens + Token.Operator(symbol(comperator, operator)) + right.tokens
+                    Emission(if (bracketBinaries) listOf(Token.Open) + binary + Token.Close else binary)
+                }
+            }
+            expression.intLiteral != null -> Emission(listOf(Token.Constant(expression.intLiteral!!)))
+            expression.floatLiteral != null -> Emission(listOf(Token.Constant(expression.floatLiteral!!)))
+            expression.stringLiteral != null -> Emission(listOf(Token.Constant(expression.stringLiteral!!)), true)
+            expression.boolLiteral != null -> Emission(listOf(Token.Constant(expression.boolLiteral!!)))
+            expression.varReference != null || expression.fieldAccess != null -> null
+            expression.expression != null -> emit(expression.expression!!, bracketBinaries)?.let {
+                Emission(listOf(Token.Open) + it.tokens + Token.Close)
+            }
+            else -> null
+        }
+    }
+
+    private fun symbol(comperator: BooleanComperator?, operator: BooleanOperator?) = when {
+        comperator == BooleanComperator.LT -> "<"
+        comperator == BooleanComperator.GT -> ">"
+        comperator == BooleanComperator.LEQ -> "<="
+        comperator == BooleanComperator.GEQ -> ">="
+        comperator == BooleanComperator.EQ -> "=="
+        comperator == BooleanComperator.NEQ -> "!="
+        operator == BooleanOperator.AND -> "&&"
+        else -> "||"
+    }
+
+    /**
+     * The generated java tokens of an expression.
+     *
+     * @property freeform true if the code is generated as free text, which is compared with 'equals'
+     */
+    private class Emission(val tokens: List<Token>, val freeform: Boolean = false)
+
+    private sealed class Token {
+        /**
+         * A literal. Strings are represented by their source text including the quotes.
+         */
+        class Constant(val value: Any) : Token()
+        class Operator(val symbol: String) : Token()
+        class EqualsCall(val argument: List<Token>) : Token()
+        object Open : Token()
+        object Close : Token()
+    }
+
+    /**
+     * Evaluates constant java expressions with java operator precedence. Expressions which would not compile are
+     * not evaluated.
+     */
+    private class ConstantEvaluator(private val tokens: List<Token>) {
+
+        private class InvalidExpression : RuntimeException()
+
+        private var index = 0
+
+        /**
+         * @return the value of the expression or null if it is invalid
+         */
+        fun evaluate(): Any? = try {
+            val value = or()
+            if (index == tokens.size) value else null
+        } catch (e: InvalidExpression) {
+            null
+        }
+
+        private fun or() = binary(setOf("||")) { and() }
+
+        private fun and() = binary(setOf("&&")) { equality() }
+
+        private fun equality() = binary(setOf("==", "!=")) { relational() }
+
+        private fun relational() = binary(setOf("<", ">", "<=", ">=")) { unary() }
+
+        private fun binary(symbols: Set<String>, operand: () -> Any): Any {
+            var left = operand()
+            while (true) {
+                val token = tokens.getOrNull(index)
+                if (token !is Token.Operator || token.symbol !in symbols) {
+                    return left
+                }
+                index++
+                left = apply(token.symbol, left, operand())
+            }
+        }
+
+        private fun unary(): Any {
+            val token = tokens.getOrNull(index)
+            if (token is Token.Operator && token.symbol == "!") {
+                index++
+                return !(unary() as? Boolean ?: throw InvalidExpression())
+            }
+            return postfix()
+        }
+
+        private fun postfix(): Any {
+            var value = primary()
+            while (true) {
+                val call = tokens.getOrNull(index) as? Token.EqualsCall ?: return value
+                index++
+                if (value !is String) {
+                    // primitive values have no methods
+                    throw InvalidExpression()
+                }
+                value = value == (ConstantEvaluator(call.argument).evaluate() ?: throw InvalidExpression())
+            }
+        }
+
+        private fun primary(): Any = when (val token = tokens.getOrNull(index++)) {
+            is Token.Constant -> token.value
+            is Token.Open -> {
+                val value = or()
+                if (tokens.getOrNull(index++) !is Token.Close) {
+                    throw InvalidExpression()
+                }
+                value
+            }
+            else -> throw InvalidExpression()
+        }
+
+        private fun apply(symbol: String, left: Any, right: Any): Any = when (symbol) {
+            // both operands are checked, since java checks the types of both operands
+            "&&" -> bool(left) and bool(right)
+            "||" -> bool(left) or bool(right)
+            "==" -> equal(left, right)
+            "!=" -> !equal(left, right)
+            else -> {
+                val (l, r) = numbers(left, right)
+                when (symbol) {
+                    "<" -> l < r
+                    ">" -> l > r
+                    "<=" -> l <= r
+                    else -> l >= r
+                }
+            }
+        }
+
+        private fun bool(value: Any) = value as? Boolean ?: throw InvalidExpression()
+
+        private fun equal(left: Any, right: Any): Boolean = when {
+            left is Number && right is Number -> {
+                val (l, r) = numbers(left, right)
+                l == r
+            }
+            // string literals are interned, therefore reference equality is value equality
+            left is Boolean && right is Boolean || left is String && right is String -> left == right
+            else -> throw InvalidExpression()
+        }
+
+        /**
+         * Convert numeric operands like java does: ints are promoted to float if the other operand is a float.
+         * Both representations are exact as double.
+         */
+        private fun numbers(left: Any, right: Any): Pair<Double, Double> = when {
+            left is Int && right is Int -> Pair(left.toDouble(), right.toDouble())
+            left is Number && right is Number -> Pair(left.toFloat().toDouble(), right.toFloat().toDouble())
+            else -> throw InvalidExpression()
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler.optimization
+
+import de.fhg.isst.oe270.degree.grammar.ast.model.ActivityCall
+import de.fhg.isst.oe270.degree.grammar.ast.model.Block
+import de.fhg.isst.oe270.degree.grammar.ast.model.BoolExpression
+import de.fhg.isst.oe270.degree.grammar.ast.model.DefinitionFunction
+import de.fhg.isst.oe270.degree.grammar.ast.model.FieldAccess
+import de.fhg.isst.oe270.degree.grammar.ast.model.ForeachStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.IfStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.MethodCallExpression
+import de.fhg.isst.oe270.degree.grammar.ast.model.ParallelStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.ReturnStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.Statement
+import de.fhg.isst.oe270.degree.grammar.ast.model.TypeInstantiation
+import de.fhg.isst.oe270.degree.grammar.ast.model.VariableAssignment
+import de.fhg.isst.oe270.degree.grammar.ast.model.VariableAssignmentArray
+import de.fhg.isst.oe270.degree.grammar.ast.model.VariableAssignmentTypeInstantiation
+import de.fhg.isst.oe270.degree.grammar.ast.model.VariableAttributeAssignment
+import de.fhg.isst.oe270.degree.grammar.ast.model.VariableReference
+import de.fhg.isst.oe270.degree.parsing.grammar.interfaces.Node
+import java.util.*
+
+/**
+ * Liveness analysis for the outputs of activity calls.
+ *
+ * An output is unused if its variable is not mentioned by any statement which can be executed after the activity
+ * call. Writes count as mentions as well, since the generated code only updates variables which have been stored
+ * before. Unused outputs do not need to be stored in the variable manager.
+ */
+object OutputLiveness {
+
+    /**
+     * Find all outputs of activity calls in a block which are never used afterwards.
+     *
+     * @param block the outermost block of a data app or of an activity which is defined in D°
+     * @return the references of the unused outputs, compared by identity
+     */
+    fun findUnusedOutputs(block: Block): Set<VariableReference> {
+        val unused = Collections.newSetFromMap(IdentityHashMap<VariableReference, Boolean>())
+        analyze(block, emptySet(), unused)
+        return unused
+    }
+
+    /**
+     * Analyze the statements of a block from the last to the first one.
+     *
+     * @param block the block
+     * @param live the variables which are mentioned after the block
+     * @param unused collects the unused outputs
+     * @return the variables which are mentioned in or after the block
+     */
+    private fun analyze(block: Block, live: Set<String>, unused: MutableSet<VariableReference>): Set<String> {
+        var current = live
+        block.statements.reversed().forEach { current = analyze(it, current, unused) }
+        return current
+    }
+
+    private fun analyze(statement: Statement, live: Set<String>, unused: MutableSet<VariableReference>): Set<String> {
+        when (statement) {
+            is Block -> return analyze(statement, live, unused)
+            is ActivityCall -> statement.outputVariables.filterTo(unused) { it.name !in live }
+            is IfStatement -> {
+                statement.blocks.forEach { analyze(it, live, unused) }
+                statement.elseBlock?.let { analyze(it, live, unused) }
+            }
+            is ParallelStatement -> statement.branches.forEach { branch ->
+                // the other branches may be executed after this one
+                val others = statement.branches.filter { it !== branch }.flatMap { mentionedVariables(it) }
+                analyze(branch, live + others, unused)
+            }
+            is ForeachStatement -> {
+                // the body may be executed again after each iteration, but a name which is mentioned only once in
+                // the body can only be mentioned again by the same statement, which is treated the same way
+                val repeated = mentionCounts(statement.body).filterValues { it > 1 }.keys
+                analyze(statement.body, live + repeated, unused)
+            }
+        }
+        return live + mentionedVariables(statement)
+    }
+
+    /**
+     * Collect the names of all variables which are read or written by a node or one of its children.
+     *
+     * @param node the node
+     * @return the names of the variables
+     */
+    fun mentionedVariables(node: Node): Set<String> {
+        val names = HashSet<String>()
+        collect(node) { names.add(it) }
+        return names
+    }
+
+    /**
+     * Count how often the variables are mentioned by a node or one of its children.
+     *
+     * @param node the node
+     * @return the number of mentions per variable name
+     */
+    private fun mentionCounts(node: Node): Map<String, Int> {
+        val counts = HashMap<String, Int>()
+        collect(node) { counts.merge(it, 1) { first, second -> first + second } }
+        return counts
+    }
+
+    private fun collect(node: Node?, mention: (String) -> Unit) {
+        when (node) {
+            is Block -> node.statements.forEach { collect(it, mention) }
+            is ActivityCall -> {
+                node.inputVariables.forEach { collect(it, mention) }
+                node.outputVariables.forEach { collect(it, mention) }
+            }
+            is IfStatement -> {
+                node.conditions.forEach { collect(it, mention) }
+                node.blocks.forEach { collect(it, mention) }
+                collect(node.elseBlock, mention)
+            }
+            is ParallelStatement -> node.branches.forEach { collect(it, mention) }
+            is ForeachStatement -> {
+                mention(node.element)
+                collect(node.collection, mention)
+                collect(node.body, mention)
+            }
+            is BoolExpression -> {
+                collect(node.expression, mention)
+                collect(node.left_expression, mention)
+                collect(node.right_expression, mention)
+                collect(node.varReference, mention)
+                collect(node.fieldAccess, mention)
+            }
+            is VariableAssignment -> {
+                mention(node.name)
+                when (node) {
+                    is VariableAssignmentTypeInstantiation -> collect(node.value, mention)
+                    is VariableAssignmentArray -> node.values.forEach { collect(it, mention) }
+                    is VariableAttributeAssignment -> collect(node.value, mention)
+                }
+            }
+            is TypeInstantiation -> node.functions.forEach { collect(it, mention) }
+            is DefinitionFunction -> node.arguments.forEach { collect(it, mention) }
+            is ReturnStatement -> node.values.forEach { collect(it, mention) }
+            is MethodCallExpression -> node.arguments.forEach { collect(it, mention) }
+            is FieldAccess -> collect(node.reference, mention)
+            is VariableReference -> mention(node.name)
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler.validation
+
+import de.fhg.isst.oe270.degree.compiler.CompilerMessage
+import de.fhg.isst.oe270.degree.compiler.optimization.OutputLiveness
+import de.fhg.isst.oe270.degree.grammar.ast.model.ActivityCall
+import de.fhg.isst.oe270.degree.grammar.ast.model.Block
+import de.fhg.isst.oe270.degree.grammar.ast.model.ForeachStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.IfStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.ParallelStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.ReturnStatement
+import de.fhg.isst.oe270.degree.grammar.ast.model.Statement
+import de.fhg.isst.oe270.degree.grammar.ast.model.VariableAssignment
+import de.fhg.isst.oe270.degree.grammar.ast.model.VariableAssignmentArray
+import de.fhg.isst.oe270.degree.grammar.ast.model.VariableAssignmentTypeInstantiation
+import de.fhg.isst.oe270.degree.grammar.ast.model.VariableAttributeAssignment
+import de.fhg.isst.oe270.degree.parsing.grammar.interfaces.Node
+
+/**
+ * Validation of the data dependencies of parallel statements and parallel foreach loops.
+ *
+ * The branches of a parallel statement are executed concurrently and the variables they write are merged after all
+ * branches have finished. Hence a variable which is written by one branch must not be used by any other branch of
+ * the same parallel statement. Branches must not contain return statements, since a branch cannot end the data app.
+ * The same applies to the body of a foreach loop which processes several elements in parallel. In addition, the body
+ * of such a loop must not write a variable which it reads before writing it itself (e.g. an accumulation), since
+ * the iterations would read the value of the loop instead of the value of the previous iteration.
+ */
+class ParallelStatementValidation(private val compilerMessages: MutableList<CompilerMessage>) {
+
+    /**
+     * Validate all parallel statements within a block.
+     *
+     * @param block the block
+     */
+    fun validate(block: Block) = validate(block, null)
+
+    /**
+     * Validate a statement and all nested statements.
+     *
+     * @param statement the statement
+     * @param concurrentContext description of the innermost concurrently executed code which contains the
+     * statement, null if the statement is not executed concurrently
+     */
+    private fun validate(statement: Statement?, concurrentContext: String?) {
+        when (statement) {
+            is Block -> statement.statements.forEach { validate(it, concurrentContext) }
+            is IfStatement -> {
+                statement.blocks.forEach { validate(it, concurrentContext) }
+                validate(statement.elseBlock, concurrentContext)
+            }
+            is ParallelStatement -> {
+                validateDependencies(statement)
+                statement.branches.forEach { validate(it, "the branches of a parallel statement") }
+            }
+            is ForeachStatement -> {
+                validateParallelism(statement)
+                if (statement.parallelism > 1) {
+                    validateCarriedVariables(statement)
+                }
+                validate(statement.body,
+                        if (statement.parallelism > 1) "the body of a parallel foreach loop" else concurrentContext)
+            }
+            is ReturnStatement -> if (concurrentContext != null) {
+                compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR,
+                        "Return statements are not allowed within $concurrentContext.",
+                        statement.file, statement.position))
+            }
+        }
+    }
+
+    private fun validateParallelism(foreach: ForeachStatement) {
+        if (foreach.parallelism < 1) {
+            compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR,
+                    "The parallelism of a foreach loop must be at least 1, but is ${foreach.parallelism}.",
+                    foreach.file, foreach.position))
+        }
+        if (foreach.chunkSize < 0) {
+            compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR,
+                    "The chunk size of a foreach loop must not be negative, but is ${foreach.chunkSize}.",
+                    foreach.file, foreach.position))
+        }
+    }
+
+    private fun validateCarriedVariables(foreach: ForeachStatement) {
+        val reads = HashSet<String>()
+        readBeforeWritten(foreach.body, hashSetOf(foreach.element), reads)
+        (writtenVariables(foreach.body) intersect reads).sorted().forEach { name ->
+            compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR,
+                    "The body of the parallel foreach loop reads and writes variable '$name', whose updates would " +
+                            "be lost by concurrent iterations.",
+                    foreach.file, foreach.position))
+        }
+    }
+
+    /**
+     * Collect the names of all variables which are read by a statement before they are written by the statement
+     * itself. Writes within conditional blocks and loop bodies do not count for the following statements, since they
+     * may not be executed.
+     *
+     * @param statement the statement
+     * @param written the variables which have been written before the statement, updated with its writes
+     * @param reads collects the variables which are read before they are written
+     */
+    private fun readBeforeWritten(statement: Statement?, written: MutableSet<String>, reads: MutableSet<String>) {
+        val read = { node: Node -> OutputLiveness.mentionedVariables(node).filterTo(reads) { it !in written } }
+        when (statement) {
+            is Block -> statement.statements.forEach { readBeforeWritten(it, written, reads) }
+            is IfStatement -> {
+                statement.conditions.forEach { read(it) }
+                (statement.blocks + listOfNotNull(statement.elseBlock))
+                        .forEach { readBeforeWritten(it, HashSet(written), reads) }
+            }
+            is ParallelStatement -> {
+                statement.branches.forEach { readBeforeWritten(it, HashSet(written), reads) }
+                written.addAll(writtenVariables(statement))
+            }
+            is ForeachStatement -> {
+                read(statement.collection)
+                readBeforeWritten(statement.body, HashSet(written + statement.element), reads)
+            }
+            is ActivityCall -> {
+                statement.inputVariables.forEach { read(it) }
+                statement.outputVariables.mapTo(written) { it.name }
+            }
+            // an attribute assignment changes the current value of the variable
+            is VariableAttributeAssignment -> read(statement)
+            is VariableAssignmentTypeInstantiation -> {
+                read(statement.value)
+                written.add(statement.name)
+            }
+            is VariableAssignmentArray -> {
+                statement.values.forEach { read(it) }
+                written.add(statement.name)
+            }
+            is ReturnStatement -> statement.values.forEach { read(it) }
+        }
+    }
+
+    private fun validateDependencies(parallel: ParallelStatement) {
+        val branches = parallel.branches.toList()
+        val written = branches.map { writtenVariables(it) }
+        val mentioned = branches.map { OutputLiveness.mentionedVariables(it) }
+        for (first in branches.indices) {
+            for (second in first + 1 until branches.size) {
+                val conflicts = (written[first] intersect mentioned[second]) +
+                        (written[second] intersect mentioned[first])
+                conflicts.sorted().forEach { name ->
+                    compilerMessages.add(CompilerMessage(CompilerMessage.Kind.ERROR,
+                            "Branches ${first + 1} and ${second + 1} of the parallel statement both use variable " +
+                                    "'$name', which is written by at least one of them.",
+                            branches[second].file, branches[second].position))
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect the names of all variables which are written by a statement or one of its children.
+     *
+     * @param statement the statement
+     * @return the names of the variables
+     */
+    fun writtenVariables(statement: Statement?): Set<String> = when (statement) {
+        is Block -> statement.statements.flatMapTo(HashSet()) { writtenVariables(it) }
+        is IfStatement -> (statement.blocks + listOfNotNull(statement.elseBlock))
+                .flatMapTo(HashSet()) { writtenVariables(it) }
+        is ParallelStatement -> statement.branches.flatMapTo(HashSet()) { writtenVariables(it) }
+        is ForeachStatement -> writtenVariables(statement.body)
+        is ActivityCall -> statement.outputVariables.mapTo(HashSet()) { it.name }
+        is VariableAssignment -> setOf(statement.name)
+        else -> emptySet()
+    }
+
+}
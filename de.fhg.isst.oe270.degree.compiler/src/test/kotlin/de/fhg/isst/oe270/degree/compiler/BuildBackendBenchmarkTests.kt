@@ -0,0 +1,74 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler
+
+import org.junit.jupiter.api.Assumptions.assumeTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.nio.file.Files
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BuildBackendBenchmarkTests {
+
+    private val logger = LoggerFactory.getLogger(BuildBackendBenchmarkTests::class.java.simpleName)
+
+    /**
+     * Compares the end-to-end latency of compiling a data app with the in-process build and with maven.
+     * Every run compiles a fresh copy of the data app, so both backends have to compile and package it
+     * and the generated code of the original data app is left untouched.
+     * Run with -Ddegree.benchmark=true -Ddegree.benchmark.app=<data app source directory>.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "degree.benchmark", matches = "true")
+    fun `Benchmark in-process build against maven`() {
+        val app = System.getProperty("degree.benchmark.app")
+        assumeTrue(app != null, "There is no data app to benchmark, set degree.benchmark.app.")
+        val runs = Integer.getInteger("degree.benchmark.runs", 3)
+
+        val maven = measure(File(app!!), false, runs)
+        val inProcess = measure(File(app), true, runs)
+
+        logger.info("Median compile latency: maven ${maven}ms, in-process ${inProcess}ms")
+        assertTrue(inProcess < maven, "The in-process build is not faster than maven.")
+    }
+
+    private fun measure(app: File, inProcess: Boolean, runs: Int): Long {
+        val workDir = Files.createTempDirectory("compiler-benchmark").toFile()
+        val config = File(workDir, "compiler.properties")
+        config.writeText("build.inProcess=$inProcess\n")
+        try {
+            val durations = (1..runs).map { run ->
+                val copy = File(workDir, "app-$run")
+                app.copyRecursively(copy)
+                File(copy, "generated").deleteRecursively()
+                val start = System.nanoTime()
+                Entrypoint.startCompile(arrayOf("-c", config.path, copy.path))
+                val duration = (System.nanoTime() - start) / 1_000_000
+                assertTrue(File(copy, "generated" + File.separator + BuildCache.ARTIFACT).isFile,
+                        "The data app has not been built.")
+                duration
+            }
+            return durations.sorted()[runs / 2]
+        } finally {
+            workDir.deleteRecursively()
+        }
+    }
+
+}
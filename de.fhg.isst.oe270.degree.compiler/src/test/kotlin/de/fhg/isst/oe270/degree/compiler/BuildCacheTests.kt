@@ -0,0 +1,133 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BuildCacheTests {
+
+    private fun withDirectories(block: (generated: Path, staging: Path) -> Unit) {
+        val root = Files.createTempDirectory("build-cache")
+        try {
+            val generated = root.resolve("generated")
+            val staging = Files.createDirectories(root.resolve("staging"))
+            block(generated, staging)
+        } finally {
+            root.toFile().deleteRecursively()
+        }
+    }
+
+    private fun write(directory: Path, relative: String, content: String): Path {
+        val file = directory.resolve(relative)
+        Files.createDirectories(file.parent)
+        Files.write(file, content.toByteArray())
+        return file
+    }
+
+    @Test
+    fun `Test that unchanged files are not written again`() {
+        withDirectories { generated, staging ->
+            write(staging, "src/main/java/App.java", "class App {}")
+            write(staging, "pom.xml", "<project/>")
+            val cache = BuildCache(generated.toFile())
+
+            assertEquals(BuildCache.Changes(2, 0), cache.synchronize(staging))
+            val app = generated.resolve("src/main/java/App.java")
+            Files.setLastModifiedTime(app, FileTime.fromMillis(1000))
+
+            write(staging, "pom.xml", "<project></project>")
+            assertEquals(BuildCache.Changes(1, 0), cache.synchronize(staging))
+            assertEquals(1000, Files.getLastModifiedTime(app).toMillis())
+            assertEquals("<project></project>", String(Files.readAllBytes(generated.resolve("pom.xml"))))
+        }
+    }
+
+    @Test
+    fun `Test that files which are not generated again are removed`() {
+        withDirectories { generated, staging ->
+            write(staging, "src/main/java/a/A.java", "class A {}")
+            write(staging, "src/main/java/b/B.java", "class B {}")
+            val cache = BuildCache(generated.toFile())
+            cache.synchronize(staging)
+
+            Files.delete(staging.resolve("src/main/java/b/B.java"))
+            Files.delete(staging.resolve("src/main/java/b"))
+            assertEquals(BuildCache.Changes(0, 1), cache.synchronize(staging))
+            assertTrue(Files.isRegularFile(generated.resolve("src/main/java/a/A.java")))
+            assertFalse(Files.exists(generated.resolve("src/main/java/b")), "Empty directories are not removed.")
+        }
+    }
+
+    @Test
+    fun `Test that the build output and the key are kept`() {
+        withDirectories { generated, staging ->
+            write(staging, "pom.xml", "<project/>")
+            val cache = BuildCache(generated.toFile())
+            cache.synchronize(staging)
+            val artifact = write(generated, BuildCache.ARTIFACT, "jar")
+            write(generated, "target/classes/App.class", "class")
+            cache.store("key")
+
+            assertEquals(BuildCache.Changes(0, 0), cache.synchronize(staging))
+            assertTrue(Files.isRegularFile(artifact))
+            assertTrue(Files.isRegularFile(generated.resolve("target/classes/App.class")))
+            assertTrue(cache.isUpToDate("key"))
+        }
+    }
+
+    @Test
+    fun `Test that a build is only up to date with the same key and an artifact`() {
+        withDirectories { generated, _ ->
+            Files.createDirectories(generated)
+            val cache = BuildCache(generated.toFile())
+            cache.store("key")
+            assertFalse(cache.isUpToDate("key"), "A build without artifact is up to date.")
+
+            write(generated, BuildCache.ARTIFACT, "jar")
+            assertTrue(cache.isUpToDate("key"))
+            assertFalse(cache.isUpToDate("other"))
+
+            cache.invalidate()
+            assertFalse(cache.isUpToDate("key"))
+        }
+    }
+
+    @Test
+    fun `Test that the key depends on the content of the sources`() {
+        withDirectories { generated, _ ->
+            val source = write(generated, "app.degree", "begin end").toFile()
+            val configuration = CompilerConfiguration()
+            configuration.dataAppSourceRootDir = generated.toString()
+            val first = BuildCache.computeKey(configuration, listOf(source.path))
+            assertEquals(first, BuildCache.computeKey(configuration, listOf(source.path)))
+
+            val lastModified = source.lastModified()
+            source.writeText("begin  end")
+            source.setLastModified(lastModified)
+            assertNotEquals(first, BuildCache.computeKey(configuration, listOf(source.path)))
+        }
+    }
+
+}
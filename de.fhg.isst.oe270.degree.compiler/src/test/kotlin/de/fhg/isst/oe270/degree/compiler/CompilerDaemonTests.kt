@@ -0,0 +1,191 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Assumptions.assumeTrue
+import org.junit.jupiter.api.BeforeAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.net.Socket
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CompilerDaemonTests {
+
+    private val logger = LoggerFactory.getLogger(CompilerDaemonTests::class.java.simpleName)
+
+    private val tokenDir = Files.createTempDirectory("compiler-daemon").toFile()
+
+    private val tokenFile = File(tokenDir, "daemon.token")
+
+    private val daemon = CompilerDaemon(0, tokenFile) { throw IllegalStateException("No compilation expected.") }
+
+    private lateinit var server: HttpServer
+
+    @BeforeAll
+    fun startDaemon() {
+        server = daemon.start()
+    }
+
+    @AfterAll
+    fun stopDaemon() {
+        daemon.stop(server)
+        tokenDir.deleteRecursively()
+    }
+
+    /**
+     * Send a request without any headers which are added implicitly, like a foreign client could.
+     *
+     * @return status code and body of the response
+     */
+    private fun request(method: String,
+                        path: String,
+                        headers: Map<String, String?>,
+                        body: String = ""): Pair<Int, String> {
+        Socket(server.address.address, server.address.port).use { socket ->
+            val request = StringBuilder("$method $path HTTP/1.1\r\n")
+            headers.filterValues { it != null }.forEach { (name, value) -> request.append("$name: $value\r\n") }
+            request.append("Content-Length: ${body.toByteArray().size}\r\nConnection: close\r\n\r\n").append(body)
+            socket.getOutputStream().write(request.toString().toByteArray())
+            val response = socket.getInputStream().reader().readText()
+            val status = response.substringBefore("\r\n").split(" ")[1].toInt()
+            return Pair(status, response.substringAfter("\r\n\r\n"))
+        }
+    }
+
+    private fun headers(host: String? = "localhost:${server.address.port}",
+                        token: String? = tokenFile.readText(),
+                        origin: String? = null): Map<String, String?> {
+        return mapOf("Host" to host, "Authorization" to token?.let { "Bearer $it" }, "Origin" to origin)
+    }
+
+    @Test
+    fun `Test that the token is random and only readable by the user`() {
+        val token = tokenFile.readText()
+        assertEquals(64, token.length)
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())))
+        }
+
+        val otherFile = File(tokenDir, "other.token")
+        val other = CompilerDaemon(0, otherFile) { CompilerConfiguration() }
+        val otherServer = other.start()
+        try {
+            assertNotEquals(token, otherFile.readText())
+        } finally {
+            other.stop(otherServer)
+        }
+        assertFalse(otherFile.exists(), "The token has not been removed.")
+    }
+
+    @Test
+    fun `Test that requests with the token are accepted`() {
+        val (status, body) = request("GET", CompilerDaemon.STATUS_PATH, headers())
+        assertEquals(200, status)
+        assertEquals("compilations=0\nsubsystems=cold\n", body)
+        val numericHost = "127.0.0.1:${server.address.port}"
+        assertEquals(200, request("GET", CompilerDaemon.STATUS_PATH, headers(host = numericHost)).first)
+    }
+
+    @Test
+    fun `Test that requests without a valid token are rejected`() {
+        assertEquals(401, request("GET", CompilerDaemon.STATUS_PATH, headers(token = null)).first)
+        assertEquals(401, request("GET", CompilerDaemon.STATUS_PATH, headers(token = "0".repeat(64))).first)
+        assertEquals(401, request("POST", CompilerDaemon.COMPILE_PATH, headers(token = null), tokenDir.path).first)
+        assertEquals(401, request("POST", CompilerDaemon.SHUTDOWN_PATH, headers(token = null)).first)
+        assertFalse(daemon.awaitShutdown(0, TimeUnit.MILLISECONDS), "An unauthenticated shutdown has been accepted.")
+    }
+
+    @Test
+    fun `Test that requests for other hosts or from other origins are rejected`() {
+        val port = server.address.port
+        assertEquals(403, request("GET", CompilerDaemon.STATUS_PATH, headers(host = "attacker.example:$port")).first)
+        assertEquals(403, request("GET", CompilerDaemon.STATUS_PATH, headers(host = null)).first)
+        assertEquals(403, request("POST", CompilerDaemon.SHUTDOWN_PATH,
+                headers(origin = "http://attacker.example")).first)
+        assertEquals(200, request("GET", CompilerDaemon.STATUS_PATH,
+                headers(origin = "http://localhost:$port")).first)
+        assertFalse(daemon.awaitShutdown(0, TimeUnit.MILLISECONDS), "A cross-origin shutdown has been accepted.")
+    }
+
+    @Test
+    fun `Test that a shutdown with the token stops the daemon`() {
+        val otherFile = File(tokenDir, "shutdown.token")
+        val other = CompilerDaemon(0, otherFile) { CompilerConfiguration() }
+        val otherServer = other.start()
+        try {
+            val token = otherFile.readText()
+            Socket(otherServer.address.address, otherServer.address.port).use { socket ->
+                socket.getOutputStream().write(("POST ${CompilerDaemon.SHUTDOWN_PATH} HTTP/1.1\r\n" +
+                        "Host: localhost:${otherServer.address.port}\r\nAuthorization: Bearer $token\r\n" +
+                        "Content-Length: 0\r\nConnection: close\r\n\r\n").toByteArray())
+                assertTrue(socket.getInputStream().reader().readText().startsWith("HTTP/1.1 200"))
+            }
+            assertTrue(other.awaitShutdown(5, TimeUnit.SECONDS))
+        } finally {
+            other.stop(otherServer)
+        }
+    }
+
+    /**
+     * Compares the latency of the first compilation of a data app with the latency of a compilation with warm
+     * subsystems. Run with -Ddegree.benchmark=true -Ddegree.benchmark.app=<data app source directory>.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "degree.benchmark", matches = "true")
+    fun `Benchmark cold and warm compilations`() {
+        val app = System.getProperty("degree.benchmark.app")
+        assumeTrue(app != null, "There is no data app to benchmark, set degree.benchmark.app.")
+        val workDir = Files.createTempDirectory("compiler-daemon-benchmark").toFile()
+        try {
+            val copy = File(workDir, "app")
+            File(app!!).copyRecursively(copy)
+            File(copy, "generated").deleteRecursively()
+            val benchmarkDaemon = CompilerDaemon(0, File(workDir, "daemon.token")) {
+                Entrypoint.createCompilerConfiguration()
+            }
+
+            val cold = measure { benchmarkDaemon.compile(copy.path) }
+            val warm = measure { benchmarkDaemon.compile(copy.path) }
+
+            logger.info("Compile latency: cold ${cold}ms, warm ${warm}ms")
+            assertTrue(warm < cold, "The warm compilation is not faster than the cold compilation.")
+        } finally {
+            workDir.deleteRecursively()
+        }
+    }
+
+    private fun measure(compilation: () -> List<CompilerMessage>): Long {
+        val start = System.nanoTime()
+        val messages = compilation()
+        val duration = (System.nanoTime() - start) / 1_000_000
+        assertTrue(messages.none { it.kind == CompilerMessage.Kind.ERROR }, "The compilation failed: $messages")
+        return duration
+    }
+
+}
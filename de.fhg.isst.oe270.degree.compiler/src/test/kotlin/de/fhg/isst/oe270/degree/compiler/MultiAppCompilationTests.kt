@@ -0,0 +1,118 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler
+
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.io.File
+import java.nio.file.Files
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MultiAppCompilationTests {
+
+    private val workDir = Files.createTempDirectory("multi-app").toFile()
+
+    @AfterAll
+    fun cleanup() {
+        workDir.deleteRecursively()
+    }
+
+    private fun dataApp(name: String, vararg files: String): String {
+        val dir = File(workDir, name)
+        dir.mkdirs()
+        File(dir, "app.degree").writeText("configuration\ncode\nbegin\nend\n")
+        files.forEach { File(dir, it).also { file -> file.parentFile.mkdirs() }.writeText("---\n") }
+        return dir.path
+    }
+
+    @Test
+    fun `Test that only data apps with own subsystem files are compiled separately`() {
+        val shared = dataApp("shared")
+        val generatedOnly = dataApp("generated-only", "generated/src/main/resources/copy.types.yaml")
+        val ownTypes = dataApp("own-types", "model/app.types.yaml")
+        val ownRegistry = dataApp("own-registry", "app.registry.yaml")
+
+        val isolated = listOf(shared, generatedOnly, ownTypes, ownRegistry).filter {
+            SubsystemFileParser.findSubsystemFiles(it).isNotEmpty()
+        }
+        assertEquals(listOf(ownTypes, ownRegistry), isolated)
+        assertEquals(listOf(File(ownTypes, "model/app.types.yaml")), SubsystemFileParser.findSubsystemFiles(ownTypes))
+    }
+
+    @Test
+    fun `Test that the number of concurrent builds is limited by the build workers`() {
+        val configurations = (1..6).map { CompilerConfiguration() }
+        val permits = Semaphore(2)
+        configurations.forEach { it.buildPermits = permits }
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val start = CountDownLatch(1)
+
+        val executor = Executors.newFixedThreadPool(configurations.size)
+        try {
+            val builds = configurations.map { configuration ->
+                executor.submit<Boolean> {
+                    start.await()
+                    configuration.withBuildPermit {
+                        maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> Math.max(a, b) }
+                        Thread.sleep(50)
+                        running.decrementAndGet()
+                        true
+                    }
+                }
+            }
+            start.countDown()
+            assertTrue(builds.all { it.get(10, TimeUnit.SECONDS) })
+        } finally {
+            executor.shutdown()
+        }
+        assertEquals(2, maxRunning.get())
+        assertEquals(2, permits.availablePermits(), "Permits have not been released.")
+    }
+
+    @Test
+    fun `Test that builds without permits are not limited`() {
+        val configuration = CompilerConfiguration()
+        assertEquals("built", configuration.withBuildPermit { "built" })
+    }
+
+    @Test
+    fun `Test that the build workers are configurable`() {
+        val configuration = CompilerConfiguration()
+        assertTrue(configuration.buildWorkers >= 1)
+
+        val properties = Properties()
+        properties.setProperty("build.workers", " 3 ")
+        Entrypoint.loadCompilerConfiguration(properties, configuration)
+        assertEquals(3, configuration.buildWorkers)
+        // invalid values keep the current value
+        listOf("0", "-1", "many").forEach { value ->
+            Entrypoint.loadCompilerConfiguration(Properties().also { it.setProperty("build.workers", value) },
+                    configuration)
+            assertEquals(3, configuration.buildWorkers)
+        }
+    }
+
+}
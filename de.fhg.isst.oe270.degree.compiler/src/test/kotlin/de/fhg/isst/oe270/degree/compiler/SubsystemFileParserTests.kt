@@ -0,0 +1,138 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler
+
+import com.fasterxml.jackson.databind.node.ObjectNode
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.io.File
+import java.nio.file.Files
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SubsystemFileParserTests {
+
+    private val workDir = Files.createTempDirectory("subsystem-files").toFile()
+
+    private val cacheDir = File(workDir, "parse-cache")
+
+    @AfterAll
+    fun cleanup() {
+        SubsystemFileParser.clearParsedFiles()
+        workDir.deleteRecursively()
+    }
+
+    private fun write(name: String, content: String): File {
+        val file = File(workDir, name)
+        file.parentFile.mkdirs()
+        file.writeText(content)
+        return file
+    }
+
+    @Test
+    fun `Test that parsed files are cached on disk and copied`() {
+        val content = "primitives:\n  Cached:\n    initialValue: \"on disk\"\n"
+        val first = SubsystemFileParser.parse(content, cacheDir)
+        val cacheFile = File(cacheDir, SubsystemFileParser.cacheKey(content) + ".json")
+        assertTrue(cacheFile.isFile, "The parsed file has not been written to the cache.")
+
+        // a file which is not in memory anymore is read from the cache directory
+        SubsystemFileParser.clearParsedFiles()
+        cacheFile.writeText("{\"primitives\":{\"Cached\":{\"initialValue\":\"from cache\"}}}")
+        val second = SubsystemFileParser.parse(content, cacheDir)
+        assertEquals("on disk", first["primitives"]["Cached"]["initialValue"].asText())
+        assertEquals("from cache", second["primitives"]["Cached"]["initialValue"].asText())
+
+        (second as ObjectNode).remove("primitives")
+        assertTrue(SubsystemFileParser.parse(content, cacheDir).has("primitives"), "The cached file has changed.")
+    }
+
+    @Test
+    fun `Test that the parsed files in memory are bounded`() {
+        SubsystemFileParser.clearParsedFiles()
+        (0 until SubsystemFileParser.MAX_PARSED_FILES + 10).forEach {
+            SubsystemFileParser.parse("primitives:\n  Type$it:\n    initialValue: \"$it\"\n", cacheDir)
+        }
+        assertEquals(SubsystemFileParser.MAX_PARSED_FILES, SubsystemFileParser.parsedFileCount())
+    }
+
+    @Test
+    fun `Test that the least recently used cache files are pruned`() {
+        val dir = File(workDir, "prune")
+        dir.mkdirs()
+        val files = (0 until 5).map { index ->
+            File(dir, "$index.json").also {
+                it.writeText("{}")
+                it.setLastModified(1_000_000L * (index + 1))
+            }
+        }
+        val unrelated = File(dir, "unrelated.tmp").also { it.writeText("") }
+
+        SubsystemFileParser.pruneCacheDir(dir, 3)
+
+        assertEquals(listOf(false, false, true, true, true), files.map { it.isFile })
+        assertTrue(unrelated.isFile)
+    }
+
+    @Test
+    fun `Test that imports are parsed relative to the importing file`() {
+        write("imports/c.types.yaml", "primitives:\n  C:\n    initialValue: \"c\"\n")
+        write("imports/nested/b.types.yaml",
+                "imports:\n  - \"../c.types.yaml\"\nprimitives:\n  B:\n    initialValue: \"b\"\n")
+        val a = write("imports/a.types.yaml",
+                "imports:\n  - \"nested/b.types.yaml\"\n  - \"c.types.yaml\"\n" +
+                        "primitives:\n  A:\n    initialValue: \"a\"\n")
+        val node = SubsystemFileParser.parse(a.readText(), cacheDir)
+        assertTrue(SubsystemFileParser.hasImports(node))
+
+        val imported = SubsystemFileParser.parseImports(a.toURI(), node, cacheDir)
+        assertEquals(listOf("c.types.yaml", "b.types.yaml"), imported.map { File(it.first).name })
+        assertTrue(imported[0].second["primitives"].has("C"))
+        assertFalse(SubsystemFileParser.withoutImports(imported[1].second).has("imports"))
+        assertTrue(imported[1].second.has("imports"), "The parsed file has been modified.")
+
+        val cUri = File(workDir, "imports/c.types.yaml").toURI()
+        val remaining = SubsystemFileParser.parseImports(a.toURI(), node, cacheDir) { it == cUri }
+        assertEquals(listOf("b.types.yaml"), remaining.map { File(it.first).name })
+    }
+
+    @Test
+    fun `Test that only elements which do not exist yet are counted`() {
+        val node = SubsystemFileParser.parse("""
+            |First:
+            |  degree.Activity@First:
+            |    name:
+            |      Identifier: "First"
+            |Second:
+            |  degree.Activity@Second:
+            |    name:
+            |      Identifier: "Second"
+            |Instance:
+            |  degree.ActivityInstance@Instance:
+            |    name:
+            |      Identifier: "Instance"
+            |""".trimMargin(), cacheDir)
+
+        assertEquals(mapOf("degree.Activity" to 2, "degree.ActivityInstance" to 1),
+                SubsystemFileParser.countElementsByType(node))
+        assertEquals(mapOf("degree.Activity" to 1),
+                SubsystemFileParser.countElementsByType(node) { it != "Second" })
+    }
+
+}
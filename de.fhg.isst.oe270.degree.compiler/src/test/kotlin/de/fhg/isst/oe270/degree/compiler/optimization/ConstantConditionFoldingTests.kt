@@ -0,0 +1,148 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler.optimization
+
+import de.fhg.isst.oe270.degree.compiler.CompilerMessage
+import de.fhg.isst.oe270.degree.grammar.DegreeParserFacade
+import de.fhg.isst.oe270.degree.grammar.ast.model.ActivityCall
+import de.fhg.isst.oe270.degree.grammar.ast.model.Block
+import de.fhg.isst.oe270.degree.grammar.ast.model.IfStatement
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ConstantConditionFoldingTests {
+
+    private fun parse(code: String): Block {
+        val result = DegreeParserFacade.parseBlock("begin\n$code\nend")
+        assertTrue(result.errors.isEmpty(), "Unexpected errors ${result.errors}")
+        return result.root!!
+    }
+
+    private fun branch(condition: String) = parse("""
+        |if ($condition) begin
+        |    PrintToConsole[message];
+        |end
+        |""".trimMargin())
+
+    private fun isFolded(condition: String): Boolean {
+        val block = branch(condition)
+        return ConstantConditionFolding(ArrayList()).optimize(block) !== block
+    }
+
+    @Test
+    fun `Code without constant conditions is not changed`() {
+        val block = parse("""
+            |message = ${'$'}Text(@value["Hello World"]);
+            |if (message == "Hello World" && !(@size[message] > 3)) begin
+            |    PrintToConsole[message];
+            |end else if (message != "") begin
+            |    [result] = LogToConsole[message];
+            |end
+            |""".trimMargin())
+        val messages = ArrayList<CompilerMessage>()
+
+        assertSame(block, ConstantConditionFolding(messages).optimize(block))
+        assertTrue(messages.isEmpty())
+    }
+
+    @Test
+    fun `Always true condition is replaced by its branch`() {
+        val block = parse("""
+            |if (1 < 2) begin
+            |    PrintToConsole[message];
+            |end else begin
+            |    text = ${'$'}Text(@value["unreachable"]);
+            |    LogToConsole[text];
+            |end
+            |""".trimMargin())
+        val messages = ArrayList<CompilerMessage>()
+
+        val optimized = ConstantConditionFolding(messages).optimize(block)
+        val branch = optimized.statements.single() as Block
+        assertTrue(branch.statements.single() is ActivityCall)
+        assertTrue(messages.any { it.message.contains("2 statement(s)") }, "Missing removal in $messages")
+        assertTrue(messages.all { it.kind == CompilerMessage.Kind.INFO })
+    }
+
+    @Test
+    fun `Always false branch is removed`() {
+        val block = parse("""
+            |if ("a" == "b") begin
+            |    PrintToConsole[message];
+            |end
+            |LogToConsole[message];
+            |""".trimMargin())
+
+        val optimized = ConstantConditionFolding(ArrayList()).optimize(block)
+        assertTrue(optimized.statements.single() is ActivityCall)
+    }
+
+    @Test
+    fun `Branches after an always true condition are removed`() {
+        val block = parse("""
+            |if (message == "a") begin
+            |    PrintToConsole[message];
+            |end else if (FALSE) begin
+            |    LogToConsole[message];
+            |end else if (2.5 >= 2) begin
+            |    [result] = LogToConsole[message];
+            |end else begin
+            |    return [message];
+            |end
+            |""".trimMargin())
+
+        val ifStatement = ConstantConditionFolding(ArrayList()).optimize(block).statements.single() as IfStatement
+        assertEquals(1, ifStatement.conditions.size)
+        assertEquals(1, ifStatement.blocks.size)
+        val elseBranch = ifStatement.elseBlock!!.statements.single() as ActivityCall
+        assertEquals("result", elseBranch.outputVariables.single().name)
+    }
+
+    @Test
+    fun `Constant parentheses are folded in non constant conditions`() {
+        val block = branch("message == \"a\" && (1 < 2)")
+
+        val ifStatement = ConstantConditionFolding(ArrayList()).optimize(block).statements.single() as IfStatement
+        val condition = ifStatement.conditions.single()
+        assertEquals(true, condition.right_expression!!.expression!!.boolLiteral)
+        assertNull(condition.left_expression!!.boolLiteral)
+    }
+
+    @Test
+    fun `Conditions are evaluated with java semantics`() {
+        assertTrue(isFolded("\"a\" != \"b\""))
+        assertTrue(isFolded("!(1 == 1.0)"))
+        assertTrue(isFolded("TRUE == (3 > 2)"))
+        // would not compile and must be reported by the java compiler
+        assertTrue(!isFolded("1 == TRUE"))
+        assertTrue(!isFolded("1 < 2 < 3"))
+        assertTrue(!isFolded("FALSE && 1"))
+    }
+
+    @Test
+    fun `Conditions depending on the grouping of binary expressions are not folded`() {
+        // (TRUE || FALSE) && FALSE is false, while TRUE || (FALSE && FALSE) is true
+        assertTrue(!isFolded("TRUE || FALSE && FALSE"))
+        assertTrue(isFolded("(TRUE || FALSE) && FALSE"))
+        assertTrue(isFolded("TRUE && FALSE || TRUE"))
+    }
+
+}
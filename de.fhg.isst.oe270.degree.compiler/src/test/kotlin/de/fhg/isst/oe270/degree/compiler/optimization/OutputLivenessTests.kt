@@ -0,0 +1,109 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler.optimization
+
+import de.fhg.isst.oe270.degree.grammar.DegreeParserFacade
+import de.fhg.isst.oe270.degree.grammar.ast.model.Block
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class OutputLivenessTests {
+
+    private fun unusedOutputs(code: String): List<String> {
+        val result = DegreeParserFacade.parseBlock("begin\n$code\nend")
+        assertTrue(result.errors.isEmpty(), "Unexpected errors ${result.errors}")
+        return OutputLiveness.findUnusedOutputs(result.root!!).map { it.name }.sorted()
+    }
+
+    @Test
+    fun `Outputs which are never mentioned again are unused`() {
+        assertEquals(listOf("ignored", "unused"), unusedOutputs("""
+            |[text, unused] = ReadText[];
+            |[ignored] = PrintToConsole[text];
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Outputs which are read afterwards are used`() {
+        assertEquals(emptyList<String>(), unusedOutputs("""
+            |[text] = ReadText[];
+            |if (@size[text] > 3) begin
+            |    [length] = Count[text];
+            |    return [length];
+            |end
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Outputs which are written afterwards are used`() {
+        // the second call only updates the variable, so the first call has to store it
+        assertEquals(listOf("text"), unusedOutputs("""
+            |[text] = ReadText[];
+            |[text] = ReadText[];
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Outputs in branches are used if they are mentioned after the if statement`() {
+        assertEquals(listOf("unused"), unusedOutputs("""
+            |[text] = ReadText[];
+            |if (text == "a") begin
+            |    [result] = ReadText[];
+            |end else begin
+            |    [unused] = PrintToConsole[text];
+            |end
+            |PrintToConsole[result];
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Outputs in parallel branches are used if they are mentioned after the parallel statement`() {
+        assertEquals(listOf("unused"), unusedOutputs("""
+            |parallel begin
+            |    [text] = ReadText[];
+            |    [unused] = ReadText[];
+            |end
+            |PrintToConsole[text];
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Outputs in foreach loops are used if they are mentioned in the next iteration`() {
+        assertEquals(listOf("unused"), unusedOutputs("""
+            |foreach (record : records) begin
+            |    PrintToConsole[previous];
+            |    [previous] = PrintToConsole[record];
+            |    [unused] = PrintToConsole[record];
+            |end
+            |""".trimMargin()))
+    }
+
+
+        val block: Block = DegreeParserFacade.parseBlock("""
+            |begin
+            |    message = ${'$'}Text(@value[greeting]);
+            |    if (!(counter.value > 3)) begin
+            |        return [concat(message, suffix)];
+            |    end
+            |end
+            |""".trimMargin()).root!!
+        assertEquals(setOf("message", "greeting", "counter", "suffix"), OutputLiveness.mentionedVariables(block))
+    }
+
+}
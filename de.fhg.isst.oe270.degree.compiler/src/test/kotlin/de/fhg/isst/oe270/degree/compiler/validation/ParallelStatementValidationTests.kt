@@ -0,0 +1,154 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.compiler.validation
+
+import de.fhg.isst.oe270.degree.compiler.CompilerMessage
+import de.fhg.isst.oe270.degree.grammar.DegreeParserFacade
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ParallelStatementValidationTests {
+
+    private fun validate(code: String): List<String> {
+        val result = DegreeParserFacade.parseBlock("begin\n$code\nend")
+        assertTrue(result.errors.isEmpty(), "Unexpected errors ${result.errors}")
+        val messages = ArrayList<CompilerMessage>()
+        ParallelStatementValidation(messages).validate(result.root!!)
+        assertTrue(messages.all { it.kind == CompilerMessage.Kind.ERROR })
+        return messages.map { it.message }
+    }
+
+    @Test
+    fun `Independent branches are valid`() {
+        assertEquals(emptyList<String>(), validate("""
+            |[text] = ReadText[];
+            |parallel begin
+            |    [first] = PrintToConsole[text];
+            |    [second] = PrintToConsole[text];
+            |end
+            |PrintToConsole[first, second];
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Branches must not use variables written by other branches`() {
+        assertEquals(listOf(
+            "Branches 1 and 2 of the parallel statement both use variable 'text', which is written by at least " +
+                    "one of them.",
+            "Branches 1 and 3 of the parallel statement both use variable 'result', which is written by at least " +
+                    "one of them."
+        ), validate("""
+            |parallel begin
+            |    begin
+            |        [text] = ReadText[];
+            |        [result] = PrintToConsole[text];
+            |    end
+            |    PrintToConsole[text];
+            |    [result] = ReadText[];
+            |end
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Nested parallel statements and return statements in branches are validated`() {
+        assertEquals(listOf(
+            "Branches 1 and 2 of the parallel statement both use variable 'text', which is written by at least " +
+                    "one of them.",
+            "Return statements are not allowed within the branches of a parallel statement."
+        ), validate("""
+            |if (true) begin
+            |    parallel begin
+            |        parallel begin
+            |            [text] = ReadText[];
+            |            [text] = ReadText[];
+            |        end
+            |        begin
+            |            return [];
+            |        end
+            |    end
+            |end
+            |return [];
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Return statements are only allowed in sequential foreach loops`() {
+        assertEquals(listOf(
+            "Return statements are not allowed within the body of a parallel foreach loop."
+        ), validate("""
+            |foreach (record : records) begin
+            |    return [record];
+            |end
+            |foreach (record : records) parallel(2) begin
+            |    return [record];
+            |end
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Parallelism and chunk size of foreach loops are validated`() {
+        assertEquals(listOf(
+            "The parallelism of a foreach loop must be at least 1, but is 0.",
+            "The chunk size of a foreach loop must not be negative, but is -1."
+        ), validate("""
+            |foreach (record : records) parallel(0, -1) begin
+            |end
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Parallel foreach loops must not read and write the same variable`() {
+        assertEquals(listOf(
+            "The body of the parallel foreach loop reads and writes variable 'acc', whose updates would be lost by " +
+                    "concurrent iterations.",
+            "The body of the parallel foreach loop reads and writes variable 'seen', whose updates would be lost by " +
+                    "concurrent iterations."
+        ), validate("""
+            |[acc] = ReadText[];
+            |foreach (record : records) begin
+            |    [acc] = Concat[acc, record];
+            |end
+            |foreach (record : records) parallel(2) begin
+            |    [acc] = Concat[acc, record];
+            |    [line] = Format[record];
+            |    [printed] = PrintToConsole[line];
+            |    if (record == "a") begin
+            |        [seen] = ReadText[];
+            |    end
+            |    PrintToConsole[seen];
+            |    [seen] = ReadText[];
+            |end
+            |""".trimMargin()))
+    }
+
+    @Test
+    fun `Written variables include nested statements`() {
+        val block = DegreeParserFacade.parseBlock("""
+            |begin
+            |    message = ${'$'}Text();
+            |    if (message == "a") begin
+            |        [first, second] = ReadText[message];
+            |    end
+            |end
+            |""".trimMargin()).root!!
+        assertEquals(setOf("message", "first", "second"),
+                ParallelStatementValidation(ArrayList()).writtenVariables(block))
+    }
+
+}
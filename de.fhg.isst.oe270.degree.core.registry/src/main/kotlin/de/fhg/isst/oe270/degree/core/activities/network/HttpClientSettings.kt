@@ -0,0 +1,187 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.core.activities.network
+
+import org.slf4j.LoggerFactory
+import java.util.*
+
+/**
+ * Settings of the shared HTTP client which is used by the network activities.
+ *
+ * The settings are read from the application.properties of the data app, which can be injected with the
+ * compiler. Missing or invalid entries are replaced by the defaults.
+ *
+ * @param connectTimeout timeout for establishing a connection in milliseconds, 0 waits forever
+ * @param readTimeout timeout for reading from an established connection in milliseconds, 0 waits forever
+ * @param maxPerHost maximum number of concurrent requests to a single host
+ * @param maxTotal maximum number of concurrent requests to all hosts
+ * @param keepAlive true if connections are kept open and reused after a request
+ * @param idleTimeout time in milliseconds after which idle connections are closed, if the server does not send one
+ * @param cacheEnabled true if responses of GET requests are cached, see [HttpResponseCache]
+ * @param cacheMaxEntries maximum number of responses which are cached in memory
+ * @param cacheMaxEntrySize maximum size of a cached response in bytes
+ */
+data class HttpClientSettings(
+        val connectTimeout: Int = DEFAULT_CONNECT_TIMEOUT,
+        val readTimeout: Int = DEFAULT_READ_TIMEOUT,
+        val maxPerHost: Int = DEFAULT_MAX_PER_HOST,
+        val maxTotal: Int = DEFAULT_MAX_TOTAL,
+        val keepAlive: Boolean = true,
+        val idleTimeout: Int = DEFAULT_IDLE_TIMEOUT,
+        val cacheEnabled: Boolean = false,
+        val cacheMaxEntries: Int = DEFAULT_CACHE_MAX_ENTRIES,
+        val cacheMaxEntrySize: Int = DEFAULT_CACHE_MAX_ENTRY_SIZE
+) {
+
+    companion object {
+
+        private val logger = LoggerFactory.getLogger("core.HttpClientSettings")
+
+        /**
+         * Classpath resource which contains the settings.
+         */
+        const val PROPERTIES_RESOURCE = "application.properties"
+
+        /**
+         * Key of the connect timeout in milliseconds.
+         */
+        const val CONNECT_TIMEOUT_KEY = "degree.http.connect-timeout"
+
+        /**
+         * Key of the read timeout in milliseconds.
+         */
+        const val READ_TIMEOUT_KEY = "degree.http.read-timeout"
+
+        /**
+         * Key of the maximum number of concurrent requests per host.
+         */
+        const val MAX_PER_HOST_KEY = "degree.http.max-concurrent-per-host"
+
+        /**
+         * Key of the maximum number of concurrent requests.
+         */
+        const val MAX_TOTAL_KEY = "degree.http.max-concurrent-total"
+
+        /**
+         * Key of the flag which enables persistent connections.
+         */
+        const val KEEP_ALIVE_KEY = "degree.http.keep-alive"
+
+        /**
+         * Key of the time in milliseconds after which idle connections are closed.
+         */
+        const val IDLE_TIMEOUT_KEY = "degree.http.idle-timeout"
+
+        /**
+         * Key of the flag which enables the response cache.
+         */
+        const val CACHE_ENABLED_KEY = "degree.http.cache.enabled"
+
+        /**
+         * Key of the maximum number of responses which are cached in memory.
+         */
+        const val CACHE_MAX_ENTRIES_KEY = "degree.http.cache.max-entries"
+
+        /**
+         * Key of the maximum size of a cached response in bytes.
+         */
+        const val CACHE_MAX_ENTRY_SIZE_KEY = "degree.http.cache.max-entry-size"
+
+        /**
+         * Connect timeout which is used if nothing else is configured.
+         */
+        const val DEFAULT_CONNECT_TIMEOUT = 10_000
+
+        /**
+         * Read timeout which is used if nothing else is configured.
+         */
+        const val DEFAULT_READ_TIMEOUT = 60_000
+
+        /**
+         * Concurrent requests per host which are allowed if nothing else is configured.
+         */
+        const val DEFAULT_MAX_PER_HOST = 20
+
+        /**
+         * Concurrent requests which are allowed if nothing else is configured.
+         */
+        const val DEFAULT_MAX_TOTAL = 200
+
+        /**
+         * Idle timeout of connections which is used if nothing else is configured, the default of the JDK.
+         */
+        const val DEFAULT_IDLE_TIMEOUT = 5_000
+
+        /**
+         * Number of responses which are cached in memory if nothing else is configured.
+         */
+        const val DEFAULT_CACHE_MAX_ENTRIES = 256
+
+        /**
+         * Maximum size of a cached response which is used if nothing else is configured.
+         */
+        const val DEFAULT_CACHE_MAX_ENTRY_SIZE = 8 * 1024 * 1024
+
+        /**
+         * Load the settings from the application.properties on the classpath.
+         *
+         * @return the loaded settings, the defaults if there is no application.properties
+         */
+        fun load(): HttpClientSettings {
+            val properties = Properties()
+            try {
+                HttpClientSettings::class.java.classLoader.getResourceAsStream(PROPERTIES_RESOURCE)?.use {
+                    properties.load(it)
+                }
+            } catch (e: Exception) {
+                logger.warn("Could not read $PROPERTIES_RESOURCE, using the default HTTP client settings.")
+            }
+            return fromProperties(properties)
+        }
+
+        /**
+         * Create the settings from a set of properties.
+         *
+         * @param properties properties which may contain the keys of the HTTP client settings
+         * @return the settings
+         */
+        fun fromProperties(properties: Properties): HttpClientSettings {
+            return HttpClientSettings(
+                    connectTimeout = readInt(properties, CONNECT_TIMEOUT_KEY, DEFAULT_CONNECT_TIMEOUT, 0),
+                    readTimeout = readInt(properties, READ_TIMEOUT_KEY, DEFAULT_READ_TIMEOUT, 0),
+                    maxPerHost = readInt(properties, MAX_PER_HOST_KEY, DEFAULT_MAX_PER_HOST, 1),
+                    maxTotal = readInt(properties, MAX_TOTAL_KEY, DEFAULT_MAX_TOTAL, 1),
+                    keepAlive = properties.getProperty(KEEP_ALIVE_KEY)?.trim()?.toBoolean() ?: true,
+                    idleTimeout = readInt(properties, IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT, 1),
+                    cacheEnabled = properties.getProperty(CACHE_ENABLED_KEY)?.trim()?.toBoolean() ?: false,
+                    cacheMaxEntries = readInt(properties, CACHE_MAX_ENTRIES_KEY, DEFAULT_CACHE_MAX_ENTRIES, 1),
+                    cacheMaxEntrySize = readInt(properties, CACHE_MAX_ENTRY_SIZE_KEY, DEFAULT_CACHE_MAX_ENTRY_SIZE, 0)
+            )
+        }
+
+        private fun readInt(properties: Properties, key: String, default: Int, min: Int): Int {
+            val value = properties.getProperty(key) ?: return default
+            val parsed = value.trim().toIntOrNull()
+            if (parsed == null || parsed < min) {
+                logger.warn("Invalid value '$value' for '$key', using $default instead.")
+                return default
+            }
+            return parsed
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.core.activities.network
+
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import java.net.Proxy
+import java.net.URI
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Cache for the responses of GET requests which are performed by the network activities.
+ *
+ * Responses are cached in memory, least recently used entries are dropped. The cache honours the Cache-Control
+ * (no-store, private, no-cache, max-age) and Expires headers. Since the cache is shared by all activities of the
+ * data app, responses marked as private are not stored. Stale entries with an ETag or Last-Modified header are
+ * revalidated with a conditional request and a 304 response is served from the cache.
+ *
+ * The cache has no disk tier: cache files would be accessed outside of the permission scope of the activities,
+ * so they would bypass the file policies of the data app. The network access itself is still checked for every
+ * request, see [SharedHttpClient.checkConnect].
+ */
+class HttpResponseCache(
+        private val maxEntries: Int,
+        private val maxEntrySize: Int,
+        private val clock: () -> Long = { System.currentTimeMillis() }
+) {
+
+    companion object {
+
+        /**
+         * The cache which is shared by all activities of the data app, null if caching is disabled.
+         */
+        val shared: HttpResponseCache? by lazy {
+            val settings = SharedHttpClient.shared.settings
+            if (settings.cacheEnabled)
+                HttpResponseCache(settings.cacheMaxEntries, settings.cacheMaxEntrySize)
+            else
+                null
+        }
+
+        /**
+         * Create the key of a cached response. Requests through different proxies or with different credentials
+         * do not share responses. The credentials are only part of the key as hash.
+         *
+         * @param uri the requested URI
+         * @param proxy the proxy which is used for the request, null for a direct connection
+         * @param headers the headers of the request
+         * @return the key of the response
+         */
+        fun key(uri: URI, proxy: Proxy?, headers: HttpHeaders): String {
+            val credentials = listOf(HttpHeaders.AUTHORIZATION, HttpHeaders.PROXY_AUTHORIZATION)
+                    .joinToString("\n") { headers[it]?.joinToString(",") ?: "" }
+            val digest = MessageDigest.getInstance("SHA-256").digest(credentials.toByteArray(StandardCharsets.UTF_8))
+            return listOf(uri.toString(), headers.getFirst(HttpHeaders.ACCEPT) ?: "", proxy?.toString() ?: "",
+                    digest.joinToString("") { "%02x".format(it) }).joinToString("\n")
+        }
+
+    }
+
+    /**
+     * A cached response.
+     *
+     * @param body the body of the response
+     * @param etag the entity tag of the response, if any
+     * @param lastModified the Last-Modified header of the response, if any
+     * @param storedAt point in time (epoch milliseconds) at which the response has been received or revalidated
+     * @param maxAge the freshness lifetime in milliseconds, negative if the response must always be revalidated
+     */
+    class Entry(
+            val body: String,
+            val etag: String?,
+            val lastModified: String?,
+            val storedAt: Long,
+            val maxAge: Long
+    ) {
+
+        /**
+         * Check if the entry can be used without revalidation.
+         *
+         * @param now the current time in epoch milliseconds
+         * @return true if the entry is fresh
+         */
+        fun isFresh(now: Long) = maxAge >= 0 && now - storedAt < maxAge
+
+        /**
+         * Add the headers of a conditional request for this entry.
+         *
+         * @param headers the headers of the request
+         */
+        fun addConditionalHeaders(headers: HttpHeaders) {
+            etag?.let { headers.set(HttpHeaders.IF_NONE_MATCH, it) }
+            lastModified?.let { headers.set(HttpHeaders.IF_MODIFIED_SINCE, it) }
+        }
+
+    }
+
+    private val memory = object : LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>) = size > maxEntries
+    }
+
+    /**
+     * Get the current time of the cache.
+     *
+     * @return the current time in epoch milliseconds
+     */
+    fun now() = clock()
+
+    /**
+     * Get a cached response.
+     *
+     * @param key the key of the response
+     * @return the cached response or null if there is none
+     */
+    fun get(key: String): Entry? = synchronized(memory) { memory[key] }
+
+    /**
+     * Store a response if it is cacheable.
+     *
+     * @param key the key of the response
+     * @param response the response
+     * @return the cached entry or null if the response is not cacheable
+     */
+    fun store(key: String, response: ResponseEntity<String>): Entry? {
+        val headers = response.headers
+        val body = response.body ?: ""
+        if (response.statusCode != HttpStatus.OK || body.length > maxEntrySize) {
+            remove(key)
+            return null
+        }
+        val cacheControl = headers.cacheControl?.toLowerCase(Locale.ROOT) ?: ""
+        if (hasDirective(cacheControl, "no-store") || hasDirective(cacheControl, "private")
+                || headers.vary.isNotEmpty() && !isAcceptVary(headers.vary)) {
+            remove(key)
+            return null
+        }
+        val etag = headers.eTag
+        val lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED)
+        val maxAge = freshnessLifetime(headers, cacheControl)
+        if (maxAge < 0 && etag == null && lastModified == null) {
+            // the response can neither be reused nor revalidated
+            remove(key)
+            return null
+        }
+        return put(key, Entry(body, etag, lastModified, now(), maxAge))
+    }
+
+    /**
+     * Update a cached response after it has been revalidated with a 304 response.
+     *
+     * @param key the key of the response
+     * @param entry the revalidated entry
+     * @param headers the headers of the 304 response
+     * @return the updated entry
+     */
+    fun revalidated(key: String, entry: Entry, headers: HttpHeaders): Entry {
+        val cacheControl = headers.cacheControl?.toLowerCase(Locale.ROOT) ?: ""
+        val maxAge = if (headers.cacheControl != null || headers.expires >= 0)
+            freshnessLifetime(headers, cacheControl)
+        else
+            entry.maxAge
+        return put(key, Entry(entry.body, headers.eTag ?: entry.etag,
+                headers.getFirst(HttpHeaders.LAST_MODIFIED) ?: entry.lastModified, now(), maxAge))
+    }
+
+    /**
+     * Remove a cached response.
+     *
+     * @param key the key of the response
+     */
+    fun remove(key: String) {
+        synchronized(memory) {
+            memory.remove(key)
+        }
+    }
+
+    private fun put(key: String, entry: Entry): Entry {
+        synchronized(memory) {
+            memory[key] = entry
+        }
+        return entry
+    }
+
+    /**
+     * Determine how long a response is fresh.
+     *
+     * @return the lifetime in milliseconds, negative if the response must always be revalidated
+     */
+    private fun freshnessLifetime(headers: HttpHeaders, cacheControl: String): Long {
+        if (hasDirective(cacheControl, "no-cache")) {
+            return -1
+        }
+        val maxAge = Regex("(?:^|[,\\s])max-age\\s*=\\s*\"?(\\d+)").find(cacheControl)?.groupValues?.get(1)
+        if (maxAge != null) {
+            return TimeUnit.SECONDS.toMillis(maxAge.toLong())
+        }
+        val expires = headers.expires
+        if (expires >= 0) {
+            val date = if (headers.date >= 0) headers.date else now()
+            return expires - date
+        }
+        return -1
+    }
+
+    private fun isAcceptVary(vary: List<String>) = vary.all { HttpHeaders.ACCEPT.equals(it.trim(), true) }
+
+    /**
+     * Check if a Cache-Control header contains a directive, with or without arguments.
+     */
+    private fun hasDirective(cacheControl: String, directive: String) =
+            Regex("(?:^|[,\\s])${Regex.escape(directive)}\\s*(?:=|,|$)").containsMatchIn(cacheControl)
+
+}
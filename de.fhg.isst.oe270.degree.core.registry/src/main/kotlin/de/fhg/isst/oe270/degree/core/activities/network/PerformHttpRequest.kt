@@ -23,14 +23,14 @@ import de.fhg.isst.oe270.degree.types.TypeTaxonomy
 import nukleus.core.Identifier
 import org.slf4j.LoggerFactory
 import org.springframework.http.*
-import org.springframework.http.client.SimpleClientHttpRequestFactory
-import org.springframework.web.client.RestTemplate
 import java.net.InetSocketAddress
 import java.net.Proxy
 
 
 @ActivityAnnotation("core.PerformHttpRequest")
-class PerformHttpRequest : BaseActivity(){
+class PerformHttpRequest(
+        private val responseCache : HttpResponseCache? = HttpResponseCache.shared
+) : BaseActivity(){
 
     private val logger = LoggerFactory.getLogger("core.PerformHttpRequest")
 
@@ -75,15 +75,14 @@ class PerformHttpRequest : BaseActivity(){
             outputScope.add("error", errorInstance)
         }
 
-        val requestFactory = SimpleClientHttpRequestFactory()
-
+        var proxy : Proxy? = null
         if (proxyHost.isNotBlank() && proxyHost.isNotEmpty()) {
-            val proxy = Proxy(Proxy.Type.HTTP, InetSocketAddress(proxyHost, proxyPort!!))
-            requestFactory.setProxy(proxy)
+            proxy = Proxy(Proxy.Type.HTTP, InetSocketAddress(proxyHost, proxyPort!!))
         }
 
-        // perform rest call
-        val restTemplate = RestTemplate(requestFactory)
+        // perform rest call with the shared client
+        val client = SharedHttpClient.shared
+        val uri = client.template(proxy).uriTemplateHandler.expand(url)
         val headers = HttpHeaders()
         val httpMethodVal = when(httpMethod.toUpperCase()) {
             "GET" -> HttpMethod.GET
@@ -105,14 +104,31 @@ class PerformHttpRequest : BaseActivity(){
             headers.accept = acceptedTypes.split(",").map { MediaType.parseMediaType(it) }
         }
 
-        val response : ResponseEntity<String> = restTemplate.exchange(url, httpMethodVal!!, HttpEntity(body, headers), String::class.java)
-        // build output scope
-        val result = TypeTaxonomy.getInstance().create(Identifier.of("core.Text"))
-        if (response.hasBody()) {
-            result.write(response.body!!)
+        // only GET requests without body are cached
+        val cache = if (httpMethodVal == HttpMethod.GET && body.isEmpty()) responseCache else null
+        val cacheKey = HttpResponseCache.key(uri, proxy, headers)
+        val cached = cache?.get(cacheKey)
+
+        val responseBody : String
+        if (cache != null && cached != null && cached.isFresh(cache.now())) {
+            // the network access is checked even if no request is sent
+            client.checkConnect(uri, proxy)
+            responseBody = cached.body
         } else {
-            result.write("")
+            cached?.addConditionalHeaders(headers)
+            val response : ResponseEntity<String> = client.execute(uri, proxy) {
+                it.exchange(uri, httpMethodVal!!, HttpEntity(body, headers), String::class.java)
+            }
+            responseBody = when {
+                cache == null -> response.body ?: ""
+                cached != null && response.statusCode == HttpStatus.NOT_MODIFIED ->
+                    cache.revalidated(cacheKey, cached, response.headers).body
+                else -> cache.store(cacheKey, response)?.body ?: response.body ?: ""
+            }
         }
+        // build output scope
+        val result = TypeTaxonomy.getInstance().create(Identifier.of("core.Text"))
+        result.write(responseBody)
         val outputScope = OutputScope()
         outputScope.add("response", result)
 
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.core.activities.network
+
+import de.fhg.isst.oe270.degree.activities.BaseActivity
+import de.fhg.isst.oe270.degree.activities.annotations.ActivityAnnotation
+import de.fhg.isst.oe270.degree.activities.execution.InputScope
+import de.fhg.isst.oe270.degree.activities.execution.OutputScope
+import de.fhg.isst.oe270.degree.runtime.java.security.functionality.modules.DegreeFileOperations
+import de.fhg.isst.oe270.degree.types.TypeTaxonomy
+import nukleus.core.Identifier
+import org.slf4j.LoggerFactory
+import org.springframework.http.HttpMethod
+import org.springframework.http.MediaType
+import org.springframework.web.client.RequestCallback
+import org.springframework.web.client.ResponseExtractor
+import java.net.InetSocketAddress
+import java.net.Proxy
+
+/**
+ * Performs an HTTP request whose bodies are streamed from and to files instead of being held in memory.
+ *
+ * The request body is read from the file 'requestBodyFile' (no body if the path is empty) and the response
+ * body is written to the file 'responseFile'. The file operations are performed with [DegreeFileOperations],
+ * so the transferred bytes are reported to the permission scope and file quotas apply.
+ */
+@ActivityAnnotation("core.PerformStreamingHttpRequest")
+class PerformStreamingHttpRequest : BaseActivity() {
+
+    private val logger = LoggerFactory.getLogger("core.PerformStreamingHttpRequest")
+
+    private val inputNames = listOf("proxyHost", "proxyPort", "url", "httpMethod", "contentType",
+            "acceptedTypes", "requestBodyFile", "responseFile")
+
+    override fun run(input: InputScope): OutputScope {
+        // check if all required inputs are available
+        if (!inputNames.all { input.values.containsKey(it) }) {
+            return error("Missing input data.", "Execution aborted because of missing input data.")
+        }
+        val values = inputNames.associateWith { input.values[it]!!.read() }
+
+        val httpMethod = HttpMethod.resolve(values.getValue("httpMethod").toUpperCase())
+                ?: return error("Unknown HTTP method.", "Execution aborted because of an unknown HTTP method.")
+        val proxyHost = values.getValue("proxyHost")
+        val proxy = if (proxyHost.isNotBlank())
+            Proxy(Proxy.Type.HTTP, InetSocketAddress(proxyHost, values.getValue("proxyPort").toInt()))
+        else
+            null
+        val contentType = values.getValue("contentType")
+        val acceptedTypes = values.getValue("acceptedTypes")
+        val requestBodyFile = values.getValue("requestBodyFile")
+        val responseFile = values.getValue("responseFile")
+
+        val requestCallback = RequestCallback { request ->
+            if (contentType.isNotBlank()) {
+                request.headers.contentType = MediaType.parseMediaType(contentType)
+            }
+            if (acceptedTypes.isNotBlank()) {
+                request.headers.accept = acceptedTypes.split(",").map { MediaType.parseMediaType(it) }
+            }
+            if (requestBodyFile.isNotBlank()) {
+                // a known length allows fixed length streaming instead of chunked transfer encoding
+                request.headers.contentLength = DegreeFileOperations.getFileSize(requestBodyFile)
+                DegreeFileOperations.copyFileToStream(requestBodyFile, request.body)
+            }
+        }
+        val responseExtractor = ResponseExtractor { response ->
+            Pair(response.rawStatusCode, DegreeFileOperations.writeStreamToFile(responseFile, response.body, false))
+        }
+
+        // perform rest call with the shared client
+        val client = SharedHttpClient.shared
+        val uri = client.template(proxy, true).uriTemplateHandler.expand(values.getValue("url"))
+        val (statusCode, responseBytes) = client.execute(uri, proxy, true) {
+            it.execute(uri, httpMethod, requestCallback, responseExtractor)!!
+        }
+
+        // build output scope
+        val outputScope = OutputScope()
+        val status = TypeTaxonomy.getInstance().create(Identifier.of("core.Text"))
+        status.write(statusCode.toString())
+        outputScope.add("statusCode", status)
+        val bytes = TypeTaxonomy.getInstance().create(Identifier.of("core.Text"))
+        bytes.write(responseBytes.toString())
+        outputScope.add("responseBytes", bytes)
+
+        return outputScope
+    }
+
+    private fun error(logMessage: String, message: String): OutputScope {
+        logger.error(logMessage)
+        val errorInstance = TypeTaxonomy.getInstance().create(Identifier.of("core.Error"))
+        errorInstance.write(message)
+        val outputScope = OutputScope()
+        outputScope.add("error", errorInstance)
+
+        return outputScope
+    }
+
+}
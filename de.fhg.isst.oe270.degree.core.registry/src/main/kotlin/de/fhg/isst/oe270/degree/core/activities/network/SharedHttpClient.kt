@@ -0,0 +1,217 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.core.activities.network
+
+import org.slf4j.LoggerFactory
+import org.springframework.http.client.SimpleClientHttpRequestFactory
+import org.springframework.web.client.RestTemplate
+import java.net.HttpURLConnection
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.net.URI
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+
+/**
+ * Shared HTTP client of the network activities.
+ *
+ * Creating a rest template for every request is expensive, since its message converters are set up again for
+ * each call. All requests are therefore performed with shared rest templates (one per proxy and body mode).
+ * The number of concurrent requests is limited per host and in total, see [HttpClientSettings].
+ *
+ * This class does not pool connections itself. The rest templates use [HttpURLConnection], so idle connections are
+ * kept by the keep-alive cache of the JDK, which is configured with system properties. [configureKeepAliveCache]
+ * aligns these properties with the settings of the shared client: `http.maxConnections` keeps as many idle
+ * connections per host as requests to the host may run concurrently (the JDK default is 5), and
+ * `http.keepAlive.time.server` and `http.keepAlive.time.proxy` close idle connections after
+ * [HttpClientSettings.idleTimeout] unless the server sends its own Keep-Alive timeout. Idle connections are evicted
+ * by the JDK when they are requested again and by its cleaner thread. Setting [HttpClientSettings.keepAlive] to false
+ * closes every connection after its request.
+ *
+ * Reused connections are not checked by the security manager, since no new socket is opened. The connect
+ * permission is therefore checked explicitly for every request, so each call is accounted in the
+ * permission scope like before.
+ */
+class SharedHttpClient(val settings: HttpClientSettings) {
+
+    companion object {
+
+        /**
+         * The pool which is shared by all activities of the data app.
+         */
+        val shared: SharedHttpClient by lazy {
+            val settings = HttpClientSettings.load()
+            configureKeepAliveCache(settings)
+            SharedHttpClient(settings)
+        }
+
+        /**
+         * System property of the JDK with the maximum number of idle connections per host.
+         */
+        const val MAX_CONNECTIONS_PROPERTY = "http.maxConnections"
+
+        /**
+         * System property of the JDK with the idle timeout of connections to servers in seconds.
+         */
+        const val KEEP_ALIVE_TIME_SERVER_PROPERTY = "http.keepAlive.time.server"
+
+        /**
+         * System property of the JDK with the idle timeout of connections to proxies in seconds.
+         */
+        const val KEEP_ALIVE_TIME_PROXY_PROPERTY = "http.keepAlive.time.proxy"
+
+        /**
+         * Key of the rest template which is used for requests without proxy.
+         */
+        private val DIRECT = Any()
+
+        private val logger = LoggerFactory.getLogger("core.SharedHttpClient")
+
+        /**
+         * Configure the keep-alive cache of the JDK with the settings of a client. The JDK reads the properties once,
+         * when the first connection is cached, and uses them for all connections of the JVM. The shared client is
+         * therefore configured when the network activities are created at the start of the data app. Properties
+         * which are already set (e.g. on the command line) are not changed.
+         *
+         * @param settings the settings of the client
+         */
+        fun configureKeepAliveCache(settings: HttpClientSettings) {
+            val idleSeconds = ((settings.idleTimeout + 999) / 1000).toString()
+            try {
+                setIfAbsent(MAX_CONNECTIONS_PROPERTY, settings.maxPerHost.toString())
+                setIfAbsent(KEEP_ALIVE_TIME_SERVER_PROPERTY, idleSeconds)
+                setIfAbsent(KEEP_ALIVE_TIME_PROXY_PROPERTY, idleSeconds)
+            } catch (e: SecurityException) {
+                logger.warn("Could not configure the keep-alive cache, using the defaults of the JDK.")
+            }
+        }
+
+        private fun setIfAbsent(key: String, value: String) {
+            if (System.getProperty(key) == null) {
+                System.setProperty(key, value)
+            }
+        }
+
+    }
+
+    private val templates = ConcurrentHashMap<Any, RestTemplate>()
+
+    private val hostPermits = ConcurrentHashMap<String, Semaphore>()
+
+    private val totalPermits = Semaphore(settings.maxTotal, true)
+
+    /**
+     * Perform a request with a pooled rest template.
+     *
+     * @param uri the requested URI
+     * @param proxy the proxy which is used for the request, null for a direct connection
+     * @param streaming true if request bodies are streamed instead of being buffered in memory
+     * @param call the request which is performed with the rest template
+     * @return the result of the request
+     * @throws HttpRequestLimitException if the request limit is still reached after the connect timeout
+     */
+    fun <T> execute(uri: URI, proxy: Proxy?, streaming: Boolean = false, call: (RestTemplate) -> T): T {
+        checkConnect(uri, proxy)
+
+        val host = hostKey(uri)
+        val hostPermit = hostPermits.computeIfAbsent(host) { Semaphore(settings.maxPerHost, true) }
+        acquire(totalPermits, host)
+        try {
+            acquire(hostPermit, host)
+            try {
+                return call(template(proxy, streaming))
+            } finally {
+                hostPermit.release()
+            }
+        } finally {
+            totalPermits.release()
+        }
+    }
+
+    /**
+     * Get the rest template for a proxy.
+     *
+     * @param proxy the proxy, null for direct connections
+     * @param streaming true if request bodies are streamed instead of being buffered in memory
+     * @return the shared rest template
+     */
+    fun template(proxy: Proxy?, streaming: Boolean = false): RestTemplate =
+            templates.computeIfAbsent(Pair(proxy ?: DIRECT, streaming)) {
+                RestTemplate(createRequestFactory(proxy, streaming))
+            }
+
+    private fun createRequestFactory(proxy: Proxy?, streaming: Boolean): SimpleClientHttpRequestFactory {
+        val keepAlive = settings.keepAlive
+        val requestFactory = object : SimpleClientHttpRequestFactory() {
+            override fun prepareConnection(connection: HttpURLConnection, httpMethod: String) {
+                super.prepareConnection(connection, httpMethod)
+                if (!keepAlive) {
+                    connection.setRequestProperty("Connection", "close")
+                }
+            }
+        }
+        requestFactory.setConnectTimeout(settings.connectTimeout)
+        requestFactory.setReadTimeout(settings.readTimeout)
+        // buffered bodies are required for requests without output (e.g. GET with an empty body)
+        requestFactory.setBufferRequestBody(!streaming)
+        if (proxy != null) {
+            requestFactory.setProxy(proxy)
+        }
+        return requestFactory
+    }
+
+    /**
+     * Check the connect permission of the requested host (and the proxy) with the security manager.
+     * This is done for every request, even if the response is taken from a cache.
+     *
+     * @param uri the requested URI
+     * @param proxy the proxy which is used for the request, null for a direct connection
+     */
+    fun checkConnect(uri: URI, proxy: Proxy?) {
+        val securityManager = System.getSecurityManager() ?: return
+        val host = uri.host ?: return
+        securityManager.checkConnect(host, port(uri))
+        val proxyAddress = proxy?.address()
+        if (proxyAddress is InetSocketAddress) {
+            securityManager.checkConnect(proxyAddress.hostString, proxyAddress.port)
+        }
+    }
+
+    private fun acquire(permits: Semaphore, host: String) {
+        if (settings.connectTimeout == 0) {
+            permits.acquire()
+        } else if (!permits.tryAcquire(settings.connectTimeout.toLong(), TimeUnit.MILLISECONDS)) {
+            throw HttpRequestLimitException("Too many concurrent requests to '$host', no slot was free " +
+                    "within ${settings.connectTimeout} ms.")
+        }
+    }
+
+    private fun hostKey(uri: URI) = "${uri.scheme}://${uri.host}:${port(uri)}"
+
+    private fun port(uri: URI) = when {
+        uri.port != -1 -> uri.port
+        "https".equals(uri.scheme, ignoreCase = true) -> 443
+        else -> 80
+    }
+
+}
+
+/**
+ * Thrown if a request cannot be performed because the [SharedHttpClient] already performs the maximum number
+ * of concurrent requests.
+ */
+class HttpRequestLimitException(message: String) : RuntimeException(message)
@@ -22,6 +22,7 @@ import de.fhg.isst.oe270.degree.activities.execution.OutputScope
 import de.fhg.isst.oe270.degree.runtime.java.security.functionality.modules.DegreeFileOperations
 import de.fhg.isst.oe270.degree.types.TypeTaxonomy
 import nukleus.core.Identifier
+import nukleus.core.Instance
 
 @ActivityAnnotation("core.ExecCmd")
 class ExecCmd : BaseActivity() {
@@ -36,16 +37,25 @@ class ExecCmd : BaseActivity() {
         if (arguments.isNotEmpty()) {
             execCmd += " $arguments"
         }
-        // execute the cmd
-        val returnVal = DegreeFileOperations.executeFile(execCmd)
+        // execute the cmd with the configured timeout and output limit
+        val execution = DegreeFileOperations.executeCommand(execCmd)
         // build the outputscope
         val result = OutputScope()
 
-        val execOutput = TypeTaxonomy.getInstance().create(Identifier.of("core.Text"))
-        execOutput.write(returnVal)
-        result.values["returnValue"] = execOutput
+        result.values["returnValue"] = text(execution.output)
+        result.values["errorOutput"] = text(execution.errorOutput)
+        result.values["exitCode"] = text(execution.exitCode.toString())
+        result.values["duration"] = text(execution.durationMillis.toString())
+        result.values["timedOut"] = text(execution.isTimedOut.toString())
+        result.values["outputTruncated"] = text(execution.isTruncated.toString())
 
         return result
     }
 
+    private fun text(value: String): Instance {
+        val instance = TypeTaxonomy.getInstance().create(Identifier.of("core.Text"))
+        instance.write(value)
+        return instance
+    }
+
 }
\ No newline at end of file
@@ -19,7 +19,6 @@ import de.fhg.isst.oe270.degree.policies.annotations.PolicyAnnotation
 import de.fhg.isst.oe270.degree.policies.api.EmbeddedPolicyApi
 import de.fhg.isst.oe270.degree.policies.execution.PolicyInputScope
 import de.fhg.isst.oe270.degree.runtime.java.context.ExecutionContext
-import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadOnlyEntity
 import de.fhg.isst.oe270.degree.runtime.java.security.resolving.EvaluationCondition
 import org.slf4j.LoggerFactory
 
@@ -28,6 +27,8 @@ class RequireUserrole : EmbeddedPolicyApi {
 
     val logger = LoggerFactory.getLogger("RequireRole")!!
 
+    private val userroles by lazy { ExecutionContext.getInstance().compilePath("UserInformation.userroles") }
+
     override fun acceptPrecondition(policyInput : PolicyInputScope): Boolean {
         val role : String
         try {
@@ -42,8 +43,7 @@ class RequireUserrole : EmbeddedPolicyApi {
             return false
         }
 
-        val currentRoles = ((ExecutionContext.getInstance().getModule("UserInformation")
-                .getContextEntity("userroles") as ReadOnlyEntity).read() as String).split(",")
+        val currentRoles = userroles.readAsSet(",")
 
         if (!currentRoles.contains(role)) {
             logger.error("Validation failed. Required role is '$role' but " +
@@ -19,7 +19,6 @@ import de.fhg.isst.oe270.degree.policies.annotations.PolicyAnnotation
 import de.fhg.isst.oe270.degree.policies.api.EmbeddedPolicyApi
 import de.fhg.isst.oe270.degree.policies.execution.PolicyInputScope
 import de.fhg.isst.oe270.degree.runtime.java.context.ExecutionContext
-import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadOnlyEntity
 import de.fhg.isst.oe270.degree.runtime.java.security.resolving.EvaluationCondition
 import org.slf4j.LoggerFactory
 
@@ -28,6 +27,8 @@ class DenyUserroleJwt : EmbeddedPolicyApi {
 
     val logger = LoggerFactory.getLogger("DenyRoleJwt")!!
 
+    private val userroles by lazy { ExecutionContext.getInstance().compilePath("JWTUserInformation.userroles") }
+
     override fun acceptPrecondition(policyInput : PolicyInputScope): Boolean {
         val role : String
         try {
@@ -42,8 +43,12 @@ class DenyUserroleJwt : EmbeddedPolicyApi {
             return false
         }
 
-        val currentRoles = ((ExecutionContext.getInstance().getModule("JWTUserInformation")
-                .getContextEntity("userroles") as ReadOnlyEntity).read() as String).split(",")
+        // unknown roles could contain the forbidden role
+        if (userroles.read() == null) {
+            logger.error("Validation failed. The current roles are unknown.")
+            return false
+        }
+        val currentRoles = userroles.readAsSet(",")
 
         if (currentRoles.contains(role)) {
             logger.error("Validation failed. The JWT role '$role' is forbidden but is contained in" +
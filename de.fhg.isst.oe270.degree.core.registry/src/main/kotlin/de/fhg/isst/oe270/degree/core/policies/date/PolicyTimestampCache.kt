@@ -0,0 +1,67 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.core.policies.date
+
+import de.fhg.isst.oe270.degree.policies.execution.PolicyInputScope
+import java.time.LocalDateTime
+
+/**
+ * Caches the converted timestamps of a date constraint.
+ *
+ * The sandbox parses the mapped elements of a constraint for every evaluation, so the timestamps are identified by
+ * their serialized form. The converted [LocalDateTime] is immutable and can be shared by all evaluations.
+ */
+class PolicyTimestampCache(private val key: String, private val maxEntries: Int = MAX_ENTRIES) {
+
+    companion object {
+        /**
+         * Default number of timestamps which are kept per constraint.
+         */
+        const val MAX_ENTRIES = 64
+    }
+
+    private val timestamps = object : LinkedHashMap<String, LocalDateTime>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, LocalDateTime>?) = size > maxEntries
+    }
+
+    /**
+     * Retrieve the timestamp stored in the policy input.
+     *
+     * @param policyInput input scope which contains an 'time.DateTime' instance
+     * @return LocalDateTime object with the same values as the instance inside the policyInput
+     * @throws IllegalArgumentException if the input is missing or has the wrong type
+     * @see DatePolicyUtils.convertLocalDateTimeToJava
+     */
+    fun get(policyInput: PolicyInputScope): LocalDateTime {
+        val serialized = policyInput.get(key)?.serialize()?.toString()
+                ?: return DatePolicyUtils.convertLocalDateTimeToJava(policyInput, key)
+        synchronized(timestamps) {
+            timestamps[serialized]?.let { return it }
+        }
+
+        val timestamp = DatePolicyUtils.convertLocalDateTimeToJava(policyInput, key)
+        synchronized(timestamps) {
+            timestamps[serialized] = timestamp
+        }
+        return timestamp
+    }
+
+    /**
+     * Get the number of cached timestamps.
+     */
+    fun size(): Int = synchronized(timestamps) { timestamps.size }
+
+}
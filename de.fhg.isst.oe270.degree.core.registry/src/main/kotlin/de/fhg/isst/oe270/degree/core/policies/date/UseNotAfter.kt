@@ -19,6 +19,7 @@ import de.fhg.isst.oe270.degree.policies.annotations.PolicyAnnotation
 import de.fhg.isst.oe270.degree.policies.api.EmbeddedPolicyApi
 import de.fhg.isst.oe270.degree.policies.execution.PolicyInputScope
 import de.fhg.isst.oe270.degree.runtime.java.security.resolving.EvaluationCondition
+import de.fhg.isst.oe270.degree.runtime.java.usage.control.`object`.UsageControlClock
 import org.slf4j.LoggerFactory
 import java.time.LocalDateTime
 import java.util.*
@@ -28,15 +29,17 @@ class UseNotAfter : EmbeddedPolicyApi {
 
     private val logger = LoggerFactory.getLogger("UseNotAfter")!!
 
+    private val timestampCache = PolicyTimestampCache("timestamp")
+
     override fun acceptPrecondition(policyInput : PolicyInputScope): Boolean {
         val policyDate: LocalDateTime
         try {
-            policyDate = DatePolicyUtils.convertLocalDateTimeToJava(policyInput, "timestamp")
+            policyDate = timestampCache.get(policyInput)
         } catch (e: IllegalArgumentException) {
             logger.error("Could not parse date.", e)
             return false
         }
-        val currentTime = LocalDateTime.now()
+        val currentTime = UsageControlClock.now()
 
         if (currentTime.isAfter(policyDate)) {
             logger.error("Validation failed. Latest allowed time is ${policyDate.format(DatePolicyUtils.dateFormatter)} but " +
@@ -26,12 +26,24 @@ import de.fhg.isst.oe270.degree.runtime.java.security.resolving.enums.DegreePerm
 import de.fhg.isst.oe270.degree.runtime.java.security.resolving.enums.PermissionMatchingStrategy
 import nukleus.core.Instance
 import org.slf4j.LoggerFactory
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicLong
 
 abstract class QuotaFile: EmbeddedPolicyApi {
 
     val logger = LoggerFactory.getLogger("QuotaReadFile")!!
 
-    private var readBytes: Long = 0
+    /**
+     * The bytes consumed by all calls. Branches of parallel blocks and foreach loops evaluate the same policy
+     * concurrently, so the bytes are only changed atomically with the check against the quota.
+     */
+    private val consumedBytes = AtomicLong()
+
+    /**
+     * Prefix of the evaluation data which holds the bytes this policy has already consumed for a file in the
+     * current call.
+     */
+    private val consumedTag = "QUOTA_CONSUMED:${UUID.randomUUID()}:"
 
     abstract fun getPermissionType() : DegreePermissionType
 
@@ -72,6 +84,7 @@ abstract class QuotaFile: EmbeddedPolicyApi {
                 unitInstance.read()
         )
 
+        val readBytes = consumedBytes.get()
         return if (readBytes < availableQuota) {
             true
         } else {
@@ -92,6 +105,7 @@ abstract class QuotaFile: EmbeddedPolicyApi {
 
         val givenQuota = ByteUnitUtils.toByte(quotaInstance.read().toLong(), unitInstance.read())
         val quotaUsedByThisRequest = PermissionScope.getInstance().evaluationData[getByteOptionName()] as Long
+        val readBytes = consumedBytes.get()
         logger.info(
                 "${"%.2f".format((readBytes.toFloat()/givenQuota) * 100)}% " +
                 "(${ByteUnitUtils.toBytePrefix(readBytes, unitInstance.read())}${unitInstance.read()}/" +
@@ -101,20 +115,20 @@ abstract class QuotaFile: EmbeddedPolicyApi {
                 "(${ByteUnitUtils.toBytePrefix(quotaUsedByThisRequest, unitInstance.read())}${unitInstance.read()}) of" +
                 " the granted quota.")
         // check if the call affects this constraint
+        val filePath = PermissionScope.getInstance().evaluationData[DegreeFileOperations.FILE_PATH] as String
         if (!evaluatePaths(
                         pathInstance.read(),
-                        PermissionMatchingStrategy.preparePath(
-                                PermissionScope.getInstance().evaluationData[DegreeFileOperations.FILE_PATH] as String
-                        ),
+                        PermissionMatchingStrategy.preparePath(filePath),
                         matchingStrategy
                         )
         ) {
             return listOf()
         }
 
-        // we need to check if this action would exceeds the granted quota
-        return if ((quotaUsedByThisRequest + readBytes) > givenQuota) {
-            val exceedValue = quotaUsedByThisRequest + readBytes - givenQuota
+        // we need to check if this action would exceeds the granted quota, the bytes are consumed immediately
+        // so concurrent calls cannot exceed it together
+        val exceedValue = consume(filePath, quotaUsedByThisRequest, givenQuota)
+        return if (exceedValue > 0) {
             throw DegreeForbiddenSecurityFeatureException("The execution is aborted because a requested file operation " +
                     "operation exceeds the granted quota of ${quotaInstance.read()}${unitInstance.read()}" +
                     " by ${exceedValue}B.")
@@ -132,7 +146,8 @@ abstract class QuotaFile: EmbeddedPolicyApi {
 
     /**
      * The postcondition cannot fail since all validation is already performed.
-     * But it is necessary that we adjust the value which indicated the used amount of the quota.
+     * But it is necessary that we adjust the value which indicated the used amount of the quota, if the bytes of
+     * the call have not been consumed while the security manager evaluated them.
      */
     override fun acceptPostcondition(input: PolicyInputScope): Boolean {
         // skip all non relevant permissions
@@ -149,22 +164,46 @@ abstract class QuotaFile: EmbeddedPolicyApi {
 
         val matchingStrategy = retrievePermissionMatchingStrategy(input)
         // check if the call affects this constraint
+        val filePath = PermissionScope.getInstance().evaluationData[DegreeFileOperations.FILE_PATH] as String
         if (!evaluatePaths(
                         pathInstance.read(),
-                        PermissionMatchingStrategy.preparePath(
-                                PermissionScope.getInstance().evaluationData[DegreeFileOperations.FILE_PATH] as String
-                        ),
+                        PermissionMatchingStrategy.preparePath(filePath),
                         matchingStrategy
                 )
         ) {
             return true
         }
 
-        readBytes +=  PermissionScope.getInstance().evaluationData[getByteOptionName()] as Long
+        consume(filePath, PermissionScope.getInstance().evaluationData[getByteOptionName()] as Long, Long.MAX_VALUE)
         return true
 
     }
 
+    /**
+     * Consume the bytes of the current call on a file, which have not been consumed yet. The bytes of a call are
+     * accounted as a total per file, so only the difference to the bytes consumed for the same file before is
+     * added. Nothing is consumed if this would exceed the given quota.
+     *
+     * @param filePath the accessed file
+     * @param requestedBytes the total of bytes of the current call on the file
+     * @param givenQuota the granted quota in bytes
+     * @return the number of bytes by which the quota would be exceeded, or 0 if the bytes were consumed
+     */
+    private fun consume(filePath : String, requestedBytes : Long, givenQuota : Long) : Long {
+        val scope = PermissionScope.getInstance()
+        val fileTag = consumedTag + filePath
+        val delta = requestedBytes - (scope.getEvaluationData(fileTag) as Long? ?: 0L)
+        if (delta <= 0) {
+            return 0
+        }
+        val previous = consumedBytes.getAndUpdate { if (it + delta > givenQuota) it else it + delta }
+        if (previous + delta > givenQuota) {
+            return previous + delta - givenQuota
+        }
+        scope.addAdditionalPermissionData(fileTag, requestedBytes)
+        return 0
+    }
+
     private fun retrievePermissionMatchingStrategy(input: PolicyInputScope): PermissionMatchingStrategy {
         return when (input.get("matchingStrategy")!!.read()) {
             "EXACT" -> PermissionMatchingStrategy.PATH_EXACT_MATCH
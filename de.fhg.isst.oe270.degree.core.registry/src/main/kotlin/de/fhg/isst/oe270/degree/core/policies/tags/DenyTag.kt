@@ -27,6 +27,8 @@ class DenyTag : EmbeddedPolicyApi {
 
     val logger = LoggerFactory.getLogger("DenyTag")!!
 
+    private val tags by lazy { ExecutionContext.getInstance().compilePath("TagsContextModule") }
+
     override fun acceptPrecondition(policyInput : PolicyInputScope): Boolean {
         val tag : String
         try {
@@ -41,7 +43,7 @@ class DenyTag : EmbeddedPolicyApi {
             return false
         }
 
-        return if (ExecutionContext.getInstance().contains("TagsContextModule.$tag")) {
+        return if (tags.entityNames.contains(tag)) {
             logger.error("Data App is tagged with tag '$tag' which is forbidden for this Data App.")
             false
         } else {
@@ -27,6 +27,8 @@ class RequireTag : EmbeddedPolicyApi {
 
     val logger = LoggerFactory.getLogger("RequireTag")!!
 
+    private val tags by lazy { ExecutionContext.getInstance().compilePath("TagsContextModule") }
+
     override fun acceptPrecondition(policyInput : PolicyInputScope): Boolean {
         val tag : String
         try {
@@ -41,7 +43,7 @@ class RequireTag : EmbeddedPolicyApi {
             return false
         }
 
-        return if (!ExecutionContext.getInstance().contains("TagsContextModule.$tag")) {
+        return if (!tags.entityNames.contains(tag)) {
             logger.error("Data App is not tagged with mandatory tag '$tag' which is required for this Data App.")
             false
         } else {
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.core.activities.network
+
+import com.sun.net.httpserver.HttpServer
+import de.fhg.isst.oe270.degree.activities.execution.InputScope
+import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import de.fhg.isst.oe270.degree.types.TypeTaxonomy
+import de.fhg.isst.oe270.degree.util.SubSystemUtils
+import nukleus.core.Identifier
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.net.URI
+import java.nio.file.Paths
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotEquals
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class HttpResponseCacheTests {
+
+    private val typeTaxonomy : TypeTaxonomy = TypeTaxonomy.getInstance()
+
+    private val server : HttpServer = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+
+    private val requests = AtomicInteger()
+
+    private val conditionalRequests = AtomicInteger()
+
+    private val payload = "cached payload".toByteArray()
+
+    init {
+        if (typeTaxonomy.size() == 0) {
+            SubSystemUtils.updateSubSystems()
+            typeTaxonomy.load(Paths.get(Configuration.CORE_TYPES_FILE_PATH))
+        }
+        server.createContext("/etag") { exchange ->
+            requests.incrementAndGet()
+            exchange.responseHeaders.add("ETag", "\"v1\"")
+            if (exchange.requestHeaders.getFirst("If-None-Match") == "\"v1\"") {
+                conditionalRequests.incrementAndGet()
+                exchange.sendResponseHeaders(304, -1)
+            } else {
+                exchange.sendResponseHeaders(200, payload.size.toLong())
+                exchange.responseBody.write(payload)
+            }
+            exchange.close()
+        }
+        for ((path, cacheControl) in listOf("/max-age" to "max-age=60",
+                "/private" to "private, max-age=60", "/no-store" to "no-store, max-age=60")) {
+            server.createContext(path) { exchange ->
+                requests.incrementAndGet()
+                exchange.responseHeaders.add("Cache-Control", cacheControl)
+                exchange.sendResponseHeaders(200, payload.size.toLong())
+                exchange.responseBody.write(payload)
+                exchange.close()
+            }
+        }
+        server.start()
+    }
+
+    @AfterAll
+    fun stopServer() {
+        server.stop(0)
+    }
+
+    private fun text(type : String, value : String) =
+            typeTaxonomy.create(Identifier.of(type)).also { it.write(value) }
+
+    private fun get(activity : PerformHttpRequest, path : String) : String {
+        val inputScope = InputScope()
+        inputScope.add("url", text("core.Text", "http://127.0.0.1:${server.address.port}$path"))
+        inputScope.add("httpMethod", text("core.HttpMethod", "GET"))
+        inputScope.add("contentType", text("core.HttpContentType", ""))
+        inputScope.add("acceptedTypes", text("core.HttpContentType", "*/*"))
+        inputScope.add("body", text("core.Text", ""))
+        inputScope.add("proxyHost", text("core.Hostname", ""))
+        inputScope.add("proxyPort", text("core.Port", "80"))
+
+        return activity.run(inputScope).get("response")!!.read()
+    }
+
+    @Test
+    fun `Test that stale responses are revalidated with conditional requests`() {
+        val activity = PerformHttpRequest(HttpResponseCache(16, 1024))
+        requests.set(0)
+        conditionalRequests.set(0)
+
+        repeat(3) {
+            assertEquals(String(payload), get(activity, "/etag"))
+        }
+
+        assertEquals(3, requests.get())
+        assertEquals(2, conditionalRequests.get())
+    }
+
+    @Test
+    fun `Test that fresh responses are served without requests`() {
+        val activity = PerformHttpRequest(HttpResponseCache(16, 1024))
+        requests.set(0)
+
+        repeat(3) {
+            assertEquals(String(payload), get(activity, "/max-age"))
+        }
+
+        assertEquals(1, requests.get())
+    }
+
+    @Test
+    fun `Test that private and no-store responses are not cached`() {
+        val activity = PerformHttpRequest(HttpResponseCache(16, 1024))
+
+        for (path in listOf("/private", "/no-store")) {
+            requests.set(0)
+            repeat(3) {
+                assertEquals(String(payload), get(activity, path))
+            }
+            assertEquals(3, requests.get(), "The response of '$path' was cached.")
+        }
+    }
+
+    @Test
+    fun `Test that requests through other proxies or with other credentials do not share responses`() {
+        val uri = URI.create("http://127.0.0.1:${server.address.port}/max-age")
+        val headers = HttpHeaders()
+        headers.accept = listOf(MediaType.ALL)
+        val authorized = HttpHeaders()
+        authorized.accept = listOf(MediaType.ALL)
+        authorized.setBasicAuth("user", "secret")
+        val proxy = Proxy(Proxy.Type.HTTP, InetSocketAddress("127.0.0.1", 3128))
+
+        val key = HttpResponseCache.key(uri, null, headers)
+
+        assertEquals(key, HttpResponseCache.key(uri, null, HttpHeaders().also { it.accept = listOf(MediaType.ALL) }))
+        assertNotEquals(key, HttpResponseCache.key(uri, null, authorized))
+        assertNotEquals(key, HttpResponseCache.key(uri, proxy, headers))
+        assertFalse(HttpResponseCache.key(uri, null, authorized).contains("secret"),
+                "The credentials are part of the key in plain text.")
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.core.activities.network
+
+import com.sun.net.httpserver.HttpServer
+import de.fhg.isst.oe270.degree.activities.execution.InputScope
+import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import de.fhg.isst.oe270.degree.runtime.java.security.evaluation.PermissionScope
+import de.fhg.isst.oe270.degree.runtime.java.security.functionality.modules.DegreeFileOperations
+import de.fhg.isst.oe270.degree.types.TypeTaxonomy
+import de.fhg.isst.oe270.degree.util.SubSystemUtils
+import nukleus.core.Identifier
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.net.InetSocketAddress
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.util.*
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PerformStreamingHttpRequestTests {
+
+    private val typeTaxonomy : TypeTaxonomy = TypeTaxonomy.getInstance()
+
+    private val server : HttpServer = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+
+    init {
+        if (typeTaxonomy.size() == 0) {
+            SubSystemUtils.updateSubSystems()
+            typeTaxonomy.load(Paths.get(Configuration.CORE_TYPES_FILE_PATH))
+        }
+        // echoes the request body, streamed with chunked transfer encoding
+        server.createContext("/echo") { exchange ->
+            exchange.sendResponseHeaders(200, 0)
+            exchange.responseBody.use { exchange.requestBody.copyTo(it) }
+        }
+        server.start()
+    }
+
+    @AfterAll
+    fun stopServer() {
+        server.stop(0)
+    }
+
+    private fun text(type : String, value : String) =
+            typeTaxonomy.create(Identifier.of(type)).also { it.write(value) }
+
+    @Test
+    fun `Test that request and response bodies are streamed from and to files`() {
+        val content = ByteArray(3 * 1024 * 1024 + 17).also { Random(42).nextBytes(it) }
+        val requestFile = Files.createTempFile("request", ".bin")
+        val responseFile = Files.createTempFile("response", ".bin")
+        Files.write(requestFile, content)
+
+        val inputScope = InputScope()
+        inputScope.add("url", text("core.Text", "http://127.0.0.1:${server.address.port}/echo"))
+        inputScope.add("httpMethod", text("core.HttpMethod", "POST"))
+        inputScope.add("contentType", text("core.HttpContentType", "application/octet-stream"))
+        inputScope.add("acceptedTypes", text("core.HttpContentType", "*/*"))
+        inputScope.add("proxyHost", text("core.Hostname", ""))
+        inputScope.add("proxyPort", text("core.Port", "80"))
+        inputScope.add("requestBodyFile", text("core.Text", requestFile.toString()))
+        inputScope.add("responseFile", text("core.Text", responseFile.toString()))
+
+        try {
+            val outputScope = PerformStreamingHttpRequest().run(inputScope)
+
+            assertEquals("200", outputScope.get("statusCode")!!.read())
+            assertEquals(content.size.toString(), outputScope.get("responseBytes")!!.read())
+            assertTrue(Arrays.equals(content, Files.readAllBytes(responseFile)), "Response file differs.")
+            assertEquals(content.size.toLong(),
+                    PermissionScope.getInstance().getEvaluationData(DegreeFileOperations.WRITTEN_BYTES))
+            assertEquals(content.size.toLong(),
+                    PermissionScope.getInstance().getEvaluationData(DegreeFileOperations.READ_BYTES))
+        } finally {
+            Files.deleteIfExists(requestFile)
+            Files.deleteIfExists(responseFile)
+        }
+    }
+
+}
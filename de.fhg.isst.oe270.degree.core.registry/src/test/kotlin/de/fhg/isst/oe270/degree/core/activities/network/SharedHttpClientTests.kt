@@ -0,0 +1,225 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.core.activities.network
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty
+import org.slf4j.LoggerFactory
+import org.springframework.http.HttpMethod
+import org.springframework.http.client.SimpleClientHttpRequestFactory
+import org.springframework.web.client.RestTemplate
+import java.net.InetSocketAddress
+import java.net.URI
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNotEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SharedHttpClientTests {
+
+    private val logger = LoggerFactory.getLogger(SharedHttpClientTests::class.java.simpleName)
+
+    private val connections = ConcurrentHashMap.newKeySet<Int>()
+
+    private val idleConnections = CopyOnWriteArrayList<Int>()
+
+    private val server : HttpServer = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+
+    private val uri : URI
+
+    private val idleUri : URI
+
+    init {
+        val payload = "pong".toByteArray()
+        server.createContext("/ping") { exchange ->
+            connections.add(exchange.remoteAddress.port)
+            exchange.requestBody.readBytes()
+            exchange.sendResponseHeaders(200, payload.size.toLong())
+            exchange.responseBody.use { it.write(payload) }
+        }
+        // the server closes idle connections after one second
+        server.createContext("/idle") { exchange ->
+            idleConnections.add(exchange.remoteAddress.port)
+            exchange.requestBody.readBytes()
+            exchange.responseHeaders.add("Keep-Alive", "timeout=1")
+            exchange.sendResponseHeaders(200, payload.size.toLong())
+            exchange.responseBody.use { it.write(payload) }
+        }
+        server.executor = Executors.newFixedThreadPool(4)
+        server.start()
+        uri = URI.create("http://127.0.0.1:${server.address.port}/ping")
+        idleUri = URI.create("http://127.0.0.1:${server.address.port}/idle")
+    }
+
+    @AfterAll
+    fun stopServer() {
+        server.stop(0)
+    }
+
+    @Test
+    fun `Test that the shared client keeps connections alive`() {
+        connections.clear()
+        val client = SharedHttpClient(HttpClientSettings())
+
+        repeat(20) {
+            val response = client.execute(uri, null) { it.exchange(uri, HttpMethod.GET, null, String::class.java) }
+            assertEquals("pong", response.body)
+        }
+
+        assertTrue(connections.size < 20, "Connections were not reused: ${connections.size}.")
+    }
+
+    @Test
+    fun `Test that connections are closed if keep-alive is disabled`() {
+        connections.clear()
+        val client = SharedHttpClient(HttpClientSettings(keepAlive = false))
+
+        repeat(5) {
+            client.execute(uri, null) { it.exchange(uri, HttpMethod.GET, null, String::class.java) }
+        }
+
+        assertEquals(5, connections.size)
+    }
+
+    @Test
+    fun `Test that idle connections are evicted`() {
+        idleConnections.clear()
+        val client = SharedHttpClient(HttpClientSettings())
+        val request = {
+            client.execute(idleUri, null) { it.exchange(idleUri, HttpMethod.GET, null, String::class.java) }
+        }
+
+        request()
+        request()
+        Thread.sleep(2_500)
+        request()
+
+        assertEquals(3, idleConnections.size)
+        assertEquals(idleConnections[0], idleConnections[1], "The connection was not reused while it was idle.")
+        assertNotEquals(idleConnections[1], idleConnections[2], "The connection was reused after its idle timeout.")
+    }
+
+    @Test
+    fun `Test that the keep-alive cache of the JDK is configured with the settings`() {
+        val keys = listOf(SharedHttpClient.MAX_CONNECTIONS_PROPERTY, SharedHttpClient.KEEP_ALIVE_TIME_SERVER_PROPERTY,
+                SharedHttpClient.KEEP_ALIVE_TIME_PROXY_PROPERTY)
+        val previous = keys.associateWith { System.getProperty(it) }
+        try {
+            keys.forEach { System.clearProperty(it) }
+
+            SharedHttpClient.configureKeepAliveCache(HttpClientSettings(maxPerHost = 7, idleTimeout = 1_500))
+            assertEquals(listOf("7", "2", "2"), keys.map { System.getProperty(it) })
+
+            // properties which are set on the command line are kept
+            System.setProperty(SharedHttpClient.MAX_CONNECTIONS_PROPERTY, "3")
+            System.clearProperty(SharedHttpClient.KEEP_ALIVE_TIME_SERVER_PROPERTY)
+            SharedHttpClient.configureKeepAliveCache(HttpClientSettings(maxPerHost = 20, idleTimeout = 10_000))
+            assertEquals(listOf("3", "10", "2"), keys.map { System.getProperty(it) })
+        } finally {
+            previous.forEach { (key, value) ->
+                if (value == null) System.clearProperty(key) else System.setProperty(key, value)
+            }
+        }
+    }
+
+    @Test
+    fun `Test that the settings are read from properties`() {
+        val properties = Properties()
+        properties.setProperty(HttpClientSettings.CONNECT_TIMEOUT_KEY, "1000")
+        properties.setProperty(HttpClientSettings.MAX_PER_HOST_KEY, "0")
+        properties.setProperty(HttpClientSettings.KEEP_ALIVE_KEY, "false")
+        properties.setProperty(HttpClientSettings.IDLE_TIMEOUT_KEY, "30000")
+
+        val settings = HttpClientSettings.fromProperties(properties)
+
+        assertEquals(1000, settings.connectTimeout)
+        assertEquals(HttpClientSettings.DEFAULT_READ_TIMEOUT, settings.readTimeout)
+        assertEquals(HttpClientSettings.DEFAULT_MAX_PER_HOST, settings.maxPerHost)
+        assertEquals(false, settings.keepAlive)
+        assertEquals(30_000, settings.idleTimeout)
+    }
+
+    @Test
+    fun `Test that the number of concurrent requests per host is limited`() {
+        val client = SharedHttpClient(HttpClientSettings(connectTimeout = 200, maxPerHost = 1))
+        val entered = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val executor = Executors.newSingleThreadExecutor()
+        try {
+            val blocking = executor.submit<String> {
+                client.execute(uri, null) {
+                    entered.countDown()
+                    release.await()
+                    "done"
+                }
+            }
+            assertTrue(entered.await(5, TimeUnit.SECONDS), "The first request was not started.")
+
+            assertFailsWith<HttpRequestLimitException> {
+                client.execute(uri, null) { it.exchange(uri, HttpMethod.GET, null, String::class.java) }
+            }
+
+            release.countDown()
+            assertEquals("done", blocking.get(5, TimeUnit.SECONDS))
+            val response = client.execute(uri, null) { it.exchange(uri, HttpMethod.GET, null, String::class.java) }
+            assertEquals("pong", response.body, "The limit was not released after a request.")
+        } finally {
+            release.countDown()
+            executor.shutdownNow()
+        }
+    }
+
+    /**
+     * Compares the throughput of a new rest template per request (the former behavior of core.PerformHttpRequest)
+     * with the shared client.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "degree.benchmark", matches = "true")
+    fun `Benchmark shared against per request clients`() {
+        val requests = 5_000
+        val client = SharedHttpClient(HttpClientSettings())
+
+        val perRequest = measure(requests) {
+            RestTemplate(SimpleClientHttpRequestFactory()).exchange(uri, HttpMethod.GET, null, String::class.java)
+        }
+        val shared = measure(requests) {
+            client.execute(uri, null) { it.exchange(uri, HttpMethod.GET, null, String::class.java) }
+        }
+
+        logger.info("Client per request: {} requests/s, shared client: {} requests/s.",
+                "%.0f".format(perRequest), "%.0f".format(shared))
+        assertTrue(shared > perRequest, "The shared client is slower than a client per request.")
+    }
+
+    private fun measure(requests: Int, request: () -> Unit): Double {
+        // warm up
+        repeat(requests / 10) { request() }
+        val start = System.nanoTime()
+        repeat(requests) { request() }
+        return requests / ((System.nanoTime() - start) / 1e9)
+    }
+
+}
@@ -17,13 +17,20 @@ package de.fhg.isst.oe270.degree.core.activities.system
 
 import de.fhg.isst.oe270.degree.activities.execution.InputScope
 import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import de.fhg.isst.oe270.degree.runtime.java.security.functionality.modules.DegreeFileOperations
+import de.fhg.isst.oe270.degree.runtime.java.security.functionality.modules.ExecutionResult
 import de.fhg.isst.oe270.degree.types.TypeTaxonomy
 import de.fhg.isst.oe270.degree.util.SubSystemUtils
 import nukleus.core.Identifier
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.TestInstance
+import org.junit.jupiter.api.condition.DisabledOnOs
+import org.junit.jupiter.api.condition.OS
+import java.nio.file.Files
 import java.nio.file.Paths
 import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
  class SystemActivitiesTests {
@@ -63,4 +70,45 @@ import kotlin.test.assertEquals
                 "Return value of executed command differs from the expected.")
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    fun `Test that commands are killed after the timeout`() {
+        val result = DegreeFileOperations.executeFile("sleep 30", System.getProperty("user.dir"), 500, 1024)
+
+        assertTrue(result.isTimedOut, "The command was not killed.")
+        assertEquals(ExecutionResult.TIMEOUT_EXIT_CODE, result.exitCode)
+        assertTrue(result.durationMillis < 10_000, "The command was killed too late.")
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    fun `Test that the output of chatty commands is drained and truncated`() {
+        // the output exceeds the pipe buffer, which blocks the command if it is not drained
+        val result = DegreeFileOperations.executeFile("seq 1 200000", System.getProperty("user.dir"), 10_000, 1024)
+
+        assertFalse(result.isTimedOut, "The command did not terminate.")
+        assertEquals(0, result.exitCode)
+        assertTrue(result.isTruncated, "The output was not truncated.")
+        assertTrue(result.output.length <= 1024)
+        assertTrue(result.output.endsWith("199999\n200000"), "The end of the output was not kept.")
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    fun `Test that standard and error output are interleaved for the console output`() {
+        val script = Files.createTempFile("interleaved", ".sh")
+        try {
+            Files.write(script, listOf("echo first", "echo second >&2", "echo third"))
+
+            val (exitCode, output) = DegreeFileOperations.executeFile("sh $script",
+                    System.getProperty("user.dir"), 1)
+
+            assertEquals(0, exitCode)
+            assertEquals(listOf("first", "second", "third"), output.lines(),
+                    "Standard and error output are not interleaved.")
+        } finally {
+            Files.deleteIfExists(script)
+        }
+    }
+
+}
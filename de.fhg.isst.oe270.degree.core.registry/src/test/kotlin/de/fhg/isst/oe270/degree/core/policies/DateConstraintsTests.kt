@@ -15,10 +15,12 @@
  */
 package de.fhg.isst.oe270.degree.core.policies
 
+import de.fhg.isst.oe270.degree.core.policies.date.PolicyTimestampCache
 import de.fhg.isst.oe270.degree.core.policies.date.UseNotAfter
 import de.fhg.isst.oe270.degree.core.policies.date.UseNotBefore
 import de.fhg.isst.oe270.degree.policies.execution.PolicyInputScope
 import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import de.fhg.isst.oe270.degree.runtime.java.usage.control.`object`.UsageControlClock
 import de.fhg.isst.oe270.degree.types.TypeTaxonomy
 import de.fhg.isst.oe270.degree.util.SubSystemUtils
 import nukleus.core.CompositeInstance
@@ -27,8 +29,12 @@ import nukleus.core.Instance
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.TestInstance
 import java.nio.file.Paths
+import java.time.LocalDateTime
 import java.util.*
+import java.util.function.Supplier
+import kotlin.test.assertEquals
 import kotlin.test.assertFalse
+import kotlin.test.assertNotEquals
 import kotlin.test.assertTrue
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -153,4 +159,77 @@ class DateConstraintsTests {
                 "Validation was not successful although the maximum date is after the current one.")
     }
 
-}
\ No newline at end of file
+    @Test
+    fun `Test that constraint core_UseNotAfter uses the injected clock`() {
+        val inputScope = PolicyInputScope()
+        inputScope.add("timestamp", generateDate(true))
+
+        UsageControlClock.inject(Supplier { LocalDateTime.now().plusYears(10) })
+        val result = try {
+            UseNotAfter().acceptPrecondition(inputScope)
+        } finally {
+            UsageControlClock.reset()
+        }
+
+        assertFalse(result,
+                "Validation was successful although the maximum date is before the injected time.")
+    }
+
+    @Test
+    fun `Test that constraint core_UseNotBefore uses the injected clock`() {
+        val inputScope = PolicyInputScope()
+        inputScope.add("timestamp", generateDate(false))
+
+        UsageControlClock.inject(Supplier { LocalDateTime.now().minusYears(10) })
+        val result = try {
+            UseNotBefore().acceptPrecondition(inputScope)
+        } finally {
+            UsageControlClock.reset()
+        }
+
+        assertFalse(result,
+                "Validation was successful although the minimum date is after the injected time.")
+    }
+
+    @Test
+    fun `Test that repeated evaluations of a constraint use the current time`() {
+        val inputScope = PolicyInputScope()
+        inputScope.add("timestamp", generateDate(true))
+        val constraint = UseNotAfter()
+
+        assertTrue(constraint.acceptPrecondition(inputScope),
+                "Validation was not successful although the maximum date is after the current one.")
+
+        UsageControlClock.inject(Supplier { LocalDateTime.now().plusYears(10) })
+        val result = try {
+            constraint.acceptPrecondition(inputScope)
+        } finally {
+            UsageControlClock.reset()
+        }
+
+        assertFalse(result,
+                "Validation was successful although the maximum date is before the injected time.")
+    }
+
+    @Test
+    fun `Test that timestamps are cached by the serialized input`() {
+        val cache = PolicyTimestampCache("timestamp", 2)
+        val past = generateDate(false)
+        val future = generateDate(true)
+
+        // the sandbox passes new instances with equal content on every evaluation
+        val first = cache.get(PolicyInputScope().also { it.add("timestamp", past) })
+        val again = cache.get(PolicyInputScope().also { it.add("timestamp", generateDate(false)) })
+        val other = cache.get(PolicyInputScope().also { it.add("timestamp", future) })
+
+        assertEquals(first, again)
+        assertNotEquals(first, other, "A different timestamp was taken from the cache.")
+        assertEquals(2, cache.size())
+
+        val older = generateDate(false) as CompositeInstance
+        older.write(Identifier.of("Year"), "1990")
+        cache.get(PolicyInputScope().also { it.add("timestamp", older) })
+        assertEquals(2, cache.size(), "The cache is not bounded.")
+    }
+
+}
@@ -323,6 +323,22 @@ class AuthorizationConstraintsTest {
         assertTrue(result)
     }
 
+    @Test
+    fun `Test that constraint core_DenyUserrole does reject if the roles are unknown`() {
+        val role = typeTaxonomy.create(Identifier.of("core.Userrole"))
+        role.write(userroleA)
+        val inputScope = PolicyInputScope()
+        inputScope.add("role", role)
+
+        removeUserroles()
+
+        val constraint = DenyUserrole()
+        val result = constraint.acceptPrecondition(inputScope)
+
+        provideUserroles(userroleB)
+        assertFalse(result)
+    }
+
     @Test
     fun `Test that constraint core_DenyUsername does reject missing input`() {
         val inputScope = PolicyInputScope()
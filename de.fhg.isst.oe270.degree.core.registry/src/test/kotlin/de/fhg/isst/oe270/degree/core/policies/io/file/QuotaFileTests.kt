@@ -0,0 +1,249 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.core.policies.io.file
+
+import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import de.fhg.isst.oe270.degree.policies.execution.PolicyInputScope
+import de.fhg.isst.oe270.degree.runtime.java.exceptions.security.DegreeForbiddenSecurityFeatureException
+import de.fhg.isst.oe270.degree.runtime.java.manager.VariableManager
+import de.fhg.isst.oe270.degree.runtime.java.sandbox.ForeachBody
+import de.fhg.isst.oe270.degree.runtime.java.sandbox.ParallelBranch
+import de.fhg.isst.oe270.degree.runtime.java.sandbox.Sandbox
+import de.fhg.isst.oe270.degree.runtime.java.security.functionality.modules.DegreeFileOperations
+import de.fhg.isst.oe270.degree.runtime.java.security.resolving.RequiredPermission
+import de.fhg.isst.oe270.degree.runtime.java.security.resolving.enums.DegreePermissionType
+import de.fhg.isst.oe270.degree.types.TypeTaxonomy
+import de.fhg.isst.oe270.degree.util.SubSystemUtils
+import nukleus.core.Cardinality
+import nukleus.core.Identifier
+import nukleus.core.Instance
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.*
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+/**
+ * The constraints can only be installed in the security manager of a compiled data app. These tests
+ * therefore evaluate the quota constraint at the point at which the security manager evaluates it again:
+ * after an operation of [DegreeFileOperations] has accounted the bytes and before the data is used.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QuotaFileTests {
+
+    private val typeTaxonomy : TypeTaxonomy = TypeTaxonomy.getInstance()
+
+    private val content = ByteArray(200_000).also { Random(42).nextBytes(it) }
+
+    private val file = Files.createTempFile("quota", ".bin").also { Files.write(it, content) }
+
+    init {
+        if (typeTaxonomy.size() == 0) {
+            SubSystemUtils.updateSubSystems()
+            typeTaxonomy.load(Paths.get(Configuration.CORE_TYPES_FILE_PATH))
+        }
+    }
+
+    @AfterAll
+    fun deleteFile() {
+        Files.deleteIfExists(file)
+    }
+
+    private fun instance(type : String, value : String) : Instance {
+        val instance = typeTaxonomy.newInstance(Identifier.of(type))
+        instance.write(value)
+        return instance
+    }
+
+    /**
+     * Create the inputs of a quota constraint for the test file or for another file or directory.
+     */
+    private fun quotaInputs(quotaBytes : Long, path : Path = file, strategy : String = "EXACT") : PolicyInputScope {
+        val inputs = PolicyInputScope()
+        inputs.add("quota", instance("core.UnsignedInt", quotaBytes.toString()))
+        inputs.add("unit", instance("core.ByteUnit", "B"))
+        inputs.add("path", instance("core.Path", path.toFile().canonicalPath))
+        inputs.add("matchingStrategy", instance("core.PathMatchingStrategy", strategy))
+        return inputs
+    }
+
+    /**
+     * Create a copy of the test file, whose bytes have not been accounted by any thread yet.
+     */
+    private fun copyOfFile(directory : Path? = null) : Path {
+        val copy = if (directory == null) {
+            Files.createTempFile("quota", ".bin")
+        } else {
+            Files.createTempFile(directory, "quota", ".bin")
+        }
+        return Files.write(copy, content)
+    }
+
+    /**
+     * Execute a block like an activity call which reads the test file. The block is executed by a new thread, so
+     * it has its own permission scope.
+     */
+    private fun <T> inActivityCall(block : () -> T) : T {
+        val executor = Executors.newSingleThreadExecutor()
+        try {
+            return executor.submit<T> {
+                Sandbox.getInstance().currentRequiredPermissions =
+                        listOf(RequiredPermission(DegreePermissionType.READ_FILE, file.toFile().canonicalPath))
+                block()
+            }.get()
+        } catch (e : ExecutionException) {
+            throw e.cause!!
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    /**
+     * Stream which evaluates a quota constraint before it accepts a segment.
+     */
+    private class QuotaCheckingStream(
+            private val quota : QuotaFile,
+            private val inputs : PolicyInputScope
+    ) : ByteArrayOutputStream() {
+
+        override fun write(b : ByteArray, off : Int, len : Int) {
+            quota.evaluateSecurityManagerIntervention(inputs)
+            super.write(b, off, len)
+        }
+
+    }
+
+    @Test
+    fun `Test that copying a file to a stream is stopped when the quota is exhausted`() {
+        val target = QuotaCheckingStream(QuotaReadFile(), quotaInputs(100_000))
+
+        assertFailsWith<DegreeForbiddenSecurityFeatureException> {
+            inActivityCall { DegreeFileOperations.copyFileToStream(file.toString(), target) }
+        }
+
+        // only the first segment of 64 KiB fits into the quota
+        assertEquals(64 * 1024, target.size(),
+                "The copy was not stopped at the first segment beyond the quota.")
+    }
+
+    @Test
+    fun `Test that copying a file to a stream succeeds within the quota`() {
+        val target = QuotaCheckingStream(QuotaReadFile(), quotaInputs(content.size.toLong()))
+
+        val copied = inActivityCall { DegreeFileOperations.copyFileToStream(file.toString(), target) }
+
+        assertEquals(content.size.toLong(), copied)
+        assertTrue(Arrays.equals(content, target.toByteArray()), "Copied content differs.")
+    }
+
+    @Test
+    fun `Test that a quota rejects the mapped region which exceeds it`() {
+        val quota = QuotaReadFile()
+        val inputs = quotaInputs(50_000)
+        val mapped = mutableListOf<Int>()
+
+        assertFailsWith<DegreeForbiddenSecurityFeatureException> {
+            inActivityCall {
+                for (position in 0L until content.size step 40_000L) {
+                    val region = DegreeFileOperations.mapFile(file.toString(), position, 40_000)
+                    // the security manager evaluates the quota while the region is accounted
+                    quota.evaluateSecurityManagerIntervention(inputs)
+                    mapped.add(region.remaining())
+                }
+            }
+        }
+
+        assertEquals(listOf(40_000), mapped, "The second region was not rejected.")
+    }
+
+    @Test
+    fun `Test that parallel branches cannot exceed a shared quota together`() {
+        val quota = QuotaReadFile()
+        val branchFile = copyOfFile()
+        val inputs = quotaInputs(100_000, branchFile)
+        val bothAccounted = CyclicBarrier(2)
+        val completedBranches = AtomicInteger()
+        val branch = ParallelBranch {
+            Sandbox.getInstance().currentRequiredPermissions =
+                    listOf(RequiredPermission(DegreePermissionType.READ_FILE, branchFile.toFile().canonicalPath))
+            DegreeFileOperations.mapFile(branchFile.toString(), 0, 60_000)
+            // each branch is within the quota, both branches together exceed it
+            bothAccounted.await(10, TimeUnit.SECONDS)
+            quota.evaluateSecurityManagerIntervention(inputs)
+            quota.acceptPostcondition(inputs)
+            completedBranches.incrementAndGet()
+            false
+        }
+
+        try {
+            assertFailsWith<DegreeForbiddenSecurityFeatureException> {
+                Sandbox.getInstance().executeParallel(VariableManager(null), listOf(branch, branch))
+            }
+        } finally {
+            Files.deleteIfExists(branchFile)
+        }
+
+        assertEquals(1, completedBranches.get(), "Both branches consumed the quota.")
+    }
+
+    @Test
+    fun `Test that the chunks of a parallel foreach loop cannot exceed a shared quota together`() {
+        val quota = QuotaReadFile()
+        val directory = Files.createTempDirectory("quota")
+        val files = (1..4).map { copyOfFile(directory) }
+        val inputs = quotaInputs(100_000, directory, "SUBDIR")
+        val paths = typeTaxonomy.newInstance(Identifier.of("core.Text"))
+                .type.newInstance(Cardinality(files.size))
+        files.forEachIndexed { index, path -> paths.get(index).write(path.toFile().canonicalPath) }
+        val element = UUID.randomUUID()
+        val readFiles = AtomicInteger()
+        // every element is read in its own chunk, all elements together exceed the quota
+        val body = ForeachBody { variableManager ->
+            val path = variableManager.readVariable(element).read()
+            Sandbox.getInstance().currentRequiredPermissions =
+                    listOf(RequiredPermission(DegreePermissionType.READ_FILE, path))
+            DegreeFileOperations.mapFile(path, 0, 30_000)
+            quota.evaluateSecurityManagerIntervention(inputs)
+            quota.acceptPostcondition(inputs)
+            readFiles.incrementAndGet()
+            false
+        }
+
+        try {
+            assertFailsWith<DegreeForbiddenSecurityFeatureException> {
+                Sandbox.getInstance().executeForeach(VariableManager(null), paths, element, 2, 1, body)
+            }
+        } finally {
+            files.forEach { Files.deleteIfExists(it) }
+            Files.deleteIfExists(directory)
+        }
+
+        // the fourth file is only rejected after three files have consumed their bytes
+        assertEquals(3, readFiles.get(), "The files were not read up to the quota.")
+    }
+
+}
@@ -217,4 +217,31 @@ class TagConstraintsTests {
                 "Validation was successful although given tag does not match the required one.")
     }
 
-}
\ No newline at end of file
+    @Test
+    fun `Test that constraint core_RequireTag recognizes changes of the tags`() {
+        // create input scope
+        val tag = typeTaxonomy.create(Identifier.of("core.Tag"))
+        tag.write(tagA)
+        val inputScope = PolicyInputScope()
+        inputScope.add("tag", tag)
+
+        // the same constraint object is evaluated before and after the tag is added
+        val constraint = RequireTag()
+        val resultWithoutTag = constraint.acceptPrecondition(inputScope)
+
+        addTag(tagA)
+        val resultWithTag = constraint.acceptPrecondition(inputScope)
+        removeTag(tagA)
+
+        val resultAfterRemoval = constraint.acceptPrecondition(inputScope)
+
+        // check for correct results
+        assertFalse(resultWithoutTag,
+                "Validation was successful although the required tag is missing.")
+        assertTrue(resultWithTag,
+                "Validation failed although the required tag has been added.")
+        assertFalse(resultAfterRemoval,
+                "Validation was successful although the required tag has been removed.")
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.context
+
+import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadWriteEntity
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ContextPersistenceTests {
+
+    private class TestModule(name: String) : ContextModule(name) {
+        override fun createDefaultContext(): HashMap<String, ContextEntity> {
+            return hashMapOf("value" to ReadWriteEntity("value", "initial") as ContextEntity)
+        }
+    }
+
+    private val persistence = ContextPersistence.getInstance()
+
+    private val moduleName = "PersistenceTestModule" + UUID.randomUUID().toString().replace("-", "")
+
+    private val snapshotFile = persistence.snapshotFile(moduleName)
+
+    private val logFile = File(snapshotFile.parentFile, "$moduleName.log")
+
+    @AfterEach
+    fun deleteFiles() {
+        Files.deleteIfExists(snapshotFile.toPath())
+        Files.deleteIfExists(logFile.toPath())
+    }
+
+    private fun ContextModule.value(): Any = (getContextEntity("value") as ReadWriteEntity).read()
+
+    @Test
+    fun `Test that a module is restored from its snapshot`() {
+        val module = TestModule(moduleName)
+        assertTrue(snapshotFile.exists(), "No snapshot has been written for a new module.")
+
+        (module.getContextEntity("value") as ReadWriteEntity).write("changed")
+        module.save()
+
+        assertEquals("changed", TestModule(moduleName).value())
+    }
+
+    @Test
+    fun `Test that logged changes are replayed on top of the snapshot`() {
+        val module = TestModule(moduleName)
+        val entity = module.getContextEntity("value") as ReadWriteEntity
+        entity.write(41)
+        entity.write(42)
+        persistence.flush()
+
+        assertTrue(logFile.exists(), "The change has not been written to the change log.")
+        assertEquals(42, TestModule(moduleName).value())
+    }
+
+    @Test
+    fun `Test that snapshots written during structural changes contain consistent data`() {
+        val module = TestModule(moduleName)
+        val entities = 2000
+        val executor = Executors.newSingleThreadExecutor()
+        val start = CountDownLatch(1)
+        val done = AtomicBoolean(false)
+        try {
+            val writer = executor.submit {
+                start.await()
+                for (i in 0 until entities) {
+                    module.addContextEntity("entity$i", ReadWriteEntity("entity$i", i))
+                }
+                done.set(true)
+            }
+            start.countDown()
+            // snapshots are written while entities are added, which must not fail
+            while (!done.get()) {
+                module.save()
+            }
+            writer.get(60, TimeUnit.SECONDS)
+        } finally {
+            executor.shutdownNow()
+        }
+        module.save()
+
+        val restored = TestModule(moduleName)
+        for (i in 0 until entities) {
+            assertEquals(i, (restored.getContextEntity("entity$i") as ReadWriteEntity).read())
+        }
+    }
+
+    @Test
+    fun `Test that a change log of an older snapshot is not replayed`() {
+        val module = TestModule(moduleName)
+        val entity = module.getContextEntity("value") as ReadWriteEntity
+        entity.write("outdated")
+        persistence.flush()
+        val staleLog = Files.createTempFile("stale", ".log")
+        try {
+            Files.copy(logFile.toPath(), staleLog, StandardCopyOption.REPLACE_EXISTING)
+            entity.write("current")
+            module.save()
+
+            // the process stopped after the snapshot was written but before the log was deleted
+            Files.copy(staleLog, logFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+
+            assertEquals("current", TestModule(moduleName).value())
+            assertFalse(logFile.exists(), "The outdated change log has not been discarded.")
+        } finally {
+            Files.deleteIfExists(staleLog)
+        }
+    }
+
+    @Test
+    fun `Test that long strings are written to the change log`() {
+        val module = TestModule(moduleName)
+        val entity = module.getContextEntity("value") as ReadWriteEntity
+        val value = "\u00e4".repeat(40_000)
+        entity.write(value)
+        persistence.flush()
+
+        assertTrue(logFile.exists(), "The change has not been written to the change log.")
+        assertEquals(value, TestModule(moduleName).value())
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.context
+
+import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadOnlyEntity
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ExecutionContextTests {
+
+    private val executionContext = ExecutionContext.getInstance()
+
+    @Test
+    fun `Test that compiled paths follow changed module mappings`() {
+        val path = executionContext.compilePath("MappedTagsModule")
+        assertFalse(path.exists(), "Path exists although there is no mapping for it.")
+
+        executionContext.changeMappingEntry("MappedTagsModule", "TagsContextModule")
+
+        assertTrue(path.exists(), "Path does not follow the new mapping.")
+        assertSame(executionContext.getModule("TagsContextModule"), path.entity,
+                "Path resolved to the wrong module.")
+    }
+
+    @Test
+    fun `Test that concurrent mapping changes increase the version for every change`() {
+        val threads = 8
+        val changesPerThread = 1000
+        val initialVersion = executionContext.mappingVersion
+        val executor = Executors.newFixedThreadPool(threads)
+        val start = CountDownLatch(1)
+        try {
+            val futures = (0 until threads).map { thread ->
+                executor.submit {
+                    start.await()
+                    for (i in 0 until changesPerThread) {
+                        executionContext.changeMappingEntry("ConcurrentMapping$thread",
+                                "TagsContextModule")
+                    }
+                }
+            }
+            start.countDown()
+            futures.forEach { it.get(30, TimeUnit.SECONDS) }
+        } finally {
+            executor.shutdownNow()
+        }
+
+        assertEquals(initialVersion + threads * changesPerThread, executionContext.mappingVersion,
+                "Mapping changes were lost.")
+        for (thread in 0 until threads) {
+            assertTrue(executionContext.contains("ConcurrentMapping$thread"),
+                    "Mapping of thread $thread is missing.")
+        }
+    }
+
+    @Test
+    fun `Test that repeated contains checks follow added and removed entities`() {
+        val module = executionContext.getModule("TagsContextModule")
+        assertFalse(executionContext.contains("TagsContextModule.containsCheck"))
+
+        module.addContextEntity("containsCheck", ReadOnlyEntity("containsCheck", "true"))
+        assertTrue(executionContext.contains("TagsContextModule.containsCheck"),
+                "The cached path does not follow the added entity.")
+
+        module.removeContextEntity("containsCheck")
+        assertFalse(executionContext.contains("TagsContextModule.containsCheck"),
+                "The cached path does not follow the removed entity.")
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.context.entities
+
+import de.fhg.isst.oe270.degree.runtime.java.context.ContextEntity
+import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule
+import de.fhg.isst.oe270.degree.runtime.java.context.ContextPersistence
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.io.File
+import java.nio.file.Files
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ConcurrentEntitiesTests {
+
+    private class TestModule(name: String) : ContextModule(name) {
+        override fun createDefaultContext(): HashMap<String, ContextEntity> = HashMap()
+    }
+
+    private val threads = 8
+
+    private val updatesPerThread = 10_000
+
+    private val moduleName = "EntitiesTestModule" + UUID.randomUUID().toString().replace("-", "")
+
+    private val module = TestModule(moduleName)
+
+    @AfterAll
+    fun deleteFiles() {
+        val snapshotFile = ContextPersistence.getInstance().snapshotFile(moduleName)
+        Files.deleteIfExists(snapshotFile.toPath())
+        Files.deleteIfExists(File(snapshotFile.parentFile, "$moduleName.log").toPath())
+    }
+
+    private fun <T : ContextEntity> register(entity: T): T {
+        module.addContextEntity(entity.entityName, entity)
+        return entity
+    }
+
+    /**
+     * Run an update concurrently on all threads, each thread repeats the update.
+     *
+     * @return the number of updates which returned true
+     */
+    private fun concurrently(update: () -> Boolean): Int {
+        val executor = Executors.newFixedThreadPool(threads)
+        val start = CountDownLatch(1)
+        try {
+            val futures = (0 until threads).map {
+                executor.submit<Int> {
+                    start.await()
+                    (0 until updatesPerThread).count { update() }
+                }
+            }
+            start.countDown()
+            return futures.sumBy { it.get(60, TimeUnit.SECONDS) }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `Test that concurrent increments and decrements of counters are not lost`() {
+        val counter = register(CounterEntity("counter", 0))
+        val incrementCounter = register(IncrementCounterEntity("incrementCounter", 0))
+        val decrementCounter = register(DecrementCounterEntity("decrementCounter", 0))
+
+        concurrently {
+            counter.increment()
+            counter.add(2)
+            counter.decrement()
+            incrementCounter.increment()
+            decrementCounter.decrement()
+            true
+        }
+
+        val updates = threads * updatesPerThread
+        assertEquals(2 * updates, counter.read())
+        assertEquals(updates, incrementCounter.read())
+        assertEquals(-updates, decrementCounter.read())
+    }
+
+    @Test
+    fun `Test that concurrent conditional updates respect their limits`() {
+        val limit = updatesPerThread / 2
+        val counter = register(CounterEntity("limitedCounter", 0))
+        val incrementCounter = register(IncrementCounterEntity("limitedIncrementCounter", 0))
+        val decrementCounter = register(DecrementCounterEntity("budget", limit))
+
+        assertEquals(limit, concurrently { counter.incrementIfBelow(limit) })
+        assertEquals(limit, concurrently { incrementCounter.incrementIfBelow(limit) })
+        assertEquals(limit, concurrently { decrementCounter.decrementIfAbove(0) })
+        assertEquals(limit, counter.read())
+        assertEquals(limit, incrementCounter.read())
+        assertEquals(0, decrementCounter.read())
+    }
+
+    @Test
+    fun `Test that switches are toggled and set exactly once by concurrent executions`() {
+        val toggled = register(SwitchEntity("toggled", false))
+        val once = register(SwitchEntity("once", false))
+
+        concurrently {
+            toggled.toggle()
+            true
+        }
+        val winners = concurrently { once.compareAndSet(false, true) }
+
+        // the number of toggles is even, so the switch has its initial value
+        assertEquals(false, toggled.read())
+        assertEquals(1, winners, "More than one execution could set the switch.")
+        assertTrue(once.compareAndSet(true, true))
+        assertEquals(true, once.read())
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.data.app.http
+
+import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule
+import de.fhg.isst.oe270.degree.runtime.java.context.ExecutionContext
+import de.fhg.isst.oe270.degree.runtime.java.context.core.JWTUserContext
+import de.fhg.isst.oe270.degree.runtime.java.context.core.JWTUserEntity
+import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadOnlyEntity
+import io.jsonwebtoken.Jwts
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.lang.reflect.Proxy
+import java.security.KeyPair
+import java.security.KeyPairGenerator
+import java.util.*
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import javax.servlet.FilterChain
+import javax.servlet.ServletResponse
+import javax.servlet.http.HttpServletRequest
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JWTUserDataFilterTests {
+
+    private val jwtModule = ExecutionContext.getInstance().getModule("JWTUserInformation")
+
+    private val keyA = generateKeyPair()
+
+    private val keyB = generateKeyPair()
+
+    @AfterEach
+    fun removeSigningKey() {
+        jwtModule.removeContextEntity("jwtSigningKey")
+        JWTUserContext.clear()
+    }
+
+    private fun generateKeyPair(): KeyPair {
+        val generator = KeyPairGenerator.getInstance("RSA")
+        generator.initialize(2048)
+        return generator.generateKeyPair()
+    }
+
+    private fun provideSigningKey(keyPair: KeyPair) {
+        jwtModule.removeContextEntity("jwtSigningKey")
+        jwtModule.addContextEntity("jwtSigningKey", ReadOnlyEntity("jwtSigningKey",
+                Base64.getEncoder().encodeToString(keyPair.public.encoded)))
+    }
+
+    private fun token(keyPair: KeyPair, user: String, roles: List<String>): String {
+        return Jwts.builder()
+                .claim("preferred_username", user)
+                .claim("realm_access", mapOf("roles" to roles))
+                .setExpiration(Date(System.currentTimeMillis() + 60_000))
+                .signWith(keyPair.private)
+                .compact()
+    }
+
+    private fun request(token: String?): HttpServletRequest {
+        return Proxy.newProxyInstance(javaClass.classLoader,
+                arrayOf(HttpServletRequest::class.java)) { _, method, args ->
+            if (method.name == "getHeader" && args[0] == "Authorization" && token != null) {
+                "Bearer $token"
+            } else {
+                null
+            }
+        } as HttpServletRequest
+    }
+
+    private fun filter(filter: JWTUserDataFilter, token: String?): JWTUserContext? {
+        var seen: JWTUserContext? = null
+        filter.doFilter(request(token), null as ServletResponse?, FilterChain { _, _ ->
+            seen = JWTUserContext.current()
+        })
+        return seen
+    }
+
+    @Test
+    fun `Test that the user of a valid token is bound to the request thread only during the request`() {
+        provideSigningKey(keyA)
+        val filter = JWTUserDataFilter()
+
+        val userContext = filter(filter, token(keyA, "userA", listOf("roleA", "roleB")))
+
+        assertEquals("userA", userContext!!.username)
+        assertEquals("roleA,roleB", userContext.userroles)
+        assertNull(JWTUserContext.current(), "User context is still bound after the request.")
+        assertSame(JWTUserContext.UNAUTHENTICATED, filter(filter, null))
+        assertSame(JWTUserContext.UNAUTHENTICATED, filter(filter, token(keyB, "userB", listOf())))
+    }
+
+    @Test
+    fun `Test that verified tokens are rejected after the signing key has changed`() {
+        provideSigningKey(keyA)
+        val filter = JWTUserDataFilter()
+        val token = token(keyA, "userA", listOf("roleA"))
+        assertEquals("userA", filter(filter, token)!!.username)
+
+        provideSigningKey(keyB)
+
+        assertSame(JWTUserContext.UNAUTHENTICATED, filter(filter, token),
+                "Token signed with the previous key was still accepted.")
+    }
+
+    @Test
+    fun `Test that concurrent requests see their own user`() {
+        provideSigningKey(keyA)
+        val filter = JWTUserDataFilter()
+        val users = (0 until 8).map { "user$it" }
+        val tokens = users.map { token(keyA, it, listOf("role")) }
+        val entity = JWTUserEntity(JWTUserContext.USERNAME)
+        val barrier = CyclicBarrier(users.size)
+        val executor = Executors.newFixedThreadPool(users.size)
+        try {
+            val futures = tokens.map { token ->
+                executor.submit<String> {
+                    var seen: String? = null
+                    filter.doFilter(request(token), null as ServletResponse?, FilterChain { _, _ ->
+                        // all requests are in progress at the same time
+                        barrier.await(30, TimeUnit.SECONDS)
+                        seen = entity.read() as String
+                    })
+                    seen
+                }
+            }
+            assertEquals(users, futures.map { it.get(30, TimeUnit.SECONDS) })
+        } finally {
+            executor.shutdownNow()
+        }
+        assertEquals(ContextModule.NO_VALUE, entity.read(),
+                "User information is visible outside of a request.")
+    }
+
+    @Test
+    fun `Test that expired user contexts are detected`() {
+        val userContext = JWTUserContext("userA", "roleA", 1000L)
+
+        assertFalse(userContext.isExpired(999L))
+        assertTrue(userContext.isExpired(1000L))
+        assertEquals(ContextModule.NO_VALUE, userContext.getClaim("unknown"))
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.data.app.http
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.io.IOException
+import java.nio.file.Files
+import java.util.zip.GZIPInputStream
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertNotEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SelfDescriptionTests {
+
+    private val json = "{\n  \"@type\" : \"ids:AppResource\",\n  \"ids:title\" : \"Test\"\n}\n"
+
+    @Test
+    fun `Test that the self-description is encoded once with entity tag and gzip variant`() {
+        val file = Files.createTempFile("infomodel", ".json")
+        try {
+            Files.write(file, json.toByteArray())
+            val document = SelfDescription(file.toUri().toURL(), true).document
+
+            assertEquals(json.replace("\n", ""), String(document.body))
+            assertEquals(document.body.toList(),
+                    GZIPInputStream(document.gzipBody.inputStream()).readBytes().toList())
+            assertTrue(document.matches(document.etag))
+            assertTrue(document.matches("\"other\", W/${document.etag}"))
+            assertFalse(document.matches("\"other\""))
+            assertFalse(document.matches(null))
+            assertTrue(document.acceptsGzip("deflate, gzip;q=0.8"))
+            assertFalse(document.acceptsGzip("gzip;q=0"))
+            assertFalse(document.acceptsGzip(null))
+            assertNull(SelfDescription(file.toUri().toURL(), false).document.gzipBody)
+        } finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    fun `Test that the compressed variant has its own entity tag`() {
+        val file = Files.createTempFile("infomodel", ".json")
+        try {
+            Files.write(file, json.toByteArray())
+            val document = SelfDescription(file.toUri().toURL(), true).document
+            val gzipEtag = document.getEtag(true)
+
+            assertEquals(document.etag, document.getEtag(false))
+            assertNotEquals(document.etag, gzipEtag)
+            assertEquals(document.etag.removeSuffix("\"") + "-gzip\"", gzipEtag)
+            assertTrue(document.matches(gzipEtag), "The entity tag of the compressed variant does not match.")
+            assertTrue(document.matches("W/$gzipEtag"))
+        } finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    fun `Test that invalid changes are rejected and valid changes are reloaded`() {
+        val file = Files.createTempFile("infomodel", ".json")
+        try {
+            Files.write(file, json.toByteArray())
+            val selfDescription = SelfDescription(file.toUri().toURL(), false)
+            val original = selfDescription.document
+
+            Files.write(file, "{ \"ids:title\" : ".toByteArray())
+            assertFalse(selfDescription.reload())
+            assertEquals(original.etag, selfDescription.document.etag)
+
+            Files.write(file, json.replace("Test", "Changed").toByteArray())
+            assertTrue(selfDescription.reload())
+            assertNotEquals(original.etag, selfDescription.document.etag)
+
+            Files.write(file, "[".toByteArray())
+            assertFailsWith<IOException> { SelfDescription(file.toUri().toURL(), false) }
+        } finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.manager
+
+import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import de.fhg.isst.oe270.degree.types.TypeTaxonomy
+import de.fhg.isst.oe270.degree.util.SubSystemUtils
+import nukleus.core.Identifier
+import nukleus.core.Instance
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.nio.file.Paths
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class VariableManagerTests {
+
+    private val typeTaxonomy : TypeTaxonomy = TypeTaxonomy.getInstance()
+
+    init {
+        if (typeTaxonomy.size() == 0) {
+            SubSystemUtils.updateSubSystems()
+            typeTaxonomy.load(Paths.get(Configuration.CORE_TYPES_FILE_PATH))
+        }
+    }
+
+    private fun text(value : String) : Instance {
+        val text = typeTaxonomy.newInstance(Identifier.of("core.Text"))
+        text.write(value)
+        return text
+    }
+
+    @Test
+    fun `Test that a branch initializes variables of the parent locally`() {
+        val parent = VariableManager(null)
+        val variable = parent.createVariable()
+        parent.initializeVariable(variable, text("parent"))
+        val branch = VariableManager.forBranch(parent)
+
+        branch.initializeVariable(variable, text("first"))
+        branch.initializeVariable(variable, text("second"))
+
+        assertEquals("parent", parent.readVariable(variable).read(),
+                "The parent was changed before the branch has been merged.")
+        assertEquals("second", branch.readVariable(variable).read())
+
+        branch.mergeIntoParent()
+
+        assertEquals("second", parent.readVariable(variable).read())
+    }
+
+    @Test
+    fun `Test that variables which are initialized twice in a branch are created on merge`() {
+        val parent = VariableManager(null)
+        val branch = VariableManager.forBranch(parent)
+        val variable = branch.createVariable()
+
+        branch.initializeVariable(variable, text("first"))
+        branch.initializeVariable(variable, text("second"))
+
+        assertNull(parent.readVariable(variable), "The variable was created before the branch has been merged.")
+
+        branch.mergeIntoParent()
+
+        assertEquals("second", parent.readVariable(variable).read())
+    }
+
+}
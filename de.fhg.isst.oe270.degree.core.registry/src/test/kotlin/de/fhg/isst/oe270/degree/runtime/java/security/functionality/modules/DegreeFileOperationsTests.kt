@@ -0,0 +1,104 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.security.functionality.modules
+
+import de.fhg.isst.oe270.degree.runtime.java.security.evaluation.PermissionScope
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+import java.util.*
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DegreeFileOperationsTests {
+
+    private val content = ByteArray(100_003).also { Random(42).nextBytes(it) }
+
+    private val file = Files.createTempFile("chunked", ".bin").also { Files.write(it, content) }
+
+    @AfterAll
+    fun deleteFile() {
+        Files.deleteIfExists(file)
+    }
+
+    private fun readBytes() = PermissionScope.getInstance().getEvaluationData(DegreeFileOperations.READ_BYTES)
+
+    /**
+     * Execute a block by a new thread, so it has its own (empty) permission scope like an activity call.
+     */
+    private fun <T> inNewScope(block : () -> T) : T {
+        val executor = Executors.newSingleThreadExecutor()
+        try {
+            return executor.submit<T> { block() }.get()
+        } catch (e : ExecutionException) {
+            throw e.cause!!
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `Test that chunked reading reports the read bytes before each chunk`() {
+        val output = ByteArrayOutputStream()
+        val reported = mutableListOf<Any?>()
+
+        val read = inNewScope {
+            DegreeFileOperations.readFileInChunks(file.toString(), 32 * 1024) { buffer, length ->
+                reported.add(readBytes())
+                output.write(buffer, 0, length)
+            }
+        }
+
+        assertEquals(content.size.toLong(), read)
+        assertTrue(Arrays.equals(content, output.toByteArray()), "Read content differs.")
+        assertEquals(listOf<Any?>(32768L, 65536L, 98304L, 100003L), reported)
+    }
+
+    @Test
+    fun `Test that mapped regions are accounted in total`() {
+        val reported = inNewScope {
+            listOf(0L to 40_000L, 40_000L to 40_000L, 80_000L to 40_000L).map { (position, size) ->
+                val region = DegreeFileOperations.mapFile(file.toString(), position, size)
+                val mapped = ByteArray(region.remaining()).also { region.get(it) }
+                assertTrue(Arrays.equals(content.copyOfRange(position.toInt(), position.toInt() + mapped.size),
+                        mapped), "Mapped content differs.")
+                Pair(readBytes(), PermissionScope.getInstance().getEvaluationData(DegreeFileOperations.FILE_PATH))
+            }
+        }
+
+        // the last region is cut at the end of the file
+        assertEquals(listOf<Any?>(40_000L, 80_000L, 100_003L), reported.map { it.first })
+        reported.forEach { assertEquals(file.toFile().canonicalPath, it.second) }
+    }
+
+    @Test
+    fun `Test that mapping a whole file accounts its size`() {
+        val reported = inNewScope {
+            val whole = DegreeFileOperations.mapFile(file.toString())
+            val mapped = ByteArray(whole.remaining()).also { whole.get(it) }
+            assertTrue(Arrays.equals(content, mapped), "Mapped content differs.")
+            readBytes()
+        }
+
+        assertEquals(content.size.toLong(), reported)
+    }
+
+}
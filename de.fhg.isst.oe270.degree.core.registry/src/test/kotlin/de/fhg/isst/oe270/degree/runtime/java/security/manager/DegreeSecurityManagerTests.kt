@@ -0,0 +1,182 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.security.manager
+
+import de.fhg.isst.oe270.degree.activities.api.ActivityApi
+import de.fhg.isst.oe270.degree.activities.execution.InputScope
+import de.fhg.isst.oe270.degree.activities.execution.OutputScope
+import de.fhg.isst.oe270.degree.runtime.java.data.app.CliDataApp
+import de.fhg.isst.oe270.degree.runtime.java.manager.VariableManager
+import de.fhg.isst.oe270.degree.runtime.java.sandbox.ParallelBranch
+import de.fhg.isst.oe270.degree.runtime.java.sandbox.Sandbox
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.io.File
+import java.net.URLClassLoader
+import java.util.*
+import java.util.concurrent.Executors
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DegreeSecurityManagerTests {
+
+    /**
+     * Data app which is only used to construct security managers.
+     */
+    class TestDataApp : CliDataApp() {
+        override fun process(input: String, sessionId: UUID): String = ""
+
+        /**
+         * Call an activity from the data app in the same way as the sandbox does.
+         */
+        fun callActivity(activity: ActivityApi) {
+            Sandbox.executeAsActivity { activity.run(InputScope()) }
+        }
+
+        /**
+         * Run an activity from the data app without the sandbox.
+         */
+        fun runActivity(activity: ActivityApi) {
+            activity.run(InputScope())
+        }
+    }
+
+    /**
+     * Activity which executes a block while it runs.
+     */
+    class TestActivity(private val block: () -> Unit) : ActivityApi {
+        override fun run(input: InputScope): OutputScope {
+            block()
+            return OutputScope()
+        }
+    }
+
+    /**
+     * Check if the security manager considers the current call as startup code of the data app, whose permissions
+     * are not evaluated.
+     */
+    private fun isStartupCode(manager: DegreeSecurityManager): Boolean {
+        val method = DegreeSecurityManager::class.java.getDeclaredMethod("isStartupCode")
+        method.isAccessible = true
+        return method.invoke(manager) as Boolean
+    }
+
+    /**
+     * Execute a block as the only branch of a parallel block.
+     */
+    private fun inParallelBranch(block: () -> Unit) {
+        Sandbox.getInstance().executeParallel(VariableManager(null), listOf(ParallelBranch {
+            block()
+            false
+        }))
+    }
+
+    /**
+     * Create a class loader which loads the runtime again, so none of its classes is initialized
+     * yet, as it is the case when a data app starts.
+     */
+    private fun isolatedClassLoader(): URLClassLoader {
+        val urls = System.getProperty("java.class.path").split(File.pathSeparator)
+                .map { File(it).toURI().toURL() }
+        return URLClassLoader(urls.toTypedArray(), ClassLoader.getSystemClassLoader().parent)
+    }
+
+    /**
+     * Install a security manager while a block is executed.
+     */
+    private fun <T> withSecurityManager(manager: SecurityManager, block: () -> T): T {
+        val previous = System.getSecurityManager()
+        System.setSecurityManager(manager)
+        try {
+            return block()
+        } finally {
+            System.setSecurityManager(previous)
+        }
+    }
+
+    @Test
+    fun `Test that permissions can be checked after the security manager has been installed`() {
+        isolatedClassLoader().use { loader ->
+            val dataApp = loader.loadClass(TestDataApp::class.java.name).getConstructor().newInstance()
+            val manager = loader.loadClass(DegreeSecurityManager::class.java.name)
+                    .getConstructor(loader.loadClass(CliDataApp::class.java.name))
+                    .newInstance(dataApp) as SecurityManager
+            val userDir = File(System.getProperty("user.dir"))
+
+            withSecurityManager(manager) {
+                // the first checks classify the callers, which must not require a permission check
+                assertEquals(userDir.path, System.getProperty("user.dir"))
+                assertTrue(userDir.exists())
+                manager.checkPermission(RuntimePermission("createSecurityManager"))
+                manager.checkPermission(RuntimePermission("createSecurityManager"))
+            }
+        }
+    }
+
+    @Test
+    fun `Test that activities of parallel branches are not startup code`() {
+        val dataApp = TestDataApp()
+        val manager = DegreeSecurityManager(dataApp)
+        val startupCode = mutableListOf<Boolean>()
+
+        inParallelBranch { dataApp.callActivity(TestActivity { startupCode.add(isStartupCode(manager)) }) }
+
+        assertEquals(listOf(false), startupCode, "The permissions of a branch activity are not evaluated.")
+    }
+
+    @Test
+    fun `Test that parallel branches without an activity of the data app are startup code`() {
+        val dataApp = TestDataApp()
+        val manager = DegreeSecurityManager(dataApp)
+        val startupCode = mutableListOf<Boolean>()
+
+        // the branch thread alone must not be taken for an activity of the data app
+        inParallelBranch { startupCode.add(isStartupCode(manager)) }
+        inParallelBranch {
+            Sandbox.executeAsActivity { TestActivity { startupCode.add(isStartupCode(manager)) }.run(InputScope()) }
+        }
+
+        assertEquals(listOf(true, true), startupCode)
+    }
+
+    @Test
+    fun `Test that only activities called by the sandbox are not startup code`() {
+        val dataApp = TestDataApp()
+        val manager = DegreeSecurityManager(dataApp)
+        val startupCode = mutableListOf<Boolean>()
+        val executor = Executors.newSingleThreadExecutor()
+
+        try {
+            dataApp.runActivity(TestActivity { startupCode.add(isStartupCode(manager)) })
+            dataApp.callActivity(TestActivity { startupCode.add(isStartupCode(manager)) })
+            assertFalse(Sandbox.isExecutingActivity())
+            // the mark of an activity is not shared with other threads
+            Sandbox.executeAsActivity {
+                executor.submit {
+                    assertFalse(Sandbox.isExecutingActivity())
+                    dataApp.runActivity(TestActivity { startupCode.add(isStartupCode(manager)) })
+                }.get()
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+
+        assertEquals(listOf(true, false, true), startupCode)
+    }
+
+}
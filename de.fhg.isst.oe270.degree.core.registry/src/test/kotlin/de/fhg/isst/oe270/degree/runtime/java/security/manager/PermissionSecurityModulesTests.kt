@@ -0,0 +1,102 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.security.manager
+
+import de.fhg.isst.oe270.degree.runtime.java.security.resolving.RequiredPermission
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.security.BasicPermission
+import java.security.Permission
+import java.util.PropertyPermission
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Consumer
+import java.util.function.Function
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PermissionSecurityModulesTests {
+
+    private open class TestPermission(name: String) : BasicPermission(name)
+
+    private class SpecificTestPermission(name: String) : TestPermission(name)
+
+    private class UnknownTestPermission(name: String) : BasicPermission(name)
+
+    /**
+     * A module which counts how often it is used.
+     */
+    private class CountingModule<P : Permission>(type: Class<P>) {
+        val callerChecks = AtomicInteger()
+        val mappings = AtomicInteger()
+        val module: PermissionSecurityModule<P> = PermissionSecurityModule.of(type,
+                Consumer<P> { callerChecks.incrementAndGet() },
+                Function<P, List<RequiredPermission>> {
+                    mappings.incrementAndGet()
+                    listOf()
+                })
+    }
+
+    @Test
+    fun `Test that permissions without a registered module are not supported`() {
+        val permission = UnknownTestPermission("unknown")
+
+        assertFalse(PermissionSecurityModules.isSupported(permission))
+        assertNull(PermissionSecurityModules.obtainRequiredPermissions(permission))
+        assertTrue(PermissionSecurityModules.isSupported(PropertyPermission("user.dir", "read")))
+    }
+
+    @Test
+    fun `Test that permissions are dispatched to the most specific registered module`() {
+        val general = CountingModule(TestPermission::class.java)
+        PermissionSecurityModules.register(general.module)
+
+        // the subclass is handled by the module of its superclass
+        PermissionSecurityModules.obtainRequiredPermissions(SpecificTestPermission("a"))
+        assertEquals(1, general.mappings.get())
+
+        // registering a more specific module invalidates the earlier lookup
+        val specific = CountingModule(SpecificTestPermission::class.java)
+        PermissionSecurityModules.register(specific.module)
+        PermissionSecurityModules.obtainRequiredPermissions(SpecificTestPermission("b"))
+        PermissionSecurityModules.obtainRequiredPermissions(TestPermission("b"))
+
+        assertEquals(1, specific.mappings.get())
+        assertEquals(2, general.mappings.get())
+    }
+
+    @Test
+    fun `Test that mappings are memoized but callers are checked for every permission`() {
+        val module = CountingModule(TestPermission::class.java)
+        PermissionSecurityModules.register(module.module)
+
+        repeat(10) {
+            val required = PermissionSecurityModules.obtainRequiredPermissions(
+                    TestPermission("memoized"))!!
+            assertFailsWith<UnsupportedOperationException> {
+                (required as MutableList<RequiredPermission>).clear()
+            }
+        }
+        PermissionSecurityModules.obtainRequiredPermissions(TestPermission("other"))
+
+        assertEquals(11, module.callerChecks.get())
+        assertEquals(2, module.mappings.get())
+    }
+
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.security.resolving
+
+import de.fhg.isst.oe270.degree.runtime.java.security.resolving.enums.DegreePermissionType
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty
+import org.slf4j.LoggerFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class IgnoredPermissionMatcherTests {
+
+    private val logger = LoggerFactory.getLogger(IgnoredPermissionMatcherTests::class.java.simpleName)
+
+    private val readFile = DegreePermissionType.READ_FILE
+
+    private val writeFile = DegreePermissionType.WRITE_FILE
+
+    private val matcher = IgnoredPermissionMatcher.compile(mapOf(
+            readFile to mapOf(
+                    "java.lang.ClassLoader" to listOf("loadClass", "getResource"),
+                    "org.example.Loader" to listOf("*"),
+                    "org.springframework.*" to listOf("load")),
+            writeFile to mapOf(
+                    "java.io.FileOutputStream" to listOf("open"))))
+
+    @Test
+    fun `Test that exact classes and methods are matched`() {
+        assertTrue(matcher.matches(readFile, "java.lang.ClassLoader", "loadClass"))
+        assertTrue(matcher.matches(readFile, "java.lang.ClassLoader", "getResource"))
+        assertFalse(matcher.matches(readFile, "java.lang.ClassLoader", "defineClass"))
+        assertFalse(matcher.matches(readFile, "java.lang.ClassLoaderX", "loadClass"))
+        assertTrue(matcher.matches(readFile, "org.example.Loader", "anyMethod"))
+    }
+
+    @Test
+    fun `Test that class prefixes are matched`() {
+        assertTrue(matcher.matches(readFile, "org.springframework.boot.Loader", "load"))
+        assertTrue(matcher.matches(readFile, "org.springframework.", "load"))
+        assertFalse(matcher.matches(readFile, "org.springframework.boot.Loader", "run"))
+        assertFalse(matcher.matches(readFile, "org.spring", "load"))
+        assertFalse(matcher.matches(readFile, "org.example.springframework.Loader", "load"))
+    }
+
+    @Test
+    fun `Test that entries only apply to their permission type`() {
+        assertTrue(matcher.hasEntries(writeFile))
+        assertFalse(matcher.hasEntries(DegreePermissionType.EXECUTE_FILE))
+        assertFalse(matcher.matches(writeFile, "java.lang.ClassLoader", "loadClass"))
+        assertFalse(matcher.matches(DegreePermissionType.EXECUTE_FILE, "java.lang.ClassLoader",
+                "loadClass"))
+        assertFalse(IgnoredPermissionMatcher.EMPTY.matches(readFile, "java.lang.ClassLoader",
+                "loadClass"))
+    }
+
+    @Test
+    fun `Test that any frame of a stack is matched`() {
+        val stack = arrayOf(
+                StackTraceElement("org.example.App", "run", "App.java", 1),
+                StackTraceElement("java.lang.ClassLoader", "loadClass", "ClassLoader.java", 2))
+
+        assertTrue(matcher.matches(readFile, stack))
+        assertFalse(matcher.matches(writeFile, stack))
+        assertFalse(matcher.matches(readFile, arrayOf(stack[0])))
+    }
+
+    @Test
+    fun `Test that the classes of a stack are matched`() {
+        val testClass = IgnoredPermissionMatcherTests::class.java
+        val classMatcher = IgnoredPermissionMatcher.compile(mapOf(
+                readFile to mapOf(
+                        "java.lang.*" to listOf("*")),
+                writeFile to mapOf(
+                        testClass.name to listOf("Test that the classes of a stack are matched")),
+                DegreePermissionType.EXECUTE_FILE to mapOf(
+                        testClass.name to listOf("run"))))
+
+        assertTrue(classMatcher.matches(readFile, arrayOf(testClass, String::class.java)))
+        assertFalse(classMatcher.matches(readFile, arrayOf(testClass)))
+        // only the methods of ignored classes are looked up on the stack
+        assertTrue(classMatcher.matches(writeFile, arrayOf(testClass)))
+        assertFalse(classMatcher.matches(writeFile, arrayOf(String::class.java)))
+        assertFalse(classMatcher.matches(DegreePermissionType.EXECUTE_FILE, arrayOf(testClass)))
+    }
+
+    /**
+     * Configure an external file with additional ignored permissions while a block is executed.
+     */
+    private fun withIgnoreFile(content: String, block: (Path) -> Unit) {
+        val file = Files.createTempFile("ignored", ".properties")
+        val previous = System.getProperty(IgnoredPermission.IGNORE_FILE_PROPERTY)
+        try {
+            Files.write(file, content.toByteArray())
+            System.setProperty(IgnoredPermission.IGNORE_FILE_PROPERTY, file.toString())
+            block(file)
+        } finally {
+            if (previous == null) {
+                System.clearProperty(IgnoredPermission.IGNORE_FILE_PROPERTY)
+            } else {
+                System.setProperty(IgnoredPermission.IGNORE_FILE_PROPERTY, previous)
+            }
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    fun `Test that the entries of the external file are added to the bundled ones`() {
+        withIgnoreFile("degree.securitymanager.ignore[1000] = READ_FILE,org.example.A,a\n") {
+            val ignored = IgnoredPermission.readIgnoredPermissions()
+
+            assertEquals(listOf("a"), ignored[readFile]!!["org.example.A"])
+            assertTrue(ignored[readFile]!!.getValue("java.lang.ClassLoader").contains("loadClass"),
+                    "Bundled entries are missing.")
+        }
+    }
+
+    @Test
+    fun `Test that the ignored permissions cannot be changed after initialization`() {
+        IgnoredPermission.init()
+        val initial = IgnoredPermission.getMatcher()
+
+        // sandboxed code which can write the external file must not exempt its permissions
+        withIgnoreFile("degree.securitymanager.ignore[1000] = READ_FILE,org.example.Activity,*\n") { file ->
+            IgnoredPermission.init()
+            Files.write(file, "degree.securitymanager.ignore[1001] = WRITE_FILE,org.example.Activity,*\n"
+                    .toByteArray())
+            IgnoredPermission.init()
+
+            assertSame(initial, IgnoredPermission.getMatcher())
+            assertFalse(IgnoredPermission.getMatcher().matches(readFile, "org.example.Activity", "run"))
+            assertFalse(IgnoredPermission.getMatcher().matches(writeFile, "org.example.Activity", "run"))
+            assertFalse(IgnoredPermission.getIGNORED_PERMISSION_MAP()[readFile]!!
+                    .containsKey("org.example.Activity"))
+        }
+    }
+
+    /**
+     * The check which has been used before the matcher: a map of the stack is built and all
+     * ignored classes of the permission type are looked up in it.
+     */
+    private fun matchesWithStackMap(
+            ignored: Map<DegreePermissionType, Map<String, List<String>>>,
+            type: DegreePermissionType,
+            stack: Array<StackTraceElement>): Boolean {
+        val stackData = HashMap<String, MutableList<String>>()
+        for (element in stack) {
+            stackData.getOrPut(element.className) { ArrayList() }.add(element.methodName)
+        }
+        val ignoredElements = ignored[type] ?: return false
+        return ignoredElements.any { (ignoredClass, methods) ->
+            stackData[ignoredClass]?.let { stackMethods -> methods.any { it in stackMethods } }
+                    ?: false
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "degree.benchmark", matches = "true")
+    fun `Benchmark matching the bundled ignored permissions against the current stack`() {
+        IgnoredPermission.init()
+        val ignored = IgnoredPermission.getIGNORED_PERMISSION_MAP()
+        val compiled = IgnoredPermission.getMatcher()
+        val stack = Thread.currentThread().stackTrace
+        val types = listOf(readFile, writeFile)
+        val iterations = 200_000
+
+        for (type in types) {
+            assertEquals(matchesWithStackMap(ignored, type, stack), compiled.matches(type, stack),
+                    "Matcher and stack map disagree for $type.")
+        }
+
+        fun measure(check: (DegreePermissionType) -> Boolean): Long {
+            var matches = 0
+            val start = System.nanoTime()
+            for (i in 0 until iterations) {
+                if (check(types[i % types.size])) {
+                    matches++
+                }
+            }
+            val elapsed = System.nanoTime() - start
+            // use the result, so the checks are not optimized away
+            logger.debug("{} of {} checks matched.", matches, iterations)
+            return elapsed
+        }
+
+        // warm up both variants before measuring
+        repeat(3) {
+            measure { matchesWithStackMap(ignored, it, stack) }
+            measure { compiled.matches(it, stack) }
+        }
+        val stackMapNanos = measure { matchesWithStackMap(ignored, it, stack) }
+        val matcherNanos = measure { compiled.matches(it, stack) }
+
+        logger.info("Matched {} stacks of depth {}: stack map {} ns/check, matcher {} ns/check.",
+                iterations, stack.size, stackMapNanos / iterations, matcherNanos / iterations)
+        assertTrue(matcherNanos < stackMapNanos,
+                "The compiled matcher is slower than building a map of the stack.")
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.usage.control.`object`
+
+import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
+import de.fhg.isst.oe270.degree.types.TypeTaxonomy
+import de.fhg.isst.oe270.degree.util.SubSystemUtils
+import nukleus.core.Identifier
+import nukleus.core.Instance
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.nio.file.Paths
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DataPolicyStoreTests {
+
+    private val typeTaxonomy : TypeTaxonomy = TypeTaxonomy.getInstance()
+
+    init {
+        if (typeTaxonomy.size() == 0) {
+            SubSystemUtils.updateSubSystems()
+            typeTaxonomy.load(Paths.get(Configuration.CORE_TYPES_FILE_PATH))
+        }
+    }
+
+    private fun policy(name : String) : Instance {
+        val policy = typeTaxonomy.newInstance(Identifier.of("core.Text"))
+        policy.write(name)
+        return policy
+    }
+
+    @Test
+    fun `Test that policies of primitive instances are found by identity`() {
+        val store = DataPolicyStore()
+        val policies = listOf(policy("a"))
+        val first = typeTaxonomy.newInstance(Identifier.of("core.Text"))
+        val second = typeTaxonomy.newInstance(Identifier.of("core.Text"))
+        first.write("equal")
+        second.write("equal")
+
+        store.put(first, policies)
+
+        assertEquals(policies, store.get(first),
+                "Policies of an instance were not found.")
+        assertTrue(store.get(second).isEmpty(),
+                "Policies of an instance were found for a different instance.")
+        assertEquals(policies, store.getAll(listOf(first, second)),
+                "Policies of a set of instances were not found.")
+    }
+
+    @Test
+    fun `Test that policies of reachable composite instances are kept`() {
+        val store = DataPolicyStore()
+        val policies = listOf(policy("a"))
+        val dates = List(10_000) { typeTaxonomy.newInstance(Identifier.of("LocalDateTime")) }
+
+        dates.forEach { store.put(it, policies) }
+        System.gc()
+
+        dates.forEach {
+            assertEquals(policies, store.get(it),
+                    "Policies of reachable data were evicted.")
+        }
+        assertEquals(dates.size, store.size(),
+                "Entries of reachable data were removed.")
+    }
+
+    @Test
+    fun `Test that entries of collected composite instances are removed`() {
+        val store = DataPolicyStore()
+        val policies = listOf(policy("a"))
+        val kept = typeTaxonomy.newInstance(Identifier.of("LocalDateTime"))
+
+        store.put(kept, policies)
+        repeat(100) {
+            store.put(typeTaxonomy.newInstance(Identifier.of("LocalDateTime")), policies)
+        }
+
+        awaitCollection { store.size() == 1 }
+        assertEquals(1, store.size(),
+                "Entries of unreachable data were not removed.")
+        assertEquals(policies, store.get(kept),
+                "Policies of reachable data were evicted.")
+    }
+
+    @Test
+    fun `Test that the store does not leak in a periodic data app`() {
+        val store = DataPolicyStore()
+        val policies = listOf(policy("a"))
+        val maxEntries = 1000
+
+        // every iteration of a periodic data app registers policies for its (new) data
+        for (i in 0 until 1_000_000) {
+            val data = typeTaxonomy.newInstance(Identifier.of("core.Text"))
+            data.write("iteration $i")
+            store.put(data, policies)
+            if (i % 100 == 0) {
+                store.put(typeTaxonomy.newInstance(Identifier.of("LocalDateTime")), policies)
+            }
+            assertEquals(policies, store.get(data),
+                    "Policies of the current data were not found.")
+        }
+
+        // entries of collected instances are removed lazily
+        awaitCollection { store.size() <= maxEntries }
+        assertTrue(store.size() <= maxEntries,
+                "Store leaks entries of unreachable data: ${store.size()}.")
+    }
+
+    private fun awaitCollection(condition : () -> Boolean) {
+        for (attempt in 0 until 20) {
+            System.gc()
+            if (condition()) {
+                return
+            }
+            Thread.sleep(100)
+        }
+    }
+
+}
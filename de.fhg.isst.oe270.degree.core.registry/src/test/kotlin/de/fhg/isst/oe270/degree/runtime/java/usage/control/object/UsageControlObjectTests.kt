@@ -0,0 +1,62 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.usage.control.`object`
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UsageControlObjectTests {
+
+    @Test
+    fun `Test that repeatedly registered identifiers are only mapped once`() {
+        val ucObject = DegreeUsageControlObject()
+
+        repeat(3) {
+            ucObject.addExternalIdentifierMappingEntry("external", "a")
+            ucObject.addExternalIdentifierMappingEntry("external", "b")
+        }
+
+        assertEquals(listOf("a", "b"), ucObject.retrieveExternalIdentifierMapping("external"))
+        assertTrue(ucObject.retrieveExternalIdentifierMapping("unknown").isEmpty())
+    }
+
+    @Test
+    fun `Test that the external identifier mapping is bounded`() {
+        val ucObject = DegreeUsageControlObject()
+        val identifiers = UsageControlObject.MAX_IDENTIFIERS_PER_EXTERNAL_IDENTIFIER
+
+        // a periodic application registers new data for the same external ID in every iteration
+        repeat(identifiers + 10) { ucObject.addExternalIdentifierMappingEntry("periodic", "id-$it") }
+        // and new external IDs, of which the least recently used ones are removed
+        repeat(UsageControlObject.MAX_EXTERNAL_IDENTIFIERS) {
+            ucObject.addExternalIdentifierMappingEntry("external-$it", "id")
+            if (it == 0) {
+                ucObject.retrieveExternalIdentifierMapping("periodic")
+            }
+        }
+
+        assertEquals((10 until identifiers + 10).map { "id-$it" },
+                ucObject.retrieveExternalIdentifierMapping("periodic"),
+                "The oldest identifiers of an external ID were not removed.")
+        assertTrue(ucObject.retrieveExternalIdentifierMapping("external-0").isEmpty(),
+                "The least recently used external ID was not removed.")
+        assertEquals(listOf("id"), ucObject.retrieveExternalIdentifierMapping("external-1"))
+    }
+
+}
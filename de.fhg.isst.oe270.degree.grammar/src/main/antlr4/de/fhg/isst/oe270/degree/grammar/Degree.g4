@@ -62,6 +62,8 @@ statement
     |   if_statement            #statement_if_statement
     |   variable_assignment ';' #statement_variable_assignment
     |   block                   #statement_block
+    |   parallel_statement      #statement_parallel_statement
+    |   foreach_statement       #statement_foreach_statement
     |   return_statement        #statement_return
     ;
 
@@ -86,6 +88,18 @@ if_statement
         (KEYWORD_ELSE else_block=block)?
     ;
 
+// every statement of the block is executed as independent branch
+parallel_statement
+    :   KEYWORD_PARALLEL body=block
+    ;
+
+// the body is executed for every element of the collection, optionally with several elements in parallel
+foreach_statement
+    :   KEYWORD_FOREACH '(' element=variable_name ':' collection=variable_reference ')'
+        (KEYWORD_PARALLEL '(' parallelism=INTEGER_LITERAL (',' chunk_size=INTEGER_LITERAL)? ')')?
+        body=block
+    ;
+
 variable_assignment
     :   name=variable_name ASSIGNMENT_OPERATOR type=type_instantiation                                      #variable_assignment_type_instantiation
     |   name=variable_name ASSIGNMENT_OPERATOR array_values=array_initializer                               #variable_assignment_array
@@ -213,7 +227,9 @@ KEYWORD_CONFIGURATION: (C O N F I G U R A T I O N);
 KEYWORD_ELSE: (E L S E);
 KEYWORD_END: (E N D);
 KEYWORD_FALSE: (F A L S E);
+KEYWORD_FOREACH: (F O R E A C H);
 KEYWORD_IF: (I F);
+KEYWORD_PARALLEL: (P A R A L L E L);
 KEYWORD_TRUE: (T R U E);
 KEYWORD_RETURN: (R E T U R N);
 
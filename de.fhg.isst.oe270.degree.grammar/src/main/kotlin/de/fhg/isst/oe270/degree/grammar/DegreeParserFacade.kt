@@ -22,85 +22,115 @@ import de.fhg.isst.oe270.degree.parsing.grammar.interfaces.Node
 import de.fhg.isst.oe270.degree.parsing.types.Point
 import de.fhg.isst.oe270.degree.parsing.types.Position
 import org.antlr.v4.runtime.*
-import org.antlr.v4.runtime.atn.ATNConfigSet
-import org.antlr.v4.runtime.dfa.DFA
+import org.antlr.v4.runtime.atn.PredictionMode
+import org.antlr.v4.runtime.misc.ParseCancellationException
 import java.io.File
 import java.util.*
 
 data class ParsingResult<out T : Node>(val root: T?, val errors: List<Error>)
 
+/**
+ * Entry point for parsing D° code.
+ *
+ * Inputs are parsed in two stages. The first stage uses SLL prediction and bails out on the first syntax error.
+ * SLL prediction is sufficient for nearly all inputs and considerably faster. Only if the first stage fails, the
+ * input is parsed again with full LL prediction, which also reports the syntax errors.
+ *
+ * Lexer and parser instances are reused per thread. All parser instances share the DFA cache of the generated
+ * parser, which therefore stays warm between files.
+ */
 object DegreeParserFacade {
 
+    /**
+     * The lexer and parser of the current thread.
+     */
+    private val parsers = ThreadLocal.withInitial { ReusableParser() }
+
     fun parseDataApp(file: File): ParsingResult<DataApp> {
-        val (parser, errors) = getParser(file)
-        val ast = parser.data_app_file()?.toAst()
-        return ParsingResult(ast, errors)
+        return parsers.get().parse(CharStreams.fromPath(file.toPath()), file.toString(),
+                { it.data_app_file() }, { it.toAst() })
     }
 
     /**
      * This function is used to transform the code block of an embedded D° activity to the required AST format.
+     * Each call creates a new AST, use a [ParsedBlockCache] to parse blocks only once per compilation.
      *
      * @param code The code block which will be parsed as string
      */
     fun parseBlock(code: String): ParsingResult<Block> {
-        val (parser, errors) = getParser(code)
-        val ast = parser.block()?.toAst()
-        return ParsingResult(ast, errors)
+        return parsers.get().parse(CharStreams.fromString(code), code, { it.block() }, { it.toAst() })
     }
 
-    private fun getParser(code: String) : Pair<DegreeParser, List<Error>> {
-        val errors = LinkedList<Error>()
-        val errorListener = object : ANTLRErrorListener {
-            override fun syntaxError(recognizer: Recognizer<*, *>, offendingSymbol: Any, line: Int, charPositionInLine: Int, msg: String, e: RecognitionException?) {
-                val point = Point(line, charPositionInLine)
-                errors.add(Error(msg, code, Position(point, point)))
-            }
+    /**
+     * A lexer and a parser which are reused for several inputs.
+     * Instances must not be shared between threads.
+     */
+    private class ReusableParser {
 
-            override fun reportAttemptingFullContext(recognizer: Parser?, dfa: DFA?, startIndex: Int, stopIndex: Int, conflictingAlts: BitSet?, configs: ATNConfigSet?) {
-                //not needed
-            }
-            override fun reportAmbiguity(recognizer: Parser?, dfa: DFA?, startIndex: Int, stopIndex: Int, exact: Boolean, ambigAlts: BitSet?, configs: ATNConfigSet?) {
-                //not needed
-            }
-            override fun reportContextSensitivity(recognizer: Parser?, dfa: DFA?, startIndex: Int, stopIndex: Int, prediction: Int, configs: ATNConfigSet?) {
-                //not needed
-            }
-        }
+        private var source = ""
 
-        val lexer = DegreeLexer(CharStreams.fromStream(code.byteInputStream()))
-        lexer.removeErrorListeners()
-        lexer.addErrorListener(errorListener)
-        val parser = DegreeParser(CommonTokenStream(lexer))
-        parser.removeErrorListeners()
-        parser.addErrorListener(errorListener)
-        return (parser to errors)
-    }
+        private var errors = LinkedList<Error>()
 
-    private fun getParser(file: File) : Pair<DegreeParser, List<Error>> {
-        val errors = LinkedList<Error>()
-        val errorListener = object : ANTLRErrorListener {
-            override fun syntaxError(recognizer: Recognizer<*, *>, offendingSymbol: Any, line: Int, charPositionInLine: Int, msg: String, e: RecognitionException?) {
+        private val errorListener = object : BaseErrorListener() {
+            override fun syntaxError(recognizer: Recognizer<*, *>, offendingSymbol: Any?, line: Int,
+                                     charPositionInLine: Int, msg: String, e: RecognitionException?) {
                 val point = Point(line, charPositionInLine)
-                errors.add(Error(msg, file.toString(), Position(point, point)))
+                errors.add(Error(msg, source, Position(point, point)))
             }
+        }
 
-            override fun reportAttemptingFullContext(recognizer: Parser?, dfa: DFA?, startIndex: Int, stopIndex: Int, conflictingAlts: BitSet?, configs: ATNConfigSet?) {
-                //not needed
+        private var lexer: DegreeLexer? = null
+
+        private var parser: DegreeParser? = null
+
+        /**
+         * Parse an input with the given parser rule.
+         *
+         * @param input the input
+         * @param sourceName the name of the input which is used for errors
+         * @param rule the parser rule
+         * @param toAst transforms the parse tree into the AST. The tree refers to the lexer, therefore it must be
+         *              transformed before the lexer is reused.
+         * @return the AST and all syntax errors
+         */
+        fun <C : ParserRuleContext, T : Node> parse(input: CharStream, sourceName: String,
+                                                    rule: (DegreeParser) -> C?,
+                                                    toAst: (C) -> T): ParsingResult<T> {
+            source = sourceName
+            errors = LinkedList()
+
+            val lexer = this.lexer?.also { it.setInputStream(input) } ?: DegreeLexer(input).also {
+                it.removeErrorListeners()
+                it.addErrorListener(errorListener)
+                this.lexer = it
             }
-            override fun reportAmbiguity(recognizer: Parser?, dfa: DFA?, startIndex: Int, stopIndex: Int, exact: Boolean, ambigAlts: BitSet?, configs: ATNConfigSet?) {
-                //not needed
+            val tokens = CommonTokenStream(lexer)
+            val parser = this.parser?.also { it.tokenStream = tokens } ?: DegreeParser(tokens).also {
+                this.parser = it
             }
-            override fun reportContextSensitivity(recognizer: Parser?, dfa: DFA?, startIndex: Int, stopIndex: Int, prediction: Int, configs: ATNConfigSet?) {
-                //not needed
+
+            try {
+                // first stage: SLL prediction without error recovery
+                parser.removeErrorListeners()
+                parser.errorHandler = BailErrorStrategy()
+                parser.interpreter.predictionMode = PredictionMode.SLL
+                val tree = try {
+                    rule(parser)
+                } catch (e: ParseCancellationException) {
+                    // second stage: full LL prediction with error reporting and recovery
+                    // the tokens of the first stage are reused, so lexer errors are not reported twice
+                    parser.reset()
+                    parser.addErrorListener(errorListener)
+                    parser.errorHandler = DefaultErrorStrategy()
+                    parser.interpreter.predictionMode = PredictionMode.LL
+                    rule(parser)
+                }
+                return ParsingResult(tree?.let(toAst), errors)
+            } finally {
+                // do not keep the input of the last file
+                parser.tokenStream = null
+                lexer.setInputStream(null)
             }
         }
-
-        val lexer = DegreeLexer(CharStreams.fromPath(file.toPath()))
-        lexer.removeErrorListeners()
-        lexer.addErrorListener(errorListener)
-        val parser = DegreeParser(CommonTokenStream(lexer))
-        parser.removeErrorListeners()
-        parser.addErrorListener(errorListener)
-        return (parser to errors)
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.grammar
+
+import de.fhg.isst.oe270.degree.grammar.ast.model.Block
+
+/**
+ * Parsed code blocks of embedded D° activities for a single compilation.
+ *
+ * An embedded activity which is called several times by a data app is only parsed once. The cache belongs to one
+ * compilation, so ASTs are never shared between compilations and are released with the compilation. Callers must
+ * not modify the returned ASTs, since repeated calls return the same AST. The least recently used blocks are
+ * evicted if more than the given number of blocks are cached.
+ *
+ * Instances are not thread-safe.
+ *
+ * @param maxEntries maximum number of cached blocks
+ */
+class ParsedBlockCache(private val maxEntries: Int = DEFAULT_MAX_ENTRIES) {
+
+    companion object {
+        /**
+         * Default maximum number of cached blocks.
+         */
+        const val DEFAULT_MAX_ENTRIES = 128
+    }
+
+    private val parsedBlocks = object : LinkedHashMap<String, ParsingResult<Block>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ParsingResult<Block>>) =
+                size > maxEntries
+    }
+
+    /**
+     * Parse a code block or take it from the cache.
+     *
+     * @param code the code block which will be parsed as string
+     * @return the AST and all syntax errors of the block
+     */
+    fun parse(code: String): ParsingResult<Block> {
+        return parsedBlocks.getOrPut(code) { DegreeParserFacade.parseBlock(code) }
+    }
+
+    /**
+     * Get the number of cached blocks.
+     */
+    fun size(): Int = parsedBlocks.size
+
+}
@@ -141,6 +141,8 @@ fun DegreeParser.StatementContext.toAst() = when (this) {
     is DegreeParser.Statement_if_statementContext -> if_statement().toAst()
     is DegreeParser.Statement_variable_assignmentContext -> variable_assignment().toAst()
     is DegreeParser.Statement_blockContext -> block().toAst()
+    is DegreeParser.Statement_parallel_statementContext -> parallel_statement().toAst()
+    is DegreeParser.Statement_foreach_statementContext -> foreach_statement().toAst()
     is DegreeParser.Statement_returnContext -> return_statement().toAst()
     else -> throw UnsupportedOperationException("Unsupported class: ${this.javaClass.canonicalName}")
 }
@@ -155,6 +157,14 @@ fun DegreeParser.Activity_callContext.toAst(): ActivityCall =
 fun DegreeParser.If_statementContext.toAst() =
         IfStatement(conditions.map { it.toAst() }, blocks.map { it.toAst() }, else_block?.toAst(), getTokenSource(), toPosition())
 
+fun DegreeParser.Parallel_statementContext.toAst() =
+        ParallelStatement(body.statements.map { it.toAst() }, getTokenSource(), toPosition())
+
+fun DegreeParser.Foreach_statementContext.toAst() =
+        ForeachStatement(element.toAst(), collection.toAst(),
+                parallelism?.text?.toInt() ?: 1, chunk_size?.text?.toInt() ?: 0,
+                body.toAst(), getTokenSource(), toPosition())
+
 fun DegreeParser.Bool_expressionContext.toAst() : BoolExpression = BoolExpression(
         expr?.toAst(),
         left_expression?.toAst(),
@@ -64,6 +64,42 @@ data class IfStatement(val conditions: Collection<BoolExpression>,
     override fun equals(other: Any?) = reflectiveEquals(other)
 }
 
+/**
+ * Statements which are executed concurrently. Each statement is an independent branch.
+ */
+data class ParallelStatement(val branches: Collection<Statement>,
+                             override val file: String,
+                             override val position: Position,
+                             override var parent: Node? = null) : Statement {
+    init {
+        branches.forEach { it.parent = this }
+    }
+    override fun toString() = reflectiveToString()
+    override fun hashCode() = reflectiveHashCode()
+    override fun equals(other: Any?) = reflectiveEquals(other)
+}
+
+/**
+ * Iteration over the elements of a list instance. The body is executed once for every element. If the parallelism is
+ * greater than one, chunks of elements are processed concurrently. A chunk size of 0 lets the runtime decide.
+ */
+data class ForeachStatement(val element: String,
+                            val collection: VariableReference,
+                            val parallelism: Int,
+                            val chunkSize: Int,
+                            val body: Block,
+                            override val file: String,
+                            override val position: Position,
+                            override var parent: Node? = null) : Statement {
+    init {
+        collection.parent = this
+        body.parent = this
+    }
+    override fun toString() = reflectiveToString()
+    override fun hashCode() = reflectiveHashCode()
+    override fun equals(other: Any?) = reflectiveEquals(other)
+}
+
 enum class BooleanComperator{
     LT, GT, LEQ, GEQ, EQ, NEQ;
 
@@ -27,7 +27,9 @@ object SubSystemUtils {
 
     /**
      * Update all subsystems after ensuring the required directories exist.
+     * Concurrent compilers must not write the subsystem files at the same time.
      */
+    @Synchronized
     fun updateSubSystems() {
         UserConfigurationUtils.initializeUserPropertiesFolder()
         UserConfigurationUtils.initializeSubsystemFolder()
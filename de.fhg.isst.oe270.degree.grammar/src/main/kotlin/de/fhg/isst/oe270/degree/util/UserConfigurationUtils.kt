@@ -91,6 +91,11 @@ object UserConfigurationUtils {
      */
     @JvmStatic
     fun updateSystem(filepath: String, value: ByteArray): Boolean {
+        // files which are up to date are not written, since other compilers may read them at the same time
+        if (value.isNotEmpty() && Files.isRegularFile(Paths.get(filepath))
+                && Files.readAllBytes(Paths.get(filepath)).contentEquals(value)) {
+            return true
+        }
         // create file if it is not already existing
         try {
             Files.createFile(Paths.get(filepath))
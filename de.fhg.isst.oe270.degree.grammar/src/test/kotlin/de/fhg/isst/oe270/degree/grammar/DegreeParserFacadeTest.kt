@@ -0,0 +1,140 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.grammar
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty
+import org.slf4j.LoggerFactory
+import java.io.File
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+internal class DegreeParserFacadeTest {
+
+    private val logger = LoggerFactory.getLogger(DegreeParserFacadeTest::class.java.simpleName)
+
+    private val statements = """
+        |    message = ${'$'}Text(@value["Hello World"]);
+        |    [result] = PrintToConsole[message];
+        |    if (message == "Hello World" && !(result != "")) begin
+        |        PrintToConsole[message];
+        |    end else if (@length[message] > 3) begin
+        |        [result] = LogToConsole[message];
+        |    end else begin
+        |        return [message];
+        |    end
+        |""".trimMargin()
+
+    private fun dataApp(statementRepetitions: Int): String {
+        val code = StringBuilder()
+        code.append("configuration\n    - name: \"ParserBenchmark\"\ncode\nbegin\n")
+        repeat(statementRepetitions) { code.append(statements) }
+        code.append("end\n")
+        return code.toString()
+    }
+
+    private fun writeDataApp(statementRepetitions: Int): File {
+        val file = File.createTempFile("parser", ".degree")
+        file.deleteOnExit()
+        file.writeText(dataApp(statementRepetitions))
+        return file
+    }
+
+    @Test
+    fun parseDataApp() {
+        val file = writeDataApp(3)
+        val result = DegreeParserFacade.parseDataApp(file)
+
+        assertTrue(result.errors.isEmpty(), "Unexpected errors ${result.errors}")
+        assertNotNull(result.root)
+        assertEquals(file.toString(), result.root!!.file)
+        assertEquals(9, result.root!!.code.statements.size)
+    }
+
+    @Test
+    fun parseInvalidDataAppReportsErrors() {
+        val file = File.createTempFile("parser", ".degree")
+        file.deleteOnExit()
+        file.writeText("configuration\ncode\nbegin\n    [result] = PrintToConsole[message;\nend\n")
+
+        val result = DegreeParserFacade.parseDataApp(file)
+        assertTrue(result.errors.isNotEmpty(), "Missing expected errors")
+        assertTrue(result.errors.all { it.file == file.toString() })
+
+        // the reused parser must not report the errors again
+        assertTrue(DegreeParserFacade.parseDataApp(writeDataApp(1)).errors.isEmpty())
+    }
+
+    @Test
+    fun parseBlockCreatesNewAsts() {
+        val code = "begin\n$statements\nend"
+        val first = DegreeParserFacade.parseBlock(code)
+        assertTrue(first.errors.isEmpty(), "Unexpected errors ${first.errors}")
+        assertNotSame(first.root, DegreeParserFacade.parseBlock(code).root)
+
+        val invalid = DegreeParserFacade.parseBlock("begin\n    PrintToConsole[\nend")
+        assertTrue(invalid.errors.isNotEmpty(), "Missing expected errors")
+    }
+
+    @Test
+    fun parsedBlockCacheIsScopedAndBounded() {
+        val code = "begin\n$statements\nend"
+        val cache = ParsedBlockCache(2)
+        val first = cache.parse(code)
+        assertSame(first, cache.parse(code))
+        // another compilation does not share the AST
+        assertNotSame(first, ParsedBlockCache().parse(code))
+
+        cache.parse("begin\n    PrintToConsole[message];\nend")
+        cache.parse("begin\n    LogToConsole[message];\nend")
+        assertEquals(2, cache.size())
+        assertNotSame(first, cache.parse(code), "The least recently used block has not been evicted.")
+    }
+
+    /**
+     * Compares parsing of large data apps with the facade against parsing with a new parser which uses full LL
+     * prediction. Run with -Ddegree.benchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "degree.benchmark", matches = "true")
+    fun benchmarkLargeDataApps() {
+        for (repetitions in listOf(100, 1_000, 5_000)) {
+            val file = writeDataApp(repetitions)
+            val code = file.readText()
+            val runs = 5
+
+            // warm up both variants
+            DegreeParserFacade.parseDataApp(file)
+            getParser(code).first.data_app_file()
+
+            var start = System.nanoTime()
+            repeat(runs) { getParser(code).first.data_app_file() }
+            val fullLL = (System.nanoTime() - start) / runs / 1_000_000
+
+            start = System.nanoTime()
+            repeat(runs) { assertTrue(DegreeParserFacade.parseDataApp(file).errors.isEmpty()) }
+            val facade = (System.nanoTime() - start) / runs / 1_000_000
+
+            logger.info("${repetitions * 3} statements (${file.length() / 1024} KiB): " +
+                    "full LL ${fullLL}ms, facade (SLL first, including AST) ${facade}ms")
+            assertTrue(facade <= fullLL, "The facade is slower than full LL prediction.")
+        }
+    }
+
+}
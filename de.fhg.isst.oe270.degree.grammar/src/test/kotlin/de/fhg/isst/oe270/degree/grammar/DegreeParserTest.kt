@@ -15,6 +15,7 @@
  */
 package de.fhg.isst.oe270.degree.grammar;
 
+import de.fhg.isst.oe270.degree.grammar.ast.model.Block
 import de.fhg.isst.oe270.degree.grammar.ast.toAst
 import de.fhg.isst.oe270.degree.parsing.configuration.Configuration
 import de.fhg.isst.oe270.degree.parsing.types.Position
@@ -136,6 +137,73 @@ internal class DegreeParserTest {
     fun if_statement() {
     }
 
+    @Test
+    fun parallel_statement() {
+        val code = "parallel begin begin end begin end end"
+        val expectedParseTree =
+                """Parallel_statement
+                  |  KEYWORD_PARALLEL[parallel]
+                  |  Block
+                  |    KEYWORD_BEGIN[begin]
+                  |    Statement_block
+                  |      Block
+                  |        KEYWORD_BEGIN[begin]
+                  |        KEYWORD_END[end]
+                  |    Statement_block
+                  |      Block
+                  |        KEYWORD_BEGIN[begin]
+                  |        KEYWORD_END[end]
+                  |    KEYWORD_END[end]
+                  |""".trimMargin()
+        val parserRuleContext = dynamicTest(code, "parallel_statement", expectedParseTree) as DegreeParser.Parallel_statementContext
+        val ast = parserRuleContext.toAst()
+        assertEquals(Position(1, 0, 1, code.length), ast.position)
+        assertEquals(listOf(Position(1, 15, 1, 24), Position(1, 25, 1, 34)), ast.branches.map { it.position })
+        assertTrue(ast.branches.all { it is Block && it.statements.isEmpty() && it.parent === ast })
+    }
+
+    @Test
+    fun foreach_statement() {
+        val code = "foreach (record : records) parallel(4, 16) begin end"
+        val expectedParseTree =
+                """Foreach_statement
+                  |  KEYWORD_FOREACH[foreach]
+                  |  LPAREN[(]
+                  |  Variable_name
+                  |    IDENTIFIER[record]
+                  |  COLON[:]
+                  |  Variable_reference
+                  |    Variable_name
+                  |      IDENTIFIER[records]
+                  |  RPAREN[)]
+                  |  KEYWORD_PARALLEL[parallel]
+                  |  LPAREN[(]
+                  |  INTEGER_LITERAL[4]
+                  |  COMMA[,]
+                  |  INTEGER_LITERAL[16]
+                  |  RPAREN[)]
+                  |  Block
+                  |    KEYWORD_BEGIN[begin]
+                  |    KEYWORD_END[end]
+                  |""".trimMargin()
+        val parserRuleContext = dynamicTest(code, "foreach_statement", expectedParseTree) as DegreeParser.Foreach_statementContext
+        val ast = parserRuleContext.toAst()
+        assertEquals("record", ast.element)
+        assertEquals("records", ast.collection.name)
+        assertEquals(4, ast.parallelism)
+        assertEquals(16, ast.chunkSize)
+        assertTrue(ast.body.statements.isEmpty() && ast.body.parent === ast)
+    }
+
+    @Test
+    fun `foreach_statement without parallelism`() {
+        val (parser, errors) = getParser("foreach (record : records) begin end")
+        val ast = parser.foreach_statement().toAst()
+        assertTrue(errors.isEmpty(), "Unexpected errors")
+        assertEquals(1, ast.parallelism)
+        assertEquals(0, ast.chunkSize)
+    }
+
     @Test
     fun variable_assignment() {
     }
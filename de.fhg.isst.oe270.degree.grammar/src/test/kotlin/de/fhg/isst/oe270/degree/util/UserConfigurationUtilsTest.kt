@@ -0,0 +1,44 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.util
+
+import org.junit.jupiter.api.Test
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+internal class UserConfigurationUtilsTest {
+
+    @Test
+    fun updateSystemKeepsFilesWhichAreUpToDate() {
+        val dir = Files.createTempDirectory("core-files")
+        try {
+            val file = dir.resolve("core.types.yaml")
+            Files.write(file, "types".toByteArray())
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1000))
+
+            assertTrue(UserConfigurationUtils.updateSystem(file.toString(), "types".toByteArray()))
+            assertEquals(1000, Files.getLastModifiedTime(file).toMillis())
+
+            assertTrue(UserConfigurationUtils.updateSystem(file.toString(), "changed types".toByteArray()))
+            assertEquals("changed types", String(Files.readAllBytes(file)))
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+}
@@ -16,22 +16,35 @@
 package de.fhg.isst.oe270.degree.runtime.java.context;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadOnlyEntity;
 import de.fhg.isst.oe270.degree.runtime.java.context.exception.ContextEntityResolveException;
 import de.fhg.isst.oe270.degree.runtime.java.context.exception.UnknownContextEntityException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * A context module in D° is a context entity which contains an arbitrary amount of other
  * context entities.
+ * <p>
+ * Root modules are persisted by the {@link ContextPersistence}.
  */
 public abstract class ContextModule implements ContextEntity {
 
@@ -54,6 +67,12 @@ public abstract class ContextModule implements ContextEntity {
      * The xStream instance used by this module for de-/serialization.
      */
     private static final XStream X_STREAM = new XStream();
+    /**
+     * Updater for the version of modules. A field updater is used since nested modules are
+     * deserialized without calling their constructor.
+     */
+    private static final AtomicLongFieldUpdater<ContextModule> VERSION =
+            AtomicLongFieldUpdater.newUpdater(ContextModule.class, "version");
     /**
      * The name of this module.
      */
@@ -69,9 +88,18 @@ public abstract class ContextModule implements ContextEntity {
     private boolean parentSet = false;
     /**
      * Map containing all context entities and their names, which are part of this module.
+     * The map is only changed and read while holding the lock of the root module
+     * (see {@link #structureLock()}), so neither snapshots nor parallel branches of a data app
+     * see a map which is being changed.
      */
     private final HashMap<String, ContextEntity> contextEntities = new HashMap<>();
 
+    /**
+     * Version of the set of contained entities, which is increased whenever entities are
+     * added, removed or (re-)loaded. It is not persisted.
+     */
+    private transient volatile long version = 0;
+
     /**
      * Create a context module with given name.
      *
@@ -103,8 +131,10 @@ public abstract class ContextModule implements ContextEntity {
         if (names.size() == 0) {
             return this;
         } else {
-            if (contextEntities.containsKey(names.get(0))) {
-                return contextEntities.get(names.remove(0)).resolve(names);
+            ContextEntity entity = findContextEntity(names.get(0));
+            if (entity != null) {
+                names.remove(0);
+                return entity.resolve(names);
             } else {
                 TRACER.error("Tried to resolve unknown entity name '" + names.get(0) + "' in"
                         + " module '" + moduleName + "'.");
@@ -135,36 +165,32 @@ public abstract class ContextModule implements ContextEntity {
      * @return true if loading was successful, false otherwise
      */
     public boolean load(final HashMap<String, ContextEntity> defaultConfiguration) {
-        FileInputStream fileInputStream = null;
         HashMap<String, ContextEntity> loadedConfiguration;
+        boolean imported = false;
 
         // clear current content
-        contextEntities.clear();
+        synchronized (structureLock()) {
+            contextEntities.clear();
+            VERSION.incrementAndGet(this);
+        }
         try {
-            // try to regular load the persisted version for this module
-            fileInputStream = new FileInputStream(System.getProperty("user.dir")
-                    + File.separator + "de/fhg/isst/oe270/degree/runtime/java/context"
-                    + File.separator + moduleName + ".xml");
-            loadedConfiguration =
-                    (HashMap<String, ContextEntity>) X_STREAM.fromXML(fileInputStream);
+            // try to regular load the persisted snapshot for this module
+            loadedConfiguration = readSnapshot();
+            if (loadedConfiguration == null) {
+                // import data which has been saved as XML
+                loadedConfiguration = readXml();
+                imported = true;
+            }
         } catch (FileNotFoundException e) {
             warn("Could not find saved data for context module '" + moduleName
                     + "'. Going to use default " + "configuration.");
             // if there is no persisted version available the default configuration will be used
-            contextEntities.putAll(defaultConfiguration);
+            synchronized (structureLock()) {
+                contextEntities.putAll(defaultConfiguration);
+            }
             buildParentHierarchy();
 
             return false;
-        } finally {
-            // close the input stream
-            try {
-                if (fileInputStream != null) {
-                    fileInputStream.close();
-                }
-            } catch (IOException e) {
-                error("Could not close input stream for saved data of context module '"
-                        + moduleName + "'.");
-            }
         }
         // check if the values loaded from file match to the expected values
         // in the default configuration
@@ -172,7 +198,9 @@ public abstract class ContextModule implements ContextEntity {
             if (!loadedConfiguration.containsKey(expectedKey)) {
                 warn("The loaded configuration does not contain the key '" + expectedKey
                         + "'. Going to use default configuration");
-                contextEntities.putAll(defaultConfiguration);
+                synchronized (structureLock()) {
+                    contextEntities.putAll(defaultConfiguration);
+                }
 
                 return false;
             }
@@ -183,9 +211,17 @@ public abstract class ContextModule implements ContextEntity {
                     + defaultConfiguration.size() + ").");
         }
         info("Successfully loaded data for module '" + moduleName + "'.");
-        contextEntities.putAll(loadedConfiguration);
+        synchronized (structureLock()) {
+            contextEntities.putAll(loadedConfiguration);
+        }
 
         buildParentHierarchy();
+        if (imported) {
+            info("Imported XML data for module '" + moduleName + "'.");
+            persistChange();
+        } else if (parent == null) {
+            ContextPersistence.getInstance().replay(this);
+        }
 
         return true;
     }
@@ -194,53 +230,185 @@ public abstract class ContextModule implements ContextEntity {
      * Recursively create correct parent/child releations for all contained entities.
      */
     public void buildParentHierarchy() {
-        for (ContextEntity currentElement : contextEntities.values()) {
-            currentElement.setParent(this);
-            if (currentElement instanceof ContextModule) {
-                ((ContextModule) currentElement).buildParentHierarchy();
+        synchronized (structureLock()) {
+            for (ContextEntity currentElement : contextEntities.values()) {
+                currentElement.setParent(this);
+                if (currentElement instanceof ContextModule) {
+                    ((ContextModule) currentElement).buildParentHierarchy();
+                }
             }
         }
     }
 
     /**
-     * Saves the whole content of this context module to a file.
+     * Read the persisted snapshot of this module.
+     *
+     * @return the persisted entities or null if there is no readable snapshot
      */
-    public void save() {
-        FileOutputStream fileOutputStream = null;
-        try {
-            File targetFile = new File(System.getProperty("user.dir")
-                    + File.separator + "de/fhg/isst/oe270/degree/runtime/java/context"
-                    + File.separator + moduleName + ".xml");
-
-            // ensure folders and files are available
-            targetFile.getParentFile().mkdirs();
-            targetFile.createNewFile();
+    private HashMap<String, ContextEntity> readSnapshot() {
+        File snapshotFile = ContextPersistence.getInstance().snapshotFile(moduleName);
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+        try (InputStream in = ContextPersistence.getInstance().openSnapshot(this)) {
+            return (HashMap<String, ContextEntity>) X_STREAM.unmarshal(new BinaryStreamReader(in));
+        } catch (IOException | XStreamException e) {
+            error("Could not read snapshot of context module '" + moduleName + "'.");
+            return null;
+        }
+    }
 
-            fileOutputStream = new FileOutputStream(targetFile, false);
-            X_STREAM.toXML(contextEntities, fileOutputStream);
+    /**
+     * Read the persisted XML data of this module.
+     *
+     * @return the persisted entities
+     * @throws FileNotFoundException if there is no persisted XML data
+     */
+    private HashMap<String, ContextEntity> readXml() throws FileNotFoundException {
+        File xmlFile = ContextPersistence.getInstance().xmlFile(moduleName);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(xmlFile))) {
+            return (HashMap<String, ContextEntity>) X_STREAM.fromXML(in);
         } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            throw e;
         } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (fileOutputStream != null) {
-                try {
-                    fileOutputStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            error("Could not close input stream for saved data of context module '"
+                    + moduleName + "'.");
+            throw new FileNotFoundException(xmlFile.getPath());
+        }
+    }
+
+    /**
+     * Write all entities of this module in binary format.
+     * <p>
+     * The entities (including nested modules) are marshalled into memory while holding the
+     * lock of the root module, so concurrent changes of the module structure wait until the
+     * copy is complete but not until it is written.
+     *
+     * @param out the target stream
+     * @throws IOException if the snapshot could not be written
+     */
+    void writeSnapshot(final OutputStream out) throws IOException {
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        synchronized (structureLock()) {
+            BinaryStreamWriter writer = new BinaryStreamWriter(copy);
+            X_STREAM.marshal(contextEntities, writer);
+            writer.flush();
         }
+        copy.writeTo(out);
     }
 
     /**
-     * Propagates changes in entities to parent and persists the new data.
+     * Saves the whole content of this context module to a file. Saving is synchronous,
+     * {@link #persistChange()} should be preferred.
+     */
+    public void save() {
+        ContextPersistence.getInstance().snapshot(getRoot());
+    }
+
+    /**
+     * Propagates changes in entities to the root module and schedules the new data
+     * for persistence.
      */
     public void persistChange() {
-        if (parent != null) {
-            ((ContextModule) parent).persistChange();
-        } else {
-            save();
+        ContextPersistence.getInstance().scheduleSnapshot(getRoot());
+    }
+
+    /**
+     * Propagates the change of a contained entity to the root module and schedules its value
+     * for persistence. In contrast to {@link #persistChange()} only the changed value is
+     * written. The value is read when the change is written, so multiple changes of the same
+     * entity are combined and the caller is never blocked by the persistence.
+     *
+     * @param entity the changed entity, which must be part of this module
+     */
+    public void persistChange(final ReadOnlyEntity entity) {
+        ContextPersistence.getInstance().recordChange(getRoot(), entity);
+    }
+
+    /**
+     * Get the names of a contained entity, relative to the root module of this module.
+     *
+     * @param entity the entity, which must be part of this module
+     * @return the names of all modules between the root module and the entity and the name of
+     * the entity
+     */
+    List<String> getRelativeNames(final ContextEntity entity) {
+        List<String> names = new ArrayList<>();
+        names.add(entity.getEntityName());
+        ContextModule module = this;
+        while (module.parent != null) {
+            names.add(0, module.moduleName);
+            module = (ContextModule) module.parent;
+        }
+        return names;
+    }
+
+    /**
+     * Restore the value of a contained entity from persisted data.
+     *
+     * @param names names of the entity, relative to this module
+     * @param value the restored value
+     * @return true if the value has been restored, false if there is no such entity
+     */
+    boolean restoreValue(final List<String> names, final Object value) {
+        ContextEntity current = this;
+        for (String name : names) {
+            if (!(current instanceof ContextModule)) {
+                return false;
+            }
+            current = ((ContextModule) current).findContextEntity(name);
+        }
+        if (!(current instanceof ReadOnlyEntity)) {
+            return false;
+        }
+        ((ReadOnlyEntity) current).restore(value);
+        return true;
+    }
+
+    /**
+     * Get the root module of this module.
+     *
+     * @return the root module, which is this module if it has no parent
+     */
+    private ContextModule getRoot() {
+        ContextModule root = this;
+        while (root.parent != null) {
+            root = (ContextModule) root.parent;
+        }
+        return root;
+    }
+
+    /**
+     * Get the lock which is held while the entities of this module or of any other module
+     * with the same root module are changed or copied.
+     *
+     * @return the lock of the root module
+     */
+    private Object structureLock() {
+        return getRoot().contextEntities;
+    }
+
+    /**
+     * Get a contained entity while holding the lock of the root module.
+     *
+     * @param key name of the entity
+     * @return the entity or null if there is no entity with the given name
+     */
+    ContextEntity findContextEntity(final String key) {
+        synchronized (structureLock()) {
+            return contextEntities.get(key);
+        }
+    }
+
+    /**
+     * Get a copy of the names of all contained entities, taken while holding the lock of the
+     * root module.
+     *
+     * @return the names of all entities in this module
+     */
+    Set<String> getContextEntityNames() {
+        synchronized (structureLock()) {
+            return new HashSet<>(contextEntities.keySet());
         }
     }
 
@@ -257,16 +425,29 @@ public abstract class ContextModule implements ContextEntity {
      * @return context entity which is stored inside this class and identified by given key
      */
     public ContextEntity getContextEntity(final String key) {
-        if (contextEntities.containsKey(key)) {
-            return contextEntities.get(key);
+        ContextEntity entity = findContextEntity(key);
+        if (entity != null) {
+            return entity;
         } else {
             throw new UnknownContextEntityException("Unknown context entity '"
                     + moduleName + "' requested.");
         }
     }
 
+    /**
+     * Get the version of the set of entities in this module. The version changes whenever
+     * entities are added or removed and can be used to detect if cached lookups are outdated.
+     *
+     * @return the current version of this module
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Get a map of all entities and their names, which are contained in the module.
+     * Entities must be added and removed with {@link #addContextEntity(String, ContextEntity)}
+     * and {@link #removeContextEntity(String)} to keep the version of the module intact.
      *
      * @return map with <name, entity> pairs, with entries for every entity in this module
      */
@@ -279,16 +460,38 @@ public abstract class ContextModule implements ContextEntity {
      * @param value context entity which will be stored
      */
     public void addContextEntity(final String key, final ContextEntity value) {
-        if (contextEntities.containsKey(key)) {
+        boolean added;
+        synchronized (structureLock()) {
+            added = !contextEntities.containsKey(key);
+            if (added) {
+                contextEntities.put(key, value);
+                value.setParent(this);
+                VERSION.incrementAndGet(this);
+            }
+        }
+        if (!added) {
             warn("Tried to add entity '" + key
                     + "' with a name which is already in use to module '"
                     + moduleName + "'.");
         } else {
-            contextEntities.put(key, value);
-            value.setParent(this);
             info("Added new Context Entity '" + key + "' of type "
                     + value.getClass().getSimpleName() + ".");
-            save();
+            persistChange();
+        }
+    }
+
+    /**
+     * Replace an entity of this context module without persisting the change. This is used
+     * by modules which contain entities that must not be restored from persisted data.
+     *
+     * @param key   unique key of the entity
+     * @param value context entity which will be stored
+     */
+    protected void replaceContextEntity(final String key, final ContextEntity value) {
+        synchronized (structureLock()) {
+            contextEntities.put(key, value);
+            value.setParent(this);
+            VERSION.incrementAndGet(this);
         }
     }
 
@@ -298,8 +501,15 @@ public abstract class ContextModule implements ContextEntity {
      * @param key unique key of the entity to remove
      */
     public void removeContextEntity(final String key) {
-        if (contextEntities.containsKey(key)) {
-            contextEntities.remove(key);
+        boolean removed;
+        synchronized (structureLock()) {
+            removed = contextEntities.containsKey(key);
+            if (removed) {
+                contextEntities.remove(key);
+                VERSION.incrementAndGet(this);
+            }
+        }
+        if (removed) {
             warn("Removed entity '" + key + "' in module '" + moduleName + "'.");
         } else {
             warn("Tried to remove entity '" + key
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.context;
+
+import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadOnlyEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A context path is a pre-compiled name of form 'a.b....c' in the {@link ExecutionContext}.
+ * <p>
+ * The name is split once and the resolved entity is cached. The cached resolution is reused as
+ * long as neither the module mappings of the execution context nor the entities of the
+ * traversed context modules change. In contrast to {@link ExecutionContext#resolve(String)}
+ * missing elements are reported without exceptions.
+ */
+public final class ContextPath {
+
+    /**
+     * The execution context this path belongs to.
+     */
+    private final ExecutionContext context;
+
+    /**
+     * The name of form 'a.b....c' this path has been created for.
+     */
+    private final String path;
+
+    /**
+     * The separated parts of the name.
+     */
+    private final String[] names;
+
+    /**
+     * The current resolution of this path.
+     */
+    private volatile Resolution resolution = null;
+
+    /**
+     * The most recently created value set.
+     */
+    private volatile ValueSet valueSet = null;
+
+    /**
+     * The most recently created set of entity names.
+     */
+    private volatile EntityNames entityNames = null;
+
+    /**
+     * Create a context path. Context paths are created by the execution context.
+     *
+     * @param executionContext the execution context used for resolving
+     * @param name             name of form 'a.b....c'
+     * @see ExecutionContext#compilePath(String)
+     */
+    ContextPath(final ExecutionContext executionContext, final String name) {
+        this.context = executionContext;
+        this.path = name;
+        this.names = name.split("\\.");
+    }
+
+    /**
+     * Get the name this path has been created for.
+     *
+     * @return the name of this path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Check if this path can be resolved in the execution context.
+     *
+     * @return true, if the element is part of the execution context, false otherwise
+     */
+    public boolean exists() {
+        return current().target != null;
+    }
+
+    /**
+     * Get the entity this path resolves to.
+     *
+     * @return the entity or null if the path cannot be resolved
+     */
+    public ContextEntity getEntity() {
+        return current().target;
+    }
+
+    /**
+     * Read the element this path resolves to. Like {@link ExecutionContext#resolve(String)}
+     * this is the value for entities and the module itself for context modules.
+     *
+     * @return the resolved object or null if the path cannot be resolved
+     */
+    public Object read() {
+        ContextEntity target = current().target;
+        if (target instanceof ReadOnlyEntity) {
+            return ((ReadOnlyEntity) target).read();
+        }
+        return target;
+    }
+
+    /**
+     * Read the value of the resolved entity as set of strings, which are separated by a
+     * delimiter (e.g. a list of user roles). The set is cached until the value changes.
+     * <p>
+     * The cache is based on the value and not on the version of the entity, since some
+     * entities provide different values for different threads.
+     *
+     * @param delimiter the literal delimiter between the elements
+     * @return immutable set of the elements, empty if the path cannot be resolved or does
+     * not point to an entity with a value
+     */
+    public Set<String> readAsSet(final String delimiter) {
+        ContextEntity target = current().target;
+        if (!(target instanceof ReadOnlyEntity)) {
+            return Collections.emptySet();
+        }
+        Object value = ((ReadOnlyEntity) target).read();
+        if (value == null) {
+            return Collections.emptySet();
+        }
+
+        ValueSet cached = valueSet;
+        if (cached != null && cached.matches(value, delimiter)) {
+            return cached.values;
+        }
+
+        Set<String> values = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+                String.valueOf(value).split(Pattern.quote(delimiter)))));
+        valueSet = new ValueSet(value, delimiter, values);
+        return values;
+    }
+
+    /**
+     * Get the names of all entities of the context module this path resolves to.
+     * The set is cached until entities are added to or removed from the module.
+     *
+     * @return immutable set of entity names, empty if the path cannot be resolved or does
+     * not point to a context module
+     */
+    public Set<String> getEntityNames() {
+        ContextEntity target = current().target;
+        if (!(target instanceof ContextModule)) {
+            return Collections.emptySet();
+        }
+        ContextModule module = (ContextModule) target;
+
+        EntityNames cached = entityNames;
+        long version = module.getVersion();
+        if (cached != null && cached.module == module && cached.version == version) {
+            return cached.names;
+        }
+
+        Set<String> names = Collections.unmodifiableSet(module.getContextEntityNames());
+        entityNames = new EntityNames(module, version, names);
+        return names;
+    }
+
+    /**
+     * Get the current resolution of this path. The path is only resolved again if the
+     * execution context or one of the traversed modules has changed.
+     *
+     * @return the current resolution
+     */
+    private Resolution current() {
+        Resolution cached = resolution;
+        if (cached != null && cached.isValid(context)) {
+            return cached;
+        }
+        Resolution fresh = resolve();
+        resolution = fresh;
+        return fresh;
+    }
+
+    /**
+     * Resolve this path without throwing exceptions for unknown elements.
+     *
+     * @return the resolution of this path
+     */
+    private Resolution resolve() {
+        // versions are collected before the lookup, so concurrent changes invalidate the result
+        long mappingVersion = context.getMappingVersion();
+        List<ContextModule> modules = new ArrayList<>(names.length);
+        List<Long> versions = new ArrayList<>(names.length);
+
+        ContextEntity current = context.findModule(context.mapName(names[0]));
+        for (int i = 1; i < names.length && current != null; i++) {
+            if (!(current instanceof ContextModule)) {
+                // there are still names to resolve at the end of the resolve chain
+                current = null;
+                break;
+            }
+            ContextModule module = (ContextModule) current;
+            modules.add(module);
+            versions.add(module.getVersion());
+            current = module.findContextEntity(context.mapName(names[i]));
+        }
+
+        return new Resolution(current, mappingVersion, modules, versions);
+    }
+
+    /**
+     * A resolved path and the versions of all elements it depends on.
+     */
+    private static final class Resolution {
+
+        /**
+         * The resolved entity, null if the path cannot be resolved.
+         */
+        private final ContextEntity target;
+
+        /**
+         * Version of the module mappings of the execution context.
+         */
+        private final long mappingVersion;
+
+        /**
+         * All modules which have been traversed.
+         */
+        private final ContextModule[] modules;
+
+        /**
+         * The versions of the traversed modules.
+         */
+        private final long[] versions;
+
+        /**
+         * Create a resolution.
+         *
+         * @param entity         the resolved entity
+         * @param mappings       version of the module mappings
+         * @param moduleList     the traversed modules
+         * @param moduleVersions the versions of the traversed modules
+         */
+        private Resolution(final ContextEntity entity, final long mappings,
+                           final List<ContextModule> moduleList,
+                           final List<Long> moduleVersions) {
+            this.target = entity;
+            this.mappingVersion = mappings;
+            this.modules = moduleList.toArray(new ContextModule[0]);
+            this.versions = new long[moduleVersions.size()];
+            for (int i = 0; i < versions.length; i++) {
+                versions[i] = moduleVersions.get(i);
+            }
+        }
+
+        /**
+         * Check if this resolution is still up to date.
+         *
+         * @param executionContext the execution context of the path
+         * @return true if nothing has changed since the resolution was created
+         */
+        private boolean isValid(final ExecutionContext executionContext) {
+            if (executionContext.getMappingVersion() != mappingVersion) {
+                return false;
+            }
+            for (int i = 0; i < modules.length; i++) {
+                if (modules[i].getVersion() != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A set which has been derived from the value of an entity.
+     */
+    private static final class ValueSet {
+
+        /**
+         * The value the set has been derived from.
+         */
+        private final Object source;
+
+        /**
+         * The delimiter which has been used.
+         */
+        private final String delimiter;
+
+        /**
+         * The derived set.
+         */
+        private final Set<String> values;
+
+        /**
+         * Create a value set.
+         *
+         * @param value     the value the set has been derived from
+         * @param separator the used delimiter
+         * @param set       the derived set
+         */
+        private ValueSet(final Object value, final String separator, final Set<String> set) {
+            this.source = value;
+            this.delimiter = separator;
+            this.values = set;
+        }
+
+        /**
+         * Check if this set has been derived from the given value.
+         *
+         * @param value     the current value
+         * @param separator the requested delimiter
+         * @return true if the set can be reused, false otherwise
+         */
+        private boolean matches(final Object value, final String separator) {
+            return (source == value || source.equals(value)) && delimiter.equals(separator);
+        }
+    }
+
+    /**
+     * The names of the entities of a context module.
+     */
+    private static final class EntityNames {
+
+        /**
+         * The module the names have been taken from.
+         */
+        private final ContextModule module;
+
+        /**
+         * The version of the module.
+         */
+        private final long version;
+
+        /**
+         * The names of all entities of the module.
+         */
+        private final Set<String> names;
+
+        /**
+         * Create the set of entity names.
+         *
+         * @param contextModule the module the names have been taken from
+         * @param moduleVersion the version of the module
+         * @param entityNameSet the names of all entities of the module
+         */
+        private EntityNames(final ContextModule contextModule, final long moduleVersion,
+                            final Set<String> entityNameSet) {
+            this.module = contextModule;
+            this.version = moduleVersion;
+            this.names = entityNameSet;
+        }
+    }
+
+}
@@ -0,0 +1,649 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.context;
+
+import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadOnlyEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The context persistence writes the content of root {@link ContextModule}s to disk.
+ * <p>
+ * Changes are not written synchronously. Changed entities are only marked and their latest
+ * values are appended to a change log of the module periodically, so multiple changes of an
+ * entity are coalesced and updates of entities never wait for I/O. Structural changes, values
+ * which cannot be stored in the change log and change logs which have grown too large cause a
+ * snapshot of the whole module, after which the change log is truncated. Pending changes are flushed on shutdown.
+ * <p>
+ * Snapshots are stored in XStream's binary format. XML files written by previous versions
+ * are imported if no snapshot is available. Every snapshot has a random generation, which is
+ * written in front of the snapshot and of its change log. A change log is only replayed on top
+ * of the snapshot of the same generation, so a log which could not be truncated after a newer
+ * snapshot has been written is discarded instead of restoring outdated values.
+ * <p>
+ * The flush interval (milliseconds) and the number of change log records after which a
+ * snapshot is written can be configured with the system properties
+ * {@link #FLUSH_INTERVAL_PROPERTY} and {@link #SNAPSHOT_THRESHOLD_PROPERTY}. A flush interval
+ * of 0 writes every change immediately.
+ */
+public final class ContextPersistence {
+
+    /**
+     * System property which can be used to configure the flush interval in milliseconds.
+     */
+    public static final String FLUSH_INTERVAL_PROPERTY = "degree.context.flush.interval";
+
+    /**
+     * System property which can be used to configure the size of the change log after which
+     * a snapshot is written.
+     */
+    public static final String SNAPSHOT_THRESHOLD_PROPERTY = "degree.context.snapshot.threshold";
+
+    /**
+     * Flush interval which is used if nothing else is configured.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * Snapshot threshold which is used if nothing else is configured.
+     */
+    public static final int DEFAULT_SNAPSHOT_THRESHOLD = 1000;
+
+    /**
+     * File extension of snapshots.
+     */
+    private static final String SNAPSHOT_EXTENSION = ".bin";
+
+    /**
+     * File extension of change logs.
+     */
+    private static final String LOG_EXTENSION = ".log";
+
+    /**
+     * File extension of the XML files, which can be imported.
+     */
+    private static final String XML_EXTENSION = ".xml";
+
+    /**
+     * Marker at the beginning of snapshots and change logs, which is followed by the generation.
+     */
+    private static final int FILE_MAGIC = 0x44435031;
+
+    /**
+     * Type tag of null values in the change log.
+     */
+    private static final byte NULL_VALUE = 0;
+
+    /**
+     * Type tag of integer values in the change log.
+     */
+    private static final byte INTEGER_VALUE = 1;
+
+    /**
+     * Type tag of long values in the change log.
+     */
+    private static final byte LONG_VALUE = 2;
+
+    /**
+     * Type tag of boolean values in the change log.
+     */
+    private static final byte BOOLEAN_VALUE = 3;
+
+    /**
+     * Type tag of double values in the change log.
+     */
+    private static final byte DOUBLE_VALUE = 4;
+
+    /**
+     * Type tag of string values in the change log.
+     */
+    private static final byte STRING_VALUE = 5;
+
+    /**
+     * The used logger.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ContextPersistence.class.getSimpleName());
+
+    /**
+     * Singleton instance for this class.
+     */
+    private static volatile ContextPersistence instance = null;
+
+    /**
+     * The directory which contains all persisted context modules.
+     */
+    private final File directory = new File(System.getProperty("user.dir")
+            + File.separator + "de/fhg/isst/oe270/degree/runtime/java/context");
+
+    /**
+     * The persistence state of all root modules, identified by their names.
+     */
+    private final Map<String, ModuleState> states = new ConcurrentHashMap<>();
+
+    /**
+     * The flush interval in milliseconds.
+     */
+    private final long flushInterval;
+
+    /**
+     * Number of change log records after which a snapshot is written.
+     */
+    private final int snapshotThreshold;
+
+    /**
+     * Create the persistence and start the background flush.
+     */
+    private ContextPersistence() {
+        flushInterval = Long.getLong(FLUSH_INTERVAL_PROPERTY, DEFAULT_FLUSH_INTERVAL_MILLIS);
+        snapshotThreshold = Math.max(1,
+                Integer.getInteger(SNAPSHOT_THRESHOLD_PROPERTY, DEFAULT_SNAPSHOT_THRESHOLD));
+
+        if (flushInterval > 0) {
+            ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "degree-context-persistence");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(this::flush, "degree-context-persistence-shutdown"));
+    }
+
+    /**
+     * Get the singleton instance of this class.
+     *
+     * @return the singleton instance of this class
+     */
+    public static ContextPersistence getInstance() {
+        if (instance == null) {
+            synchronized (ContextPersistence.class) {
+                if (instance == null) {
+                    instance = new ContextPersistence();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Write all pending changes of all modules to disk.
+     */
+    public void flush() {
+        for (ModuleState state : states.values()) {
+            flush(state);
+        }
+    }
+
+    /**
+     * Record the change of an entity of a root module.
+     *
+     * @param root   the root module
+     * @param entity the changed entity
+     */
+    void recordChange(final ContextModule root, final ReadOnlyEntity entity) {
+        ModuleState state = state(root);
+        if (!state.pending.containsKey(entity)) {
+            state.pending.putIfAbsent(entity, Boolean.TRUE);
+        }
+        if (flushInterval <= 0) {
+            flush(state);
+        }
+    }
+
+    /**
+     * Request a snapshot of a root module, which is written with the next flush.
+     *
+     * @param root the root module
+     */
+    void scheduleSnapshot(final ContextModule root) {
+        ModuleState state = state(root);
+        state.snapshotRequested = true;
+        if (flushInterval <= 0) {
+            flush(state);
+        }
+    }
+
+    /**
+     * Immediately write a snapshot of a root module and truncate its change log.
+     *
+     * @param root the root module
+     */
+    void snapshot(final ContextModule root) {
+        ModuleState state = state(root);
+        synchronized (state.fileLock) {
+            // changes after this point are part of the snapshot or the next log entries
+            state.pending.clear();
+            state.snapshotRequested = false;
+            writeSnapshot(state);
+        }
+    }
+
+    /**
+     * Get the snapshot file of a module.
+     *
+     * @param moduleName the name of the module
+     * @return the snapshot file
+     */
+    File snapshotFile(final String moduleName) {
+        return new File(directory, moduleName + SNAPSHOT_EXTENSION);
+    }
+
+    /**
+     * Get the XML file of a module, which is written by previous versions.
+     *
+     * @param moduleName the name of the module
+     * @return the XML file
+     */
+    File xmlFile(final String moduleName) {
+        return new File(directory, moduleName + XML_EXTENSION);
+    }
+
+    /**
+     * Apply the change log of a root module to its (loaded) entities.
+     *
+     * @param root the root module
+     */
+    void replay(final ContextModule root) {
+        ModuleState state = state(root);
+        synchronized (state.fileLock) {
+            File logFile = logFile(root.getEntityName());
+            state.logRecords = 0;
+            if (!logFile.exists()) {
+                return;
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(logFile)))) {
+                if (!readsGeneration(in, state.generation)) {
+                    LOGGER.warn("Discarding change log of module '" + root.getEntityName()
+                            + "', which does not belong to its snapshot.");
+                    in.close();
+                    Files.deleteIfExists(logFile.toPath());
+                    return;
+                }
+                while (true) {
+                    List<String> names;
+                    Object value;
+                    try {
+                        int count = in.readUnsignedShort();
+                        names = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            names.add(readString(in));
+                        }
+                        value = readValue(in);
+                    } catch (EOFException e) {
+                        // end of log, an incomplete last record is ignored
+                        break;
+                    }
+                    state.logRecords++;
+                    if (!root.restoreValue(names, value)) {
+                        LOGGER.warn("Could not restore logged value of '" + String.join(".", names)
+                                + "' in module '" + root.getEntityName() + "'.");
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("Could not read change log of module '" + root.getEntityName()
+                        + "'.", e);
+            }
+        }
+    }
+
+    /**
+     * Open the snapshot of a root module. The generation of the snapshot is read and
+     * remembered for the replay of its change log.
+     *
+     * @param root the root module
+     * @return the stream of the snapshot, positioned behind the generation
+     * @throws IOException if the snapshot cannot be opened or has an unknown format
+     */
+    InputStream openSnapshot(final ContextModule root) throws IOException {
+        ModuleState state = state(root);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(snapshotFile(root.getEntityName()))));
+        try {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Unknown snapshot format.");
+            }
+            state.generation = in.readLong();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * Read the header of a change log and check if it belongs to a generation.
+     *
+     * @param in         the change log
+     * @param generation the expected generation
+     * @return true if the change log belongs to the generation, false otherwise
+     * @throws IOException in case of I/O errors
+     */
+    private static boolean readsGeneration(final DataInputStream in, final long generation)
+            throws IOException {
+        try {
+            return in.readInt() == FILE_MAGIC && in.readLong() == generation;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the persistence state of a root module.
+     *
+     * @param root the root module
+     * @return the state of the module
+     */
+    private ModuleState state(final ContextModule root) {
+        ModuleState state =
+                states.computeIfAbsent(root.getEntityName(), n -> new ModuleState(root));
+        state.module = root;
+        return state;
+    }
+
+    /**
+     * Write the pending changes of a module to disk.
+     *
+     * @param state the state of the module
+     */
+    private void flush(final ModuleState state) {
+        synchronized (state.fileLock) {
+            if (!state.snapshotRequested && state.pending.isEmpty()) {
+                return;
+            }
+            // entities are unmarked before their values are read, so later changes are
+            // written with the next flush
+            List<ReadOnlyEntity> changed = new ArrayList<>(state.pending.keySet());
+            state.pending.keySet().removeAll(changed);
+            List<Map.Entry<List<String>, Object>> changes = new ArrayList<>(changed.size());
+            boolean writeSnapshot = state.snapshotRequested
+                    || state.logRecords + changed.size() > snapshotThreshold;
+            for (ReadOnlyEntity entity : changed) {
+                Object value = entity.read();
+                if (!isLoggable(value)) {
+                    writeSnapshot = true;
+                    break;
+                }
+                changes.add(new AbstractMap.SimpleImmutableEntry<>(
+                        ((ContextModule) entity.getParent()).getRelativeNames(entity), value));
+            }
+            if (writeSnapshot) {
+                state.snapshotRequested = false;
+                writeSnapshot(state);
+            } else {
+                appendToLog(state, changes);
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot of a module and truncate its change log. The snapshot is written to a
+     * temporary file first, so an interrupted write does not destroy the previous snapshot.
+     * If the change log cannot be deleted after the new snapshot is in place, the different
+     * generation prevents it from being replayed.
+     *
+     * @param state the state of the module
+     */
+    private void writeSnapshot(final ModuleState state) {
+        String moduleName = state.module.getEntityName();
+        File targetFile = snapshotFile(moduleName);
+        File tempFile = new File(directory, moduleName + SNAPSHOT_EXTENSION + ".tmp");
+        try {
+            // ensure folders are available
+            directory.mkdirs();
+            long generation = ThreadLocalRandom.current().nextLong();
+            try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile, false)) {
+                DataOutputStream out =
+                        new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+                out.writeInt(FILE_MAGIC);
+                out.writeLong(generation);
+                state.module.writeSnapshot(out);
+                out.flush();
+                fileOutputStream.getFD().sync();
+            }
+            Files.move(tempFile.toPath(), targetFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // from here on a remaining log belongs to an older generation and is not replayed
+            state.generation = generation;
+            Files.deleteIfExists(logFile(moduleName).toPath());
+            state.logRecords = 0;
+        } catch (IOException e) {
+            LOGGER.error("Could not write snapshot of module '" + moduleName + "'.", e);
+        }
+    }
+
+    /**
+     * Append changes to the change log of a module.
+     *
+     * @param state   the state of the module
+     * @param changes the changed values, identified by the names of their entities
+     */
+    private void appendToLog(final ModuleState state,
+                             final List<Map.Entry<List<String>, Object>> changes) {
+        String moduleName = state.module.getEntityName();
+        try {
+            // all records are built before the log is touched, so a failure cannot leave
+            // a partially written record behind
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream recordOut = new DataOutputStream(records);
+            File logFile = logFile(moduleName);
+            if (logFile.length() == 0) {
+                recordOut.writeInt(FILE_MAGIC);
+                recordOut.writeLong(state.generation);
+            }
+            for (Map.Entry<List<String>, Object> change : changes) {
+                recordOut.writeShort(change.getKey().size());
+                for (String name : change.getKey()) {
+                    writeString(recordOut, name);
+                }
+                writeValue(recordOut, change.getValue());
+            }
+            recordOut.flush();
+
+            directory.mkdirs();
+            try (FileOutputStream fileOutputStream = new FileOutputStream(logFile, true)) {
+                records.writeTo(fileOutputStream);
+                fileOutputStream.getFD().sync();
+            }
+            state.logRecords += changes.size();
+        } catch (IOException e) {
+            LOGGER.error("Could not append to change log of module '" + moduleName
+                    + "'. Going to write a snapshot instead.", e);
+            writeSnapshot(state);
+        }
+    }
+
+    /**
+     * Get the change log file of a module.
+     *
+     * @param moduleName the name of the module
+     * @return the change log file
+     */
+    private File logFile(final String moduleName) {
+        return new File(directory, moduleName + LOG_EXTENSION);
+    }
+
+    /**
+     * Check if a value can be stored in the change log.
+     *
+     * @param value the value
+     * @return true if the value can be stored, false if a snapshot is required
+     */
+    private static boolean isLoggable(final Object value) {
+        return value == null || value instanceof Integer || value instanceof Long
+                || value instanceof Boolean || value instanceof Double || value instanceof String;
+    }
+
+    /**
+     * Write a value to the change log.
+     *
+     * @param out   the change log
+     * @param value the value, which must be loggable
+     * @throws IOException in case of I/O errors
+     */
+    private static void writeValue(final DataOutputStream out, final Object value)
+            throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER_VALUE);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG_VALUE);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN_VALUE);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble((Double) value);
+        } else {
+            out.writeByte(STRING_VALUE);
+            writeString(out, (String) value);
+        }
+    }
+
+    /**
+     * Write a string of any length to the change log as length-prefixed UTF-8 bytes.
+     *
+     * @param out    the change log
+     * @param string the string
+     * @throws IOException in case of I/O errors
+     */
+    private static void writeString(final DataOutputStream out, final String string)
+            throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string which has been written by {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param in the change log
+     * @return the string
+     * @throws IOException in case of I/O errors or invalid lengths
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length '" + length + "' in change log.");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a value from the change log.
+     *
+     * @param in the change log
+     * @return the value
+     * @throws IOException in case of I/O errors or unknown type tags
+     */
+    private static Object readValue(final DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL_VALUE:
+                return null;
+            case INTEGER_VALUE:
+                return in.readInt();
+            case LONG_VALUE:
+                return in.readLong();
+            case BOOLEAN_VALUE:
+                return in.readBoolean();
+            case DOUBLE_VALUE:
+                return in.readDouble();
+            case STRING_VALUE:
+                return readString(in);
+            default:
+                throw new IOException("Unknown value type '" + type + "' in change log.");
+        }
+    }
+
+    /**
+     * The persistence state of a single root module.
+     */
+    private static final class ModuleState {
+
+        /**
+         * Lock which serializes all file operations of the module.
+         */
+        private final Object fileLock = new Object();
+
+        /**
+         * Changed entities whose values are not yet written.
+         */
+        private final Map<ReadOnlyEntity, Boolean> pending = new ConcurrentHashMap<>();
+
+        /**
+         * The module, the most recently loaded instance is used.
+         */
+        private volatile ContextModule module;
+
+        /**
+         * Flag if a snapshot has to be written with the next flush.
+         */
+        private volatile boolean snapshotRequested = false;
+
+        /**
+         * Number of records in the change log.
+         */
+        private int logRecords = 0;
+
+        /**
+         * Generation of the current snapshot, which is written in front of the change log.
+         */
+        private volatile long generation = 0;
+
+        /**
+         * Create the state for a module.
+         *
+         * @param root the root module
+         */
+        private ModuleState(final ContextModule root) {
+            this.module = root;
+        }
+    }
+
+}
@@ -26,6 +26,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The execution context contains all root context modules and can be accessed in D° applications.
@@ -38,6 +42,11 @@ public final class ExecutionContext {
     private static final  Logger LOGGER =
             LoggerFactory.getLogger(ExecutionContext.class.getSimpleName());
 
+    /**
+     * Maximum number of compiled paths which are kept for {@link #contains(String)}.
+     */
+    private static final int PATH_CACHE_SIZE = 256;
+
     /**
      * Singleton instance for this class.
      */
@@ -56,8 +65,39 @@ public final class ExecutionContext {
      * the mappings are used. A mapping (UserInformation, JWTUserInformation) redirects all
      * calls to user information to the correct instance. Nevertheless all available possibilities
      * are available in the execution context, but may contain invalid information.
+     * <p>
+     * The mappings are read without locking. Changes are made while holding
+     * {@link #mappingLock}.
+     */
+    private final Map<String, String> moduleMappings = new ConcurrentHashMap<>();
+
+    /**
+     * Version of the module mappings, which is increased whenever the mappings change.
+     * Used by {@link ContextPath}s to detect outdated resolutions.
+     * <p>
+     * The version is increased after the mappings changed, while still holding
+     * {@link #mappingLock}. A reader which reads the version before the mappings therefore
+     * either sees the new mappings or an outdated version.
      */
-    private final HashMap<String, String> moduleMappings = new HashMap<>();
+    private final AtomicLong mappingVersion = new AtomicLong();
+
+    /**
+     * Lock which is held while the module mappings and their version are changed.
+     */
+    private final Object mappingLock = new Object();
+
+    /**
+     * Compiled paths of the names checked by {@link #contains(String)}. The paths keep their
+     * resolution up to date, so they can be reused for every check. The least recently used
+     * path is evicted if the cache is full.
+     */
+    private final Map<String, ContextPath> cachedPaths =
+            new LinkedHashMap<String, ContextPath>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, ContextPath> eldest) {
+                    return size() > PATH_CACHE_SIZE;
+                }
+            };
 
     /**
      * During construction all root context modules are identified and loaded.
@@ -147,12 +187,68 @@ public final class ExecutionContext {
      * @return true, if the element is part of the execution context, false otherwise
      */
     public boolean contains(final String name) {
-        try {
-            this.resolve(name);
-            return true;
-        } catch (ContextEntityResolveException e) {
+        if (name == null || name.isEmpty()) {
             return false;
         }
+        return cachedPath(name).exists();
+    }
+
+    /**
+     * Get the cached compiled path for a name, the path is compiled if it is not cached yet.
+     *
+     * @param name name of form 'a.b....c'
+     * @return the compiled path
+     */
+    private ContextPath cachedPath(final String name) {
+        synchronized (cachedPaths) {
+            return cachedPaths.computeIfAbsent(name, key -> new ContextPath(this, key));
+        }
+    }
+
+    /**
+     * Compile a name of form 'a.b....c' into a {@link ContextPath}. The path splits the name
+     * once and caches its resolution, so it should be kept and reused for repeated lookups.
+     *
+     * @param name unique identifier of the object the path points to
+     * @return the compiled path
+     * @throws ContextEntityResolveException if the name is empty or null
+     */
+    public ContextPath compilePath(final String name) {
+        if (name == null || name.isEmpty()) {
+            throw new ContextEntityResolveException(
+                    "Tried to compile empty/null name in execution context.");
+        }
+        return new ContextPath(this, name);
+    }
+
+    /**
+     * Get the current version of the module mappings.
+     *
+     * @return the version of the module mappings
+     */
+    long getMappingVersion() {
+        return mappingVersion.get();
+    }
+
+    /**
+     * Apply the module mappings to a single name.
+     *
+     * @param name the name to map
+     * @return the mapped name or the name itself if there is no mapping for it
+     */
+    String mapName(final String name) {
+        String mapped = moduleMappings.get(name);
+        return mapped == null ? name : mapped;
+    }
+
+    /**
+     * Find a root context module by its name without applying mappings.
+     *
+     * @param moduleName name of the wanted module
+     * @return the context module or null if it is not known
+     */
+    ContextModule findModule(final String moduleName) {
+        return contextModules.get(moduleName);
     }
 
     /**
@@ -162,7 +258,10 @@ public final class ExecutionContext {
      * @param value the original name of the context module
      */
     public void changeMappingEntry(final String key, final String value) {
-        moduleMappings.put(key, value);
+        synchronized (mappingLock) {
+            moduleMappings.put(key, value);
+            mappingVersion.incrementAndGet();
+        }
     }
 
     /**
@@ -171,8 +270,11 @@ public final class ExecutionContext {
      * use case but ensures that all "expected" keys are available and can be resolved.
      */
     private void createDefaultMappings() {
-        moduleMappings.clear();
-        moduleMappings.put("UserInformation", "OsUserInformation");
+        synchronized (mappingLock) {
+            moduleMappings.clear();
+            moduleMappings.put("UserInformation", "OsUserInformation");
+            mappingVersion.incrementAndGet();
+        }
     }
 
     /**
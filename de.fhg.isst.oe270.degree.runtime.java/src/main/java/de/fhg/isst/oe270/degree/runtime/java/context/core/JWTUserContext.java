@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.context.core;
+
+import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule;
+
+/**
+ * The verified user information of a single request (or execution), which has been extracted
+ * from a JSON web token.
+ * <p>
+ * The user context is bound to the thread which processes the request. Since D° applications
+ * process requests concurrently, the user information must not be shared between threads.
+ * The {@link JWTUserInformationContextModule} exposes the user context of the current thread.
+ */
+public final class JWTUserContext {
+
+    /**
+     * Name of the claim which contains the user name.
+     */
+    public static final String USERNAME = "username";
+
+    /**
+     * Name of the claim which contains the (comma separated) user roles.
+     */
+    public static final String USERROLES = "userroles";
+
+    /**
+     * User context which is used if a request does not contain a valid JWT.
+     */
+    public static final JWTUserContext UNAUTHENTICATED =
+            new JWTUserContext(ContextModule.NO_VALUE, ContextModule.NO_VALUE, Long.MAX_VALUE);
+
+    /**
+     * The user context bound to the current thread.
+     */
+    private static final ThreadLocal<JWTUserContext> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The name of the user.
+     */
+    private final String username;
+
+    /**
+     * The roles of the user, separated by commas.
+     */
+    private final String userroles;
+
+    /**
+     * Point in time (epoch milliseconds) after which the token is no longer valid.
+     */
+    private final long expiresAt;
+
+    /**
+     * Create a user context.
+     *
+     * @param name       the name of the user
+     * @param roles      the roles of the user, separated by commas
+     * @param expiration point in time (epoch milliseconds) at which the token expires,
+     *                   {@link Long#MAX_VALUE} if it does not expire
+     */
+    public JWTUserContext(final String name, final String roles, final long expiration) {
+        this.username = name;
+        this.userroles = roles;
+        this.expiresAt = expiration;
+    }
+
+    /**
+     * Get the user context which is bound to the current thread.
+     *
+     * @return the current user context or null if none is bound
+     */
+    public static JWTUserContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind a user context to the current thread.
+     *
+     * @param userContext the user context, null removes the current binding
+     */
+    public static void bind(final JWTUserContext userContext) {
+        if (userContext == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(userContext);
+        }
+    }
+
+    /**
+     * Remove the user context from the current thread.
+     */
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Get the name of the user.
+     *
+     * @return the name of the user
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Get the roles of the user.
+     *
+     * @return the roles of the user, separated by commas
+     */
+    public String getUserroles() {
+        return userroles;
+    }
+
+    /**
+     * Get a claim of this user context by its name.
+     *
+     * @param name the name of the claim
+     * @return the value of the claim or {@link ContextModule#NO_VALUE} if it is unknown
+     */
+    public String getClaim(final String name) {
+        if (USERNAME.equals(name)) {
+            return username;
+        } else if (USERROLES.equals(name)) {
+            return userroles;
+        }
+        return ContextModule.NO_VALUE;
+    }
+
+    /**
+     * Check if the token this user context has been created from is expired.
+     *
+     * @param now the current time in epoch milliseconds
+     * @return true if the token is expired, false otherwise
+     */
+    public boolean isExpired(final long now) {
+        return now >= expiresAt;
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.context.core;
+
+import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule;
+import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadOnlyEntity;
+
+/**
+ * This is a readable entity, which exposes a claim of the {@link JWTUserContext} that is bound
+ * to the current thread.
+ */
+public final class JWTUserEntity extends ReadOnlyEntity {
+
+    /**
+     * Create the entity for the claim with the same name.
+     *
+     * @param claim the name of the entity and the exposed claim
+     */
+    public JWTUserEntity(final String claim) {
+        super(claim, ContextModule.NO_VALUE);
+    }
+
+    /**
+     * Get the value of the claim for the current thread.
+     *
+     * @return the value of the claim or {@link ContextModule#NO_VALUE} if there is no
+     * user context bound to the current thread
+     */
+    @Override
+    public Object read() {
+        JWTUserContext userContext = JWTUserContext.current();
+        if (userContext == null) {
+            return ContextModule.NO_VALUE;
+        }
+        return userContext.getClaim(getEntityName());
+    }
+
+}
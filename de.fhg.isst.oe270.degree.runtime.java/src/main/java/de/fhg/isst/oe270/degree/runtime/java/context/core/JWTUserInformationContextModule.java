@@ -18,13 +18,14 @@ package de.fhg.isst.oe270.degree.runtime.java.context.core;
 import de.fhg.isst.oe270.degree.runtime.java.context.ContextEntity;
 import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule;
 import de.fhg.isst.oe270.degree.runtime.java.context.RootContextModule;
-import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadWriteEntity;
 
 import java.util.HashMap;
 
 /**
  * This context module stores information which can be retrieved from JSON web tokens and is
  * only populated for D° applications with a HTTP interface.
+ * <p>
+ * User name and roles are taken from the {@link JWTUserContext} of the current request.
  */
 @RootContextModule
 public class JWTUserInformationContextModule extends ContextModule {
@@ -40,10 +41,29 @@ public class JWTUserInformationContextModule extends ContextModule {
     public final HashMap<String, ContextEntity> createDefaultContext() {
         HashMap<String, ContextEntity> defaultConfiguration = new HashMap<>();
 
-        defaultConfiguration.put("username", new ReadWriteEntity("username", NO_VALUE));
-        defaultConfiguration.put("userroles", new ReadWriteEntity("userroles", NO_VALUE));
+        defaultConfiguration.put(JWTUserContext.USERNAME,
+                new JWTUserEntity(JWTUserContext.USERNAME));
+        defaultConfiguration.put(JWTUserContext.USERROLES,
+                new JWTUserEntity(JWTUserContext.USERROLES));
 
         return defaultConfiguration;
     }
 
+    /**
+     * Load the module and ensure that the user information is taken from the current request
+     * and not from persisted data.
+     *
+     * @param defaultConfiguration map containing the default values for this module
+     * @return true if loading was successful, false otherwise
+     */
+    @Override
+    public final boolean load(final HashMap<String, ContextEntity> defaultConfiguration) {
+        boolean loaded = super.load(defaultConfiguration);
+        replaceContextEntity(JWTUserContext.USERNAME, new JWTUserEntity(JWTUserContext.USERNAME));
+        replaceContextEntity(JWTUserContext.USERROLES,
+                new JWTUserEntity(JWTUserContext.USERROLES));
+
+        return loaded;
+    }
+
 }
@@ -15,10 +15,11 @@
  */
 package de.fhg.isst.oe270.degree.runtime.java.context.entities;
 
-import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule;
-
 /**
  * This is a readable integer entity, which can be incremented and decremented.
+ * <p>
+ * All updates are atomic and lock-free, so the entity can be updated by concurrent
+ * executions. Changes are persisted asynchronously.
  */
 public class CounterEntity extends ReadOnlyEntity {
 
@@ -33,25 +34,53 @@ public class CounterEntity extends ReadOnlyEntity {
     }
 
     /**
-     * Increment the value of this entity by one.
+     * Increment the value of this entity by one. Use {@link #add(int)} to retrieve the new
+     * value.
      */
     public void increment() {
-        TRACER.info("Changed value of CounterEntity '" + getFullyQualifiedEntityName()
-                + "'. Old value: ''" + read()
-                + "'; new value: '" + (((int) read()) + 1) + "'");
-        setValue(((int) read()) + 1);
-        ((ContextModule) getParent()).persistChange();
+        add(1);
     }
 
     /**
-     * Decrement the value of this entity by one.
+     * Decrement the value of this entity by one. Use {@link #add(int)} to retrieve the new
+     * value.
      */
     public void decrement() {
-        TRACER.info("Changed value of CounterEntity '" + getFullyQualifiedEntityName()
-                + "'. Old value: ''" + read()
-                + "'; new value: '" + (((int) read()) - 1) + "'");
-        setValue(((int) read()) - 1);
-        ((ContextModule) getParent()).persistChange();
+        add(-1);
+    }
+
+    /**
+     * Atomically add a delta to the value of this entity.
+     *
+     * @param delta the delta, which may be negative
+     * @return the new value
+     */
+    public int add(final int delta) {
+        return this.<Integer>updateValue(current -> current + delta);
+    }
+
+    /**
+     * Atomically increment the value of this entity if it is below a limit. This can be used
+     * to allow an action at most a fixed number of times.
+     *
+     * @param limit the exclusive upper bound for the current value
+     * @return true if the value has been incremented, false if the limit has been reached
+     */
+    public boolean incrementIfBelow(final int limit) {
+        return this.<Integer>updateValue(current -> current < limit ? current + 1 : null)
+                != null;
+    }
+
+    /**
+     * Atomically set the value of this entity if the current value is the expected one.
+     *
+     * @param expected the expected current value
+     * @param update   the new value
+     * @return true if the value has been set, false if the current value was different
+     */
+    public boolean compareAndSet(final int expected, final int update) {
+        return this.<Integer>updateValue(current -> current == expected ? update : null)
+                != null;
     }
 
 }
@@ -15,10 +15,11 @@
  */
 package de.fhg.isst.oe270.degree.runtime.java.context.entities;
 
-import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule;
-
 /**
  * This is a readable integer entity, which can only be decremented.
+ * <p>
+ * All updates are atomic and lock-free, so the entity can be updated by concurrent
+ * executions. Changes are persisted asynchronously.
  */
 public class DecrementCounterEntity extends ReadOnlyEntity {
 
@@ -36,11 +37,19 @@ public class DecrementCounterEntity extends ReadOnlyEntity {
      * Decrement the value of this entity by one.
      */
     public void decrement() {
-        TRACER.info("Changed value of DecrementCounterEntity '"
-                + getFullyQualifiedEntityName() + "'. Old value: ''"
-                + read() + "'; new value: '" + (((int) read()) - 1) + "'");
-        setValue(((int) read()) - 1);
-        ((ContextModule) getParent()).persistChange();
+        this.<Integer>updateValue(current -> current - 1);
+    }
+
+    /**
+     * Atomically decrement the value of this entity if it is above a limit. This can be used
+     * to consume a fixed budget (e.g. remaining executions).
+     *
+     * @param limit the exclusive lower bound for the current value
+     * @return true if the value has been decremented, false if the limit has been reached
+     */
+    public boolean decrementIfAbove(final int limit) {
+        return this.<Integer>updateValue(current -> current > limit ? current - 1 : null)
+                != null;
     }
 
 }
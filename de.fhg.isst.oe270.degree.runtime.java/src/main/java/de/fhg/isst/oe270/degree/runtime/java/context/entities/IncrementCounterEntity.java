@@ -15,10 +15,11 @@
  */
 package de.fhg.isst.oe270.degree.runtime.java.context.entities;
 
-import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule;
-
 /**
  * This is a readable integer entity, which can only be incremented.
+ * <p>
+ * All updates are atomic and lock-free, so the entity can be updated by concurrent
+ * executions. Changes are persisted asynchronously.
  */
 public class IncrementCounterEntity extends ReadOnlyEntity {
 
@@ -36,11 +37,19 @@ public class IncrementCounterEntity extends ReadOnlyEntity {
      * Increment the value of this entity by one.
      */
     public void increment() {
-        TRACER.info("Changed value of IncrementCounterEntity '"
-                + getFullyQualifiedEntityName() + "'. Old value: ''"
-                + read() + "'; new value: '" + (((int) read()) + 1) + "'");
-        setValue(((int) read()) + 1);
-        ((ContextModule) getParent()).persistChange();
+        this.<Integer>updateValue(current -> current + 1);
+    }
+
+    /**
+     * Atomically increment the value of this entity if it is below a limit. This can be used
+     * to allow an action at most a fixed number of times.
+     *
+     * @param limit the exclusive upper bound for the current value
+     * @return true if the value has been incremented, false if the limit has been reached
+     */
+    public boolean incrementIfBelow(final int limit) {
+        return this.<Integer>updateValue(current -> current < limit ? current + 1 : null)
+                != null;
     }
 
 }
@@ -16,11 +16,15 @@
 package de.fhg.isst.oe270.degree.runtime.java.context.entities;
 
 import de.fhg.isst.oe270.degree.runtime.java.context.ContextEntity;
+import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule;
 import de.fhg.isst.oe270.degree.runtime.java.context.exception.ContextEntityResolveException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.UnaryOperator;
 
 /**
  * This is a readable entity, which can store arbitrary values.
@@ -36,6 +40,17 @@ public class ReadOnlyEntity implements ContextEntity {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(
             ReadOnlyEntity.class.getSimpleName());
+    /**
+     * Updater for the version of entities. A field updater is used since entities are
+     * deserialized without calling their constructor.
+     */
+    private static final AtomicLongFieldUpdater<ReadOnlyEntity> VERSION =
+            AtomicLongFieldUpdater.newUpdater(ReadOnlyEntity.class, "version");
+    /**
+     * Updater for the value of entities, which allows atomic updates without locking.
+     */
+    private static final AtomicReferenceFieldUpdater<ReadOnlyEntity, Object> VALUE =
+            AtomicReferenceFieldUpdater.newUpdater(ReadOnlyEntity.class, Object.class, "value");
     /**
      * The name of the entity.
      */
@@ -44,7 +59,7 @@ public class ReadOnlyEntity implements ContextEntity {
     /**
      * The value stored in the entity.
      */
-    private Object value;
+    private volatile Object value;
 
     /**
      * The parent of this entity.
@@ -56,6 +71,11 @@ public class ReadOnlyEntity implements ContextEntity {
      */
     private boolean parentSet = false;
 
+    /**
+     * Version of the value, which is increased on every change. It is not persisted.
+     */
+    private transient volatile long version = 0;
+
     /**
      * Create the entity with given name and value.
      *
@@ -96,6 +116,16 @@ public class ReadOnlyEntity implements ContextEntity {
         return value;
     }
 
+    /**
+     * Get the version of the value of this entity. The version changes whenever the value is
+     * changed and can be used to detect if data derived from the value is outdated.
+     *
+     * @return the current version of the value
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Get the parent entity for this parent.
      *
@@ -133,6 +163,74 @@ public class ReadOnlyEntity implements ContextEntity {
      */
     protected void setValue(final Object newVal) {
         this.value = newVal;
+        VERSION.incrementAndGet(this);
+    }
+
+    /**
+     * Atomically set the value of this entity if the current value is the expected one.
+     * The values are compared by identity, so the expected value should be obtained with
+     * {@link #read()}.
+     *
+     * @param expected the expected current value
+     * @param newVal   the new value
+     * @return true if the value has been set, false if the current value was different
+     */
+    protected final boolean compareAndSetValue(final Object expected, final Object newVal) {
+        if (VALUE.compareAndSet(this, expected, newVal)) {
+            VERSION.incrementAndGet(this);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Atomically update the value of this entity without locking. The update function is
+     * applied to the current value and applied again if the value has been changed
+     * concurrently, so it must not have side effects. A changed value is traced and persisted.
+     *
+     * @param update function which computes the new value from the current value, it returns
+     *               the current value to keep it or null to reject the update
+     * @param <T>    the type of the value
+     * @return the new value or null if the update has been rejected
+     */
+    @SuppressWarnings("unchecked")
+    protected final <T> T updateValue(final UnaryOperator<T> update) {
+        while (true) {
+            T current = (T) read();
+            T next = update.apply(current);
+            if (next == null || next == current) {
+                return next;
+            }
+            if (compareAndSetValue(current, next)) {
+                traceChange(current, next);
+                ((ContextModule) getParent()).persistChange(this);
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Log a change of the value of this entity to the tracer.
+     *
+     * @param oldValue the old value
+     * @param newValue the new value
+     */
+    protected final void traceChange(final Object oldValue, final Object newValue) {
+        if (TRACER.isInfoEnabled()) {
+            TRACER.info("Changed value of " + getClass().getSimpleName() + " '"
+                    + getFullyQualifiedEntityName() + "'. Old value: ''" + oldValue
+                    + "'; new value: '" + newValue + "'");
+        }
+    }
+
+    /**
+     * Restore a persisted value of this entity. In contrast to the setters of the concrete
+     * entities the change is neither traced nor persisted again.
+     *
+     * @param restoredValue the persisted value
+     */
+    public final void restore(final Object restoredValue) {
+        setValue(restoredValue);
     }
 
 }
@@ -38,11 +38,10 @@ public class ReadWriteEntity extends ReadOnlyEntity {
      * @param value the new value
      */
     public void write(final Object value) {
-        TRACER.info("Changed value of ReadWriteEntity '"
-                + getFullyQualifiedEntityName() + "'. Old value: ''"
-                + read() + "'; new value: '" + value + "'");
+        Object oldValue = read();
         setValue(value);
-        ((ContextModule) getParent()).persistChange();
+        traceChange(oldValue, value);
+        ((ContextModule) getParent()).persistChange(this);
     }
 
 }
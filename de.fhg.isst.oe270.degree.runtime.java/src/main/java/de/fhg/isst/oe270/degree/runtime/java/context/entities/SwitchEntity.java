@@ -15,10 +15,11 @@
  */
 package de.fhg.isst.oe270.degree.runtime.java.context.entities;
 
-import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule;
-
 /**
  * This is a boolean entity which can be switched.
+ * <p>
+ * All updates are atomic and lock-free, so the entity can be updated by concurrent
+ * executions. Changes are persisted asynchronously.
  */
 public final class SwitchEntity extends ReadOnlyEntity {
 
@@ -36,10 +37,20 @@ public final class SwitchEntity extends ReadOnlyEntity {
      * Switch the value of this entity.
      */
     public void toggle() {
-        TRACER.info("Changed value of SwitchEntity '" + getFullyQualifiedEntityName()
-                + "'. Old value: ''" + read() + "'; new value: '" + !((boolean) read()) + "'");
-        setValue(!((boolean) read()));
-        ((ContextModule) getParent()).persistChange();
+        this.<Boolean>updateValue(current -> !current);
+    }
+
+    /**
+     * Atomically set the value of this entity if the current value is the expected one.
+     * This can be used to ensure that only a single execution performs an action.
+     *
+     * @param expected the expected current value
+     * @param update   the new value
+     * @return true if the value has been set, false if the current value was different
+     */
+    public boolean compareAndSet(final boolean expected, final boolean update) {
+        return this.<Boolean>updateValue(current -> current == expected ? update : null)
+                != null;
     }
 
 }
@@ -15,20 +15,22 @@
  */
 package de.fhg.isst.oe270.degree.runtime.java.data.app;
 
+import de.fhg.isst.oe270.degree.runtime.java.data.app.http.SelfDescription;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 
 /**
  * This is a D° application which offers a HTTP-interface and IDS metadata endpoints.
@@ -41,9 +43,13 @@ public abstract class IdsHttpDataApp extends HttpDataApp {
     public static final String IDS_KEY = "ids";
 
     /**
-     * Get the IDS metadata for this application from resources.
+     * Get the IDS metadata for this application. The metadata is served from memory and can
+     * be revalidated with its entity tag.
      *
+     * @param ifNoneMatch    entity tags of versions which are known to the client
+     * @param acceptEncoding the content codings which are accepted by the client
      * @return the application's metadata
+     * @throws IOException in case the metadata cannot be loaded
      */
     @CrossOrigin(origins = "*")
     @RequestMapping(path = "/metadata", method = RequestMethod.GET)
@@ -63,6 +69,11 @@ public abstract class IdsHttpDataApp extends HttpDataApp {
                                     examples = @ExampleObject("Insert Infomodel here...")
                             )
                     ),
+                    @ApiResponse(
+                            responseCode = "304",
+                            description = "The client already has the current version of the"
+                                    + " data app's metadata."
+                    ),
                     @ApiResponse(
                             responseCode = "500",
                             description = "Returns an error if retrieval of data app's metadata"
@@ -88,29 +99,43 @@ public abstract class IdsHttpDataApp extends HttpDataApp {
                     )
             }
     )
-    public String getMetaData() {
-        InputStream in = getClass().getClassLoader().getResourceAsStream("infomodel.json");
-        assert in != null;
-        InputStreamReader streamReader =
-                new InputStreamReader(in, StandardCharsets.UTF_8);
-        BufferedReader reader = new BufferedReader(streamReader);
-
-        StringBuilder result = new StringBuilder();
-        String line = "";
+    public ResponseEntity<byte[]> getMetaData(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+            final String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+            final String acceptEncoding) throws IOException {
+        SelfDescription.Document document = SelfDescription.getInstance().getDocument();
+        // the compressed variant has its own entity tag, caches select it by Accept-Encoding
+        boolean gzip = document.acceptsGzip(acceptEncoding);
 
-        while (true) {
-            try {
-                line = reader.readLine();
-                if (line == null) {
-                    break;
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            result.append(line);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(document.getEtag(gzip))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (document.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(document.getEtag(gzip))
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(document.getGzipBody());
         }
+        return response.contentType(MediaType.APPLICATION_JSON).body(document.getBody());
+    }
 
-        return result.toString();
+    /**
+     * Initialize the application. The self-description is loaded and validated at startup.
+     */
+    @Override
+    protected void init() {
+        super.init();
+        try {
+            SelfDescription.getInstance();
+        } catch (IOException e) {
+            LOGGER.error("Could not load the IDS self-description of this application.", e);
+        }
     }
 
 }
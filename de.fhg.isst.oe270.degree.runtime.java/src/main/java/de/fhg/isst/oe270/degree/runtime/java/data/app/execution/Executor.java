@@ -16,6 +16,7 @@
 package de.fhg.isst.oe270.degree.runtime.java.data.app.execution;
 
 import de.fhg.isst.oe270.degree.activities.execution.OutputScope;
+import de.fhg.isst.oe270.degree.runtime.java.context.core.JWTUserContext;
 import de.fhg.isst.oe270.degree.runtime.java.data.app.DataApp;
 import de.fhg.isst.oe270.degree.types.TypeTaxonomy;
 import nukleus.core.Identifier;
@@ -68,6 +69,12 @@ public final class Executor implements Runnable {
      */
     private DataApp dataApp;
 
+    /**
+     * The user context of the request which created this executor. It is bound to the thread
+     * which executes the data app's logic.
+     */
+    private final JWTUserContext userContext = JWTUserContext.current();
+
     /**
      * Execute the process method of the executor's data app.
      */
@@ -108,6 +115,7 @@ public final class Executor implements Runnable {
         }
 
         // actual execution
+        JWTUserContext.bind(userContext);
         try {
             outputs = dataApp.process(inputs, sessionId);
         } catch (Exception e) {
@@ -119,6 +127,7 @@ public final class Executor implements Runnable {
             outputScope.getValues().put("error", returnInstance);
             outputs = outputScope.toJson();
         } finally {
+            JWTUserContext.clear();
             // signal finished execution
             synchronized (executorLock) {
                 executing = false;
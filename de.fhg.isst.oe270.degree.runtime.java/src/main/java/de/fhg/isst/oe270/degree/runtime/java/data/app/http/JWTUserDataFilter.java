@@ -15,10 +15,9 @@
  */
 package de.fhg.isst.oe270.degree.runtime.java.data.app.http;
 
-import de.fhg.isst.oe270.degree.runtime.java.context.ContextModule;
+import de.fhg.isst.oe270.degree.runtime.java.context.ContextPath;
 import de.fhg.isst.oe270.degree.runtime.java.context.ExecutionContext;
-import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadOnlyEntity;
-import de.fhg.isst.oe270.degree.runtime.java.context.entities.ReadWriteEntity;
+import de.fhg.isst.oe270.degree.runtime.java.context.core.JWTUserContext;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.JwtException;
@@ -39,11 +38,17 @@ import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This filter is used for D° application with HTTP interface to extract user information
  * from JWTs.
+ * <p>
+ * The extracted information is bound to the thread which processes the request as
+ * {@link JWTUserContext}, which is exposed by the JWTUserInformation context module.
+ * The parsed signing key and already verified tokens are cached.
  */
 public class JWTUserDataFilter implements Filter {
 
@@ -54,10 +59,38 @@ public class JWTUserDataFilter implements Filter {
             JWTUserDataFilter.class.getSimpleName());
 
     /**
-     * The context module which stores the extracted data.
+     * Name of the request attribute which holds the user context of a request.
      */
-    protected static final ContextModule CONTEXT_MODULE
-            = ExecutionContext.getInstance().getModule("JWTUserInformation");
+    public static final String USER_CONTEXT_ATTRIBUTE = JWTUserContext.class.getName();
+
+    /**
+     * Maximum number of verified tokens which are cached.
+     */
+    private static final int VERIFIED_TOKEN_CACHE_SIZE = 1024;
+
+    /**
+     * Path to the JWT signing key in the execution context.
+     */
+    private final ContextPath signingKeyPath = ExecutionContext.getInstance()
+            .compilePath("JWTUserInformation.jwtSigningKey");
+
+    /**
+     * The most recently parsed signing key.
+     */
+    private volatile SigningKey signingKey = null;
+
+    /**
+     * Already verified tokens and the user information which has been extracted from them.
+     * The least recently used token is evicted if the cache is full.
+     */
+    private final Map<String, JWTUserContext> verifiedTokens =
+            new LinkedHashMap<String, JWTUserContext>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, JWTUserContext> eldest) {
+                    return size() > VERIFIED_TOKEN_CACHE_SIZE;
+                }
+            };
 
     /**
      * Parse the string representation of a x509 public key and create a usable representation.
@@ -92,9 +125,8 @@ public class JWTUserDataFilter implements Filter {
 
     /**
      * Do the acual filtering. This includes decrypting the JWT of the request and extracting
-     * username and roles which will be stored in the corresponding context module.
-     * If no JWT is available or it cannot be parsed, special 'unknown' values are stored in the
-     * context module.
+     * username and roles which will be bound to the request as {@link JWTUserContext}.
+     * If no JWT is available or it cannot be parsed, special 'unknown' values are used.
      *
      * @param servletRequest  the request
      * @param servletResponse the response
@@ -107,107 +139,158 @@ public class JWTUserDataFilter implements Filter {
             final ServletRequest servletRequest,
             final ServletResponse servletResponse,
             final FilterChain filterChain) throws IOException, ServletException {
-        HttpServletRequest httpRequest = (HttpServletRequest) servletRequest;
+        JWTUserContext userContext = authenticate((HttpServletRequest) servletRequest);
+        servletRequest.setAttribute(USER_CONTEXT_ATTRIBUTE, userContext);
+        JWTUserContext.bind(userContext);
+        try {
+            // propagate the request to other endpoints
+            filterChain.doFilter(servletRequest, servletResponse);
+        } finally {
+            JWTUserContext.clear();
+        }
+    }
+
+    /**
+     * Destroy the filter.
+     */
+    @Override
+    public void destroy() {
+        LOGGER.info("Destructing JWTUserDataFilter.");
+    }
+
+    /**
+     * Extract the user information from the JWT of a request.
+     *
+     * @param httpRequest the request
+     * @return the extracted user information, {@link JWTUserContext#UNAUTHENTICATED} if the
+     * request does not contain a valid JWT
+     */
+    private JWTUserContext authenticate(final HttpServletRequest httpRequest) {
         String authString = httpRequest.getHeader("Authorization");
         String jwtString = authString;
-        String signingKey = retrieveJwtSigningKey();
-        PublicKey key = getKey(signingKey);
+        PublicKey key = retrievePublicKey();
         boolean error = false;
         // check for empty authorization
         if (authString == null || authString.isEmpty()) {
             LOGGER.warn("Received empty/null authorization instead of JWT.");
-            invalidateUserData();
-            error = true;
-        }
-
-        if (signingKey == null || signingKey.isEmpty()) {
-            LOGGER.warn("No signing key for validating the authorization.");
-            invalidateUserData();
             error = true;
         }
 
         if (key == null) {
-            invalidateUserData();
             error = true;
         }
 
-        if (!error) {
-            if (authString.startsWith("Bearer")) {
-                jwtString = authString.split(" ")[1];
-            }
+        if (error) {
+            return JWTUserContext.UNAUTHENTICATED;
+        }
 
-            Jws<Claims> jws;
-            try {
-                jws = Jwts.parser()
-                        .setSigningKey(key)
-                        .parseClaimsJws(jwtString);
+        if (authString.startsWith("Bearer")) {
+            jwtString = authString.split(" ")[1];
+        }
 
-                // we can safely trust the JWT
+        JWTUserContext cached;
+        synchronized (verifiedTokens) {
+            cached = verifiedTokens.get(jwtString);
+        }
+        if (cached != null) {
+            if (!cached.isExpired(System.currentTimeMillis())) {
                 LOGGER.info("Received valid authorization.");
-                String userName = jws.getBody().get("preferred_username", String.class);
-                ArrayList<String> rolesList = (ArrayList<String>) jws.getBody()
-                        .get("realm_access", LinkedHashMap.class).get("roles");
-                String rolesString = "";
-                for (String role : rolesList) {
-                    rolesString += role + ",";
-                }
-                rolesString = rolesString.substring(0, rolesString.length() - 1);
-
-                updateUserData(userName, rolesString);
-                /*
-                 FIXME: The code currently ignores (e.g.) time constraints regarding the
-                   validity of the JWT
-                   This is only tested for keycloak and may break for other software
-                    since keycloak stores username not like specified in RFC7519
-                 */
-            } catch (JwtException ex) {
-                LOGGER.warn("Could not validate authorization with known key.");
-                invalidateUserData();
+                return cached;
+            }
+            synchronized (verifiedTokens) {
+                verifiedTokens.remove(jwtString);
             }
         }
-        // propagate the request to other endpoints
-        filterChain.doFilter(servletRequest, servletResponse);
-    }
 
-    /**
-     * Destroy the filter.
-     */
-    @Override
-    public void destroy() {
-        LOGGER.info("Destructing JWTUserDataFilter.");
-    }
+        Jws<Claims> jws;
+        try {
+            jws = Jwts.parser()
+                    .setSigningKey(key)
+                    .parseClaimsJws(jwtString);
+        } catch (JwtException ex) {
+            LOGGER.warn("Could not validate authorization with known key.");
+            return JWTUserContext.UNAUTHENTICATED;
+        }
 
-    /**
-     * In case there is an error during JWT processing or no JWT at all, the values will be
-     * reset to indicate these situation.
-     */
-    private void invalidateUserData() {
-        ((ReadWriteEntity) CONTEXT_MODULE.getContextEntity("username"))
-                .write(ContextModule.NO_VALUE);
-        ((ReadWriteEntity) CONTEXT_MODULE.getContextEntity("userroles"))
-                .write(ContextModule.NO_VALUE);
+        // we can safely trust the JWT
+        LOGGER.info("Received valid authorization.");
+        /*
+         FIXME: This is only tested for keycloak and may break for other software
+            since keycloak stores username not like specified in RFC7519
+         */
+        String userName = jws.getBody().get("preferred_username", String.class);
+        ArrayList<String> rolesList = (ArrayList<String>) jws.getBody()
+                .get("realm_access", LinkedHashMap.class).get("roles");
+        Date expiration = jws.getBody().getExpiration();
+
+        JWTUserContext userContext = new JWTUserContext(userName, String.join(",", rolesList),
+                expiration == null ? Long.MAX_VALUE : expiration.getTime());
+        synchronized (verifiedTokens) {
+            verifiedTokens.put(jwtString, userContext);
+        }
+        return userContext;
     }
 
     /**
-     * Write new values for user name and user roles to the context module.
+     * Get the parsed JWT signing key. The key is only parsed again if the signing key in the
+     * execution context has changed, in which case all verified tokens are discarded.
      *
-     * @param userName new user name
-     * @param userRoles new user roles
+     * @return the parsed signing key or null if there is no valid signing key
      */
-    private void updateUserData(final String userName, final String userRoles) {
-        ((ReadWriteEntity) CONTEXT_MODULE.getContextEntity("username")).write(userName);
-        ((ReadWriteEntity) CONTEXT_MODULE.getContextEntity("userroles")).write(userRoles);
+    private PublicKey retrievePublicKey() {
+        String encodedKey = retrieveJwtSigningKey();
+        if (encodedKey == null || encodedKey.isEmpty()) {
+            LOGGER.warn("No signing key for validating the authorization.");
+            return null;
+        }
+
+        SigningKey cached = signingKey;
+        if (cached != null && cached.encoded.equals(encodedKey)) {
+            return cached.key;
+        }
+
+        SigningKey parsed = new SigningKey(encodedKey, getKey(encodedKey));
+        synchronized (verifiedTokens) {
+            verifiedTokens.clear();
+        }
+        signingKey = parsed;
+        return parsed.key;
     }
 
     /**
      * Get the JWT signing key from the execution context.
      *
-     * @return the used JWT signing key, in string representation
+     * @return the used JWT signing key, in string representation, or null if there is none
      */
     public String retrieveJwtSigningKey() {
-        return (String) ((ReadOnlyEntity) ExecutionContext.getInstance()
-                .getModule("JWTUserInformation")
-                .getContextEntity("jwtSigningKey")).read();
+        return (String) signingKeyPath.read();
+    }
+
+    /**
+     * A parsed signing key together with its string representation.
+     */
+    private static final class SigningKey {
+
+        /**
+         * The string representation of the key.
+         */
+        private final String encoded;
+
+        /**
+         * The parsed key, may be null if the key is invalid.
+         */
+        private final PublicKey key;
+
+        /**
+         * Create a signing key.
+         *
+         * @param encodedKey the string representation of the key
+         * @param publicKey  the parsed key
+         */
+        private SigningKey(final String encodedKey, final PublicKey publicKey) {
+            this.encoded = encodedKey;
+            this.key = publicKey;
+        }
     }
 
 }
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.data.app.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The IDS self-description (infomodel.json) of a data app, which is loaded and validated once
+ * and served from memory.
+ * <p>
+ * The document is kept as pre-encoded bytes, together with a strong entity tag and a gzip
+ * compressed variant. If the document is located in the file system (e.g. during development),
+ * it is watched and reloaded as soon as it changes. Invalid changes are rejected and the
+ * previous version is kept.
+ */
+public final class SelfDescription {
+
+    /**
+     * Name of the resource which contains the self-description.
+     */
+    public static final String RESOURCE_NAME = "infomodel.json";
+
+    /**
+     * System property which disables the gzip compressed variant if set to false.
+     */
+    public static final String GZIP_PROPERTY = "degree.ids.metadata.gzip";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger("SelfDescription");
+
+    /**
+     * Used to validate the self-description.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The self-description of this data app.
+     */
+    private static volatile SelfDescription instance = null;
+
+    /**
+     * The location of the self-description.
+     */
+    private final URL source;
+
+    /**
+     * Indicator if a gzip compressed variant is created.
+     */
+    private final boolean gzipEnabled;
+
+    /**
+     * The currently served version of the self-description.
+     */
+    private volatile Document document;
+
+    /**
+     * Load the self-description from the given location.
+     *
+     * @param location the location of the self-description
+     * @param gzip     true, if a gzip compressed variant should be created
+     * @throws IOException in case the self-description cannot be read or is not valid JSON
+     */
+    public SelfDescription(final URL location, final boolean gzip) throws IOException {
+        this.source = location;
+        this.gzipEnabled = gzip;
+        this.document = load();
+    }
+
+    /**
+     * Get the self-description of this data app. It is loaded on first access and watched
+     * for changes afterwards.
+     *
+     * @return the self-description of this data app
+     * @throws IOException in case the self-description cannot be read or is not valid JSON
+     */
+    public static SelfDescription getInstance() throws IOException {
+        SelfDescription current = instance;
+        if (current != null) {
+            return current;
+        }
+        synchronized (SelfDescription.class) {
+            if (instance == null) {
+                URL location = SelfDescription.class.getClassLoader()
+                        .getResource(RESOURCE_NAME);
+                if (location == null) {
+                    throw new IOException("Missing " + RESOURCE_NAME + ".");
+                }
+                SelfDescription selfDescription = new SelfDescription(location,
+                        !"false".equalsIgnoreCase(System.getProperty(GZIP_PROPERTY)));
+                selfDescription.watch();
+                instance = selfDescription;
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Get the currently served version of the self-description.
+     *
+     * @return the current document
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Read the self-description again. The current version is kept if the document is invalid.
+     *
+     * @return true, if the self-description has been reloaded
+     */
+    public boolean reload() {
+        try {
+            Document reloaded = load();
+            if (!reloaded.getEtag().equals(document.getEtag())) {
+                document = reloaded;
+                LOGGER.info("Reloaded " + RESOURCE_NAME + ".");
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Could not reload " + RESOURCE_NAME + ", keeping the previous version. "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Read, validate and encode the self-description.
+     *
+     * @return the encoded self-description
+     * @throws IOException in case the self-description cannot be read or is not valid JSON
+     */
+    private Document load() throws IOException {
+        String content;
+        try (InputStream in = source.openStream()) {
+            content = IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+        try {
+            MAPPER.readTree(content);
+        } catch (JsonProcessingException e) {
+            throw new IOException(RESOURCE_NAME + " is not valid JSON. "
+                    + e.getOriginalMessage(), e);
+        }
+        // the self-description has always been served without line breaks
+        byte[] body = content.replaceAll("\\R", "").getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = null;
+        if (gzipEnabled) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(body);
+            }
+            compressed = out.toByteArray();
+        }
+
+        return new Document(body, compressed, "\"" + sha256(body) + "\"");
+    }
+
+    /**
+     * Start a daemon thread which reloads the self-description if it has been changed.
+     * Nothing is watched if the self-description is not located in the file system
+     * (e.g. inside of the application jar).
+     */
+    private void watch() {
+        if (!"file".equals(source.getProtocol())) {
+            return;
+        }
+        final Path file;
+        final WatchService watchService;
+        try {
+            file = Paths.get(source.toURI());
+            watchService = FileSystems.getDefault().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | URISyntaxException e) {
+            LOGGER.warn("Cannot watch " + RESOURCE_NAME + " for changes. " + e.getMessage());
+            return;
+        }
+
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= file.getFileName().equals(event.context());
+                    }
+                    if (changed) {
+                        reload();
+                    }
+                    if (!key.reset()) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "degree-self-description");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Calculate the hex encoded SHA-256 hash of the given bytes.
+     *
+     * @param bytes the hashed bytes
+     * @return the hash
+     */
+    private static String sha256(final byte[] bytes) {
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A single version of the self-description.
+     */
+    public static final class Document {
+
+        /**
+         * The UTF-8 encoded self-description.
+         */
+        private final byte[] body;
+
+        /**
+         * The gzip compressed self-description, null if compression is disabled.
+         */
+        private final byte[] gzipBody;
+
+        /**
+         * Strong entity tag of the self-description.
+         */
+        private final String etag;
+
+        /**
+         * Create a document.
+         *
+         * @param content    the encoded self-description
+         * @param compressed the compressed self-description
+         * @param entityTag  the entity tag
+         */
+        private Document(final byte[] content, final byte[] compressed, final String entityTag) {
+            this.body = content;
+            this.gzipBody = compressed;
+            this.etag = entityTag;
+        }
+
+        /**
+         * Get the encoded self-description. The array must not be modified.
+         *
+         * @return the UTF-8 encoded self-description
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Get the compressed self-description. The array must not be modified.
+         *
+         * @return the gzip compressed self-description, null if compression is disabled
+         */
+        public byte[] getGzipBody() {
+            return gzipBody;
+        }
+
+        /**
+         * Get the strong entity tag of the self-description.
+         *
+         * @return the quoted entity tag
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Get the strong entity tag of a variant of the self-description. The compressed variant
+         * has its own entity tag, since its bytes differ from the uncompressed ones.
+         *
+         * @param gzip true for the compressed variant
+         * @return the quoted entity tag of the variant
+         */
+        public String getEtag(final boolean gzip) {
+            return gzip ? gzipEtag(etag) : etag;
+        }
+
+        /**
+         * Check if an If-None-Match header matches this version of the self-description. Both
+         * variants match, since they have the same content.
+         *
+         * @param ifNoneMatch the value of the header, may be null
+         * @return true, if the client already has this version
+         */
+        public boolean matches(final String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            String compressedEtag = gzipEtag(etag);
+            for (String tag : ifNoneMatch.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.startsWith("W/")) {
+                    trimmed = trimmed.substring(2);
+                }
+                if (trimmed.equals("*") || trimmed.equals(etag)
+                        || trimmed.equals(compressedEtag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Derive the entity tag of the compressed variant.
+         *
+         * @param entityTag the quoted entity tag of the uncompressed variant
+         * @return the quoted entity tag of the compressed variant
+         */
+        private static String gzipEtag(final String entityTag) {
+            return entityTag.substring(0, entityTag.length() - 1) + "-gzip\"";
+        }
+
+        /**
+         * Check if the compressed variant can be sent for an Accept-Encoding header.
+         *
+         * @param acceptEncoding the value of the header, may be null
+         * @return true, if the client accepts gzip and a compressed variant exists
+         */
+        public boolean acceptsGzip(final String acceptEncoding) {
+            if (gzipBody == null || acceptEncoding == null) {
+                return false;
+            }
+            for (String coding : acceptEncoding.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                    return !(parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?"));
+                }
+            }
+            return false;
+        }
+    }
+
+}
@@ -17,7 +17,8 @@ package de.fhg.isst.oe270.degree.runtime.java.manager;
 
 import nukleus.core.Instance;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -34,7 +35,12 @@ public class VariableManager {
     /**
      * Container for all managed variables.
      */
-    private final HashMap<UUID, Instance> variables = new HashMap<UUID, Instance>();
+    private final LinkedHashMap<UUID, Instance> variables = new LinkedHashMap<UUID, Instance>();
+
+    /**
+     * Managers of branches of parallel blocks keep all writes locally until they are merged.
+     */
+    private final boolean branch;
 
     /**
      * Create the variable manager with given parent.
@@ -42,7 +48,30 @@ public class VariableManager {
      * @param par the parent of the constructed variable manager
      */
     public VariableManager(final VariableManager par) {
+        this(par, false);
+    }
+
+    /**
+     * Create the variable manager with given parent.
+     *
+     * @param par      the parent of the constructed variable manager
+     * @param isolated true if writes to variables of the parents are kept locally
+     */
+    private VariableManager(final VariableManager par, final boolean isolated) {
         this.parent = par;
+        this.branch = isolated;
+    }
+
+    /**
+     * Create the variable manager for a branch of a parallel block. Variables of the parents
+     * can be read, but all writes are kept in the branch manager until
+     * {@link #mergeIntoParent()} is called.
+     *
+     * @param par the variable manager of the block which contains the parallel block
+     * @return the variable manager for the branch
+     */
+    public static VariableManager forBranch(final VariableManager par) {
+        return new VariableManager(par, true);
     }
 
     /**
@@ -80,6 +109,9 @@ public class VariableManager {
     /**
      * Initialize a reserved variable with given name. Can only be used with
      * uninitialized variables.
+     * <p>
+     * Managers of branches always keep the value locally, even if the variable already has a
+     * value, so the parents are only changed by {@link #mergeIntoParent()}.
      *
      * @param uuid     the identifier of the variable
      * @param instance the value of the variable
@@ -87,7 +119,9 @@ public class VariableManager {
      * has a value, the UUID itself otherwise
      */
     public UUID initializeVariable(final UUID uuid, final Instance instance) {
-        if (!this.variables.containsKey(uuid) || this.variables.get(uuid) != null) {
+        if (this.branch) {
+            this.variables.put(uuid, instance);
+        } else if (!this.variables.containsKey(uuid) || this.variables.get(uuid) != null) {
             if (this.parent == null) {
                 return null;
             } else {
@@ -131,6 +165,12 @@ public class VariableManager {
     public Instance updateVariable(final UUID uuid, final Instance value) {
         if ((this.variables.containsKey(uuid) && !(this.variables.get(uuid) == null))) {
             return this.variables.put(uuid, value);
+        } else if (this.branch && parent != null) {
+            Instance previous = parent.readVariable(uuid);
+            if (previous != null) {
+                this.variables.put(uuid, value);
+            }
+            return previous;
         } else {
             if (parent == null) {
                 return null;
@@ -157,4 +197,27 @@ public class VariableManager {
         }
         return success;
     }
+
+    /**
+     * Write all variables of this branch manager into its parent. Variables which are unknown
+     * to the parents are created in the parent, all others are updated. The variables are
+     * written in the order in which they have been written in the branch.
+     */
+    public void mergeIntoParent() {
+        if (!this.branch || parent == null) {
+            return;
+        }
+        for (Map.Entry<UUID, Instance> variable : this.variables.entrySet()) {
+            if (variable.getValue() == null) {
+                continue;
+            }
+            if (parent.readVariable(variable.getKey()) != null) {
+                parent.updateVariable(variable.getKey(), variable.getValue());
+            } else {
+                parent.registerVariable(variable.getKey());
+                parent.initializeVariable(variable.getKey(), variable.getValue());
+            }
+        }
+        this.variables.clear();
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.sandbox;
+
+import de.fhg.isst.oe270.degree.runtime.java.exceptions.parameters.DegreeMissingInputException;
+import de.fhg.isst.oe270.degree.runtime.java.exceptions.policies.DegreePolicyValidationException;
+import de.fhg.isst.oe270.degree.runtime.java.manager.VariableManager;
+
+/**
+ * The body of a foreach loop, which is generated as method of the data app.
+ *
+ * @see Sandbox#executeForeach(VariableManager, nukleus.core.Instance, java.util.UUID, int, int,
+ *      ForeachBody)
+ */
+@FunctionalInterface
+public interface ForeachBody {
+
+    /**
+     * Execute the body for a single element.
+     *
+     * @param variableManager the variable manager which contains the current element
+     * @return true if a return statement has been executed, false otherwise
+     * @throws DegreePolicyValidationException if a policy is violated
+     * @throws DegreeMissingInputException     if an input of an activity is missing
+     */
+    boolean execute(VariableManager variableManager)
+            throws DegreePolicyValidationException, DegreeMissingInputException;
+
+}
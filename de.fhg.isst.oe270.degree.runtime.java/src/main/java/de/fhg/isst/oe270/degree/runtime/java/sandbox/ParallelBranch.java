@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.sandbox;
+
+import de.fhg.isst.oe270.degree.runtime.java.exceptions.parameters.DegreeMissingInputException;
+import de.fhg.isst.oe270.degree.runtime.java.exceptions.policies.DegreePolicyValidationException;
+import de.fhg.isst.oe270.degree.runtime.java.manager.VariableManager;
+
+/**
+ * A single branch of a parallel block, which is generated as method of the data app.
+ *
+ * @see Sandbox#executeParallel(VariableManager, java.util.List)
+ */
+@FunctionalInterface
+public interface ParallelBranch {
+
+    /**
+     * Execute the statements of this branch.
+     *
+     * @param variableManager the variable manager of the branch
+     * @return the result of the generated block method, which is always false for branches
+     * @throws DegreePolicyValidationException if a policy is violated
+     * @throws DegreeMissingInputException     if an input of an activity is missing
+     */
+    boolean execute(VariableManager variableManager)
+            throws DegreePolicyValidationException, DegreeMissingInputException;
+
+}
@@ -31,8 +31,13 @@ import de.fhg.isst.oe270.degree.registry.instances.execution.container.EmbeddedE
 import de.fhg.isst.oe270.degree.registry.instances.execution.container.ExecutionContainer;
 import de.fhg.isst.oe270.degree.registry.instances.execution.container.JavaExecutionContainer;
 import de.fhg.isst.oe270.degree.registry.instances.execution.container.NOOPExecutionContainer;
+import de.fhg.isst.oe270.degree.runtime.java.context.core.JWTUserContext;
 import de.fhg.isst.oe270.degree.runtime.java.data.app.CliDataApp;
+import de.fhg.isst.oe270.degree.runtime.java.exceptions.DegreeException;
+import de.fhg.isst.oe270.degree.runtime.java.exceptions.parameters.DegreeMissingInputException;
+import de.fhg.isst.oe270.degree.runtime.java.exceptions.policies.DegreePolicyValidationException;
 import de.fhg.isst.oe270.degree.runtime.java.exceptions.security.DegreeForbiddenSecurityFeatureException;
+import de.fhg.isst.oe270.degree.runtime.java.manager.VariableManager;
 import de.fhg.isst.oe270.degree.runtime.java.security.evaluation.PermissionScope;
 import de.fhg.isst.oe270.degree.runtime.java.security.resolving.EvaluationCondition;
 import de.fhg.isst.oe270.degree.runtime.java.security.resolving.RequiredPermission;
@@ -61,6 +66,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static de.fhg.isst.oe270.degree.runtime.java.security.resolving.enums.PermissionMatchingStrategy.ALL_FILES;
@@ -90,29 +104,38 @@ public final class Sandbox {
     private CliDataApp dataApp = null;
 
     /**
-     * The currently executed activity.
+     * Threads which execute the branches of parallel blocks and of parallel foreach loops.
      */
-    private ActivityInstance currentActivity = null;
+    private static final ExecutorService PARALLEL_BRANCH_THREADS =
+            Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "degree-parallel-branch");
+                thread.setDaemon(true);
+                return thread;
+            });
 
     /**
-     * The currently used input scope.
+     * Marks the threads which currently execute a branch of a parallel block or loop.
      */
-    private InputScope currentInputScope = null;
+    private static final ThreadLocal<Boolean> PARALLEL_BRANCH = new ThreadLocal<>();
 
     /**
-     * Collection of currently used policies.
+     * Marks the threads which currently execute an activity that has been called by the sandbox.
      */
-    private Collection<CompositeInstance> currentPolicies = new ArrayList<>();
+    private static final ThreadLocal<Boolean> ACTIVITY_EXECUTION = new ThreadLocal<>();
 
     /**
-     * List of currently required permissions.
+     * The policy plans of the foreach loop which is currently executed by a thread, identified by
+     * the name of the called activity. The threads which process the elements of a loop share
+     * the plans.
      */
-    private List<RequiredPermission> currentRequiredPermissions = new ArrayList();
+    private static final ThreadLocal<Map<String, PolicyPlan>> LOOP_POLICY_PLANS =
+            new ThreadLocal<>();
 
     /**
-     * Current permission scope.
+     * The activity call which is currently handled by a thread. Since the branches of parallel
+     * blocks call activities concurrently, each thread has its own call.
      */
-    private final PermissionScope currentPermissionScope = PermissionScope.getInstance();
+    private final ThreadLocal<CurrentCall> currentCall = ThreadLocal.withInitial(CurrentCall::new);
 
     /**
      * To ensure that initialization is only performed once, this flag is used.
@@ -370,9 +393,10 @@ public final class Sandbox {
     private void updateCurrentCall(final ActivityInstance activity,
                                    final InputScope input,
                                    final Collection<CompositeInstance> policies) {
-        currentActivity = activity;
-        currentInputScope = input;
-        currentPolicies = policies;
+        CurrentCall call = currentCall.get();
+        call.activity = activity;
+        call.inputScope = input;
+        call.policies = policies;
     }
 
     /**
@@ -391,39 +415,19 @@ public final class Sandbox {
             final Collection<MappedPolicyInstanceMap> policies
     ) {
         // ensure that there are no artifacts from the last call
-        currentPermissionScope.reset();
-        // at first we need to resolve the policies
-        Collection<CompositeInstance> resolvedPolicies = new ArrayList<>();
-        Scope policyRegistry = RuntimeDefinitionRegistry.getInstance().policyRegistry();
-        for (MappedPolicyInstanceMap mappedPolicy : policies) {
-            resolvedPolicies.add(mappedPolicy.getValue().lookup());
-        }
+        PermissionScope.getInstance().reset();
+        // at first we need to resolve the policies, which is only done once per foreach loop
+        PolicyPlan plan = retrievePolicyPlan(activity, policies);
         // ensure that the current fields contain correct information
-        updateCurrentCall(activity, input, resolvedPolicies);
+        updateCurrentCall(activity, input, plan.policies);
 
-        HashMap<String, Instance> policyMap = new HashMap<>();
-        for (CompositeInstance elem : resolvedPolicies) {
-            policyMap.put(elem.read(Policy.NAME), elem);
-        }
+        HashMap<String, Instance> policyMap = new HashMap<>(plan.policyMap);
 
         // add policies which apply to the data used
-        for (Instance instance : input.getValues().values()) {
-            String id = "";
-            if (instance instanceof CompositeInstance) {
-                id = ((CompositeInstance) instance).getIdentity().linkValue();
-            } else {
-                // primitive instances use the unique JVM identifier
-                id = System.identityHashCode(instance) + "";
-            }
-
-            List<Instance> dataPolicies =
-                    UsageControlObject.Companion.getUCObject().getDataPolicies().get(id);
-            if (dataPolicies == null) {
-                dataPolicies = new ArrayList<>();
-            }
-            for (Instance pol : dataPolicies) {
-                policyMap.put(((CompositeInstance) pol).read(Policy.NAME), pol);
-            }
+        List<Instance> dataPolicies = UsageControlObject.Companion.getUCObject().getDataPolicies()
+                .getAll(input.getValues().values());
+        for (Instance pol : dataPolicies) {
+            policyMap.put(((CompositeInstance) pol).read(Policy.NAME), pol);
         }
 
         if (!validatePrecondition(policyMap)) {
@@ -441,8 +445,9 @@ public final class Sandbox {
             LOGGER.error("Tried to call Activity '" + activity.getName().read()
                     + "' with NOOP execution container.");
         } else if (executionContainer instanceof JavaExecutionContainer) {
-            output = ((ActivityApi) ((JavaExecutionContainer) executionContainer)
-                    .getApiObject()).run(input);
+            ActivityApi api = (ActivityApi) ((JavaExecutionContainer) executionContainer)
+                    .getApiObject();
+            output = executeAsActivity(() -> api.run(input));
         } else if (executionContainer instanceof EmbeddedExecutionContainer
                 && definition.getCodeBlock() != null) {
             try {
@@ -478,6 +483,294 @@ public final class Sandbox {
         return output;
     }
 
+    /**
+     * Executes the branches of a parallel block concurrently. Each branch writes into its own
+     * variable manager, so the branches do not see the variables written by other branches.
+     * After all branches have finished, the variables written by the branches are merged into
+     * the given variable manager in the order of the branches.
+     * <p>
+     * The activity calls of every branch are evaluated in the permission scope of the thread
+     * which executes the branch. If branches fail, the failure of the first branch is rethrown
+     * and no variables are merged.
+     *
+     * @param variableManager the variable manager of the block which contains the parallel block
+     * @param branches        the branches of the parallel block
+     * @throws DegreePolicyValidationException if a policy is violated within a branch
+     * @throws DegreeMissingInputException     if an input is missing within a branch
+     */
+    @SuppressWarnings("unused")
+    public void executeParallel(final VariableManager variableManager,
+                                final List<ParallelBranch> branches)
+            throws DegreePolicyValidationException, DegreeMissingInputException {
+        List<VariableManager> branchManagers = new ArrayList<>(branches.size());
+        List<Future<?>> executions = new ArrayList<>(branches.size());
+        for (ParallelBranch branch : branches) {
+            VariableManager branchManager = VariableManager.forBranch(variableManager);
+            branchManagers.add(branchManager);
+            executions.add(submitBranch(() -> branch.execute(branchManager)));
+        }
+        awaitBranches(executions);
+
+        for (VariableManager branchManager : branchManagers) {
+            branchManager.mergeIntoParent();
+        }
+    }
+
+    /**
+     * Executes the body of a foreach loop for every element of a list instance. The element is
+     * stored in its own variable manager for every execution of the body.
+     * <p>
+     * If the parallelism is greater than one, the elements are split into chunks which are
+     * processed concurrently by at most the given number of threads. The elements of a chunk are
+     * processed in order and every chunk writes into its own variable manager. After all chunks
+     * have finished, the written variables are merged in the order of the chunks. If no chunk
+     * size is given, the elements are distributed evenly between the threads.
+     * <p>
+     * The policies of every called activity are resolved only once per loop. Only the policies
+     * which apply to the data of an element are determined for every single activity call.
+     *
+     * @param variableManager the variable manager of the block which contains the loop
+     * @param collection      the list instance
+     * @param element         the identifier of the variable which holds the current element
+     * @param parallelism     maximum number of elements which are processed concurrently
+     * @param chunkSize       number of elements per chunk, 0 to derive it from the parallelism
+     * @param body            the body of the loop
+     * @return true if the body executed a return statement, false otherwise
+     * @throws DegreePolicyValidationException if a policy is violated within the body
+     * @throws DegreeMissingInputException     if an input is missing within the body
+     */
+    @SuppressWarnings("unused")
+    public boolean executeForeach(final VariableManager variableManager,
+                                  final Instance collection,
+                                  final UUID element,
+                                  final int parallelism,
+                                  final int chunkSize,
+                                  final ForeachBody body)
+            throws DegreePolicyValidationException, DegreeMissingInputException {
+        List<Instance> elements = retrieveElements(collection);
+        // nested loops reuse the policy plans of the outermost loop
+        boolean outermostLoop = LOOP_POLICY_PLANS.get() == null;
+        if (outermostLoop) {
+            LOOP_POLICY_PLANS.set(new ConcurrentHashMap<>());
+        }
+        try {
+            if (parallelism <= 1 || elements.size() <= 1) {
+                for (Instance value : elements) {
+                    if (executeForeachBody(variableManager, element, value, body)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            int size = chunkSize > 0 ? chunkSize
+                    : (elements.size() + parallelism - 1) / parallelism;
+            int chunks = (elements.size() + size - 1) / size;
+            List<VariableManager> chunkManagers = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                chunkManagers.add(VariableManager.forBranch(variableManager));
+            }
+            AtomicInteger nextChunk = new AtomicInteger();
+            List<Future<?>> workers = new ArrayList<>(parallelism);
+            for (int i = 0; i < Math.min(parallelism, chunks); i++) {
+                workers.add(submitBranch(() -> {
+                    try {
+                        int chunk = nextChunk.getAndIncrement();
+                        while (chunk < chunks) {
+                            int end = Math.min(elements.size(), (chunk + 1) * size);
+                            for (int index = chunk * size; index < end; index++) {
+                                executeForeachBody(chunkManagers.get(chunk), element,
+                                        elements.get(index), body);
+                            }
+                            chunk = nextChunk.getAndIncrement();
+                        }
+                    } catch (Exception | Error e) {
+                        // the remaining chunks are skipped, since the loop fails anyway
+                        nextChunk.set(chunks);
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+            awaitBranches(workers);
+
+            for (VariableManager chunkManager : chunkManagers) {
+                chunkManager.mergeIntoParent();
+            }
+            return false;
+        } finally {
+            if (outermostLoop) {
+                LOOP_POLICY_PLANS.remove();
+            }
+        }
+    }
+
+    /**
+     * Retrieve the elements of a list instance.
+     *
+     * @param collection the list instance
+     * @return the elements in order
+     */
+    private static List<Instance> retrieveElements(final Instance collection) {
+        if (collection == null) {
+            throw new DegreeException("Cannot iterate over a variable without value.");
+        }
+        int size = collection.getCardinality().value();
+        if (size < 1) {
+            throw new DegreeException("Cannot iterate over instance of type '"
+                    + collection.getType().getIdentifier() + "' without bounded cardinality.");
+        }
+        List<Instance> elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(collection.get(i));
+        }
+        return elements;
+    }
+
+    /**
+     * Execute the body of a foreach loop for a single element.
+     *
+     * @param parent  the variable manager which contains the variable manager of the element
+     * @param element the identifier of the variable which holds the element
+     * @param value   the element
+     * @param body    the body of the loop
+     * @return true if the body executed a return statement, false otherwise
+     * @throws DegreePolicyValidationException if a policy is violated within the body
+     * @throws DegreeMissingInputException     if an input is missing within the body
+     */
+    private static boolean executeForeachBody(final VariableManager parent, final UUID element,
+                                              final Instance value, final ForeachBody body)
+            throws DegreePolicyValidationException, DegreeMissingInputException {
+        VariableManager elementManager = new VariableManager(parent);
+        elementManager.registerVariable(element);
+        elementManager.initializeVariable(element, value);
+        return body.execute(elementManager);
+    }
+
+    /**
+     * Execute a task on a branch thread. The user context and the policy plans of the current
+     * thread are bound to the branch thread while the task is executed.
+     *
+     * @param task the task
+     * @param <T>  the result type of the task
+     * @return the future of the task
+     */
+    private static <T> Future<T> submitBranch(final Callable<T> task) {
+        JWTUserContext userContext = JWTUserContext.current();
+        Map<String, PolicyPlan> policyPlans = LOOP_POLICY_PLANS.get();
+        return PARALLEL_BRANCH_THREADS.submit(() -> {
+            PARALLEL_BRANCH.set(Boolean.TRUE);
+            JWTUserContext.bind(userContext);
+            if (policyPlans != null) {
+                LOOP_POLICY_PLANS.set(policyPlans);
+            }
+            try {
+                return task.call();
+            } finally {
+                LOOP_POLICY_PLANS.remove();
+                JWTUserContext.clear();
+                PARALLEL_BRANCH.remove();
+            }
+        });
+    }
+
+    /**
+     * Wait for all tasks which have been executed on branch threads and rethrow the failure of
+     * the first failed task.
+     *
+     * @param executions the futures of the tasks in order
+     * @throws DegreePolicyValidationException if a policy has been violated within a task
+     * @throws DegreeMissingInputException     if an input has been missing within a task
+     */
+    private static void awaitBranches(final List<Future<?>> executions)
+            throws DegreePolicyValidationException, DegreeMissingInputException {
+        // wait for all branches, even if one of them failed, since they share the data app
+        Throwable failure = null;
+        for (Future<?> execution : executions) {
+            try {
+                execution.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                executions.forEach(running -> running.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new DegreeException("Interrupted while waiting for branch threads.");
+            }
+        }
+        if (failure instanceof DegreePolicyValidationException) {
+            throw (DegreePolicyValidationException) failure;
+        } else if (failure instanceof DegreeMissingInputException) {
+            throw (DegreeMissingInputException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new DegreeException("Execution of branch thread failed: "
+                    + failure.getMessage());
+        }
+    }
+
+    /**
+     * Retrieve the resolved policies of an activity. Within a foreach loop the policies are only
+     * resolved for the first call of every activity.
+     *
+     * @param activity the called activity instance
+     * @param policies the policies which apply to the called activity
+     * @return the policy plan for the activity call
+     */
+    private PolicyPlan retrievePolicyPlan(final ActivityInstance activity,
+                                          final Collection<MappedPolicyInstanceMap> policies) {
+        Map<String, PolicyPlan> policyPlans = LOOP_POLICY_PLANS.get();
+        if (policyPlans == null) {
+            return new PolicyPlan(policies);
+        }
+        return policyPlans.computeIfAbsent(activity.getName().read(),
+                name -> new PolicyPlan(policies));
+    }
+
+    /**
+     * Check if the current thread executes a branch of a parallel block or loop. These threads
+     * execute code on behalf of the process method of the data app, which is not on their stack.
+     *
+     * @return true if the current thread executes a branch, false otherwise
+     */
+    public static boolean isExecutingParallelBranch() {
+        return PARALLEL_BRANCH.get() != null;
+    }
+
+    /**
+     * Execute code as activity of the data app. The security manager only evaluates the
+     * permissions of code which is executed this way, all other code of the data app is treated
+     * as its startup code.
+     *
+     * @param execution the execution of the activity
+     * @param <T>       the result type of the execution
+     * @return the result of the execution
+     */
+    public static <T> T executeAsActivity(final Supplier<T> execution) {
+        Boolean previous = ACTIVITY_EXECUTION.get();
+        ACTIVITY_EXECUTION.set(Boolean.TRUE);
+        try {
+            return execution.get();
+        } finally {
+            if (previous == null) {
+                ACTIVITY_EXECUTION.remove();
+            }
+        }
+    }
+
+    /**
+     * Check if the current thread executes an activity which has been called by the sandbox.
+     *
+     * @return true if the current thread executes an activity, false otherwise
+     */
+    public static boolean isExecutingActivity() {
+        return ACTIVITY_EXECUTION.get() != null;
+    }
+
     /**
      * Uses the information from the current permission scope to decide if the execution
      * is allowed to proceed.
@@ -508,6 +801,7 @@ public final class Sandbox {
      * --> ################################################################
      */
     public void resolveCurrentPermissionScope() {
+        PermissionScope currentPermissionScope = PermissionScope.getInstance();
         // we only want to evaluate the permissions if there are any
         if (currentPermissionScope.getRequiredPermissions().isEmpty()) {
             return;
@@ -543,7 +837,7 @@ public final class Sandbox {
         Set<EvaluationCondition> forbiddingConditions = new HashSet<>();
         // during the filtering we can remove all conditions which do not match
         // the current requirement
-        for (EvaluationCondition evaluationCondition : currentPermissionScope
+        for (EvaluationCondition evaluationCondition : PermissionScope.getInstance()
                 .getEvaluationConditions()) {
             if (requiredPermission.getCategory().equals(evaluationCondition.getCategory())
                     || evaluationCondition.getCategory().equals(DegreePermissionType.WILDCARD)) {
@@ -641,7 +935,7 @@ public final class Sandbox {
      */
     @SuppressWarnings("unused")
     public ActivityInstance getCurrentActivity() {
-        return currentActivity;
+        return currentCall.get().activity;
     }
 
     /**
@@ -651,7 +945,7 @@ public final class Sandbox {
      */
     @SuppressWarnings("unused")
     public InputScope getCurrentInputScope() {
-        return currentInputScope;
+        return currentCall.get().inputScope;
     }
 
     /**
@@ -660,7 +954,7 @@ public final class Sandbox {
      * @return list of currently required permissions.
      */
     public List<RequiredPermission> getCurrentRequiredPermissions() {
-        return currentRequiredPermissions;
+        return currentCall.get().requiredPermissions;
     }
 
     /**
@@ -670,7 +964,7 @@ public final class Sandbox {
      */
     public void setCurrentRequiredPermissions(
             final List<RequiredPermission> permissions) {
-        this.currentRequiredPermissions = permissions;
+        currentCall.get().requiredPermissions = permissions;
     }
 
     /**
@@ -680,7 +974,8 @@ public final class Sandbox {
      */
     @SuppressWarnings("unused")
     public Collection<CompositeInstance> getCurrentPolicies() {
-        return Collections.unmodifiableList(currentPolicies.stream().collect(Collectors.toList()));
+        return Collections.unmodifiableList(currentCall.get().policies.stream()
+                .collect(Collectors.toList()));
     }
 
     /**
@@ -720,6 +1015,8 @@ public final class Sandbox {
 
         // this part is only relevant if this is NOT a startup policy
         // --> we have a current activity
+        ActivityInstance currentActivity = currentCall.get().activity;
+        InputScope currentInputScope = currentCall.get().inputScope;
         if (currentActivity != null) {
             // find definition name of current policy
             String currentName = "";
@@ -796,4 +1093,63 @@ public final class Sandbox {
         return result;
     }
 
+    /**
+     * The activity call which is currently handled by a thread.
+     */
+    private static final class CurrentCall {
+
+        /**
+         * The currently executed activity.
+         */
+        private ActivityInstance activity = null;
+
+        /**
+         * The currently used input scope.
+         */
+        private InputScope inputScope = null;
+
+        /**
+         * Collection of currently used policies.
+         */
+        private Collection<CompositeInstance> policies = new ArrayList<>();
+
+        /**
+         * List of currently required permissions.
+         */
+        private List<RequiredPermission> requiredPermissions = new ArrayList<>();
+    }
+
+    /**
+     * The resolved policies of an activity.
+     */
+    private static final class PolicyPlan {
+
+        /**
+         * The resolved policies.
+         */
+        private final Collection<CompositeInstance> policies;
+
+        /**
+         * The resolved policies, identified by their names.
+         */
+        private final Map<String, Instance> policyMap;
+
+        /**
+         * Resolve the policies of an activity.
+         *
+         * @param mappedPolicies the policies which apply to the activity
+         */
+        private PolicyPlan(final Collection<MappedPolicyInstanceMap> mappedPolicies) {
+            List<CompositeInstance> resolved = new ArrayList<>(mappedPolicies.size());
+            Map<String, Instance> named = new HashMap<>();
+            for (MappedPolicyInstanceMap mappedPolicy : mappedPolicies) {
+                CompositeInstance policy = mappedPolicy.getValue().lookup();
+                resolved.add(policy);
+                named.put(policy.read(Policy.NAME), policy);
+            }
+            this.policies = Collections.unmodifiableList(resolved);
+            this.policyMap = Collections.unmodifiableMap(named);
+        }
+    }
+
 }
@@ -38,9 +38,11 @@ public final class PermissionScope {
             LoggerFactory.getLogger(PermissionScope.class.getSimpleName());
 
     /**
-     * The singleton instance.
+     * The instances of the threads. Branches of parallel blocks call activities concurrently,
+     * so each thread needs its own permission scope.
      */
-    private static PermissionScope singleton;
+    private static final ThreadLocal<PermissionScope> INSTANCES =
+            ThreadLocal.withInitial(PermissionScope::new);
 
     /**
      * The required permissions.
@@ -73,19 +75,12 @@ public final class PermissionScope {
     }
 
     /**
-     * Access the singleton instance of this class.
+     * Access the permission scope of the current thread.
      *
-     * @return the singleton instance
+     * @return the permission scope of the current thread
      */
     public static PermissionScope getInstance() {
-        if (singleton == null) {
-            synchronized (PermissionScope.class) {
-                if (singleton == null) {
-                    singleton = new PermissionScope();
-                }
-            }
-        }
-        return singleton;
+        return INSTANCES.get();
     }
 
     /**
@@ -188,6 +183,16 @@ public final class PermissionScope {
         return evaluatedPermissions.addAll(permissions);
     }
 
+    /**
+     * Remove permissions from the evaluated permissions, so they are evaluated again.
+     *
+     * @param permissions the permissions to remove
+     * @return true if at least one permission was removed, false otherwise
+     */
+    public boolean removeEvaluatedPermissions(final Collection<RequiredPermission> permissions) {
+        return evaluatedPermissions.removeAll(permissions);
+    }
+
     /**
      * Check if a permission has been evaluated.
      *
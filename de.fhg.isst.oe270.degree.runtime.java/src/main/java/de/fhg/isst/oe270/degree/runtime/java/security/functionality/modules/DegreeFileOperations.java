@@ -16,19 +16,32 @@
 package de.fhg.isst.oe270.degree.runtime.java.security.functionality.modules;
 
 import de.fhg.isst.oe270.degree.runtime.java.security.evaluation.PermissionScope;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.DegreeSecurityManager;
 import kotlin.Pair;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilePermission;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 /**
  * The D° security manager forbids the direct access to file operations (like opening a file).
@@ -41,12 +54,14 @@ public final class DegreeFileOperations {
      */
 
     /**
-     * Tag used to identify the number of bytes read.
+     * Tag used to identify the number of bytes read from the file of {@link #FILE_PATH} in the
+     * current permission scope.
      */
     public static final String READ_BYTES = "READ_BYTES";
 
     /**
-     * Tag used to identify the number of bytes written.
+     * Tag used to identify the number of bytes written to the file of {@link #FILE_PATH} in the
+     * current permission scope.
      */
     public static final String WRITTEN_BYTES = "WRITTEN_BYTES";
 
@@ -59,6 +74,56 @@ public final class DegreeFileOperations {
      * Tags end
      */
 
+    /**
+     * Maximum number of bytes which is buffered while streaming content to a file. Each
+     * segment is accounted (and checked by the security manager) before it is written.
+     */
+    public static final int STREAM_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Size of the buffer which is used for copying streams.
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * System property which can be used to configure the timeout of executed commands in
+     * milliseconds (0 waits forever).
+     */
+    public static final String EXEC_TIMEOUT_PROPERTY = "degree.exec.timeout";
+
+    /**
+     * System property which can be used to configure the maximum number of bytes which are
+     * captured per output of an executed command.
+     */
+    public static final String EXEC_MAX_OUTPUT_PROPERTY = "degree.exec.output.max";
+
+    /**
+     * The timeout of executed commands. Properties are read when the module is initialized
+     * during the startup of the data app.
+     */
+    private static final long EXEC_TIMEOUT_MILLIS =
+            Long.getLong(EXEC_TIMEOUT_PROPERTY, TimeUnit.MINUTES.toMillis(10));
+
+    /**
+     * The maximum number of bytes which are captured per output of an executed command.
+     */
+    private static final int EXEC_MAX_OUTPUT = Integer.getInteger(EXEC_MAX_OUTPUT_PROPERTY,
+            1024 * 1024);
+
+    /**
+     * Time which is granted to finish reading the output of a terminated command.
+     */
+    private static final long EXEC_DRAIN_GRACE_MILLIS = 1000;
+
+    /**
+     * Threads which drain the outputs of executed commands.
+     */
+    private static final ExecutorService EXEC_THREADS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "degree-exec");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * The used logger.
      */
@@ -133,10 +198,7 @@ public final class DegreeFileOperations {
         File file = new File(filepath);
         String fileContent = "";
         // we need to collect meta data which will be used by policies
-        long fileSize = getFileSize(file);
-        PermissionScope.getInstance().addAdditionalPermissionData(READ_BYTES, fileSize);
-        PermissionScope.getInstance().addAdditionalPermissionData(FILE_PATH,
-                file.getCanonicalPath());
+        accountRead(file.getCanonicalPath(), getFileSize(file));
         // the actual reading
         try {
             fileContent = FileUtils.readFileToString(file, Charset.forName(encoding));
@@ -162,10 +224,7 @@ public final class DegreeFileOperations {
         File file = new File(filepath);
         byte[] fileContent;
         // we need to collect meta data which will be used by policies
-        long fileSize = getFileSize(file);
-        PermissionScope.getInstance().addAdditionalPermissionData(READ_BYTES, fileSize);
-        PermissionScope.getInstance().addAdditionalPermissionData(FILE_PATH,
-                file.getCanonicalPath());
+        accountRead(file.getCanonicalPath(), getFileSize(file));
         // the actual reading
         try {
             fileContent = FileUtils.readFileToByteArray(file);
@@ -178,6 +237,108 @@ public final class DegreeFileOperations {
         return fileContent;
     }
 
+    /**
+     * Copy the content of a file to a stream without loading it into memory.
+     * <p>
+     * The file is copied in segments of at most 64 KiB, which are accounted like the chunks of
+     * {@link #readFileInChunks}. A quota constraint can therefore abort the copy before a
+     * segment beyond the granted quota reaches the stream.
+     *
+     * @param filepath Path of the file to read
+     * @param target   The stream the file content is written to
+     * @return the number of copied bytes
+     * @throws IOException In case something fails during reading the file
+     */
+    public static long copyFileToStream(
+            final String filepath, final OutputStream target) throws IOException {
+        return readFileInChunks(filepath, COPY_BUFFER_SIZE,
+                (buffer, length) -> target.write(buffer, 0, length));
+    }
+
+    /**
+     * Read a file in chunks without loading it into memory.
+     * <p>
+     * The size of each chunk is collected before the chunk is passed to the consumer and the
+     * policies are evaluated again. A quota constraint can therefore abort the reading as soon
+     * as the granted quota is exhausted.
+     *
+     * @param filepath  Path of the file to read
+     * @param chunkSize The maximum number of bytes per chunk
+     * @param consumer  Receives the chunks, the buffer is reused for the next chunk
+     * @return the number of read bytes
+     * @throws IOException In case something fails during reading the file
+     */
+    public static long readFileInChunks(
+            final String filepath,
+            final int chunkSize,
+            final ChunkConsumer consumer) throws IOException {
+        // open the file
+        File file = new File(filepath);
+        String canonicalPath = file.getCanonicalPath();
+        long fileSize = getFileSize(file);
+        byte[] chunk = new byte[(int) Math.max(1, Math.min(chunkSize, fileSize))];
+        long read = 0;
+        // we need to collect meta data which will be used by policies
+        accountRead(canonicalPath, Math.min(chunk.length, fileSize));
+        try (InputStream source = new FileInputStream(file)) {
+            int filled;
+            while ((filled = fill(source, chunk)) > 0) {
+                if (read > 0) {
+                    accountRead(canonicalPath, filled);
+                }
+                consumer.accept(chunk, filled);
+                read += filled;
+            }
+        } catch (IOException e) {
+            LOGGER.error("An error occurred during file reading. " + e.getMessage());
+            throw e;
+        }
+        return read;
+    }
+
+    /**
+     * Map a region of a file into memory for reading, which avoids copies on the heap.
+     * Will collect additional metadata which can be used for policy enforcement.
+     * <p>
+     * Large files can be processed by mapping consecutive regions. Each mapping adds the size of
+     * its region to the bytes read from the file and evaluates the policies again.
+     *
+     * @param filepath Path of the file to read
+     * @param position The position in the file at which the region starts
+     * @param size     The size of the region, at most {@link Integer#MAX_VALUE}
+     * @return the read-only mapping of the region
+     * @throws IOException In case something fails during mapping the file
+     */
+    public static MappedByteBuffer mapFile(
+            final String filepath,
+            final long position,
+            final long size) throws IOException {
+        // open the file
+        File file = new File(filepath);
+        long available = Math.max(0, Math.min(size, getFileSize(file) - position));
+        // we need to collect meta data which will be used by policies
+        accountRead(file.getCanonicalPath(), available);
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, available);
+        } catch (IOException e) {
+            LOGGER.error("An error occurred during file mapping. " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Map a whole file into memory for reading.
+     *
+     * @param filepath Path of the file to read
+     * @return the read-only mapping of the file
+     * @throws IOException In case something fails during mapping the file
+     * @see #mapFile(String, long, long)
+     */
+    public static MappedByteBuffer mapFile(final String filepath) throws IOException {
+        return mapFile(filepath, 0, getFileSize(new File(filepath)));
+    }
+
     /*
      * File writing
      */
@@ -306,10 +467,7 @@ public final class DegreeFileOperations {
         // open the file
         File file = new File(filepath);
         // we need to collect meta data which will be used by policies
-        long writtenSize = content.getBytes().length;
-        PermissionScope.getInstance().addAdditionalPermissionData(WRITTEN_BYTES, writtenSize);
-        PermissionScope.getInstance().addAdditionalPermissionData(FILE_PATH,
-                file.getCanonicalPath());
+        accountWrite(file.getCanonicalPath(), content.getBytes().length);
 
         FileUtils.writeStringToFile(file, content, encoding, append);
     }
@@ -331,21 +489,84 @@ public final class DegreeFileOperations {
         // open the file
         File file = new File(filepath);
         // we need to collect meta data which will be used by policies
-        long writtenSize = content.length;
-        PermissionScope.getInstance().addAdditionalPermissionData(WRITTEN_BYTES, writtenSize);
-        PermissionScope.getInstance().addAdditionalPermissionData(FILE_PATH,
-                file.getCanonicalPath());
+        accountWrite(file.getCanonicalPath(), content.length);
 
         FileUtils.writeByteArrayToFile(file, content, append);
     }
 
+    /**
+     * Write the content of a stream to a file without loading it into memory.
+     * <p>
+     * The content is written in segments of at most {@link #STREAM_SEGMENT_SIZE} bytes. The
+     * file is opened once per segment and the size of the segment is collected before, so quota
+     * policies are evaluated with the actual amount of data even if the size of the content is
+     * unknown in advance.
+     *
+     * @param filepath Path of the file to write
+     * @param content  The stream which provides the content, it is not closed
+     * @param append   Indicator if the content will be appended if the file already exists
+     * @return the number of written bytes
+     * @throws IOException In case something fails during writing the file
+     */
+    public static long writeStreamToFile(
+            final String filepath,
+            final InputStream content,
+            final boolean append) throws IOException {
+        // open the file
+        File file = new File(filepath);
+        String canonicalPath = file.getCanonicalPath();
+        byte[] segment = new byte[COPY_BUFFER_SIZE];
+        long written = 0;
+        boolean appendSegment = append;
+        int filled;
+        do {
+            filled = fill(content, segment);
+            if (filled == 0 && written > 0) {
+                break;
+            }
+            // we need to collect meta data which will be used by policies
+            accountWrite(canonicalPath, filled);
+            try (OutputStream target = new FileOutputStream(file, appendSegment)) {
+                target.write(segment, 0, filled);
+            }
+            written += filled;
+            appendSegment = true;
+            if (filled == segment.length && segment.length < STREAM_SEGMENT_SIZE) {
+                // grow the buffer up to the segment size for large contents
+                segment = new byte[Math.min(segment.length * 4, STREAM_SEGMENT_SIZE)];
+            }
+        } while (filled > 0);
+
+        return written;
+    }
+
+    /**
+     * Read from a stream until the buffer is full or the stream ends.
+     *
+     * @param source the stream to read from
+     * @param buffer the buffer to fill
+     * @return the number of bytes read, 0 if the stream has ended
+     * @throws IOException in case of I/O errors
+     */
+    private static int fill(final InputStream source, final byte[] buffer) throws IOException {
+        int filled = 0;
+        int read;
+        while (filled < buffer.length
+                && (read = source.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+        }
+        return filled;
+    }
+
     /**
      * Executes a command with attached parameters and return the output.
+     * <p>
+     * Standard and error output are interleaved in the order in which the command writes them.
      *
      * @param command the command to execute
      * @param workingDir the working directory of the command
-     * @param timeout the timeout for the executed command
-     * @return the return console output and errors from the execution
+     * @param timeout the timeout for the executed command in minutes
+     * @return the exit code (-1 on timeout) and the console output and errors of the execution
      * @throws IOException          In case the execution cannot be started because of IO-errors
      * @throws InterruptedException If the current thread is interrupted by another thread while
      *                              it is waiting, then the wait is ended and an
@@ -355,25 +576,148 @@ public final class DegreeFileOperations {
             final String command,
             final String workingDir,
             final int timeout) throws IOException, InterruptedException {
-        int exitCode = -1;
+        ExecutionResult result = execute(command, workingDir,
+                TimeUnit.MINUTES.toMillis(timeout), EXEC_MAX_OUTPUT, true);
+        return new Pair<>(result.getExitCode(), result.getOutput());
+    }
+
+    /**
+     * Executes a command and captures its output.
+     * <p>
+     * Standard and error output are drained concurrently while the command is running, so a
+     * command cannot block on a full pipe. Only the last {@code maxOutputBytes} bytes of each
+     * output are kept. If the command does not terminate within the timeout, it is killed
+     * together with all processes it has started.
+     *
+     * @param command        the command to execute, arguments are separated by whitespaces
+     * @param workingDir     the working directory of the command
+     * @param timeoutMillis  the wall-clock timeout in milliseconds, 0 waits forever
+     * @param maxOutputBytes the maximum number of bytes which are kept per output
+     * @return the result of the execution
+     * @throws IOException          In case the execution cannot be started because of IO-errors
+     * @throws InterruptedException If the current thread is interrupted while waiting for the
+     *                              command, the command is killed in this case
+     */
+    public static ExecutionResult executeFile(
+            final String command,
+            final String workingDir,
+            final long timeoutMillis,
+            final int maxOutputBytes) throws IOException, InterruptedException {
+        return execute(command, workingDir, timeoutMillis, maxOutputBytes, false);
+    }
 
-        // execute the cmd
-        Process exec = new ProcessBuilder(command.split("\\s"))
+    /**
+     * Executes a command and captures its output.
+     *
+     * @param command             the command to execute, arguments are separated by whitespaces
+     * @param workingDir          the working directory of the command
+     * @param timeoutMillis       the wall-clock timeout in milliseconds, 0 waits forever
+     * @param maxOutputBytes      the maximum number of bytes which are kept per output
+     * @param redirectErrorStream true if the error output is merged into the standard output
+     * @return the result of the execution
+     * @throws IOException          In case the execution cannot be started because of IO-errors
+     * @throws InterruptedException If the current thread is interrupted while waiting for the
+     *                              command, the command is killed in this case
+     * @see #executeFile(String, String, long, int)
+     */
+    private static ExecutionResult execute(
+            final String command,
+            final String workingDir,
+            final long timeoutMillis,
+            final int maxOutputBytes,
+            final boolean redirectErrorStream) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command.split("\\s"))
                 .directory(new File(workingDir))
-                .redirectErrorStream(true)
+                .redirectErrorStream(redirectErrorStream)
                 .start();
-        exec.waitFor();
-        if (exec.waitFor(timeout, TimeUnit.MINUTES)) {
-            exitCode = exec.exitValue();
-        }
+        // the command does not get any input
+        process.getOutputStream().close();
 
-        StringBuilder stringBuilder = new StringBuilder();
-        String line = null;
+        BoundedOutput output = new BoundedOutput(maxOutputBytes);
+        BoundedOutput errorOutput = new BoundedOutput(maxOutputBytes);
+        Future<?> outputDrain = EXEC_THREADS.submit(() -> output.drain(process.getInputStream()));
+        Future<?> errorDrain = EXEC_THREADS.submit(
+                () -> errorOutput.drain(process.getErrorStream()));
 
-        BufferedReader reader = new BufferedReader(new InputStreamReader(exec.getInputStream()));
+        boolean timedOut = false;
+        try {
+            if (timeoutMillis > 0) {
+                timedOut = !process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                process.waitFor();
+            }
+        } catch (InterruptedException e) {
+            killProcessTree(process);
+            throw e;
+        }
+        if (timedOut) {
+            LOGGER.warn("Command '" + command + "' exceeded the timeout of " + timeoutMillis
+                    + " ms and is killed.");
+            killProcessTree(process);
+        }
+        // child processes may still hold the pipes, which are closed after a grace period
+        awaitDrain(outputDrain, process.getInputStream());
+        awaitDrain(errorDrain, process.getErrorStream());
+
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int exitCode = timedOut ? ExecutionResult.TIMEOUT_EXIT_CODE : process.exitValue();
+        return new ExecutionResult(exitCode, output.toString(), errorOutput.toString(), duration,
+                timedOut, output.isTruncated() || errorOutput.isTruncated());
+    }
 
-        return new Pair<>(exitCode, reader.lines()
-                .collect(Collectors.joining(System.lineSeparator())));
+    /**
+     * Kill a process and all of its descendants. The descendants can only be determined on
+     * Java 9 or newer, on older versions only the process itself is killed.
+     * <p>
+     * The processes are killed by the calling thread, so determining the descendants is checked
+     * by the security manager in the permission scope of the activity which started the
+     * command. If this is not permitted, only the started process itself is killed.
+     *
+     * @param process the process to kill
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    private static void killProcessTree(final Process process) throws InterruptedException {
+        try {
+            Method descendants = Process.class.getMethod("descendants");
+            Method destroy = Class.forName("java.lang.ProcessHandle")
+                    .getMethod("destroyForcibly");
+            Stream<?> handles = (Stream<?>) descendants.invoke(process);
+            for (Object handle : handles.toArray()) {
+                destroy.invoke(handle);
+            }
+        } catch (InvocationTargetException e) {
+            LOGGER.warn("Could not kill the descendants of a process: " + e.getCause());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Could not kill the descendants of a process: " + e);
+        }
+        process.destroyForcibly();
+        process.waitFor(EXEC_DRAIN_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait until an output of a process has been drained. The output is closed if draining
+     * does not finish within a grace period.
+     *
+     * @param drain  the task which drains the output
+     * @param stream the drained output
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    private static void awaitDrain(final Future<?> drain, final InputStream stream)
+            throws InterruptedException {
+        try {
+            drain.get(EXEC_DRAIN_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // the output is dropped anyway
+            }
+            drain.cancel(true);
+        } catch (ExecutionException e) {
+            LOGGER.error("An error occurred while reading the output of a process. "
+                    + e.getCause());
+        }
     }
 
     /*
@@ -391,30 +735,39 @@ public final class DegreeFileOperations {
 
     /**
      * Executes a command with attached parameters and return the output.
+     * <p>
+     * The command is executed in the working directory of the data app with the timeout and
+     * output limit configured by the system properties {@value #EXEC_TIMEOUT_PROPERTY} and
+     * {@value #EXEC_MAX_OUTPUT_PROPERTY}.
      *
      * @param command the command to execute
-     * @return the return console output and errors from the execution
+     * @return the return console output from the execution
      * @throws IOException          In case the execution cannot be started because of IO-errors
      * @throws InterruptedException If the current thread is interrupted by another thread while
      *                              it is waiting, then the wait is ended and an
      *                              InterruptedException is thrown.
+     * @see #executeFile(String, String, long, int)
      */
     public static String executeFile(
             final String command) throws IOException, InterruptedException {
-        // execute the cmd
-        Process exec = new ProcessBuilder(command.split("\\s"))
-                .directory(new File(System.getProperty("user.dir")))
-                .redirectOutput(ProcessBuilder.Redirect.PIPE)
-                .redirectError(ProcessBuilder.Redirect.PIPE)
-                .start();
-        exec.waitFor();
-
-        StringBuilder stringBuilder = new StringBuilder();
-        String line = null;
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(exec.getInputStream()));
+        return executeCommand(command).getOutput();
+    }
 
-        return reader.lines().collect(Collectors.joining(System.lineSeparator()));
+    /**
+     * Executes a command in the working directory of the data app with the configured timeout
+     * and output limit.
+     *
+     * @param command the command to execute, arguments are separated by whitespaces
+     * @return the result of the execution
+     * @throws IOException          In case the execution cannot be started because of IO-errors
+     * @throws InterruptedException If the current thread is interrupted while waiting for the
+     *                              command
+     * @see #executeFile(String, String, long, int)
+     */
+    public static ExecutionResult executeCommand(
+            final String command) throws IOException, InterruptedException {
+        return executeFile(command, System.getProperty("user.dir"), EXEC_TIMEOUT_MILLIS,
+                EXEC_MAX_OUTPUT);
     }
 
     /**
@@ -480,6 +833,65 @@ public final class DegreeFileOperations {
      * Helper functions.
      */
 
+    /**
+     * Collect the number of read bytes for policies and evaluate them again if the file has
+     * already been accessed in the current permission scope.
+     *
+     * @param canonicalPath the canonical path of the file
+     * @param bytes         the number of bytes which are read by the current operation
+     */
+    private static void accountRead(final String canonicalPath, final long bytes) {
+        account(READ_BYTES, canonicalPath, bytes, "read");
+    }
+
+    /**
+     * Collect the number of written bytes for policies and evaluate them again if the file has
+     * already been accessed in the current permission scope.
+     *
+     * @param canonicalPath the canonical path of the file
+     * @param bytes         the number of bytes which are written by the current operation
+     */
+    private static void accountWrite(final String canonicalPath, final long bytes) {
+        account(WRITTEN_BYTES, canonicalPath, bytes, "write");
+    }
+
+    /**
+     * Collect meta data of a file operation which is used by policies. The bytes are added to
+     * the bytes of all previous operations on the same file in the current permission scope,
+     * the tag holds this total.
+     *
+     * @param tag           the tag of the number of bytes
+     * @param canonicalPath the canonical path of the file
+     * @param bytes         the number of bytes of the current operation
+     * @param action        the action of the file permission
+     */
+    private static void account(final String tag, final String canonicalPath,
+                                final long bytes, final String action) {
+        PermissionScope scope = PermissionScope.getInstance();
+        String fileTag = tag + ":" + canonicalPath;
+        Object accounted = scope.getEvaluationData(fileTag);
+        long total = (accounted instanceof Long ? (Long) accounted : 0) + bytes;
+        scope.addAdditionalPermissionData(fileTag, total);
+        scope.addAdditionalPermissionData(tag, total);
+        scope.addAdditionalPermissionData(FILE_PATH, canonicalPath);
+        SecurityManager securityManager = System.getSecurityManager();
+        if (securityManager instanceof DegreeSecurityManager) {
+            ((DegreeSecurityManager) securityManager)
+                    .reevaluatePermission(new FilePermission(canonicalPath, action));
+        }
+    }
+
+    /**
+     * Retrieve size in bytes of a file/directory.
+     * Throws an exception in case file does not exist.
+     *
+     * @param filepath the file/directory
+     * @return the length of the file, or recursive size of the directory, provided (in bytes).
+     */
+    public static long getFileSize(final String filepath) {
+        return getFileSize(new File(filepath));
+    }
+
     /**
      * Retrieve size in bytes of a file/directory.
      * Throws an exception in case file does not exist.
@@ -491,4 +903,115 @@ public final class DegreeFileOperations {
         return FileUtils.sizeOf(f);
     }
 
+    /**
+     * Receives the chunks of a file which is read with {@link #readFileInChunks}.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+
+        /**
+         * Process a chunk of the file.
+         *
+         * @param buffer the buffer which contains the chunk
+         * @param length the number of valid bytes in the buffer
+         * @throws IOException in case the chunk cannot be processed
+         */
+        void accept(byte[] buffer, int length) throws IOException;
+    }
+
+    /**
+     * Output of a process, of which only the last bytes are kept.
+     */
+    private static final class BoundedOutput {
+
+        /**
+         * Ring buffer with the last bytes of the output.
+         */
+        private final byte[] buffer;
+
+        /**
+         * Total number of bytes which have been read.
+         */
+        private long total = 0;
+
+        /**
+         * Create an output.
+         *
+         * @param capacity the maximum number of bytes which are kept
+         */
+        private BoundedOutput(final int capacity) {
+            this.buffer = new byte[Math.max(capacity, 0)];
+        }
+
+        /**
+         * Read a stream until it ends.
+         *
+         * @param stream the output stream of a process
+         * @return null, so the method can be used as callable
+         */
+        private Void drain(final InputStream stream) {
+            byte[] chunk = new byte[8192];
+            int read;
+            try {
+                while ((read = stream.read(chunk)) != -1) {
+                    append(chunk, read);
+                }
+            } catch (IOException e) {
+                // the stream is closed if the process does not release it in time
+                LOGGER.debug("Stopped reading the output of a process: " + e.getMessage());
+            }
+            return null;
+        }
+
+        /**
+         * Append bytes to the ring buffer.
+         *
+         * @param chunk  the bytes
+         * @param length the number of valid bytes
+         */
+        private synchronized void append(final byte[] chunk, final int length) {
+            if (buffer.length == 0) {
+                total += length;
+                return;
+            }
+            int offset = Math.max(0, length - buffer.length);
+            for (int i = offset; i < length; i++) {
+                buffer[(int) ((total + i) % buffer.length)] = chunk[i];
+            }
+            total += length;
+        }
+
+        /**
+         * Check if bytes have been dropped.
+         *
+         * @return true if the output exceeded the capacity
+         */
+        private synchronized boolean isTruncated() {
+            return total > buffer.length;
+        }
+
+        /**
+         * Get the kept bytes as string without a trailing line break.
+         *
+         * @return the kept output
+         */
+        @Override
+        public synchronized String toString() {
+            int length = (int) Math.min(total, buffer.length);
+            byte[] bytes = new byte[length];
+            int start = (int) ((total - length) % Math.max(buffer.length, 1));
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer[(start + i) % buffer.length];
+            }
+            String text = new String(bytes, Charset.defaultCharset());
+            if (text.endsWith("\n")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            return text;
+        }
+    }
+
 }
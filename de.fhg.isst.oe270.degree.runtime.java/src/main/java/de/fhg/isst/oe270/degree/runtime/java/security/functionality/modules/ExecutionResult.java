@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.security.functionality.modules;
+
+/**
+ * The result of a command which has been executed with {@link DegreeFileOperations}.
+ */
+public final class ExecutionResult {
+
+    /**
+     * Exit code which is reported if the command has been killed because of a timeout.
+     */
+    public static final int TIMEOUT_EXIT_CODE = -1;
+
+    /**
+     * The exit code of the command.
+     */
+    private final int exitCode;
+
+    /**
+     * The captured standard output.
+     */
+    private final String output;
+
+    /**
+     * The captured error output.
+     */
+    private final String errorOutput;
+
+    /**
+     * The wall-clock duration of the execution in milliseconds.
+     */
+    private final long durationMillis;
+
+    /**
+     * Flag if the command has been killed because of a timeout.
+     */
+    private final boolean timedOut;
+
+    /**
+     * Flag if parts of the output have been dropped because of the output limit.
+     */
+    private final boolean truncated;
+
+    /**
+     * Create an execution result.
+     *
+     * @param exit      the exit code of the command
+     * @param stdout    the captured standard output
+     * @param stderr    the captured error output
+     * @param duration  the duration of the execution in milliseconds
+     * @param timeout   true if the command has been killed because of a timeout
+     * @param truncate  true if parts of the output have been dropped
+     */
+    public ExecutionResult(final int exit, final String stdout, final String stderr,
+                           final long duration, final boolean timeout, final boolean truncate) {
+        this.exitCode = exit;
+        this.output = stdout;
+        this.errorOutput = stderr;
+        this.durationMillis = duration;
+        this.timedOut = timeout;
+        this.truncated = truncate;
+    }
+
+    /**
+     * Get the exit code of the command.
+     *
+     * @return the exit code, {@link #TIMEOUT_EXIT_CODE} if the command timed out
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * Get the captured standard output. Only the end of the output is kept if it exceeds the
+     * output limit.
+     *
+     * @return the standard output
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * Get the captured error output. Only the end of the output is kept if it exceeds the
+     * output limit.
+     *
+     * @return the error output
+     */
+    public String getErrorOutput() {
+        return errorOutput;
+    }
+
+    /**
+     * Get the wall-clock duration of the execution.
+     *
+     * @return the duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Check if the command has been killed because of a timeout.
+     *
+     * @return true if the command timed out
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Check if parts of the output have been dropped because of the output limit.
+     *
+     * @return true if the standard or error output is truncated
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.security.manager;
+
+import de.fhg.isst.oe270.degree.activities.api.ActivityApi;
+import de.fhg.isst.oe270.degree.policies.api.EmbeddedPolicyApi;
+import de.fhg.isst.oe270.degree.runtime.java.data.app.DataApp;
+
+/**
+ * Classification of the classes on the call stack, which is used by the
+ * {@link DegreeSecurityManager} to determine who is responsible for a checked permission.
+ * <p>
+ * The classification of a class is computed once and stored in a {@link ClassValue}. The
+ * classes on the call stack are obtained from the security manager's class context, so no
+ * class has to be resolved by its name.
+ */
+public final class CallerClassification {
+
+    /**
+     * The kind of code a class belongs to.
+     */
+    public enum CallerKind {
+        /**
+         * Classes of the java platform and the D° runtime.
+         */
+        TRUSTED_RUNTIME,
+        /**
+         * D° applications.
+         */
+        DATA_APP,
+        /**
+         * Activities, which are executed by D° applications.
+         */
+        ACTIVITY,
+        /**
+         * Policies, which are evaluated by the sandbox.
+         */
+        POLICY,
+        /**
+         * All other classes (e.g. libraries).
+         */
+        OTHER
+    }
+
+    /**
+     * Package prefixes of trusted classes.
+     */
+    private static final String[] TRUSTED_PACKAGES = {
+            "java.", "javax.", "jdk.", "sun.", "com.sun.",
+            "de.fhg.isst.oe270.degree.runtime.java."
+    };
+
+    /**
+     * The cached classification of classes.
+     */
+    private static final ClassValue<CallerKind> KINDS = new ClassValue<CallerKind>() {
+        @Override
+        protected CallerKind computeValue(final Class<?> type) {
+            // the class loader must not be used, since accessing it requires a permission
+            if (ActivityApi.class.isAssignableFrom(type)) {
+                return CallerKind.ACTIVITY;
+            } else if (EmbeddedPolicyApi.class.isAssignableFrom(type)) {
+                return CallerKind.POLICY;
+            } else if (DataApp.class.isAssignableFrom(type)) {
+                return CallerKind.DATA_APP;
+            }
+            for (String trustedPackage : TRUSTED_PACKAGES) {
+                if (type.getName().startsWith(trustedPackage)) {
+                    return CallerKind.TRUSTED_RUNTIME;
+                }
+            }
+            return CallerKind.OTHER;
+        }
+    };
+
+    /**
+     * Access to the class context. It is created when this class is initialized, which
+     * {@link #initialize()} ensures to happen before the {@link DegreeSecurityManager} is
+     * installed.
+     */
+    private static final ClassContext CLASS_CONTEXT = new ClassContext();
+
+    /**
+     * Private default constructor.
+     */
+    private CallerClassification() {
+    }
+
+    /**
+     * Initialize the classification. This has to be done before the security manager is
+     * installed: the class context is a security manager itself and creating it requires the
+     * 'createSecurityManager' permission, whose check needs the classification.
+     */
+    static void initialize() {
+        // load the types which are used to classify classes as well
+        classify(CallerClassification.class);
+    }
+
+    /**
+     * Get the kind of code a class belongs to.
+     *
+     * @param type the class
+     * @return the kind of the class
+     */
+    public static CallerKind classify(final Class<?> type) {
+        return KINDS.get(type);
+    }
+
+    /**
+     * Get the classes of all methods on the current call stack, the most recent call first.
+     *
+     * @return the classes on the call stack
+     */
+    public static Class<?>[] currentClassContext() {
+        return CLASS_CONTEXT.get();
+    }
+
+    /**
+     * Helper which exposes the class context of the java security manager.
+     */
+    private static final class ClassContext extends SecurityManager {
+
+        /**
+         * Get the classes on the call stack.
+         *
+         * @return the classes on the call stack
+         */
+        private Class<?>[] get() {
+            return getClassContext();
+        }
+    }
+
+}
@@ -17,85 +17,34 @@ package de.fhg.isst.oe270.degree.runtime.java.security.manager;
 
 import de.fhg.isst.degree.types.gen.degree.ConstraintInstance;
 import de.fhg.isst.degree.types.gen.degree.PolicyInstance;
-import de.fhg.isst.oe270.degree.activities.api.ActivityApi;
 import de.fhg.isst.oe270.degree.runtime.java.data.app.CliDataApp;
 import de.fhg.isst.oe270.degree.runtime.java.exceptions.security.DegreeForbiddenSecurityFeatureException;
 import de.fhg.isst.oe270.degree.runtime.java.sandbox.Sandbox;
 import de.fhg.isst.oe270.degree.runtime.java.security.evaluation.PermissionScope;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeAWTPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeAllPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeAudioPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeAuthPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeDelegationPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeFilePermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeJAXBPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeLinkPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeLoggingPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeMBeanPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeMBeanServerPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeMBeanTrustPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeManagementPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeNetPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreePrivateCredentialPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreePropertyPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeReflectPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeRuntimePermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSQLPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSSLPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSecurityPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSerializablePermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeServicePermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSocketPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSubjectDelegationPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeURLPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeUnresolvedPermissionSecurityModule;
-import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeWebServicePermissionSecurityModule;
 import de.fhg.isst.oe270.degree.runtime.java.security.resolving.EvaluationCondition;
 import de.fhg.isst.oe270.degree.runtime.java.security.resolving.IgnoredPermission;
+import de.fhg.isst.oe270.degree.runtime.java.security.resolving.IgnoredPermissionMatcher;
 import de.fhg.isst.oe270.degree.runtime.java.security.resolving.RequiredPermission;
-import de.fhg.isst.oe270.degree.runtime.java.security.resolving.enums.DegreePermissionType;
 import nukleus.core.CompositeInstance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.management.MBeanPermission;
-import javax.management.MBeanServerPermission;
-import javax.management.MBeanTrustPermission;
-import javax.management.remote.SubjectDelegationPermission;
-import javax.net.ssl.SSLPermission;
-import javax.security.auth.AuthPermission;
-import javax.security.auth.PrivateCredentialPermission;
-import javax.security.auth.kerberos.DelegationPermission;
-import javax.security.auth.kerberos.ServicePermission;
-import javax.sound.sampled.AudioPermission;
-import javax.xml.bind.JAXBPermission;
-import javax.xml.ws.WebServicePermission;
 import java.awt.AWTPermission;
 import java.io.FileDescriptor;
 import java.io.FilePermission;
-import java.io.SerializablePermission;
-import java.lang.management.ManagementPermission;
 import java.lang.reflect.Member;
-import java.lang.reflect.ReflectPermission;
 import java.net.InetAddress;
-import java.net.NetPermission;
 import java.net.SocketPermission;
-import java.net.URLPermission;
-import java.nio.file.LinkPermission;
 import java.nio.file.Paths;
 import java.security.AccessControlContext;
-import java.security.AllPermission;
 import java.security.Permission;
 import java.security.SecurityPermission;
-import java.security.UnresolvedPermission;
-import java.sql.SQLPermission;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.PropertyPermission;
-import java.util.logging.LoggingPermission;
 
 /**
  * Extension of the java default security manager.
@@ -131,6 +80,8 @@ public final class DegreeSecurityManager extends SecurityManager {
      */
     public DegreeSecurityManager(final CliDataApp defaultDataApp) {
         dataApp = defaultDataApp;
+        // the classification is used by every check, so it must not be initialized by one
+        CallerClassification.initialize();
         IgnoredPermission.init();
     }
 
@@ -159,27 +110,26 @@ public final class DegreeSecurityManager extends SecurityManager {
         if (ALLOWED_BYPASSES.isEmpty()) {
             populateAllowedBypasses();
         }
-        StackTraceElement[] stack = Thread.currentThread().getStackTrace();
-        // skip the first element since it will always be java.lang.Thread.getStackTrace
+        List<String> bypasses = ALLOWED_BYPASSES.get(permission.getClass());
         // find the class which is responsible for this call
-        for (int i = 1; i < stack.length; i++) {
-            if (stack[i].getClassName().equals(allowedClass)
-                    || ALLOWED_BYPASSES.get(permission.getClass())
-                    .contains(stack[i].getClassName())) {
+        for (Class<?> caller : CallerClassification.currentClassContext()) {
+            String callerName = caller.getName();
+            if (callerName.equals(allowedClass)
+                    || (bypasses != null && bypasses.contains(callerName))) {
                 return;
             }
         }
-        String stackMsg = "";
-        for (StackTraceElement e : Thread.currentThread().getStackTrace()) {
-            stackMsg += e.toString() + "\n";
+        // In case the stack analysis did not terminate this function a not allowed call
+        // is found, only now the message with the calling classes is created
+        StringBuilder stackMsg = new StringBuilder();
+        for (Class<?> caller : CallerClassification.currentClassContext()) {
+            stackMsg.append(caller.getName()).append('\n');
         }
-        // In case the stack trace analysis did not terminate this function a not allowed call
-        // is found
         throw new DegreeForbiddenSecurityFeatureException(
                 "Error during validation of " + permission.getClass().getSimpleName()
                         + " with action(s) '" + permission.getActions() + "'. "
                         + "A method tried to use a feature which is only allowed for the class "
-                        + allowedClass + ". " + "StackTrace:\n" + stackMsg
+                        + allowedClass + ". " + "Callers:\n" + stackMsg
         );
     }
 
@@ -206,43 +156,7 @@ public final class DegreeSecurityManager extends SecurityManager {
         }
 
         // check if the current permission is requestes by data app startup code
-        StackTraceElement[] stack = Thread.currentThread().getStackTrace();
-        // optimization because process method should be one of the earliest (--> last) entries
-        //ArrayUtils.reverse(stack);
-        /* FIXME if the above line is in use the compiled jar still works but the code can not
-             be run in IntelliJ because of StackOverflow which is a result of loading ArrayUtil
-              class vom lang3... */
-        boolean startupCode = true;
-
-        // required for stack trace analysis
-        boolean dataAppFound = false;
-        boolean activityFound = false;
-
-        // analyze stack
-        for (StackTraceElement element : stack) {
-            try {
-                // The process method of the data app is the entry point for all code that needs
-                // to be evaluated. Since the exact class name is not known prior runtime it will
-                // be checked if the class can be assigned to a data app --> extends it
-                if (element.getMethodName().equals("process")
-                        && Class.forName(element.getClassName())
-                                .isAssignableFrom(dataApp.getClass())) {
-                    dataAppFound = true;
-                } else if (element.getMethodName().equals("run")
-                        && ActivityApi.class.isAssignableFrom(Class
-                                .forName(element.getClassName()))) {
-                    activityFound = true;
-                }
-                // if we are inside an activity of a data app, we are not in startupCode
-                // which will be ignored by the security manager
-                if (dataAppFound && activityFound) {
-                    startupCode = false;
-                    break;
-                }
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            }
-        }
+        boolean startupCode = isStartupCode();
 
         if (startupCode) {
             return; //TODO maybe logging
@@ -253,6 +167,45 @@ public final class DegreeSecurityManager extends SecurityManager {
         }
     }
 
+    /**
+     * Check if the current call is part of the startup code of the data app. Only calls from
+     * within an activity, which is called by the sandbox on behalf of the data app, are
+     * evaluated by D°.
+     * <p>
+     * The sandbox marks the threads which execute an activity, the classes on the call stack
+     * are classified to verify that the data app and an activity are involved in the call.
+     *
+     * @return true if the call is part of the startup code, false otherwise
+     */
+    private boolean isStartupCode() {
+        if (!Sandbox.isExecutingActivity()) {
+            return true;
+        }
+        Class<? extends CliDataApp> dataAppClass = dataApp.getClass();
+        boolean dataAppFound = false;
+        boolean activityFound = false;
+        for (Class<?> caller : CallerClassification.currentClassContext()) {
+            switch (CallerClassification.classify(caller)) {
+                case DATA_APP:
+                    // Since the exact class name is not known prior runtime it will be checked
+                    // if the class can be assigned to a data app
+                    dataAppFound |= caller.isAssignableFrom(dataAppClass);
+                    break;
+                case ACTIVITY:
+                    activityFound = true;
+                    break;
+                default:
+                    break;
+            }
+            // if we are inside an activity of a data app, we are not in startupCode
+            // which will be ignored by the security manager
+            if (dataAppFound && activityFound) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Evaluate a permission in the context of D°.
      *
@@ -294,6 +247,44 @@ public final class DegreeSecurityManager extends SecurityManager {
         }
     }
 
+    /**
+     * Evaluate a permission again, which has already been evaluated in the current permission
+     * scope. This is required if the additional data of the permission scope (e.g. the number
+     * of read bytes) changes while the permission is used, since permissions are only evaluated
+     * when they are required for the first time.
+     * <p>
+     * The evaluation conditions of the current policies are obtained again with the changed
+     * data and the permission is resolved against them as if it was required for the first
+     * time. A policy can therefore reject the permission by returning a forbidding condition or
+     * by throwing an exception while its conditions are obtained, like a quota constraint does.
+     * <p>
+     * Permissions which are not yet part of the permission scope are not evaluated, this happens
+     * with the regular permission check.
+     *
+     * @param permission the permission to evaluate again
+     * @throws DegreeForbiddenSecurityFeatureException if a policy forbids the permission
+     */
+    public void reevaluatePermission(final Permission permission) {
+        if (isStartupCode()) {
+            return;
+        }
+        List<RequiredPermission> requiredPermissions = new ArrayList<>();
+        for (RequiredPermission requiredPermission
+                : filterRequiredPermissions(obtainRequiredPermissions(permission))) {
+            if (PermissionScope.getInstance().containsRequiredPermission(requiredPermission)) {
+                requiredPermissions.add(requiredPermission);
+            }
+        }
+        if (requiredPermissions.isEmpty()) {
+            return;
+        }
+        // the permissions are resolved again instead of being skipped as already evaluated
+        PermissionScope.getInstance().removeEvaluatedPermissions(requiredPermissions);
+        Sandbox.getInstance().setCurrentRequiredPermissions(requiredPermissions);
+        PermissionScope.getInstance().addEvaluationConditions(obtainEvaluationConditions());
+        Sandbox.getInstance().resolveCurrentPermissionScope();
+    }
+
     /**
      * Get all evaluation conditions from current policies, stored in {@link Sandbox}.
      *
@@ -305,8 +296,10 @@ public final class DegreeSecurityManager extends SecurityManager {
             if (policy instanceof PolicyInstance) {
                 continue;
             } else {
-                LOGGER.info("Obtaining evaluation conditions from constraint '"
-                        + ((ConstraintInstance) policy).getName().read() + "'.");
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info("Obtaining evaluation conditions from constraint '"
+                            + ((ConstraintInstance) policy).getName().read() + "'.");
+                }
                 evaluationConditions.addAll(
                         Sandbox.getInstance()
                                 .evaluateSecurityManagerIntervention((ConstraintInstance) policy)
@@ -329,19 +322,9 @@ public final class DegreeSecurityManager extends SecurityManager {
         ArrayList<RequiredPermission> requiredPermissionsNoDuplicates =
                 new ArrayList<>(new HashSet<>(requiredPermissions));
         // get current filter list
-        HashMap<DegreePermissionType, HashMap<String, ArrayList<String>>> ignoredPermissions =
-                IgnoredPermission.getIGNORED_PERMISSION_MAP();
+        IgnoredPermissionMatcher ignoredPermissions = IgnoredPermission.getMatcher();
         List<RequiredPermission> filteredPermissions = new ArrayList<>();
-        StackTraceElement[] stack = Thread.currentThread().getStackTrace();
-
-        // build structure for searches
-        HashMap<String, ArrayList<String>> stackData = new HashMap<>();
-        for (StackTraceElement elem : stack) {
-            if (!stackData.containsKey(elem.getClassName())) {
-                stackData.put(elem.getClassName(), new ArrayList<>());
-            }
-            stackData.get(elem.getClassName()).add(elem.getMethodName());
-        }
+        Class<?>[] classContext = null;
 
         // check each required permission
         for (RequiredPermission requiredPermission : requiredPermissionsNoDuplicates) {
@@ -350,22 +333,13 @@ public final class DegreeSecurityManager extends SecurityManager {
             }
             boolean filtered = false;
 
-            if (ignoredPermissions.containsKey(requiredPermission.getCategory())) {
-                HashMap<String, ArrayList<String>> ignoredElements =
-                        ignoredPermissions.get(requiredPermission.getCategory());
-                for (String ignoredClass : ignoredElements.keySet()) {
-                    if (stackData.containsKey(ignoredClass)) {
-                        for (String ignoredMethod : ignoredElements.get(ignoredClass)) {
-                            if (stackData.get(ignoredClass).contains(ignoredMethod)) {
-                                filtered = true;
-                                break;
-                            }
-                        }
-                    }
-                    if (filtered) {
-                        break;
-                    }
+            if (ignoredPermissions.hasEntries(requiredPermission.getCategory())) {
+                // the classes of the stack are only obtained if they are required
+                if (classContext == null) {
+                    classContext = CallerClassification.currentClassContext();
                 }
+                filtered = ignoredPermissions.matches(requiredPermission.getCategory(),
+                        classContext);
             }
 
             // check if the permission was filtered
@@ -378,100 +352,22 @@ public final class DegreeSecurityManager extends SecurityManager {
     }
 
     /**
-     * Map a java permission to D° permissions.
+     * Map a java permission to D° permissions. The permission is delegated to the
+     * {@link PermissionSecurityModule} which is registered for its type.
      *
      * @param permission the java permission
      * @return the corresponding D° permissions
+     * @see PermissionSecurityModules
      */
     private List<RequiredPermission> obtainRequiredPermissions(final Permission permission) {
-        if (permission instanceof AWTPermission) {
-            return DegreeAWTPermissionSecurityModule
-                    .checkAWTPermission((AWTPermission) permission);
-        } else if (permission instanceof FilePermission) {
-            return DegreeFilePermissionSecurityModule
-                    .checkFilePermission((FilePermission) permission);
-        } else if (permission instanceof SerializablePermission) {
-            return DegreeSerializablePermissionSecurityModule
-                    .checkSerializablePermission((SerializablePermission) permission);
-        } else if (permission instanceof ManagementPermission) {
-            return DegreeManagementPermissionSecurityModule
-                    .checkManagementPermission((ManagementPermission) permission);
-        } else if (permission instanceof ReflectPermission) {
-            return DegreeReflectPermissionSecurityModule
-                    .checkReflectPermission((ReflectPermission) permission);
-        } else if (permission instanceof RuntimePermission) {
-            return DegreeRuntimePermissionSecurityModule
-                    .checkRuntimePermission((RuntimePermission) permission);
-        } else if (permission instanceof NetPermission) {
-            return DegreeNetPermissionSecurityModule
-                    .checkNetPermission((NetPermission) permission);
-        } else if (permission instanceof SocketPermission) {
-            return DegreeSocketPermissionSecurityModule
-                    .checkSocketPermission((SocketPermission) permission);
-        } else if (permission instanceof URLPermission) {
-            return DegreeURLPermissionSecurityModule
-                    .checkURLPermission((URLPermission) permission);
-        } else if (permission instanceof LinkPermission) {
-            return DegreeLinkPermissionSecurityModule
-                    .checkLinkPermission((LinkPermission) permission);
-        } else if (permission instanceof AllPermission) {
-            return DegreeAllPermissionSecurityModule
-                    .checkAllPermission((AllPermission) permission);
-        } else if (permission instanceof SecurityPermission) {
-            return DegreeSecurityPermissionSecurityModule
-                    .checkSecurityPermission((SecurityPermission) permission);
-        } else if (permission instanceof UnresolvedPermission) {
-            return DegreeUnresolvedPermissionSecurityModule
-                    .checkUnresolvedPermission((UnresolvedPermission) permission);
-        } else if (permission instanceof SQLPermission) {
-            return DegreeSQLPermissionSecurityModule
-                    .checkSQLPermission((SQLPermission) permission);
-        } else if (permission instanceof LoggingPermission) {
-            return DegreeLoggingPermissionSecurityModule
-                    .checkLoggingPermission((LoggingPermission) permission);
-        } else if (permission instanceof PropertyPermission) {
-            return DegreePropertyPermissionSecurityModule
-                    .checkPropertyPermission((PropertyPermission) permission);
-        } else if (permission instanceof MBeanPermission) {
-            return DegreeMBeanPermissionSecurityModule
-                    .checkMBeanPermission((MBeanPermission) permission);
-        } else if (permission instanceof MBeanServerPermission) {
-            return DegreeMBeanServerPermissionSecurityModule
-                    .checkMBeanServerPermission((MBeanServerPermission) permission);
-        } else if (permission instanceof MBeanTrustPermission) {
-            return DegreeMBeanTrustPermissionSecurityModule
-                    .checkMBeanTrustPermission((MBeanTrustPermission) permission);
-        } else if (permission instanceof SubjectDelegationPermission) {
-            return DegreeSubjectDelegationPermissionSecurityModule
-                    .checkSubjectDelegationPermission((SubjectDelegationPermission) permission);
-        } else if (permission instanceof SSLPermission) {
-            return DegreeSSLPermissionSecurityModule
-                    .checkSSLPermission((SSLPermission) permission);
-        } else if (permission instanceof AuthPermission) {
-            return DegreeAuthPermissionSecurityModule
-                    .checkAuthPermission((AuthPermission) permission);
-        } else if (permission instanceof DelegationPermission) {
-            return DegreeDelegationPermissionSecurityModule
-                    .checkDelegationPermission((DelegationPermission) permission);
-        } else if (permission instanceof ServicePermission) {
-            return DegreeServicePermissionSecurityModule
-                    .checkServicePermission((ServicePermission) permission);
-        } else if (permission instanceof PrivateCredentialPermission) {
-            return DegreePrivateCredentialPermissionSecurityModule
-                    .checkPrivateCredentialPermission((PrivateCredentialPermission) permission);
-        } else if (permission instanceof AudioPermission) {
-            return DegreeAudioPermissionSecurityModule
-                    .checkAudioPermission((AudioPermission) permission);
-        } else if (permission instanceof JAXBPermission) {
-            return DegreeJAXBPermissionSecurityModule
-                    .checkJAXBPermission((JAXBPermission) permission);
-        } else if (permission instanceof WebServicePermission) {
-            return DegreeWebServicePermissionSecurityModule
-                    .checkWebServicePermission((WebServicePermission) permission);
+        List<RequiredPermission> requiredPermissions =
+                PermissionSecurityModules.obtainRequiredPermissions(permission);
+        if (requiredPermissions == null) {
+            LOGGER.warn("Received unknown type of permission: '"
+                    + permission.getClass().getSimpleName() + "'");
+            return new ArrayList<>();
         }
-        LOGGER.warn("Received unknown type of permission: '"
-                + permission.getClass().getSimpleName() + "'");
-        return new ArrayList<>();
+        return requiredPermissions;
     }
 
     /**
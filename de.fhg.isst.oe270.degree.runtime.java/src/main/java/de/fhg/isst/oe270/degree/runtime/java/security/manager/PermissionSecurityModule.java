@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.security.manager;
+
+import de.fhg.isst.oe270.degree.runtime.java.security.resolving.RequiredPermission;
+
+import java.security.Permission;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A permission security module maps java permissions of a specific type to D° permissions.
+ * Modules are registered in {@link PermissionSecurityModules}, which dispatches checked
+ * permissions to the module of their type.
+ * <p>
+ * The mapping must only depend on the name and the actions of a permission, since its result
+ * is reused for equal permissions. Checks which depend on the calling code have to be
+ * performed in {@link #checkCaller(Permission)}.
+ *
+ * @param <P> the handled type of permission
+ */
+public interface PermissionSecurityModule<P extends Permission> {
+
+    /**
+     * Get the type of permission which is handled by this module. The module is also used
+     * for subclasses of this type, unless there is a more specific module.
+     *
+     * @return the handled permission type
+     */
+    Class<P> getPermissionType();
+
+    /**
+     * Check if the current caller is allowed to require a permission. This check is
+     * performed for every checked permission.
+     *
+     * @param permission the checked permission
+     */
+    default void checkCaller(final P permission) {
+    }
+
+    /**
+     * Map a permission to the corresponding D° permissions.
+     *
+     * @param permission the checked permission
+     * @return the corresponding D° permissions
+     */
+    List<RequiredPermission> obtainRequiredPermissions(P permission);
+
+    /**
+     * Create a module from a mapping function.
+     *
+     * @param type    the handled permission type
+     * @param mapping the mapping of permissions to D° permissions
+     * @param <P>     the handled type of permission
+     * @return the created module
+     */
+    static <P extends Permission> PermissionSecurityModule<P> of(
+            final Class<P> type, final Function<P, List<RequiredPermission>> mapping) {
+        return of(type, permission -> { }, mapping);
+    }
+
+    /**
+     * Create a module from a caller check and a mapping function.
+     *
+     * @param type        the handled permission type
+     * @param callerCheck the check of the caller, performed for every permission
+     * @param mapping     the mapping of permissions to D° permissions
+     * @param <P>         the handled type of permission
+     * @return the created module
+     */
+    static <P extends Permission> PermissionSecurityModule<P> of(
+            final Class<P> type, final Consumer<P> callerCheck,
+            final Function<P, List<RequiredPermission>> mapping) {
+        return new PermissionSecurityModule<P>() {
+            @Override
+            public Class<P> getPermissionType() {
+                return type;
+            }
+
+            @Override
+            public void checkCaller(final P permission) {
+                callerCheck.accept(permission);
+            }
+
+            @Override
+            public List<RequiredPermission> obtainRequiredPermissions(final P permission) {
+                return mapping.apply(permission);
+            }
+        };
+    }
+
+}
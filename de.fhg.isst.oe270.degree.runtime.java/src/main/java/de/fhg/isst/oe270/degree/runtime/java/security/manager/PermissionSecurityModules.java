@@ -0,0 +1,353 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.security.manager;
+
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeAWTPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeAllPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeAudioPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeAuthPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeDelegationPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeFilePermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeJAXBPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeLinkPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeLoggingPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeMBeanPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeMBeanServerPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeMBeanTrustPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeManagementPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeNetPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreePrivateCredentialPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreePropertyPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeReflectPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeRuntimePermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSQLPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSSLPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSecurityPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSerializablePermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeServicePermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSocketPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeSubjectDelegationPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeURLPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeUnresolvedPermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.manager.modules.DegreeWebServicePermissionSecurityModule;
+import de.fhg.isst.oe270.degree.runtime.java.security.resolving.RequiredPermission;
+
+import javax.management.MBeanPermission;
+import javax.management.MBeanServerPermission;
+import javax.management.MBeanTrustPermission;
+import javax.management.remote.SubjectDelegationPermission;
+import javax.net.ssl.SSLPermission;
+import javax.security.auth.AuthPermission;
+import javax.security.auth.PrivateCredentialPermission;
+import javax.security.auth.kerberos.DelegationPermission;
+import javax.security.auth.kerberos.ServicePermission;
+import javax.sound.sampled.AudioPermission;
+import javax.xml.bind.JAXBPermission;
+import javax.xml.ws.WebServicePermission;
+import java.awt.AWTPermission;
+import java.io.FilePermission;
+import java.io.SerializablePermission;
+import java.lang.management.ManagementPermission;
+import java.lang.reflect.ReflectPermission;
+import java.net.NetPermission;
+import java.net.SocketPermission;
+import java.net.URLPermission;
+import java.nio.file.LinkPermission;
+import java.security.AllPermission;
+import java.security.Permission;
+import java.security.SecurityPermission;
+import java.security.UnresolvedPermission;
+import java.sql.SQLPermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PropertyPermission;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.LoggingPermission;
+
+/**
+ * Registry of all {@link PermissionSecurityModule}s, which is used by the
+ * {@link DegreeSecurityManager} to map java permissions to D° permissions.
+ * <p>
+ * The module for a permission class is looked up once and stored in a {@link ClassValue}.
+ * The mapping results are memoized for equal permissions (same class, name and actions),
+ * since permissions are immutable and the mapping does not depend on the caller.
+ */
+public final class PermissionSecurityModules {
+
+    /**
+     * Maximum number of memoized mapping results. If the limit is reached, the memoized
+     * results are discarded.
+     */
+    private static final int MAX_MEMOIZED_PERMISSIONS = 4096;
+
+    /**
+     * All registered modules, identified by their permission type.
+     */
+    private static final Map<Class<?>, PermissionSecurityModule<?>> MODULES =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Memoized mapping results.
+     */
+    private static final Map<PermissionKey, List<RequiredPermission>> MEMOIZED =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Version of the registered modules, which is increased on every registration.
+     */
+    private static volatile long version = 0;
+
+    /**
+     * The module lookup for permission classes.
+     */
+    private static final ClassValue<Dispatch> DISPATCH = new ClassValue<Dispatch>() {
+        @Override
+        protected Dispatch computeValue(final Class<?> type) {
+            long currentVersion = version;
+            // use the module of the most specific registered superclass
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                PermissionSecurityModule<?> module = MODULES.get(current);
+                if (module != null) {
+                    return new Dispatch(module, currentVersion);
+                }
+            }
+            return new Dispatch(null, currentVersion);
+        }
+    };
+
+    static {
+        register(PermissionSecurityModule.of(AWTPermission.class,
+                DegreeAWTPermissionSecurityModule::checkAWTPermission));
+        register(PermissionSecurityModule.of(FilePermission.class,
+                DegreeFilePermissionSecurityModule::checkFileCaller,
+                DegreeFilePermissionSecurityModule::mapFilePermission));
+        register(PermissionSecurityModule.of(SerializablePermission.class,
+                DegreeSerializablePermissionSecurityModule::checkSerializablePermission));
+        register(PermissionSecurityModule.of(ManagementPermission.class,
+                DegreeManagementPermissionSecurityModule::checkManagementPermission));
+        register(PermissionSecurityModule.of(ReflectPermission.class,
+                DegreeReflectPermissionSecurityModule::checkReflectPermission));
+        register(PermissionSecurityModule.of(RuntimePermission.class,
+                DegreeRuntimePermissionSecurityModule::checkRuntimePermission));
+        register(PermissionSecurityModule.of(NetPermission.class,
+                DegreeNetPermissionSecurityModule::checkNetPermission));
+        register(PermissionSecurityModule.of(SocketPermission.class,
+                DegreeSocketPermissionSecurityModule::checkSocketPermission));
+        register(PermissionSecurityModule.of(URLPermission.class,
+                DegreeURLPermissionSecurityModule::checkURLPermission));
+        register(PermissionSecurityModule.of(LinkPermission.class,
+                DegreeLinkPermissionSecurityModule::checkLinkPermission));
+        register(PermissionSecurityModule.of(AllPermission.class,
+                DegreeAllPermissionSecurityModule::checkAllPermission));
+        register(PermissionSecurityModule.of(SecurityPermission.class,
+                DegreeSecurityPermissionSecurityModule::checkSecurityPermission));
+        register(PermissionSecurityModule.of(UnresolvedPermission.class,
+                DegreeUnresolvedPermissionSecurityModule::checkUnresolvedPermission));
+        register(PermissionSecurityModule.of(SQLPermission.class,
+                DegreeSQLPermissionSecurityModule::checkSQLPermission));
+        register(PermissionSecurityModule.of(LoggingPermission.class,
+                DegreeLoggingPermissionSecurityModule::checkLoggingPermission));
+        register(PermissionSecurityModule.of(PropertyPermission.class,
+                DegreePropertyPermissionSecurityModule::checkPropertyPermission));
+        register(PermissionSecurityModule.of(MBeanPermission.class,
+                DegreeMBeanPermissionSecurityModule::checkMBeanPermission));
+        register(PermissionSecurityModule.of(MBeanServerPermission.class,
+                DegreeMBeanServerPermissionSecurityModule::checkMBeanServerPermission));
+        register(PermissionSecurityModule.of(MBeanTrustPermission.class,
+                DegreeMBeanTrustPermissionSecurityModule::checkMBeanTrustPermission));
+        register(PermissionSecurityModule.of(SubjectDelegationPermission.class,
+                DegreeSubjectDelegationPermissionSecurityModule
+                        ::checkSubjectDelegationPermission));
+        register(PermissionSecurityModule.of(SSLPermission.class,
+                DegreeSSLPermissionSecurityModule::checkSSLPermission));
+        register(PermissionSecurityModule.of(AuthPermission.class,
+                DegreeAuthPermissionSecurityModule::checkAuthPermission));
+        register(PermissionSecurityModule.of(DelegationPermission.class,
+                DegreeDelegationPermissionSecurityModule::checkDelegationPermission));
+        register(PermissionSecurityModule.of(ServicePermission.class,
+                DegreeServicePermissionSecurityModule::checkServicePermission));
+        register(PermissionSecurityModule.of(PrivateCredentialPermission.class,
+                DegreePrivateCredentialPermissionSecurityModule
+                        ::checkPrivateCredentialPermission));
+        register(PermissionSecurityModule.of(AudioPermission.class,
+                DegreeAudioPermissionSecurityModule::checkAudioPermission));
+        register(PermissionSecurityModule.of(JAXBPermission.class,
+                DegreeJAXBPermissionSecurityModule::checkJAXBPermission));
+        register(PermissionSecurityModule.of(WebServicePermission.class,
+                DegreeWebServicePermissionSecurityModule::checkWebServicePermission));
+    }
+
+    /**
+     * Private default constructor.
+     */
+    private PermissionSecurityModules() {
+    }
+
+    /**
+     * Register a module for its permission type. An already registered module for the same
+     * type is replaced.
+     *
+     * @param module the module to register
+     */
+    public static synchronized void register(final PermissionSecurityModule<?> module) {
+        MODULES.put(module.getPermissionType(), module);
+        version++;
+        MEMOIZED.clear();
+    }
+
+    /**
+     * Check if there is a module for a permission.
+     *
+     * @param permission the permission
+     * @return true if a module is registered for the type of the permission or a superclass
+     */
+    public static boolean isSupported(final Permission permission) {
+        return lookup(permission.getClass()) != null;
+    }
+
+    /**
+     * Map a java permission to D° permissions with the module which is registered for its type.
+     *
+     * @param permission the java permission
+     * @return the corresponding D° permissions (unmodifiable) or null if there is no module
+     * for the permission
+     */
+    public static List<RequiredPermission> obtainRequiredPermissions(final Permission permission) {
+        PermissionSecurityModule<Permission> module =
+                (PermissionSecurityModule<Permission>) lookup(permission.getClass());
+        if (module == null) {
+            return null;
+        }
+        module.checkCaller(permission);
+
+        PermissionKey key = new PermissionKey(permission);
+        List<RequiredPermission> requiredPermissions = MEMOIZED.get(key);
+        if (requiredPermissions == null) {
+            List<RequiredPermission> mapped = module.obtainRequiredPermissions(permission);
+            requiredPermissions = mapped == null ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(mapped));
+            if (MEMOIZED.size() >= MAX_MEMOIZED_PERMISSIONS) {
+                MEMOIZED.clear();
+            }
+            MEMOIZED.put(key, requiredPermissions);
+        }
+        return requiredPermissions;
+    }
+
+    /**
+     * Get the module for a permission class.
+     *
+     * @param type the permission class
+     * @return the module or null if there is none
+     */
+    private static PermissionSecurityModule<?> lookup(final Class<?> type) {
+        Dispatch dispatch = DISPATCH.get(type);
+        if (dispatch.version != version) {
+            // modules have been registered since the lookup
+            DISPATCH.remove(type);
+            dispatch = DISPATCH.get(type);
+        }
+        return dispatch.module;
+    }
+
+    /**
+     * The module which has been looked up for a permission class.
+     */
+    private static final class Dispatch {
+
+        /**
+         * The module, null if there is none.
+         */
+        private final PermissionSecurityModule<?> module;
+
+        /**
+         * The version of the registered modules at the time of the lookup.
+         */
+        private final long version;
+
+        /**
+         * Create a lookup result.
+         *
+         * @param permissionModule the module
+         * @param moduleVersion    the version of the registered modules
+         */
+        private Dispatch(final PermissionSecurityModule<?> permissionModule,
+                         final long moduleVersion) {
+            this.module = permissionModule;
+            this.version = moduleVersion;
+        }
+    }
+
+    /**
+     * Key of a memoized mapping result.
+     */
+    private static final class PermissionKey {
+
+        /**
+         * The permission class.
+         */
+        private final Class<?> type;
+
+        /**
+         * The name of the permission.
+         */
+        private final String name;
+
+        /**
+         * The actions of the permission.
+         */
+        private final String actions;
+
+        /**
+         * Cached hash code.
+         */
+        private final int hash;
+
+        /**
+         * Create the key for a permission.
+         *
+         * @param permission the permission
+         */
+        private PermissionKey(final Permission permission) {
+            this.type = permission.getClass();
+            this.name = permission.getName();
+            this.actions = permission.getActions();
+            this.hash = Objects.hash(type, name, actions);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PermissionKey)) {
+                return false;
+            }
+            PermissionKey other = (PermissionKey) o;
+            return type == other.type && Objects.equals(name, other.name)
+                    && Objects.equals(actions, other.actions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
@@ -79,9 +79,31 @@ public final class DegreeFilePermissionSecurityModule {
      * @see FilePermission
      */
     public static List<RequiredPermission> checkFilePermission(final FilePermission permission) {
+        checkFileCaller(permission);
+
+        return mapFilePermission(permission);
+    }
+
+    /**
+     * Ensure that a FilePermission is only required by {@link DegreeFileOperations}. The check
+     * depends on the current call stack and must be performed for every checked permission.
+     *
+     * @param permission the FilePermission which will be checked
+     */
+    public static void checkFileCaller(final FilePermission permission) {
         // ensure that only calls from DegreeFileOperations are accepted
         DegreeSecurityManager.checkCall(DegreeFileOperations.class.getName(), permission);
+    }
 
+    /**
+     * Map a FilePermission to the corresponding required permissions, without checking the
+     * caller. The result only depends on the name and actions of the permission.
+     *
+     * @param permission the FilePermission which will be mapped
+     * @return a list of required permissions
+     * @see #checkFilePermission(FilePermission)
+     */
+    public static List<RequiredPermission> mapFilePermission(final FilePermission permission) {
         String[] targetActions = permission.getActions().split(",");
 
         List<RequiredPermission> requiredPermissions = new ArrayList<>();
@@ -21,7 +21,10 @@ import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Properties;
@@ -51,12 +54,29 @@ public class IgnoredPermission {
 
     /**
      * Map with ignored permission types as keys and values contains lists of classes which are
-     * allowed to ignore the permission.
+     * allowed to ignore the permission. The map is filled once on initialization and should only
+     * be used for inspection, {@link #getMatcher()} is used for checks.
      */
     @Getter
     private static final HashMap<DegreePermissionType, HashMap<String, ArrayList<String>>>
             IGNORED_PERMISSION_MAP = new HashMap<>();
 
+    /**
+     * System property which can be used to configure an external file with additional
+     * ignored permissions. The file is only read once, when the security manager is created.
+     */
+    public static final String IGNORE_FILE_PROPERTY = "degree.securitymanager.ignore.file";
+
+    /**
+     * Compiled form of the ignored permissions.
+     */
+    private static volatile IgnoredPermissionMatcher matcher = IgnoredPermissionMatcher.EMPTY;
+
+    /**
+     * Flag if the ignored permissions have been loaded. They are never changed afterwards.
+     */
+    private static boolean initialized = false;
+
     /**
      * The D° permission type.
      */
@@ -90,15 +110,57 @@ public class IgnoredPermission {
 
     /**
      * Initialize the ignored permissions by loading the corresponding configuration file.
+     * <p>
+     * Additional entries can be provided in an external file, configured with the system
+     * property {@link #IGNORE_FILE_PROPERTY}. The ignored permissions are loaded only once,
+     * before any sandboxed code is executed. Later calls do not change them, so sandboxed code
+     * which is able to write the external file cannot exempt its own permissions.
+     */
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        HashMap<DegreePermissionType, HashMap<String, ArrayList<String>>> ignoredPermissions =
+                readIgnoredPermissions();
+        matcher = IgnoredPermissionMatcher.compile(ignoredPermissions);
+        IGNORED_PERMISSION_MAP.putAll(ignoredPermissions);
+        initialized = true;
+    }
+
+    /**
+     * Get the compiled form of the currently ignored permissions.
+     *
+     * @return the current matcher
      */
-    public static void init() {
+    public static IgnoredPermissionMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Read all ignored permissions from the bundled and the external configuration file.
+     *
+     * @return the ignored permission types and the classes and methods which ignore them
+     */
+    static HashMap<DegreePermissionType, HashMap<String, ArrayList<String>>>
+            readIgnoredPermissions() {
+        HashMap<DegreePermissionType, HashMap<String, ArrayList<String>>> ignoredPermissions =
+                new HashMap<>();
         Properties properties = new Properties();
         try {
             properties.load(IgnoredPermission.class.getResourceAsStream(
                     "/ignored_elements.properties"));
         } catch (IOException e) {
             LOGGER.error("An error occurred while loading the ignored permission objects.", e);
-            return;
+            return ignoredPermissions;
+        }
+        File ignoreFile = getIgnoreFile();
+        if (ignoreFile != null && ignoreFile.isFile()) {
+            try (InputStream in = new FileInputStream(ignoreFile)) {
+                properties.load(in);
+            } catch (IOException e) {
+                LOGGER.error("An error occurred while loading the ignored permission objects "
+                        + "from '" + ignoreFile + "'.", e);
+            }
         }
 
         final int positionsPerEntry = 3;
@@ -109,23 +171,40 @@ public class IgnoredPermission {
 
                 HashMap<String, ArrayList<String>> classMap;
                 DegreePermissionType type = DegreePermissionType.valueOf(values[0].trim());
-                if (!IGNORED_PERMISSION_MAP.containsKey(type)) {
-                    IGNORED_PERMISSION_MAP.put(type, new HashMap<>());
+                if (!ignoredPermissions.containsKey(type)) {
+                    ignoredPermissions.put(type, new HashMap<>());
                 }
-                classMap = IGNORED_PERMISSION_MAP.get(type);
+                classMap = ignoredPermissions.get(type);
                 if (!classMap.containsKey(values[1].trim())) {
                     classMap.put(values[1].trim(), new ArrayList<>());
                 }
                 classMap.get(values[1].trim()).add(values[2].trim());
                 // load the ignored class to prevent later waiting
-                try {
-                    IgnoredPermission.class.getClassLoader().loadClass(values[1].trim());
-                } catch (ClassNotFoundException e) {
-                    LOGGER.error("Tried to add an ignored permission for unknown class '"
-                            + values[1].trim() + "'.");
+                if (!values[1].trim().endsWith(IgnoredPermissionMatcher.WILDCARD)) {
+                    try {
+                        IgnoredPermission.class.getClassLoader().loadClass(values[1].trim());
+                    } catch (ClassNotFoundException e) {
+                        LOGGER.error("Tried to add an ignored permission for unknown class '"
+                                + values[1].trim() + "'.");
+                    }
                 }
             }
         });
+
+        return ignoredPermissions;
+    }
+
+    /**
+     * Get the external file with additional ignored permissions.
+     *
+     * @return the configured file or null if none is configured
+     */
+    private static File getIgnoreFile() {
+        String path = System.getProperty(IGNORE_FILE_PROPERTY);
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        return new File(path);
     }
 
 }
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.security.resolving;
+
+import de.fhg.isst.oe270.degree.runtime.java.security.resolving.enums.DegreePermissionType;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled form of the ignored permissions, which is used to check if a permission is
+ * required by ignored code (e.g. class loaders).
+ * <p>
+ * Entries consist of a permission type, a class and a method. Exact class names are stored
+ * in hash sets. Class names ending with '*' match all classes with the given prefix (e.g.
+ * 'org.springframework.*') and are stored in a prefix trie. The method '*' matches all
+ * methods of a class. Matching does not allocate any objects.
+ * <p>
+ * Matchers are immutable and can be replaced as a whole if the configuration changes.
+ */
+public final class IgnoredPermissionMatcher {
+
+    /**
+     * Wildcard for classes and methods.
+     */
+    public static final String WILDCARD = "*";
+
+    /**
+     * Matcher without any ignored permissions.
+     */
+    public static final IgnoredPermissionMatcher EMPTY =
+            new IgnoredPermissionMatcher(new EnumMap<>(DegreePermissionType.class));
+
+    /**
+     * The matchers for the individual permission types.
+     */
+    private final EnumMap<DegreePermissionType, TypeMatcher> matchers;
+
+    /**
+     * Create a matcher.
+     *
+     * @param typeMatchers the matchers for the individual permission types
+     */
+    private IgnoredPermissionMatcher(
+            final EnumMap<DegreePermissionType, TypeMatcher> typeMatchers) {
+        this.matchers = typeMatchers;
+    }
+
+    /**
+     * Compile a matcher for ignored permissions.
+     *
+     * @param ignoredPermissions map with ignored permission types as keys and maps of classes
+     *                           to their ignored methods as values
+     * @return the compiled matcher
+     */
+    public static IgnoredPermissionMatcher compile(
+            final Map<DegreePermissionType, ? extends Map<String, ? extends Iterable<String>>>
+                    ignoredPermissions) {
+        EnumMap<DegreePermissionType, TypeMatcher> typeMatchers =
+                new EnumMap<>(DegreePermissionType.class);
+        ignoredPermissions.forEach((type, classes) -> {
+            TypeMatcher typeMatcher = new TypeMatcher();
+            classes.forEach((className, methods) -> {
+                for (String method : methods) {
+                    typeMatcher.add(className, method);
+                }
+            });
+            typeMatchers.put(type, typeMatcher);
+        });
+
+        return new IgnoredPermissionMatcher(typeMatchers);
+    }
+
+    /**
+     * Check if there are ignored entries for a permission type.
+     *
+     * @param type the permission type
+     * @return true if at least one entry exists for the type
+     */
+    public boolean hasEntries(final DegreePermissionType type) {
+        return matchers.containsKey(type);
+    }
+
+    /**
+     * Check if a permission is ignored for a single method.
+     *
+     * @param type       the permission type
+     * @param className  the name of the class
+     * @param methodName the name of the method
+     * @return true if the permission is ignored for the method
+     */
+    public boolean matches(final DegreePermissionType type, final String className,
+                           final String methodName) {
+        TypeMatcher typeMatcher = matchers.get(type);
+        return typeMatcher != null && typeMatcher.matches(className, methodName);
+    }
+
+    /**
+     * Check if a permission is ignored for any method of a call stack.
+     *
+     * @param type  the permission type
+     * @param stack the call stack
+     * @return true if the permission is ignored for one of the methods on the stack
+     */
+    public boolean matches(final DegreePermissionType type, final StackTraceElement[] stack) {
+        TypeMatcher typeMatcher = matchers.get(type);
+        if (typeMatcher == null) {
+            return false;
+        }
+        for (StackTraceElement element : stack) {
+            if (typeMatcher.matches(element.getClassName(), element.getMethodName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a permission is ignored for any class of a call stack. The methods are not part
+     * of the classes on the stack, therefore the stack trace is only created if one of the
+     * classes has ignored entries for single methods.
+     *
+     * @param type         the permission type
+     * @param classContext the classes on the call stack
+     * @return true if the permission is ignored for one of the methods on the stack
+     */
+    public boolean matches(final DegreePermissionType type, final Class<?>[] classContext) {
+        TypeMatcher typeMatcher = matchers.get(type);
+        if (typeMatcher == null) {
+            return false;
+        }
+        boolean ignoredMethods = false;
+        for (Class<?> caller : classContext) {
+            String className = caller.getName();
+            if (typeMatcher.matchesClass(className, true)) {
+                return true;
+            }
+            ignoredMethods = ignoredMethods || typeMatcher.matchesClass(className, false);
+        }
+        return ignoredMethods && matches(type, Thread.currentThread().getStackTrace());
+    }
+
+    /**
+     * The ignored methods for a single permission type.
+     */
+    private static final class TypeMatcher {
+
+        /**
+         * Ignored methods of classes with exact names.
+         */
+        private final Map<String, MethodSet> exactClasses = new HashMap<>();
+
+        /**
+         * Ignored methods of classes with a given prefix.
+         */
+        private final TrieNode prefixClasses = new TrieNode();
+
+        /**
+         * Add an ignored method.
+         *
+         * @param className the class name, which may end with '*'
+         * @param method    the method name or '*'
+         */
+        private void add(final String className, final String method) {
+            MethodSet methods;
+            if (className.endsWith(WILDCARD)) {
+                TrieNode node = prefixClasses;
+                for (int i = 0; i < className.length() - 1; i++) {
+                    node = node.getOrCreateChild(className.charAt(i));
+                }
+                if (node.methods == null) {
+                    node.methods = new MethodSet();
+                }
+                methods = node.methods;
+            } else {
+                methods = exactClasses.computeIfAbsent(className, c -> new MethodSet());
+            }
+            methods.add(method);
+        }
+
+        /**
+         * Check if a method is ignored.
+         *
+         * @param className  the name of the class
+         * @param methodName the name of the method
+         * @return true if the method is ignored
+         */
+        private boolean matches(final String className, final String methodName) {
+            MethodSet methods = exactClasses.get(className);
+            if (methods != null && methods.contains(methodName)) {
+                return true;
+            }
+            TrieNode node = prefixClasses;
+            for (int i = 0; node != null; i++) {
+                if (node.methods != null && node.methods.contains(methodName)) {
+                    return true;
+                }
+                if (i == className.length()) {
+                    break;
+                }
+                node = node.getChild(className.charAt(i));
+            }
+            return false;
+        }
+
+        /**
+         * Check if a class has ignored methods.
+         *
+         * @param className  the name of the class
+         * @param allMethods flag if all methods of the class must be ignored
+         * @return true if the class has ignored methods
+         */
+        private boolean matchesClass(final String className, final boolean allMethods) {
+            MethodSet methods = exactClasses.get(className);
+            if (methods != null && (!allMethods || methods.allMethods)) {
+                return true;
+            }
+            TrieNode node = prefixClasses;
+            for (int i = 0; node != null; i++) {
+                if (node.methods != null && (!allMethods || node.methods.allMethods)) {
+                    return true;
+                }
+                if (i == className.length()) {
+                    break;
+                }
+                node = node.getChild(className.charAt(i));
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A node of the prefix trie for class names.
+     */
+    private static final class TrieNode {
+
+        /**
+         * The characters which lead to the child nodes.
+         */
+        private char[] keys = new char[0];
+
+        /**
+         * The child nodes, in the same order as their characters.
+         */
+        private TrieNode[] children = new TrieNode[0];
+
+        /**
+         * The ignored methods of classes with the prefix of this node, null if there are none.
+         */
+        private MethodSet methods = null;
+
+        /**
+         * Get the child node for a character.
+         *
+         * @param key the next character
+         * @return the child node or null if there is none
+         */
+        private TrieNode getChild(final char key) {
+            // nodes only have few children, so a linear search is sufficient
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get the child node for a character and create it if necessary.
+         *
+         * @param key the next character
+         * @return the child node
+         */
+        private TrieNode getOrCreateChild(final char key) {
+            TrieNode child = getChild(key);
+            if (child == null) {
+                child = new TrieNode();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = key;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+    /**
+     * A set of ignored methods.
+     */
+    private static final class MethodSet {
+
+        /**
+         * Flag if all methods are ignored.
+         */
+        private boolean allMethods = false;
+
+        /**
+         * The ignored methods.
+         */
+        private final Set<String> names = new HashSet<>();
+
+        /**
+         * Add a method.
+         *
+         * @param method the method name or '*'
+         */
+        private void add(final String method) {
+            if (WILDCARD.equals(method)) {
+                allMethods = true;
+            } else {
+                names.add(method);
+            }
+        }
+
+        /**
+         * Check if a method is part of this set.
+         *
+         * @param method the method name
+         * @return true if the method is part of this set
+         */
+        private boolean contains(final String method) {
+            return allMethods || names.contains(method);
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.usage.control.`object`
+
+import nukleus.core.CompositeInstance
+import nukleus.core.Instance
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Thread-safe store for the policies which apply to data.
+ *
+ * Policies are kept as long as the data they apply to is reachable. There is neither a size limit nor an expiry,
+ * since evicting the policies of data which is still in use would let usage control fail open.
+ *
+ * Composite instances are identified by the link value of their identity, so their policies are also found for
+ * other instances with the same identity. All other instances have no stable identity and are identified by object
+ * identity. The store only keeps weak references to the instances: entries are removed as soon as all instances
+ * they have been registered for are garbage collected.
+ */
+class DataPolicyStore {
+
+    /**
+     * Weak reference to an instance, which uses the identity of the instance for comparisons.
+     * References to composite instances also carry the link value they are registered for.
+     */
+    private class IdentityKey(instance: Instance, queue: ReferenceQueue<Instance>, val linkValue: String?) :
+        WeakReference<Instance>(instance, queue) {
+
+        private val hash = System.identityHashCode(instance)
+
+        override fun hashCode() = hash
+
+        override fun equals(other: Any?): Boolean {
+            if (this === other) return true
+            return when (other) {
+                is IdentityKey -> get().let { it != null && it === other.get() }
+                is LookupKey -> get().let { it != null && it === other.instance }
+                else -> false
+            }
+        }
+    }
+
+    /**
+     * Strong key which is used to look up instances without creating weak references.
+     */
+    private class LookupKey(val instance: Instance) {
+
+        private val hash = System.identityHashCode(instance)
+
+        override fun hashCode() = hash
+
+        override fun equals(other: Any?): Boolean {
+            if (this === other) return true
+            return when (other) {
+                is IdentityKey -> other.get().let { it != null && it === instance }
+                is LookupKey -> instance === other.instance
+                else -> false
+            }
+        }
+    }
+
+    /**
+     * Policies of a link value and the instances they have been registered for. The instances are only changed while
+     * holding the lock of [byLinkValue].
+     */
+    private class LinkValueEntry(val policies: List<Instance>, val instances: MutableSet<IdentityKey>)
+
+    private val byLinkValue = ConcurrentHashMap<String, LinkValueEntry>()
+
+    private val byIdentity = ConcurrentHashMap<Any, List<Instance>>()
+
+    private val collected = ReferenceQueue<Instance>()
+
+    /**
+     * Store the policies which apply to an instance. Existing policies are replaced.
+     *
+     * @param instance the instance
+     * @param policies the policies which apply to the instance
+     * @return the identifier of the instance, which is the link value for composite instances and the identity hash
+     * code for all other instances
+     */
+    fun put(instance: Instance, policies: List<Instance>): String {
+        expungeCollected()
+        if (instance is CompositeInstance) {
+            val linkValue = instance.identity.linkValue()
+            synchronized(byLinkValue) {
+                val instances = byLinkValue[linkValue]?.instances ?: HashSet()
+                instances.add(IdentityKey(instance, collected, linkValue))
+                byLinkValue[linkValue] = LinkValueEntry(policies.toList(), instances)
+            }
+            return linkValue
+        }
+        byIdentity[IdentityKey(instance, collected, null)] = policies.toList()
+        return System.identityHashCode(instance).toString()
+    }
+
+    /**
+     * Get the policies which apply to an instance.
+     *
+     * @param instance the instance
+     * @return the policies of the instance, empty if there are none
+     */
+    fun get(instance: Instance): List<Instance> {
+        if (instance is CompositeInstance) {
+            return byLinkValue[instance.identity.linkValue()]?.policies ?: emptyList()
+        }
+        return byIdentity[LookupKey(instance)] ?: emptyList()
+    }
+
+    /**
+     * Get all policies which apply to a set of instances. Each instance is looked up in constant time.
+     *
+     * @param instances the instances
+     * @return the policies which apply to at least one of the instances
+     */
+    fun getAll(instances: Collection<Instance>): List<Instance> {
+        val result = mutableListOf<Instance>()
+        for (instance in instances) {
+            result.addAll(get(instance))
+        }
+        return result
+    }
+
+    /**
+     * Remove the policies of an instance.
+     *
+     * @param instance the instance
+     */
+    fun remove(instance: Instance) {
+        if (instance is CompositeInstance)
+            synchronized(byLinkValue) {
+                byLinkValue.remove(instance.identity.linkValue())
+            }
+        else
+            byIdentity.remove(LookupKey(instance))
+    }
+
+    /**
+     * Get the number of instances with stored policies. Entries of collected instances are
+     * removed before counting.
+     *
+     * @return the number of entries
+     */
+    fun size(): Int {
+        expungeCollected()
+        return byLinkValue.size + byIdentity.size
+    }
+
+    /**
+     * Remove all entries.
+     */
+    fun clear() {
+        synchronized(byLinkValue) {
+            byLinkValue.clear()
+        }
+        byIdentity.clear()
+    }
+
+    /**
+     * Remove the entries of instances which have been garbage collected. Entries of link values are removed once all
+     * instances they have been registered for are collected.
+     */
+    private fun expungeCollected() {
+        while (true) {
+            val key = collected.poll() as IdentityKey? ?: return
+            val linkValue = key.linkValue
+            if (linkValue == null) {
+                byIdentity.remove(key)
+                continue
+            }
+            synchronized(byLinkValue) {
+                val entry = byLinkValue[linkValue]
+                if (entry != null && entry.instances.remove(key) && entry.instances.isEmpty()) {
+                    byLinkValue.remove(linkValue)
+                }
+            }
+        }
+    }
+
+}
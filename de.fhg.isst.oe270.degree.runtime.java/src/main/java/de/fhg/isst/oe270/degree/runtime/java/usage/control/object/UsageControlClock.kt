@@ -0,0 +1,159 @@
+/**
+ * Copyright 2020-2022 Fraunhofer Institute for Software and Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.fhg.isst.oe270.degree.runtime.java.usage.control.`object`
+
+import org.slf4j.LoggerFactory
+import java.time.LocalDateTime
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
+
+/**
+ * Shared clock source for policies which need the current time.
+ *
+ * The time is taken from the usage control object (if it is set) and is sampled at most once
+ * per tick. All evaluations within the same tick observe the same point in time, which avoids
+ * repeated calls to the usage control object for policies that are evaluated very frequently.
+ *
+ * The length of a tick can be configured with the system property [TICK_PROPERTY] (in
+ * milliseconds). A tick of 0 samples the usage control object on every call.
+ */
+object UsageControlClock {
+
+    /**
+     * System property which can be used to configure the tick length in milliseconds.
+     */
+    const val TICK_PROPERTY = "degree.usage.control.clock.tick"
+
+    /**
+     * Tick length which is used if nothing else is configured.
+     */
+    const val DEFAULT_TICK_MILLIS = 100L
+
+    /**
+     * Logger used in the usage control clock.
+     */
+    private val logger = LoggerFactory.getLogger("UsageControlClock")!!
+
+    /**
+     * A sampled point in time together with the (monotonic) moment it was taken.
+     */
+    private class Sample(val time: LocalDateTime, val takenAt: Long)
+
+    /**
+     * Length of a tick in nanoseconds.
+     */
+    @Volatile
+    private var tickNanos = TimeUnit.MILLISECONDS.toNanos(readConfiguredTick())
+
+    /**
+     * The most recent sample, shared by all evaluations within the current tick.
+     */
+    @Volatile
+    private var sample: Sample? = null
+
+    /**
+     * Source which replaces the usage control object, e.g. for deterministic load tests.
+     */
+    @Volatile
+    private var injectedSource: Supplier<LocalDateTime>? = null
+
+    /**
+     * Retrieve the current time. Injected sources are queried on every call, otherwise the
+     * usage control object is sampled at most once per tick.
+     *
+     * @return the current time (time zone naive)
+     */
+    fun now(): LocalDateTime {
+        val injected = injectedSource
+        if (injected != null) {
+            return injected.get()
+        }
+
+        val current = sample
+        val timestamp = System.nanoTime()
+        if (current != null && timestamp - current.takenAt < tickNanos) {
+            return current.time
+        }
+
+        val fresh = Sample(readSource(), timestamp)
+        sample = fresh
+        return fresh.time
+    }
+
+    /**
+     * Change the length of a tick.
+     *
+     * @param millis the new tick length in milliseconds, 0 disables sampling
+     */
+    fun setTick(millis: Long) {
+        require(millis >= 0) { "The tick of the usage control clock must not be negative." }
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(millis)
+        invalidate()
+    }
+
+    /**
+     * Replace the time source of this clock. This is intended for tests which need a
+     * deterministic time.
+     *
+     * @param source the source which will be used for all subsequent calls of [now]
+     */
+    fun inject(source: Supplier<LocalDateTime>) {
+        logger.warn("Replacing the time source of the usage control clock.")
+        injectedSource = source
+    }
+
+    /**
+     * Remove an injected time source and use the usage control object again.
+     */
+    fun reset() {
+        injectedSource = null
+        invalidate()
+    }
+
+    /**
+     * Discard the current sample, the next call of [now] will query the time source again.
+     */
+    fun invalidate() {
+        sample = null
+    }
+
+    /**
+     * Read the time from the usage control object. If the object is not set (e.g. in tests
+     * of single policies) the system clock is used.
+     */
+    private fun readSource(): LocalDateTime {
+        return if (UsageControlObject.isSet()) {
+            UsageControlObject.getUCObject().retrieveCurrentTime()
+        } else {
+            LocalDateTime.now()
+        }
+    }
+
+    /**
+     * Read the tick length from the system properties.
+     */
+    private fun readConfiguredTick(): Long {
+        val configured = System.getProperty(TICK_PROPERTY) ?: return DEFAULT_TICK_MILLIS
+        val tick = configured.toLongOrNull()
+        if (tick == null || tick < 0) {
+            logger.warn("Invalid value '$configured' for '$TICK_PROPERTY'. " +
+                    "Going to use default of $DEFAULT_TICK_MILLIS ms.")
+            return DEFAULT_TICK_MILLIS
+        }
+        return tick
+    }
+
+}
@@ -15,7 +15,6 @@
  */
 package de.fhg.isst.oe270.degree.runtime.java.usage.control.`object`
 
-import nukleus.core.Instance
 import org.slf4j.LoggerFactory
 import java.time.LocalDateTime
 
@@ -36,6 +35,16 @@ abstract class UsageControlObject {
          */
         protected val logger = LoggerFactory.getLogger("UsageControlObject")!!
 
+        /**
+         * The maximal number of external IDs whose NukleusIDs are kept.
+         */
+        const val MAX_EXTERNAL_IDENTIFIERS = 10_000
+
+        /**
+         * The maximal number of NukleusIDs which are kept for a single external ID.
+         */
+        const val MAX_IDENTIFIERS_PER_EXTERNAL_IDENTIFIER = 64
+
         /**
          * The UsageControlObject which is used in the application.
          */
@@ -49,6 +58,8 @@ abstract class UsageControlObject {
         fun setUCObject(ucObject: UsageControlObject) {
             if (UCObject == null) {
                 UCObject = ucObject
+                // samples taken before the object was set are based on the system clock
+                UsageControlClock.invalidate()
                 logger.info("Usage control object successfully set.")
             } else
                 logger.error("Tried to overwrite UsageControlObject")
@@ -82,16 +93,22 @@ abstract class UsageControlObject {
     }
 
     /**
-     * Map of Identity#linKValue() to lists of policy instances in order to determine which policies apply to which
-     * data.
+     * Store for the policy instances which apply to data instances, in order to determine which policies apply to
+     * which data.
      */
-    val dataPolicies = mutableMapOf<String, List<Instance>>()
+    val dataPolicies = DataPolicyStore()
 
     /**
      * D° applications may receive data from external systems which use different kind of IDs.
      * In order to keep track of these different IDs, this is a map of externalID --> NukleusIDs.
+     * The least recently used external IDs and the oldest NukleusIDs of an external ID are removed if the limits
+     * are exceeded, since periodic applications register new data in every iteration.
      */
-    val externalIdentifierMapping = mutableMapOf<String, MutableList<String>>()
+    private val externalIdentifierMapping =
+        object : LinkedHashMap<String, MutableList<String>>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, MutableList<String>>?) =
+                size > MAX_EXTERNAL_IDENTIFIERS
+        }
 
     /**
      * Retrieve the type of this usage control object.
@@ -110,15 +127,34 @@ abstract class UsageControlObject {
         return retrieveUCObjectType().name
     }
 
+    /**
+     * Add a NukleusID to the IDs of an external ID.
+     *
+     * @param key the external ID
+     * @param value the NukleusID
+     */
     fun addExternalIdentifierMappingEntry(key: String, value: String) {
-        val list = if (externalIdentifierMapping.containsKey(key))
-            externalIdentifierMapping[key]
-        else
-            mutableListOf()
-
-        list!!.add(value)
+        synchronized(externalIdentifierMapping) {
+            val list = externalIdentifierMapping.getOrPut(key) { ArrayList() }
+            // the same data may be registered repeatedly (e.g. in periodic applications)
+            list.remove(value)
+            list.add(value)
+            if (list.size > MAX_IDENTIFIERS_PER_EXTERNAL_IDENTIFIER) {
+                list.removeAt(0)
+            }
+        }
+    }
 
-        externalIdentifierMapping[key] = list
+    /**
+     * Retrieve the NukleusIDs of an external ID, ordered from the oldest to the latest.
+     *
+     * @param key the external ID
+     * @return the NukleusIDs of the external ID, empty if there are none
+     */
+    fun retrieveExternalIdentifierMapping(key: String): List<String> {
+        synchronized(externalIdentifierMapping) {
+            return externalIdentifierMapping[key]?.toList() ?: emptyList()
+        }
     }
 
     /**